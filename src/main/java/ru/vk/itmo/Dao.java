@@ -1,5 +1,7 @@
 package ru.vk.itmo;
 
+import ru.vk.itmo.metrics.MetricsSnapshot;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
@@ -78,6 +80,14 @@ public interface Dao<D, E extends Entry<D>> extends Closeable {
         // Do nothing
     }
 
+    /**
+     * Returns snapshot of operation metrics (nothing by default).
+     * @return counters and latency histograms
+     */
+    default MetricsSnapshot stats() {
+        return MetricsSnapshot.EMPTY;
+    }
+
     /*
      * Releases Dao (calls flush by default).
      */
@@ -0,0 +1,407 @@
+package ru.vk.itmo.memtable;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * B+tree keeping keys of a node in a single array to be searched without chasing node pointers.
+ * The first bytes of the keys are cached in a parallel array of {@code long}s,
+ * so the keys themselves are dereferenced only on prefix ties.
+ *
+ * <p>Readers share a lock, so iterators copy entries leaf by leaf and look up the next leaf
+ * by the last returned key. Nodes are not merged on removal, memtables are short-lived.
+ */
+final class BPlusTreeMemTableMap implements MemTableMap {
+    // Keys per node
+    private static final int ORDER = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private Node root = new Leaf();
+    // Written under write lock
+    private volatile long entries;
+    private volatile long structureSize = Leaf.SIZE;
+    // State of the current write guarded by write lock
+    private Entry<MemorySegment> replaced;
+    private MemorySegment splitKey;
+
+    @Override
+    public Entry<MemorySegment> get(final MemorySegment key) {
+        lock.readLock().lock();
+        try {
+            final Leaf leaf = leaf(key);
+            final int index = leaf.search(key);
+            return index < 0 ? null : leaf.entries[index];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Entry<MemorySegment>> get(
+            final MemorySegment from,
+            final MemorySegment to) {
+        return new RangeIterator(from, to);
+    }
+
+    @Override
+    public Entry<MemorySegment> put(final Entry<MemorySegment> entry) {
+        lock.writeLock().lock();
+        try {
+            final Node right = insert(root, entry);
+            if (right != null) {
+                // Grow the tree
+                final Inner newRoot = new Inner();
+                newRoot.keys[0] = splitKey;
+                newRoot.prefixes[0] = MemorySegmentComparator.prefix(splitKey);
+                newRoot.children[0] = root;
+                newRoot.children[1] = right;
+                newRoot.count = 1;
+                root = newRoot;
+                structureSize += Inner.SIZE;
+            }
+
+            final Entry<MemorySegment> result = replaced;
+            if (result == null) {
+                entries++;
+            }
+            return result;
+        } finally {
+            replaced = null;
+            splitKey = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Entry<MemorySegment> entry) {
+        lock.writeLock().lock();
+        try {
+            final Leaf leaf = leaf(entry.key());
+            final int index = leaf.search(entry.key());
+            if (index < 0 || !entry.equals(leaf.entries[index])) {
+                return false;
+            }
+
+            final int moved = leaf.count - index - 1;
+            System.arraycopy(leaf.keys, index + 1, leaf.keys, index, moved);
+            System.arraycopy(leaf.prefixes, index + 1, leaf.prefixes, index, moved);
+            System.arraycopy(leaf.entries, index + 1, leaf.entries, index, moved);
+            leaf.count--;
+            leaf.keys[leaf.count] = null;
+            leaf.entries[leaf.count] = null;
+            entries--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries == 0L;
+    }
+
+    @Override
+    public long structureSize() {
+        return structureSize;
+    }
+
+    /**
+     * Returns leaf which may contain the key or the leftmost one for {@code null}.
+     */
+    private Leaf leaf(final MemorySegment key) {
+        Node node = root;
+        while (node instanceof Inner inner) {
+            node = inner.children[key == null ? 0 : inner.childIndex(key)];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * Inserts entry into subtree returning new right sibling of {@code node} if split.
+     */
+    private Node insert(
+            final Node node,
+            final Entry<MemorySegment> entry) {
+        final MemorySegment key = entry.key();
+        if (node instanceof Leaf leaf) {
+            final int index = leaf.search(key);
+            if (index >= 0) {
+                replaced = leaf.entries[index];
+                // Release the replaced key
+                leaf.keys[index] = key;
+                leaf.entries[index] = entry;
+                return null;
+            }
+
+            final int position = -index - 1;
+            if (leaf.count < ORDER) {
+                leaf.insert(position, key, entry);
+                return null;
+            }
+
+            final Leaf right = leaf.split();
+            if (position <= leaf.count) {
+                leaf.insert(position, key, entry);
+            } else {
+                right.insert(position - leaf.count, key, entry);
+            }
+            splitKey = right.keys[0];
+            structureSize += Leaf.SIZE;
+            return right;
+        }
+
+        final Inner inner = (Inner) node;
+        final int index = inner.childIndex(key);
+        final Node child = insert(inner.children[index], entry);
+        if (child == null) {
+            return null;
+        }
+
+        if (inner.count < ORDER) {
+            inner.insert(index, splitKey, child);
+            return null;
+        }
+
+        final Inner right = new Inner();
+        splitKey = inner.split(index, splitKey, child, right);
+        structureSize += Inner.SIZE;
+        return right;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Entry<MemorySegment>[] newEntries() {
+        return (Entry<MemorySegment>[]) new Entry<?>[ORDER];
+    }
+
+    private abstract static sealed class Node permits Leaf, Inner {
+        final MemorySegment[] keys = new MemorySegment[ORDER];
+        // Prefixes of keys
+        final long[] prefixes = new long[ORDER];
+        int count;
+
+        /**
+         * Returns index of the key or {@code -(insertion point) - 1}.
+         */
+        final int search(final MemorySegment key) {
+            final long prefix = MemorySegmentComparator.prefix(key);
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                int compare = Long.compareUnsigned(prefixes[mid], prefix);
+                if (compare == 0) {
+                    compare = MemorySegmentComparator.compareMismatch(keys[mid], key);
+                }
+                if (compare < 0) {
+                    low = mid + 1;
+                } else if (compare > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    private static final class Leaf extends Node {
+        static final long SIZE =
+                Footprint.object(4, Integer.BYTES)
+                        + 2 * Footprint.array(ORDER, Footprint.REFERENCE_SIZE)
+                        + Footprint.array(ORDER, Long.BYTES);
+
+        final Entry<MemorySegment>[] entries = newEntries();
+        Leaf next;
+
+        void insert(
+                final int position,
+                final MemorySegment key,
+                final Entry<MemorySegment> entry) {
+            final int moved = count - position;
+            System.arraycopy(keys, position, keys, position + 1, moved);
+            System.arraycopy(prefixes, position, prefixes, position + 1, moved);
+            System.arraycopy(entries, position, entries, position + 1, moved);
+            keys[position] = key;
+            prefixes[position] = MemorySegmentComparator.prefix(key);
+            entries[position] = entry;
+            count++;
+        }
+
+        /**
+         * Moves upper half to new right sibling.
+         */
+        Leaf split() {
+            final Leaf right = new Leaf();
+            final int half = count / 2;
+            right.count = count - half;
+            System.arraycopy(keys, half, right.keys, 0, right.count);
+            System.arraycopy(prefixes, half, right.prefixes, 0, right.count);
+            System.arraycopy(entries, half, right.entries, 0, right.count);
+            Arrays.fill(keys, half, count, null);
+            Arrays.fill(entries, half, count, null);
+            count = half;
+            right.next = next;
+            next = right;
+            return right;
+        }
+    }
+
+    /**
+     * Child {@code i + 1} contains keys not less than {@code keys[i]}.
+     */
+    private static final class Inner extends Node {
+        static final long SIZE =
+                Footprint.object(3, Integer.BYTES)
+                        + Footprint.array(ORDER, Footprint.REFERENCE_SIZE)
+                        + Footprint.array(ORDER, Long.BYTES)
+                        + Footprint.array(ORDER + 1, Footprint.REFERENCE_SIZE);
+
+        final Node[] children = new Node[ORDER + 1];
+
+        int childIndex(final MemorySegment key) {
+            final int index = search(key);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        /**
+         * Inserts new right sibling of child {@code index}.
+         */
+        void insert(
+                final int index,
+                final MemorySegment key,
+                final Node child) {
+            System.arraycopy(keys, index, keys, index + 1, count - index);
+            System.arraycopy(prefixes, index, prefixes, index + 1, count - index);
+            System.arraycopy(children, index + 1, children, index + 2, count - index);
+            keys[index] = key;
+            prefixes[index] = MemorySegmentComparator.prefix(key);
+            children[index + 1] = child;
+            count++;
+        }
+
+        /**
+         * Inserts new right sibling of child {@code index} into full node moving upper half to {@code right}.
+         *
+         * @return key separating this node and {@code right}
+         */
+        MemorySegment split(
+                final int index,
+                final MemorySegment key,
+                final Node child,
+                final Inner right) {
+            final MemorySegment[] allKeys = new MemorySegment[ORDER + 1];
+            final Node[] allChildren = new Node[ORDER + 2];
+            System.arraycopy(keys, 0, allKeys, 0, index);
+            allKeys[index] = key;
+            System.arraycopy(keys, index, allKeys, index + 1, ORDER - index);
+            System.arraycopy(children, 0, allChildren, 0, index + 1);
+            allChildren[index + 1] = child;
+            System.arraycopy(children, index + 1, allChildren, index + 2, ORDER - index);
+
+            final long[] allPrefixes = new long[ORDER + 1];
+            System.arraycopy(prefixes, 0, allPrefixes, 0, index);
+            allPrefixes[index] = MemorySegmentComparator.prefix(key);
+            System.arraycopy(prefixes, index, allPrefixes, index + 1, ORDER - index);
+
+            final int half = ORDER / 2;
+            right.count = ORDER - half;
+            System.arraycopy(allKeys, half + 1, right.keys, 0, right.count);
+            System.arraycopy(allPrefixes, half + 1, right.prefixes, 0, right.count);
+            System.arraycopy(allChildren, half + 1, right.children, 0, right.count + 1);
+
+            Arrays.fill(keys, null);
+            Arrays.fill(children, null);
+            System.arraycopy(allKeys, 0, keys, 0, half);
+            System.arraycopy(allPrefixes, 0, prefixes, 0, half);
+            System.arraycopy(allChildren, 0, children, 0, half + 1);
+            count = half;
+            return allKeys[half];
+        }
+    }
+
+    /**
+     * Copies entries of a leaf at a time.
+     */
+    private final class RangeIterator implements Iterator<Entry<MemorySegment>> {
+        private final MemorySegment to;
+        private final Entry<MemorySegment>[] batch = newEntries();
+        private int position;
+        private int size;
+        // Lower bound of the next batch
+        private MemorySegment bound;
+        private boolean inclusive;
+        private boolean exhausted;
+
+        RangeIterator(
+                final MemorySegment from,
+                final MemorySegment to) {
+            this.to = to;
+            this.bound = from;
+            this.inclusive = true;
+            fill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position == size && !exhausted) {
+                fill();
+            }
+            return position < size;
+        }
+
+        @Override
+        public Entry<MemorySegment> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch[position++];
+        }
+
+        private void fill() {
+            Arrays.fill(batch, 0, size, null);
+            position = 0;
+            size = 0;
+            lock.readLock().lock();
+            try {
+                Leaf leaf = leaf(bound);
+                int start = 0;
+                if (bound != null) {
+                    final int index = leaf.search(bound);
+                    start = index < 0 ? -index - 1 : inclusive ? index : index + 1;
+                }
+                while (leaf != null && start >= leaf.count) {
+                    leaf = leaf.next;
+                    start = 0;
+                }
+                if (leaf == null) {
+                    exhausted = true;
+                    return;
+                }
+
+                for (int i = start; i < leaf.count; i++) {
+                    final Entry<MemorySegment> entry = leaf.entries[i];
+                    if (to != null && MemorySegmentComparator.INSTANCE.compare(entry.key(), to) >= 0) {
+                        exhausted = true;
+                        break;
+                    }
+                    batch[size++] = entry;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            if (size > 0) {
+                bound = batch[size - 1].key();
+                inclusive = false;
+            }
+        }
+    }
+}
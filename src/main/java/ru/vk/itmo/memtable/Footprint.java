@@ -0,0 +1,62 @@
+package ru.vk.itmo.memtable;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Estimates of heap footprint of objects backing memtables.
+ *
+ * <p>Assume 64-bit JVM with compressed references and 8-byte object alignment.
+ */
+public final class Footprint {
+    public static final long OBJECT_ALIGNMENT = 8L;
+    public static final long OBJECT_HEADER_SIZE = 12L;
+    public static final long REFERENCE_SIZE = 4L;
+    public static final long ARRAY_HEADER_SIZE = 16L;
+    /**
+     * {@link MemorySegment}: header, length, read-only flag, scope, offset and array.
+     */
+    public static final long SEGMENT_SIZE = 40L;
+    /**
+     * Heap {@link MemorySegment} also gets its own scope.
+     */
+    public static final long HEAP_SEGMENT_SIZE = SEGMENT_SIZE + 32L;
+
+    private Footprint() {
+        // Only static methods
+    }
+
+    /**
+     * Returns estimated footprint of the segment and its bytes.
+     * Slices share the array, so they are accounted as if they own it.
+     */
+    public static long of(final MemorySegment segment) {
+        if (segment.isNative()) {
+            // Bytes are off-heap but still occupy memory
+            return SEGMENT_SIZE + segment.byteSize();
+        }
+
+        return HEAP_SEGMENT_SIZE + array(segment.byteSize(), 1L);
+    }
+
+    /**
+     * Returns footprint of array of {@code length} elements of {@code elementSize} bytes.
+     */
+    public static long array(
+            final long length,
+            final long elementSize) {
+        return align(ARRAY_HEADER_SIZE + length * elementSize);
+    }
+
+    /**
+     * Returns footprint of object with {@code references} fields and {@code primitiveBytes} of other fields.
+     */
+    public static long object(
+            final int references,
+            final long primitiveBytes) {
+        return align(OBJECT_HEADER_SIZE + references * REFERENCE_SIZE + primitiveBytes);
+    }
+
+    public static long align(final long size) {
+        return (size + OBJECT_ALIGNMENT - 1) & -OBJECT_ALIGNMENT;
+    }
+}
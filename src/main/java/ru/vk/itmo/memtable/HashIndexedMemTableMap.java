@@ -0,0 +1,193 @@
+package ru.vk.itmo.memtable;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skip list with hash index on key bytes.
+ *
+ * <p>Both structures share a mutable slot per key, so point reads and replacements
+ * of existing keys take a single hash lookup, while only insertions and removals touch the skip list.
+ * Writes of the same key are serialized by the hash index keeping both structures consistent.
+ *
+ * <p>Nodes keep the key they were inserted with, so the key of replaced entry is considered retained.
+ * This overestimates repeated overwrites of the same key.
+ */
+final class HashIndexedMemTableMap implements MemTableMap {
+    // ConcurrentSkipListMap.Node and its Index on average, see SkipListMemTableMap
+    private static final long ORDERED_NODE_SIZE = 24L + 12L;
+    // ConcurrentHashMap.Node: header, hash, key, value and next.
+    // Table has 1.33 to 2.67 slots per node depending on the time since resize.
+    private static final long HASH_NODE_SIZE = Footprint.object(3, Integer.BYTES) + 2 * Footprint.REFERENCE_SIZE;
+    private static final long STRUCTURE_SIZE_PER_KEY = ORDERED_NODE_SIZE + HASH_NODE_SIZE + Key.SIZE + Slot.SIZE;
+
+    private final NavigableMap<MemorySegment, Slot> ordered =
+            new ConcurrentSkipListMap<>(MemorySegmentComparator.INSTANCE);
+    private final ConcurrentMap<Key, Slot> index = new ConcurrentHashMap<>();
+    private final AtomicLong structureSize = new AtomicLong();
+
+    @Override
+    public Entry<MemorySegment> get(final MemorySegment key) {
+        final Slot slot = index.get(new Key(key));
+        return slot == null ? null : slot.entry;
+    }
+
+    @Override
+    public Iterator<Entry<MemorySegment>> get(
+            final MemorySegment from,
+            final MemorySegment to) {
+        final NavigableMap<MemorySegment, Slot> range;
+        if (from == null && to == null) {
+            range = ordered;
+        } else if (from == null) {
+            range = ordered.headMap(to, false);
+        } else if (to == null) {
+            range = ordered.tailMap(from, true);
+        } else {
+            range = ordered.subMap(from, true, to, false);
+        }
+
+        final Iterator<Slot> slots = range.values().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return slots.hasNext();
+            }
+
+            @Override
+            public Entry<MemorySegment> next() {
+                return slots.next().entry;
+            }
+        };
+    }
+
+    @Override
+    public Entry<MemorySegment> put(final Entry<MemorySegment> entry) {
+        final Entry<MemorySegment>[] previous = newEntryHolder();
+        index.compute(
+                new Key(entry.key()),
+                (key, slot) -> {
+                    if (slot == null) {
+                        final Slot inserted = new Slot(entry);
+                        ordered.put(entry.key(), inserted);
+                        return inserted;
+                    }
+
+                    previous[0] = slot.entry;
+                    slot.entry = entry;
+                    return slot;
+                });
+
+        final Entry<MemorySegment> result = previous[0];
+        if (result == null) {
+            structureSize.addAndGet(STRUCTURE_SIZE_PER_KEY);
+        } else if (result.key() != entry.key()) {
+            structureSize.addAndGet(Footprint.of(result.key()));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean remove(final Entry<MemorySegment> entry) {
+        final Key key = new Key(entry.key());
+        final MemorySegment[] removed = new MemorySegment[1];
+        index.computeIfPresent(
+                key,
+                (existing, slot) -> {
+                    if (!entry.equals(slot.entry)) {
+                        return slot;
+                    }
+
+                    ordered.remove(existing.segment);
+                    removed[0] = existing.segment;
+                    return null;
+                });
+
+        final MemorySegment insertedKey = removed[0];
+        if (insertedKey == null) {
+            return false;
+        }
+
+        structureSize.addAndGet(
+                insertedKey == entry.key()
+                        ? -STRUCTURE_SIZE_PER_KEY
+                        : -STRUCTURE_SIZE_PER_KEY - Footprint.of(insertedKey));
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public long structureSize() {
+        return structureSize.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Entry<MemorySegment>[] newEntryHolder() {
+        return (Entry<MemorySegment>[]) new Entry<?>[1];
+    }
+
+    /**
+     * The latest entry of a key shared by both structures.
+     */
+    private static final class Slot {
+        static final long SIZE = Footprint.object(1, 0L);
+
+        volatile Entry<MemorySegment> entry;
+
+        Slot(final Entry<MemorySegment> entry) {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Key compared by content.
+     */
+    private static final class Key {
+        static final long SIZE = Footprint.object(1, Integer.BYTES);
+
+        final MemorySegment segment;
+        private final int hash;
+
+        Key(final MemorySegment segment) {
+            this.segment = segment;
+            this.hash = hash(segment);
+        }
+
+        private static int hash(final MemorySegment segment) {
+            final long size = segment.byteSize();
+            long result = size;
+            long offset = 0L;
+            for (; offset + Long.BYTES <= size; offset += Long.BYTES) {
+                result = result * 31 + segment.get(ValueLayout.JAVA_LONG_UNALIGNED, offset);
+            }
+            for (; offset < size; offset++) {
+                result = result * 31 + segment.get(ValueLayout.JAVA_BYTE, offset);
+            }
+            return Long.hashCode(result);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key key
+                    && hash == key.hash
+                    && segment.mismatch(key.segment) == -1L;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.vk.itmo.memtable;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link MemTableMap} implementations on upserts, point reads and range scans
+ * of random keys sharing a common prefix like the ones of a typical key space.
+ *
+ * <p>Usage: {@code MemTableBenchmark [entries]}, 1M entries by default.
+ */
+public final class MemTableBenchmark {
+    private static final int RUNS = 5;
+    private static final int SCAN_LENGTH = 100;
+
+    private MemTableBenchmark() {
+        // Only main
+    }
+
+    public static void main(final String[] args) {
+        final int count = args.length == 0 ? 1_000_000 : Integer.parseInt(args[0]);
+        final Map<String, Supplier<MemTableMap>> maps = new LinkedHashMap<>();
+        maps.put("skip list", MemTableMap::skipList);
+        maps.put("hash indexed", MemTableMap::hashIndexed);
+        maps.put("radix tree", MemTableMap::radixTree);
+        maps.put("B+tree", MemTableMap::bPlusTree);
+
+        final MemorySegment[] keys = keys(count);
+        for (final Map.Entry<String, Supplier<MemTableMap>> map : maps.entrySet()) {
+            run(map.getKey(), map.getValue(), keys);
+        }
+    }
+
+    private static MemorySegment[] keys(final int count) {
+        final Random random = new Random(count);
+        final MemorySegment[] result = new MemorySegment[count];
+        for (int i = 0; i < count; i++) {
+            result[i] =
+                    MemorySegment.ofArray(
+                            String.format("user:%012d", random.nextLong(Long.MAX_VALUE) % 1_000_000_000_000L)
+                                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    private static void run(
+            final String name,
+            final Supplier<MemTableMap> factory,
+            final MemorySegment[] keys) {
+        final long[] upsertNanos = new long[RUNS];
+        final long[] getNanos = new long[RUNS];
+        final long[] scanNanos = new long[RUNS];
+        long structureSize = 0L;
+        long checksum = 0L;
+        for (int run = 0; run < RUNS; run++) {
+            final MemTableMap map = factory.get();
+
+            long start = System.nanoTime();
+            for (final MemorySegment key : keys) {
+                final Entry<MemorySegment> entry = new BaseEntry<>(key, key);
+                map.put(entry);
+            }
+            upsertNanos[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (final MemorySegment key : keys) {
+                checksum += map.get(key).value().byteSize();
+            }
+            getNanos[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < keys.length; i += SCAN_LENGTH) {
+                final Iterator<Entry<MemorySegment>> iterator = map.get(keys[i], null);
+                for (int j = 0; j < SCAN_LENGTH && iterator.hasNext(); j++) {
+                    checksum += iterator.next().key().byteSize();
+                }
+            }
+            scanNanos[run] = System.nanoTime() - start;
+            structureSize = map.structureSize();
+        }
+
+        System.out.printf(
+                "%s: upsert %d ns, get %d ns, scan %d ns, structure %d bytes per entry (median of %d, checksum %d)%n",
+                name,
+                median(upsertNanos) / keys.length,
+                median(getNanos) / keys.length,
+                median(scanNanos) / keys.length,
+                structureSize / keys.length,
+                RUNS,
+                checksum);
+    }
+
+    private static long median(final long[] nanos) {
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2];
+    }
+}
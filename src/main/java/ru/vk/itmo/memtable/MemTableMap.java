@@ -0,0 +1,82 @@
+package ru.vk.itmo.memtable;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Iterator;
+
+/**
+ * Sorted concurrent map of entries by key backing memtables.
+ *
+ * <p>Keys are compared lexicographically as unsigned bytes.
+ * Implementations are safe for concurrent use and their iterators are weakly consistent:
+ * they never throw {@link java.util.ConcurrentModificationException}
+ * and may or may not reflect changes made after their creation.
+ */
+public interface MemTableMap {
+    /**
+     * Returns {@link java.util.concurrent.ConcurrentSkipListMap} based map.
+     */
+    static MemTableMap skipList() {
+        return new SkipListMemTableMap();
+    }
+
+    /**
+     * Returns {@link java.util.concurrent.ConcurrentSkipListMap} based map with hash index on key bytes
+     * for constant time point reads and replacements at the cost of more memory per key.
+     */
+    static MemTableMap hashIndexed() {
+        return new HashIndexedMemTableMap();
+    }
+
+    /**
+     * Returns adaptive radix tree with lock-free reads.
+     */
+    static MemTableMap radixTree() {
+        return new RadixTreeMemTableMap();
+    }
+
+    /**
+     * Returns B+tree keeping keys of a node in a single array.
+     */
+    static MemTableMap bPlusTree() {
+        return new BPlusTreeMemTableMap();
+    }
+
+    /**
+     * Returns entry by key or {@code null} if absent.
+     */
+    Entry<MemorySegment> get(MemorySegment key);
+
+    /**
+     * Returns entries with keys from {@code from} inclusive to {@code to} exclusive in key order.
+     *
+     * @param from lower bound or {@code null} for the first key
+     * @param to upper bound or {@code null} for the last key
+     */
+    Iterator<Entry<MemorySegment>> get(
+            MemorySegment from,
+            MemorySegment to);
+
+    /**
+     * Associates entry with its key.
+     *
+     * @return replaced entry or {@code null}
+     */
+    Entry<MemorySegment> put(Entry<MemorySegment> entry);
+
+    /**
+     * Removes entry if it is still associated with its key.
+     *
+     * @return whether the entry was removed
+     */
+    boolean remove(Entry<MemorySegment> entry);
+
+    boolean isEmpty();
+
+    /**
+     * Returns estimated heap footprint of the structure itself excluding entries, keys and values.
+     * Keys still retained by the structure after their entries are replaced or removed are included.
+     */
+    long structureSize();
+}
@@ -0,0 +1,89 @@
+package ru.vk.itmo.memtable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Comparator;
+
+/**
+ * Compares {@link MemorySegment}s lexicographically as unsigned bytes.
+ *
+ * <p>The first {@link Long#BYTES} bytes are compared as a single unsigned {@code long}
+ * and {@link MemorySegment#mismatch} is called only if they are equal.
+ */
+public final class MemorySegmentComparator implements Comparator<MemorySegment> {
+    static final MemorySegmentComparator INSTANCE = new MemorySegmentComparator();
+
+    private static final ValueLayout.OfLong BIG_ENDIAN_LONG =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private MemorySegmentComparator() {
+        // Singleton
+    }
+
+    @Override
+    public int compare(
+            final MemorySegment left,
+            final MemorySegment right) {
+        final int prefixCompare = Long.compareUnsigned(prefix(left), prefix(right));
+        if (prefixCompare != 0) {
+            return prefixCompare;
+        }
+        return compareMismatch(left, right);
+    }
+
+    /**
+     * Compares keys with equal prefixes.
+     */
+    static int compareMismatch(
+            final MemorySegment left,
+            final MemorySegment right) {
+        final long mismatch = left.mismatch(right);
+        if (mismatch == -1L) {
+            return 0;
+        }
+
+        if (mismatch == left.byteSize()) {
+            // left is prefix of right, so left is smaller
+            return -1;
+        }
+
+        if (mismatch == right.byteSize()) {
+            // right is prefix of left, so left is greater
+            return 1;
+        }
+
+        return Byte.compareUnsigned(
+                left.get(ValueLayout.JAVA_BYTE, mismatch),
+                right.get(ValueLayout.JAVA_BYTE, mismatch));
+    }
+
+    /**
+     * Returns the first {@link Long#BYTES} bytes of the key as big-endian {@code long}
+     * padded with zeros if the key is shorter.
+     *
+     * <p>Unsigned order of prefixes is consistent with the order of keys:
+     * different prefixes decide the comparison and equal ones require comparing the rest.
+     */
+    public static long prefix(final MemorySegment segment) {
+        return prefix(segment, 0L, segment.byteSize());
+    }
+
+    /**
+     * Returns {@link #prefix(MemorySegment)} of the key stored in the segment at {@code offset}.
+     */
+    public static long prefix(
+            final MemorySegment segment,
+            final long offset,
+            final long length) {
+        if (length >= Long.BYTES) {
+            return segment.get(BIG_ENDIAN_LONG, offset);
+        }
+
+        long result = 0L;
+        for (long i = 0L; i < length; i++) {
+            result = (result << Byte.SIZE) | Byte.toUnsignedLong(segment.get(ValueLayout.JAVA_BYTE, offset + i));
+        }
+        return result << ((Long.BYTES - length) * Byte.SIZE);
+    }
+}
@@ -0,0 +1,826 @@
+package ru.vk.itmo.memtable;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive radix tree over key bytes.
+ *
+ * <p>Inner nodes keep the whole compressed path and adapt their fan-out: up to 16 children
+ * are kept in a sorted node of exact size, then in a node with 48 slots indexed by key byte
+ * and at last in a node with a slot per byte. The key ending at inner node is kept in its terminal leaf.
+ *
+ * <p>Writers are serialized by a lock, while readers never block. Small nodes are copied on change
+ * and published replacing the reference in the parent, larger ones are changed in place
+ * publishing every slot with release semantics. Nodes are not merged back on removal,
+ * memtables are short-lived.
+ */
+final class RadixTreeMemTableMap implements MemTableMap {
+    private static final VarHandle NODES = MethodHandles.arrayElementVarHandle(Node[].class);
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final int SMALL_CAPACITY = 16;
+    private static final int MEDIUM_CAPACITY = 48;
+    private static final int FAN_OUT = 256;
+
+    // Serializes writers changing nodes in place, readers never take it
+    private final Lock writeLock = new ReentrantLock();
+    private volatile Node root;
+    // Written under writeLock
+    private volatile long entries;
+    private volatile long structureSize;
+    // State of the current write guarded by writeLock
+    private Entry<MemorySegment> replaced;
+    private boolean removed;
+
+    @Override
+    public Entry<MemorySegment> get(final MemorySegment key) {
+        Node node = root;
+        long depth = 0L;
+        while (node instanceof Inner inner) {
+            final byte[] prefix = inner.prefix;
+            if (prefixMismatch(prefix, key, depth) < prefix.length) {
+                return null;
+            }
+
+            depth += prefix.length;
+            if (depth == key.byteSize()) {
+                final Leaf terminal = inner.terminal;
+                return terminal == null ? null : terminal.entry;
+            }
+
+            node = inner.child(byteAt(key, depth));
+            depth++;
+        }
+
+        if (node == null) {
+            return null;
+        }
+
+        // Only part of the key is checked on the way to leaf
+        final Entry<MemorySegment> result = ((Leaf) node).entry;
+        return key.mismatch(result.key()) == -1L ? result : null;
+    }
+
+    @Override
+    public Iterator<Entry<MemorySegment>> get(
+            final MemorySegment from,
+            final MemorySegment to) {
+        return new RangeIterator(from, to);
+    }
+
+    @Override
+    public Entry<MemorySegment> put(final Entry<MemorySegment> entry) {
+        writeLock.lock();
+        try {
+            final Node current = root;
+            final Node updated = insert(current, entry, entry.key(), 0L);
+            if (updated != current) {
+                root = updated;
+            }
+
+            final Entry<MemorySegment> result = replaced;
+            if (result == null) {
+                entries++;
+            }
+            return result;
+        } finally {
+            replaced = null;
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Entry<MemorySegment> entry) {
+        writeLock.lock();
+        try {
+            final Node current = root;
+            final Node updated = delete(current, entry, entry.key(), 0L);
+            if (updated != current) {
+                root = updated;
+            }
+
+            final boolean result = removed;
+            if (result) {
+                entries--;
+            }
+            return result;
+        } finally {
+            removed = false;
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries == 0L;
+    }
+
+    @Override
+    public long structureSize() {
+        return structureSize;
+    }
+
+    /**
+     * Inserts entry into subtree returning the node to replace {@code node} with.
+     */
+    private Node insert(
+            final Node node,
+            final Entry<MemorySegment> entry,
+            final MemorySegment key,
+            final long depth) {
+        if (node == null) {
+            grow(Leaf.SIZE);
+            return new Leaf(entry);
+        }
+
+        if (node instanceof Leaf leaf) {
+            final Entry<MemorySegment> existing = leaf.entry;
+            final MemorySegment existingKey = existing.key();
+            final long mismatch =
+                    MemorySegment.mismatch(
+                            existingKey,
+                            depth,
+                            existingKey.byteSize(),
+                            key,
+                            depth,
+                            key.byteSize());
+            if (mismatch == -1L) {
+                replaced = existing;
+                leaf.entry = entry;
+                return leaf;
+            }
+
+            // Split on the first differing byte
+            Inner split = new SmallNode(bytes(key, depth, mismatch));
+            split = attach(split, leaf, existingKey, depth + mismatch);
+            split = attach(split, new Leaf(entry), key, depth + mismatch);
+            grow(split.size() + Leaf.SIZE);
+            return split;
+        }
+
+        final Inner inner = (Inner) node;
+        final byte[] prefix = inner.prefix;
+        final int matched = prefixMismatch(prefix, key, depth);
+        if (matched < prefix.length) {
+            // Split the compressed path
+            final Inner shortened = inner.withPrefix(Arrays.copyOfRange(prefix, matched + 1, prefix.length));
+            Inner split = new SmallNode(Arrays.copyOf(prefix, matched));
+            split = split.add(prefix[matched] & 0xFF, shortened);
+            split = attach(split, new Leaf(entry), key, depth + matched);
+            grow(split.size() + shortened.size() - inner.size() + Leaf.SIZE);
+            return split;
+        }
+
+        final long next = depth + prefix.length;
+        if (next == key.byteSize()) {
+            final Leaf terminal = inner.terminal;
+            if (terminal == null) {
+                inner.terminal = new Leaf(entry);
+                grow(Leaf.SIZE);
+            } else {
+                replaced = terminal.entry;
+                terminal.entry = entry;
+            }
+            return inner;
+        }
+
+        final int b = byteAt(key, next);
+        final Node child = inner.child(b);
+        if (child == null) {
+            final Inner result = inner.add(b, new Leaf(entry));
+            grow(result.size() - inner.size() + Leaf.SIZE);
+            return result;
+        }
+
+        final Node updated = insert(child, entry, key, next + 1);
+        if (updated != child) {
+            inner.replace(b, updated);
+        }
+        return inner;
+    }
+
+    /**
+     * Removes entry from subtree returning the node to replace {@code node} with.
+     */
+    private Node delete(
+            final Node node,
+            final Entry<MemorySegment> entry,
+            final MemorySegment key,
+            final long depth) {
+        if (node == null) {
+            return null;
+        }
+
+        if (node instanceof Leaf leaf) {
+            if (!entry.equals(leaf.entry)) {
+                return leaf;
+            }
+
+            removed = true;
+            grow(-Leaf.SIZE);
+            return null;
+        }
+
+        final Inner inner = (Inner) node;
+        final byte[] prefix = inner.prefix;
+        if (prefixMismatch(prefix, key, depth) < prefix.length) {
+            return inner;
+        }
+
+        final long next = depth + prefix.length;
+        Inner result = inner;
+        if (next == key.byteSize()) {
+            final Leaf terminal = inner.terminal;
+            if (terminal == null || !entry.equals(terminal.entry)) {
+                return inner;
+            }
+
+            inner.terminal = null;
+            removed = true;
+            grow(-Leaf.SIZE);
+        } else {
+            final int b = byteAt(key, next);
+            final Node child = inner.child(b);
+            final Node updated = delete(child, entry, key, next + 1);
+            if (updated == child) {
+                return inner;
+            }
+
+            if (updated != null) {
+                inner.replace(b, updated);
+                return inner;
+            }
+
+            result = inner.remove(b);
+            grow(result.size() - inner.size());
+        }
+
+        if (result.terminal == null && result.children() == 0) {
+            grow(-result.size());
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Attaches leaf to inner node at {@code depth} of its key.
+     */
+    private static Inner attach(
+            final Inner node,
+            final Leaf leaf,
+            final MemorySegment key,
+            final long depth) {
+        if (depth == key.byteSize()) {
+            node.terminal = leaf;
+            return node;
+        }
+
+        return node.add(byteAt(key, depth), leaf);
+    }
+
+    private void grow(final long delta) {
+        structureSize += delta;
+    }
+
+    /**
+     * Returns length of common part of prefix and key from {@code depth}.
+     */
+    private static int prefixMismatch(
+            final byte[] prefix,
+            final MemorySegment key,
+            final long depth) {
+        final int length = (int) Math.min(prefix.length, key.byteSize() - depth);
+        for (int i = 0; i < length; i++) {
+            if (prefix[i] != key.get(ValueLayout.JAVA_BYTE, depth + i)) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static int byteAt(
+            final MemorySegment key,
+            final long offset) {
+        return key.get(ValueLayout.JAVA_BYTE, offset) & 0xFF;
+    }
+
+    private static byte[] bytes(
+            final MemorySegment key,
+            final long offset,
+            final long length) {
+        return key.asSlice(offset, length).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    private abstract static sealed class Node permits Leaf, Inner {
+    }
+
+    private static final class Leaf extends Node {
+        static final long SIZE = Footprint.object(1, 0L);
+
+        volatile Entry<MemorySegment> entry;
+
+        Leaf(final Entry<MemorySegment> entry) {
+            this.entry = entry;
+        }
+    }
+
+    private abstract static sealed class Inner extends Node permits SmallNode, MediumNode, LargeNode {
+        final byte[] prefix;
+        volatile Leaf terminal;
+
+        Inner(
+                final byte[] prefix,
+                final Leaf terminal) {
+            this.prefix = prefix;
+            this.terminal = terminal;
+        }
+
+        abstract Node child(int b);
+
+        /**
+         * Returns the least byte not less than {@code from} having a child or {@code -1}.
+         */
+        abstract int next(int from);
+
+        abstract int children();
+
+        /**
+         * Replaces existing child in place.
+         */
+        abstract void replace(
+                int b,
+                Node child);
+
+        /**
+         * Adds new child returning either this node or its grown copy.
+         */
+        abstract Inner add(
+                int b,
+                Node child);
+
+        /**
+         * Removes existing child returning either this node or its copy.
+         */
+        abstract Inner remove(int b);
+
+        abstract Inner withPrefix(byte[] prefix);
+
+        abstract long size();
+    }
+
+    /**
+     * Sorted children in arrays of exact size.
+     */
+    private static final class SmallNode extends Inner {
+        private final byte[] keys;
+        private final Node[] nodes;
+
+        SmallNode(final byte[] prefix) {
+            this(prefix, null, new byte[0], new Node[0]);
+        }
+
+        SmallNode(
+                final byte[] prefix,
+                final Leaf terminal,
+                final byte[] keys,
+                final Node[] nodes) {
+            super(prefix, terminal);
+            this.keys = keys;
+            this.nodes = nodes;
+        }
+
+        private int index(final int b) {
+            for (int i = 0; i < keys.length; i++) {
+                final int key = keys[i] & 0xFF;
+                if (key >= b) {
+                    return key == b ? i : -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Node child(final int b) {
+            final int i = index(b);
+            return i < 0 ? null : (Node) NODES.getAcquire(nodes, i);
+        }
+
+        @Override
+        int next(final int from) {
+            for (final byte key : keys) {
+                if ((key & 0xFF) >= from) {
+                    return key & 0xFF;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int children() {
+            return keys.length;
+        }
+
+        @Override
+        void replace(
+                final int b,
+                final Node child) {
+            NODES.setRelease(nodes, index(b), child);
+        }
+
+        @Override
+        Inner add(
+                final int b,
+                final Node child) {
+            if (keys.length == SMALL_CAPACITY) {
+                final MediumNode grown = new MediumNode(prefix, terminal);
+                for (int i = 0; i < keys.length; i++) {
+                    grown.add(keys[i] & 0xFF, nodes[i]);
+                }
+                grown.add(b, child);
+                return grown;
+            }
+
+            int position = 0;
+            while (position < keys.length && (keys[position] & 0xFF) < b) {
+                position++;
+            }
+            final byte[] newKeys = new byte[keys.length + 1];
+            final Node[] newNodes = new Node[nodes.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, position);
+            System.arraycopy(nodes, 0, newNodes, 0, position);
+            newKeys[position] = (byte) b;
+            newNodes[position] = child;
+            System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+            System.arraycopy(nodes, position, newNodes, position + 1, nodes.length - position);
+            return new SmallNode(prefix, terminal, newKeys, newNodes);
+        }
+
+        @Override
+        Inner remove(final int b) {
+            final int position = index(b);
+            final byte[] newKeys = new byte[keys.length - 1];
+            final Node[] newNodes = new Node[nodes.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, position);
+            System.arraycopy(nodes, 0, newNodes, 0, position);
+            System.arraycopy(keys, position + 1, newKeys, position, newKeys.length - position);
+            System.arraycopy(nodes, position + 1, newNodes, position, newNodes.length - position);
+            return new SmallNode(prefix, terminal, newKeys, newNodes);
+        }
+
+        @Override
+        Inner withPrefix(final byte[] prefix) {
+            return new SmallNode(prefix, terminal, keys, nodes.clone());
+        }
+
+        @Override
+        long size() {
+            return Footprint.object(4, 0L)
+                    + Footprint.array(prefix.length, 1L)
+                    + Footprint.array(keys.length, 1L)
+                    + Footprint.array(nodes.length, Footprint.REFERENCE_SIZE);
+        }
+    }
+
+    /**
+     * Children in slots referenced from index by key byte.
+     * Slots are not reused until the node is copied, so readers never see a slot of another byte.
+     */
+    private static final class MediumNode extends Inner {
+        // Slot + 1 or 0 if absent
+        private final byte[] index = new byte[FAN_OUT];
+        private final Node[] nodes = new Node[MEDIUM_CAPACITY];
+        // Guarded by writeLock
+        private int used;
+        private int count;
+
+        MediumNode(
+                final byte[] prefix,
+                final Leaf terminal) {
+            super(prefix, terminal);
+        }
+
+        private int slot(final int b) {
+            return ((byte) BYTES.getAcquire(index, b) & 0xFF) - 1;
+        }
+
+        @Override
+        Node child(final int b) {
+            final int slot = slot(b);
+            return slot < 0 ? null : (Node) NODES.getAcquire(nodes, slot);
+        }
+
+        @Override
+        int next(final int from) {
+            for (int b = from; b < FAN_OUT; b++) {
+                if ((byte) BYTES.getAcquire(index, b) != 0) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int children() {
+            return count;
+        }
+
+        @Override
+        void replace(
+                final int b,
+                final Node child) {
+            NODES.setRelease(nodes, slot(b), child);
+        }
+
+        @Override
+        Inner add(
+                final int b,
+                final Node child) {
+            if (used < MEDIUM_CAPACITY) {
+                // Child goes first to be visible by index
+                NODES.setRelease(nodes, used, child);
+                BYTES.setRelease(index, b, (byte) (used + 1));
+                used++;
+                count++;
+                return this;
+            }
+
+            final Inner copy;
+            if (count < MEDIUM_CAPACITY) {
+                // Reclaim slots of removed children
+                copy = withPrefix(prefix);
+            } else {
+                copy = new LargeNode(prefix, terminal);
+                for (int i = 0; i < FAN_OUT; i++) {
+                    final int slot = slot(i);
+                    if (slot >= 0) {
+                        copy.add(i, nodes[slot]);
+                    }
+                }
+            }
+            return copy.add(b, child);
+        }
+
+        @Override
+        Inner remove(final int b) {
+            final int slot = slot(b);
+            BYTES.setRelease(index, b, (byte) 0);
+            NODES.setRelease(nodes, slot, null);
+            count--;
+            return this;
+        }
+
+        @Override
+        Inner withPrefix(final byte[] prefix) {
+            // Compacts slots
+            final MediumNode copy = new MediumNode(prefix, terminal);
+            for (int b = 0; b < FAN_OUT; b++) {
+                final int slot = slot(b);
+                if (slot >= 0) {
+                    copy.add(b, nodes[slot]);
+                }
+            }
+            return copy;
+        }
+
+        @Override
+        long size() {
+            return Footprint.object(4, 2L * Integer.BYTES)
+                    + Footprint.array(prefix.length, 1L)
+                    + Footprint.array(FAN_OUT, 1L)
+                    + Footprint.array(MEDIUM_CAPACITY, Footprint.REFERENCE_SIZE);
+        }
+    }
+
+    /**
+     * Child slot per key byte.
+     */
+    private static final class LargeNode extends Inner {
+        private final Node[] nodes = new Node[FAN_OUT];
+        // Guarded by writeLock
+        private int count;
+
+        LargeNode(
+                final byte[] prefix,
+                final Leaf terminal) {
+            super(prefix, terminal);
+        }
+
+        @Override
+        Node child(final int b) {
+            return (Node) NODES.getAcquire(nodes, b);
+        }
+
+        @Override
+        int next(final int from) {
+            for (int b = from; b < FAN_OUT; b++) {
+                if (NODES.getAcquire(nodes, b) != null) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int children() {
+            return count;
+        }
+
+        @Override
+        void replace(
+                final int b,
+                final Node child) {
+            NODES.setRelease(nodes, b, child);
+        }
+
+        @Override
+        Inner add(
+                final int b,
+                final Node child) {
+            NODES.setRelease(nodes, b, child);
+            count++;
+            return this;
+        }
+
+        @Override
+        Inner remove(final int b) {
+            NODES.setRelease(nodes, b, null);
+            count--;
+            return this;
+        }
+
+        @Override
+        Inner withPrefix(final byte[] prefix) {
+            final LargeNode copy = new LargeNode(prefix, terminal);
+            System.arraycopy(nodes, 0, copy.nodes, 0, FAN_OUT);
+            copy.count = count;
+            return copy;
+        }
+
+        @Override
+        long size() {
+            return Footprint.object(3, Integer.BYTES)
+                    + Footprint.array(prefix.length, 1L)
+                    + Footprint.array(FAN_OUT, Footprint.REFERENCE_SIZE);
+        }
+    }
+
+    /**
+     * Inner node being iterated.
+     */
+    private static final class Frame {
+        final Inner node;
+        // Depth of children
+        final long depth;
+        // Whether the path equals the lower bound so far
+        final boolean tight;
+        // Next byte to look for or -1 before the terminal
+        int next = -1;
+
+        Frame(
+                final Inner node,
+                final long depth,
+                final boolean tight) {
+            this.node = node;
+            this.depth = depth;
+            this.tight = tight;
+        }
+    }
+
+    /**
+     * Depth-first traversal skipping subtrees below the lower bound.
+     */
+    private final class RangeIterator implements Iterator<Entry<MemorySegment>> {
+        private final MemorySegment from;
+        private final MemorySegment to;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private Entry<MemorySegment> next;
+
+        RangeIterator(
+                final MemorySegment from,
+                final MemorySegment to) {
+            this.from = from;
+            this.to = to;
+            final Entry<MemorySegment> first = descend(root, 0L, from != null);
+            this.next = bounded(first == null ? advance() : first);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<MemorySegment> next() {
+            final Entry<MemorySegment> result = next;
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+
+            next = bounded(advance());
+            return result;
+        }
+
+        private Entry<MemorySegment> bounded(final Entry<MemorySegment> entry) {
+            if (entry != null
+                    && to != null
+                    && MemorySegmentComparator.INSTANCE.compare(entry.key(), to) >= 0) {
+                stack.clear();
+                return null;
+            }
+            return entry;
+        }
+
+        private Entry<MemorySegment> advance() {
+            while (!stack.isEmpty()) {
+                final Frame frame = stack.peek();
+                if (frame.next < 0) {
+                    // The terminal is a prefix of all the other keys, so it goes first
+                    final boolean fromEnded = !frame.tight || from.byteSize() == frame.depth;
+                    frame.next = fromEnded ? 0 : byteAt(from, frame.depth);
+                    final Leaf terminal = frame.node.terminal;
+                    if (terminal != null && fromEnded) {
+                        return terminal.entry;
+                    }
+                    continue;
+                }
+
+                final int b = frame.node.next(frame.next);
+                if (b < 0) {
+                    stack.pop();
+                    continue;
+                }
+
+                frame.next = b + 1;
+                final Node child = frame.node.child(b);
+                if (child == null) {
+                    // Just removed
+                    continue;
+                }
+
+                final boolean tight =
+                        frame.tight
+                                && from.byteSize() > frame.depth
+                                && b == byteAt(from, frame.depth);
+                final Entry<MemorySegment> result = descend(child, frame.depth + 1, tight);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns leaf entry if not below the lower bound or pushes inner node to the stack.
+         */
+        private Entry<MemorySegment> descend(
+                final Node node,
+                final long depth,
+                final boolean tight) {
+            if (node == null) {
+                return null;
+            }
+
+            if (node instanceof Leaf leaf) {
+                final Entry<MemorySegment> entry = leaf.entry;
+                return tight && MemorySegmentComparator.INSTANCE.compare(entry.key(), from) < 0 ? null : entry;
+            }
+
+            final Inner inner = (Inner) node;
+            final byte[] prefix = inner.prefix;
+            boolean stillTight = tight;
+            if (tight) {
+                final long available = from.byteSize() - depth;
+                final int length = (int) Math.min(prefix.length, available);
+                for (int i = 0; i < length; i++) {
+                    final int diff = (prefix[i] & 0xFF) - byteAt(from, depth + i);
+                    if (diff < 0) {
+                        // The whole subtree is below the lower bound
+                        return null;
+                    }
+                    if (diff > 0) {
+                        stillTight = false;
+                        break;
+                    }
+                }
+                if (available < prefix.length) {
+                    // Keys of the subtree are longer than the lower bound they start with
+                    stillTight = false;
+                }
+            }
+
+            stack.push(new Frame(inner, depth + prefix.length, stillTight));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.vk.itmo.memtable;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MemTableMap} over {@link ConcurrentSkipListMap}.
+ *
+ * <p>A node keeps the key it was inserted with, so the key of replaced entry is considered retained.
+ * This overestimates repeated overwrites of the same key.
+ */
+final class SkipListMemTableMap implements MemTableMap {
+    // ConcurrentSkipListMap.Node: header, key, value and next
+    private static final long NODE_SIZE = 24L;
+    // ConcurrentSkipListMap.Index (header, node, down and right) is 24 bytes.
+    // A node is indexed with probability 1/4 at 2 levels on average.
+    private static final long INDEX_SIZE_PER_NODE = 12L;
+
+    private final NavigableMap<MemorySegment, Entry<MemorySegment>> map =
+            new ConcurrentSkipListMap<>(MemorySegmentComparator.INSTANCE);
+    private final AtomicLong structureSize = new AtomicLong();
+
+    @Override
+    public Entry<MemorySegment> get(final MemorySegment key) {
+        return map.get(key);
+    }
+
+    @Override
+    public Iterator<Entry<MemorySegment>> get(
+            final MemorySegment from,
+            final MemorySegment to) {
+        if (from == null && to == null) {
+            // All
+            return map.values().iterator();
+        } else if (from == null) {
+            // Head
+            return map.headMap(to).values().iterator();
+        } else if (to == null) {
+            // Tail
+            return map.tailMap(from).values().iterator();
+        } else {
+            // Slice
+            return map.subMap(from, to).values().iterator();
+        }
+    }
+
+    @Override
+    public Entry<MemorySegment> put(final Entry<MemorySegment> entry) {
+        final Entry<MemorySegment> previous = map.put(entry.key(), entry);
+        if (previous == null) {
+            structureSize.addAndGet(NODE_SIZE + INDEX_SIZE_PER_NODE);
+        } else if (previous.key() != entry.key()) {
+            structureSize.addAndGet(Footprint.of(previous.key()));
+        }
+        return previous;
+    }
+
+    @Override
+    public boolean remove(final Entry<MemorySegment> entry) {
+        // Key the node was inserted with
+        final MemorySegment nodeKey = map.ceilingKey(entry.key());
+        if (!map.remove(entry.key(), entry)) {
+            return false;
+        }
+
+        final long released = NODE_SIZE + INDEX_SIZE_PER_NODE;
+        structureSize.addAndGet(
+                nodeKey == null || nodeKey == entry.key()
+                        ? -released
+                        : -released - Footprint.of(nodeKey));
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public long structureSize() {
+        return structureSize.get();
+    }
+}
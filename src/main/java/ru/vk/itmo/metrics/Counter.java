@@ -0,0 +1,26 @@
+package ru.vk.itmo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter cheap to update concurrently.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+        // Use MetricsRegistry
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(final long delta) {
+        value.add(delta);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
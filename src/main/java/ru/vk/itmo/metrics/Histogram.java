@@ -0,0 +1,121 @@
+package ru.vk.itmo.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values (e.g. latencies in nanoseconds)
+ * in logarithmic buckets.
+ *
+ * <p>Every power of two is split into {@link #SUB_BUCKETS} linear buckets,
+ * so quantiles are reported with at most 25% relative error.
+ * Recording neither allocates nor locks once the buckets have seen contention.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Up to Long.MAX_VALUE
+    private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the value clamping negative ones to zero.
+     */
+    public void record(final long value) {
+        final long clamped = Math.max(0L, value);
+        buckets[bucket(clamped)].increment();
+        sum.add(clamped);
+        max.accumulate(clamped);
+    }
+
+    /**
+     * Records time elapsed since {@code startNanos} obtained from {@link System#nanoTime()}.
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | mantissa;
+    }
+
+    /**
+     * Returns the smallest value falling into the bucket.
+     */
+    static long lowerBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        final long mantissa = SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1));
+        return mantissa << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Returns the largest value falling into the bucket.
+     */
+    static long upperBound(final int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * Returns consistent enough view of the distribution while values are being recorded.
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+
+        final long maxValue = max.get();
+        return new HistogramSnapshot(
+                count,
+                sum.sum(),
+                maxValue,
+                quantile(counts, count, maxValue, 0.5),
+                quantile(counts, count, maxValue, 0.9),
+                quantile(counts, count, maxValue, 0.99),
+                quantile(counts, count, maxValue, 0.999));
+    }
+
+    /**
+     * Returns upper bound of the bucket containing the quantile.
+     */
+    private static long quantile(
+            final long[] counts,
+            final long count,
+            final long maxValue,
+            final double quantile) {
+        if (count == 0L) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.vk.itmo.metrics;
+
+/**
+ * Point-in-time view of {@link Histogram}.
+ * Quantiles are upper bounds of the buckets containing them.
+ *
+ * @param count recorded values
+ * @param sum sum of recorded values
+ * @param max the largest recorded value
+ * @param p50 median
+ * @param p90 90th percentile
+ * @param p99 99th percentile
+ * @param p999 99.9th percentile
+ */
+public record HistogramSnapshot(
+        long count,
+        long sum,
+        long max,
+        long p50,
+        long p90,
+        long p99,
+        long p999) {
+    public double mean() {
+        return count == 0L ? 0.0 : (double) sum / count;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.vk.itmo.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes {@link MetricsRegistry} as read-only JMX attributes:
+ * counters by name and histograms as {@code <name>.count}, {@code <name>.mean},
+ * {@code <name>.p50}, {@code <name>.p90}, {@code <name>.p99}, {@code <name>.p999} and {@code <name>.max}.
+ */
+final class MetricsMBean implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    MetricsMBean(final MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    private Map<String, Object> attributes() {
+        final MetricsSnapshot snapshot = registry.snapshot();
+        final Map<String, Object> result = new LinkedHashMap<>(snapshot.counters());
+        snapshot.histograms().forEach((name, histogram) -> {
+            result.put(name + ".count", histogram.count());
+            result.put(name + ".mean", histogram.mean());
+            result.put(name + ".p50", histogram.p50());
+            result.put(name + ".p90", histogram.p90());
+            result.put(name + ".p99", histogram.p99());
+            result.put(name + ".p999", histogram.p999());
+            result.put(name + ".max", histogram.max());
+        });
+        return result;
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final Object result = attributes().get(attribute);
+        if (result == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Read-only " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] names) {
+        final Map<String, Object> attributes = attributes();
+        final AttributeList result = new AttributeList();
+        for (final String name : names) {
+            final Object value = attributes.get(name);
+            if (value != null) {
+                result.add(new Attribute(name, value));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        // Read-only
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(
+            final String actionName,
+            final Object[] params,
+            final String[] signature) throws ReflectionException {
+        throw new ReflectionException(
+                new NoSuchMethodException(actionName),
+                "No operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> infos = new ArrayList<>();
+        attributes().forEach((name, value) ->
+                infos.add(
+                        new MBeanAttributeInfo(
+                                name,
+                                value.getClass().getName(),
+                                name,
+                                true,
+                                false,
+                                false)));
+        return new MBeanInfo(
+                MetricsRegistry.class.getName(),
+                "DAO metrics",
+                infos.toArray(new MBeanAttributeInfo[0]),
+                null,
+                null,
+                null);
+    }
+}
@@ -0,0 +1,93 @@
+package ru.vk.itmo.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named {@link Counter}s and {@link Histogram}s of a single DAO.
+ *
+ * <p>Metrics are looked up once and then updated directly,
+ * so instrumented code pays only for the update itself.
+ * The registry may be exported as a JMX MBean until closed.
+ */
+public final class MetricsRegistry implements Closeable {
+    private static final String DOMAIN = "ru.vk.itmo";
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private volatile ObjectName exported;
+
+    public Counter counter(final String name) {
+        return counters.computeIfAbsent(name, ignored -> new Counter());
+    }
+
+    public Histogram histogram(final String name) {
+        return histograms.computeIfAbsent(name, ignored -> new Histogram());
+    }
+
+    public MetricsSnapshot snapshot() {
+        final Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.get()));
+        final Map<String, HistogramSnapshot> histogramSnapshots = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramSnapshots.put(name, histogram.snapshot()));
+        return new MetricsSnapshot(
+                Collections.unmodifiableMap(counterValues),
+                Collections.unmodifiableMap(histogramSnapshots));
+    }
+
+    /**
+     * Exports the registry as {@code ru.vk.itmo:type=<type>,path=<path>} MBean.
+     * Another DAO already exported under the same name keeps its MBean.
+     *
+     * @param type DAO implementation
+     * @param path DAO storage directory
+     */
+    public void export(
+            final String type,
+            final String path) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name =
+                    new ObjectName(
+                            DOMAIN
+                                    + ":type=" + ObjectName.quote(type)
+                                    + ",path=" + ObjectName.quote(path));
+            server.registerMBean(new MetricsMBean(this), name);
+            exported = name;
+        } catch (InstanceAlreadyExistsException e) {
+            // Metrics are still available via snapshot()
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't export metrics", e);
+        }
+    }
+
+    /**
+     * Removes the MBean if exported.
+     */
+    @Override
+    public void close() {
+        final ObjectName name = exported;
+        if (name == null) {
+            return;
+        }
+
+        exported = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (InstanceNotFoundException e) {
+            // Already unregistered by somebody else
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't unexport metrics", e);
+        }
+    }
+}
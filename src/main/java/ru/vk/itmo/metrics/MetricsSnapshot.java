@@ -0,0 +1,29 @@
+package ru.vk.itmo.metrics;
+
+import java.util.Map;
+
+/**
+ * Point-in-time view of {@link MetricsRegistry} sorted by metric name.
+ *
+ * @param counters counter values
+ * @param histograms histogram snapshots
+ */
+public record MetricsSnapshot(
+        Map<String, Long> counters,
+        Map<String, HistogramSnapshot> histograms) {
+    public static final MetricsSnapshot EMPTY = new MetricsSnapshot(Map.of(), Map.of());
+
+    /**
+     * Returns counter value or zero if there is no such counter.
+     */
+    public long counter(final String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Returns histogram snapshot or {@code null} if there is no such histogram.
+     */
+    public HistogramSnapshot histogram(final String name) {
+        return histograms.get(name);
+    }
+}
@@ -0,0 +1,123 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Asynchronous facade of {@link ReferenceDao}.
+ *
+ * <p>Reads and writes are executed on the provided {@link Executor},
+ * so callers (e.g. virtual threads) are not blocked by page faults in mapped SSTables.
+ * Ranges are read completely on the executor into heap, so they should be bounded.
+ * Flush and compaction futures complete when the background work is done
+ * and {@link #close()} waits for the submitted operations if the executor is owned.
+ */
+public final class AsyncDao implements Closeable {
+    private final ReferenceDao dao;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * Executes operations on virtual threads.
+     */
+    public AsyncDao(final ReferenceDao dao) {
+        this(dao, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * Executes operations on the provided {@link Executor} which is not closed by the facade.
+     */
+    public AsyncDao(
+            final ReferenceDao dao,
+            final Executor executor) {
+        this(dao, executor, false);
+    }
+
+    private AsyncDao(
+            final ReferenceDao dao,
+            final Executor executor,
+            final boolean ownsExecutor) {
+        this.dao = dao;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public CompletableFuture<Entry<MemorySegment>> getAsync(final MemorySegment key) {
+        return CompletableFuture.supplyAsync(
+                () -> dao.get(key),
+                executor);
+    }
+
+    /**
+     * Reads the range copying keys and values to heap not to touch mapped SSTables by the caller.
+     */
+    public CompletableFuture<List<Entry<MemorySegment>>> getAsync(
+            final MemorySegment from,
+            final MemorySegment to) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    final List<Entry<MemorySegment>> result = new ArrayList<>();
+                    final Iterator<Entry<MemorySegment>> entries = dao.get(from, to);
+                    while (entries.hasNext()) {
+                        final Entry<MemorySegment> entry = entries.next();
+                        result.add(new BaseEntry<>(copy(entry.key()), copy(entry.value())));
+                    }
+                    return result;
+                },
+                executor);
+    }
+
+    private static MemorySegment copy(final MemorySegment segment) {
+        return MemorySegment.ofArray(segment.toArray(ValueLayout.JAVA_BYTE));
+    }
+
+    public CompletableFuture<Void> upsertAsync(final Entry<MemorySegment> entry) {
+        return CompletableFuture.runAsync(
+                () -> dao.upsert(entry),
+                executor);
+    }
+
+    public CompletableFuture<Void> mergeAsync(
+            final MemorySegment key,
+            final MemorySegment operand) {
+        return CompletableFuture.runAsync(
+                () -> dao.merge(key, operand),
+                executor);
+    }
+
+    public CompletableFuture<Void> applyAsync(final WriteBatch batch) {
+        return CompletableFuture.runAsync(
+                () -> dao.apply(batch),
+                executor);
+    }
+
+    public CompletableFuture<Void> flushAsync() {
+        return dao.flushAsync();
+    }
+
+    public CompletableFuture<Void> compactAsync() {
+        return dao.compactAsync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsExecutor) {
+            // Wait for submitted operations
+            ((ExecutorService) executor).close();
+        }
+
+        dao.close();
+    }
+}
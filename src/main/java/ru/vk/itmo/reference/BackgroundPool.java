@@ -0,0 +1,77 @@
+package ru.vk.itmo.reference;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flush and compaction threads shared by {@link ReferenceDao}s, e.g. {@link ColumnFamilies},
+ * so the number of threads doesn't grow with the number of DAOs.
+ *
+ * <p>Compactions of a DAO are still serialized, while different DAOs compact in parallel.
+ */
+public final class BackgroundPool implements Closeable {
+    final ExecutorService flusher;
+    final ExecutorService compactor;
+    // Merges key ranges in parallel
+    final ForkJoinPool subcompactor;
+
+    /**
+     * Creates pool with the specified numbers of threads.
+     *
+     * @param flushThreads threads writing flushed {@link MemTable}s of all the DAOs
+     * @param compactionThreads threads compacting SSTables of all the DAOs
+     */
+    public BackgroundPool(
+            final int flushThreads,
+            final int compactionThreads) {
+        if (flushThreads < 1 || compactionThreads < 1) {
+            throw new IllegalArgumentException("Non-positive threads: " + flushThreads + ", " + compactionThreads);
+        }
+
+        final AtomicInteger flusherId = new AtomicInteger();
+        this.flusher =
+                Executors.newFixedThreadPool(
+                        flushThreads,
+                        r -> {
+                            final Thread result = new Thread(r);
+                            result.setName("flusher-" + flusherId.incrementAndGet());
+                            return result;
+                        });
+
+        final AtomicInteger compactorId = new AtomicInteger();
+        this.compactor =
+                Executors.newFixedThreadPool(
+                        compactionThreads,
+                        r -> {
+                            final Thread result = new Thread(r);
+                            result.setName("compactor-" + compactorId.incrementAndGet());
+                            return result;
+                        });
+
+        this.subcompactor =
+                new ForkJoinPool(
+                        compactionThreads,
+                        pool -> {
+                            final ForkJoinWorkerThread result =
+                                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                            result.setName("subcompactor-" + result.getPoolIndex());
+                            return result;
+                        },
+                        null,
+                        false);
+    }
+
+    /**
+     * Stops the threads, so the DAOs must be closed first.
+     */
+    @Override
+    public void close() {
+        flusher.close();
+        compactor.close();
+        subcompactor.close();
+    }
+}
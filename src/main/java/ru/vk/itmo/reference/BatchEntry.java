@@ -0,0 +1,87 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Entry} of {@link WriteBatch} in {@link MemTable} visible only once the batch is committed.
+ *
+ * <p>Keeps the entry it replaced for readers which started before the commit
+ * until {@link MemTable} releases it once there are no such readers.
+ */
+final class BatchEntry implements Entry<MemorySegment> {
+    private final MemorySegment key;
+    private final MemorySegment value;
+    // Null if the key was absent or released
+    private volatile Entry<MemorySegment> previous;
+    private final Commit commit;
+
+    BatchEntry(
+            final MemorySegment key,
+            final MemorySegment value,
+            final Entry<MemorySegment> previous,
+            final Commit commit) {
+        this.key = key;
+        this.value = value;
+        this.previous = previous;
+        this.commit = commit;
+        commit.entries.incrementAndGet();
+    }
+
+    @Override
+    public MemorySegment key() {
+        return key;
+    }
+
+    @Override
+    public MemorySegment value() {
+        return value;
+    }
+
+    /**
+     * Returns version of the key visible to reader started at {@code readPoint} or {@code null} if absent.
+     */
+    Entry<MemorySegment> visible(final long readPoint) {
+        // Before the commit, since released only after the commit
+        final Entry<MemorySegment> replaced = previous;
+        final long sequence = commit.sequence;
+        if (sequence != 0L && sequence <= readPoint) {
+            return this;
+        }
+        return replaced instanceof BatchEntry batchEntry
+                ? batchEntry.visible(readPoint)
+                : replaced;
+    }
+
+    Entry<MemorySegment> previous() {
+        return previous;
+    }
+
+    /**
+     * Drops the replaced entry once no reader started before the commit.
+     */
+    void release() {
+        previous = null;
+    }
+
+    /**
+     * Accounts that the entry is not referenced by {@link MemTable} anymore.
+     *
+     * @return whether it was the last entry of the batch referencing the commit
+     */
+    boolean leave() {
+        return commit.entries.decrementAndGet() == 0;
+    }
+
+    /**
+     * Makes all the entries of a batch visible at once.
+     */
+    static final class Commit {
+        // Zero until committed
+        volatile long sequence;
+        // Entries still referenced by MemTable
+        final AtomicInteger entries = new AtomicInteger();
+    }
+}
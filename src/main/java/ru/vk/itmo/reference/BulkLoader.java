@@ -0,0 +1,357 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts unsorted entries to non overlapping SSTables to be {@link ReferenceDao#ingest ingested}
+ * bypassing {@link MemTable}s.
+ *
+ * <p>Entries are sorted in off-heap runs sharing the memory budget: while one run is being filled,
+ * the others are sorted and written to temporary SSTables by the worker threads.
+ * The runs are then split into disjoint key ranges merged in parallel.
+ * The latest entry of a key wins, tombstones are kept to shadow the data they are ingested over.
+ */
+public final class BulkLoader {
+    private static final String RUNS_DIR = "runs";
+    private static final String OUTPUT_DIR = "sstables";
+    // Offset and merge scratch per entry
+    private static final long ENTRY_OVERHEAD = 2L * Long.BYTES;
+
+    private final Path workDir;
+    private final long memoryBudget;
+    private final int threads;
+    private final Options options;
+
+    public BulkLoader(
+            final Path workDir,
+            final long memoryBudget,
+            final int threads) {
+        this(workDir, memoryBudget, threads, Options.defaults());
+    }
+
+    /**
+     * Creates loader writing SSTables as {@link ReferenceDao} with the same {@link Options} would.
+     *
+     * @param workDir directory for temporary runs and the resulting SSTables
+     * @param memoryBudget bytes of sorted runs in memory, entries must fit a share of a thread
+     * @param threads threads sorting runs and merging them
+     */
+    public BulkLoader(
+            final Path workDir,
+            final long memoryBudget,
+            final int threads,
+            final Options options) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Non-positive threads: " + threads);
+        }
+        if (memoryBudget / threads <= ENTRY_OVERHEAD) {
+            throw new IllegalArgumentException("Too small memory budget: " + memoryBudget);
+        }
+
+        this.workDir = workDir;
+        this.memoryBudget = memoryBudget;
+        this.threads = threads;
+        this.options = options;
+    }
+
+    /**
+     * Sorts the entries into SSTables.
+     *
+     * @return directories of external SSTables in key order
+     * @throws IllegalArgumentException if an entry doesn't fit the memory share of a thread
+     */
+    public List<Path> load(final Iterator<Entry<MemorySegment>> entries) throws IOException {
+        final Path runsDir = Files.createDirectories(workDir.resolve(RUNS_DIR));
+        final Path outputDir = Files.createDirectories(workDir.resolve(OUTPUT_DIR));
+        final AtomicInteger workerId = new AtomicInteger();
+        try (Arena arena = Arena.ofShared();
+             ExecutorService workers =
+                     Executors.newFixedThreadPool(
+                             threads,
+                             r -> {
+                                 final Thread thread = new Thread(r);
+                                 thread.setName("bulk-loader-" + workerId.incrementAndGet());
+                                 return thread;
+                             })) {
+            final ValueLog valueLog = ValueLog.open(arena, runsDir, Long.MAX_VALUE);
+            final int runs = sort(entries, arena, runsDir, valueLog, workers);
+            return merge(runs, arena, runsDir, outputDir, valueLog, workers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Can't load", e.getCause());
+        } finally {
+            Directories.delete(runsDir);
+        }
+    }
+
+    /**
+     * Writes sorted runs.
+     *
+     * @return number of runs from oldest to freshest
+     */
+    private int sort(
+            final Iterator<Entry<MemorySegment>> entries,
+            final Arena arena,
+            final Path runsDir,
+            final ValueLog valueLog,
+            final ExecutorService workers) throws InterruptedException, ExecutionException {
+        final BlockingQueue<RunBuffer> free = new ArrayBlockingQueue<>(threads);
+        for (int i = 0; i < threads; i++) {
+            free.add(new RunBuffer(arena.allocate(memoryBudget / threads)));
+        }
+
+        final List<Future<Void>> written = new ArrayList<>();
+        RunBuffer buffer = free.take();
+        while (entries.hasNext()) {
+            final Entry<MemorySegment> entry = entries.next();
+            if (buffer.add(entry)) {
+                continue;
+            }
+            if (buffer.isEmpty()) {
+                throw new IllegalArgumentException("Entry exceeds memory budget of a run");
+            }
+
+            written.add(workers.submit(writeRun(buffer, written.size(), runsDir, valueLog, free)));
+            buffer = free.take();
+            buffer.add(entry);
+        }
+        if (!buffer.isEmpty()) {
+            written.add(workers.submit(writeRun(buffer, written.size(), runsDir, valueLog, free)));
+        }
+
+        for (final Future<Void> run : written) {
+            run.get();
+        }
+        return written.size();
+    }
+
+    private static Callable<Void> writeRun(
+            final RunBuffer buffer,
+            final int run,
+            final Path runsDir,
+            final ValueLog valueLog,
+            final BlockingQueue<RunBuffer> free) {
+        return () -> {
+            try {
+                buffer.sort();
+                new SSTableWriter(valueLog).write(runsDir, run, buffer.iterator());
+            } finally {
+                buffer.clear();
+                free.add(buffer);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Merges disjoint key ranges of the runs in parallel.
+     */
+    private List<Path> merge(
+            final int runs,
+            final Arena arena,
+            final Path runsDir,
+            final Path outputDir,
+            final ValueLog valueLog,
+            final ExecutorService workers) throws IOException, InterruptedException, ExecutionException {
+        final List<SSTable> ssTables = new ArrayList<>(runs);
+        for (int run = runs - 1; run >= 0; run--) {
+            // From freshest to oldest
+            ssTables.add(SSTables.open(arena, runsDir, run, valueLog));
+        }
+
+        final List<MemorySegment> boundaries = Subcompactions.boundaries(ssTables, threads);
+        final List<Future<Path>> merged = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            final MemorySegment from = i == 0 ? null : boundaries.get(i - 1);
+            final MemorySegment to = i == boundaries.size() ? null : boundaries.get(i);
+            final Path dir = outputDir.resolve(Integer.toString(i));
+            merged.add(workers.submit(() -> {
+                final Iterator<Entry<MemorySegment>> range = TableSet.merge(ssTables, from, to);
+                if (!range.hasNext()) {
+                    return null;
+                }
+                new ExternalSSTableWriter(options).write(dir, range);
+                return dir;
+            }));
+        }
+
+        final List<Path> result = new ArrayList<>(merged.size());
+        for (final Future<Path> range : merged) {
+            final Path dir = range.get();
+            if (dir != null) {
+                result.add(dir);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Off-heap buffer of entries {@code <long keyLength><key><long valueLength><value>}
+     * sorted by offsets, tombstones have {@code valueLength} {@code -1}.
+     */
+    private static final class RunBuffer {
+        private final MemorySegment buffer;
+        private long[] offsets = new long[1024];
+        private int count;
+        private long written;
+
+        RunBuffer(final MemorySegment buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * Appends entry if it fits.
+         */
+        boolean add(final Entry<MemorySegment> entry) {
+            final MemorySegment key = entry.key();
+            final MemorySegment value = entry.value();
+            final long size =
+                    2L * Long.BYTES
+                            + key.byteSize()
+                            + (value == null ? 0L : value.byteSize());
+            if (written + size + (count + 1) * ENTRY_OVERHEAD > buffer.byteSize()) {
+                return false;
+            }
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = written;
+
+            buffer.set(ValueLayout.JAVA_LONG_UNALIGNED, written, key.byteSize());
+            MemorySegment.copy(key, 0L, buffer, written + Long.BYTES, key.byteSize());
+            final long valueOffset = written + Long.BYTES + key.byteSize();
+            if (value == null) {
+                buffer.set(ValueLayout.JAVA_LONG_UNALIGNED, valueOffset, SSTables.TOMBSTONE_VALUE_LENGTH);
+            } else {
+                buffer.set(ValueLayout.JAVA_LONG_UNALIGNED, valueOffset, value.byteSize());
+                MemorySegment.copy(value, 0L, buffer, valueOffset + Long.BYTES, value.byteSize());
+            }
+            written += size;
+            return true;
+        }
+
+        /**
+         * Stable sort, so the latest entry of a key goes last.
+         */
+        void sort() {
+            sort(new long[count], 0, count);
+        }
+
+        private void sort(
+                final long[] scratch,
+                final int from,
+                final int to) {
+            if (to - from < 2) {
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+            sort(scratch, from, middle);
+            sort(scratch, middle, to);
+            if (compare(offsets[middle - 1], offsets[middle]) <= 0) {
+                // Already ordered
+                return;
+            }
+
+            System.arraycopy(offsets, from, scratch, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right == to || left < middle && compare(scratch[left], scratch[right]) <= 0) {
+                    offsets[i] = scratch[left++];
+                } else {
+                    offsets[i] = scratch[right++];
+                }
+            }
+        }
+
+        private int compare(
+                final long left,
+                final long right) {
+            return MemorySegmentComparator.compare(
+                    buffer,
+                    left + Long.BYTES,
+                    buffer.get(ValueLayout.JAVA_LONG_UNALIGNED, left),
+                    buffer,
+                    right + Long.BYTES,
+                    buffer.get(ValueLayout.JAVA_LONG_UNALIGNED, right));
+        }
+
+        /**
+         * Returns sorted entries skipping all but the latest entry of every key.
+         */
+        Iterator<Entry<MemorySegment>> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < count;
+                }
+
+                @Override
+                public Entry<MemorySegment> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    while (next + 1 < count && compare(offsets[next], offsets[next + 1]) == 0) {
+                        // Overwritten
+                        next++;
+                    }
+                    return entry(offsets[next++]);
+                }
+            };
+        }
+
+        private Entry<MemorySegment> entry(final long offset) {
+            final long keyLength = buffer.get(ValueLayout.JAVA_LONG_UNALIGNED, offset);
+            final MemorySegment key = buffer.asSlice(offset + Long.BYTES, keyLength);
+            final long valueOffset = offset + Long.BYTES + keyLength;
+            final long valueLength = buffer.get(ValueLayout.JAVA_LONG_UNALIGNED, valueOffset);
+            return new BaseEntry<>(
+                    key,
+                    valueLength == SSTables.TOMBSTONE_VALUE_LENGTH
+                            ? null
+                            : buffer.asSlice(valueOffset + Long.BYTES, valueLength));
+        }
+
+        void clear() {
+            count = 0;
+            written = 0L;
+        }
+    }
+}
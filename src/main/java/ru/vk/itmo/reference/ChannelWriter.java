@@ -0,0 +1,115 @@
+package ru.vk.itmo.reference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@link MemorySegment}s to {@link FileChannel} through off-heap staging buffer.
+ *
+ * <p>Small segments are copied to the staging buffer once.
+ * Large segments are not copied at all but written together
+ * with the staged bytes by a single gathering write.
+ *
+ * <p>Written bytes are forced to storage on close, so the file may be published then.
+ */
+final class ChannelWriter implements Closeable {
+    private final FileChannel channel;
+    private final MemorySegment buffer;
+    // Segments of at least this size are written directly
+    private final long directThreshold;
+    private long position;
+    private long written;
+
+    ChannelWriter(
+            final Path file,
+            final Arena arena,
+            final long bufferSize) throws IOException {
+        this.channel =
+                FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = arena.allocate(bufferSize, Long.BYTES);
+        this.directThreshold = bufferSize / 2;
+    }
+
+    /**
+     * Returns number of bytes written so far.
+     */
+    long written() {
+        return written;
+    }
+
+    void writeLong(final long value) throws IOException {
+        if (position + Long.BYTES > buffer.byteSize()) {
+            flush();
+        }
+
+        buffer.set(
+                ValueLayout.OfLong.JAVA_LONG_UNALIGNED,
+                position,
+                value);
+        position += Long.BYTES;
+        written += Long.BYTES;
+    }
+
+    void write(final MemorySegment segment) throws IOException {
+        final long size = segment.byteSize();
+        written += size;
+
+        if (size >= directThreshold) {
+            // Gather staged bytes and the segment itself
+            writeFully(
+                    buffer.asSlice(0L, position).asByteBuffer(),
+                    segment.asByteBuffer());
+            position = 0L;
+            return;
+        }
+
+        if (position + size > buffer.byteSize()) {
+            flush();
+        }
+
+        MemorySegment.copy(
+                segment,
+                0L,
+                buffer,
+                position,
+                size);
+        position += size;
+    }
+
+    private void flush() throws IOException {
+        if (position == 0L) {
+            return;
+        }
+
+        writeFully(buffer.asSlice(0L, position).asByteBuffer());
+        position = 0L;
+    }
+
+    private void writeFully(final ByteBuffer... buffers) throws IOException {
+        final ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
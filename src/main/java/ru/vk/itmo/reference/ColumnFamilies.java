@@ -0,0 +1,253 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.Config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Logically separate key spaces in one base directory, each with its own {@link MemTable}s,
+ * SSTables and {@link Options}, flushed and compacted on a single shared {@link BackgroundPool}.
+ *
+ * <p>Every family is a {@link ReferenceDao} in the subdirectory named after it.
+ * Names of the families are listed in {@code families.manifest} durably replaced at once
+ * and terminated by {@code # end} line, so empty manifest is never valid. A family being created or dropped is listed
+ * with {@code pending} or {@code dropped} mark first, so the subdirectory of interrupted
+ * creation or drop is a proven leftover and is removed on open. Other subdirectories are
+ * never touched. Non-empty directory without manifest and corrupted manifest are rejected.
+ */
+public final class ColumnFamilies implements Closeable {
+    private static final String MANIFEST_NAME = "families.manifest";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SEPARATOR = " ";
+    private static final String PENDING = "pending";
+    private static final String DROPPED = "dropped";
+    // Not a valid name
+    private static final String END = "# end";
+    // Single path element not clashing with the manifest
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Path baseDir;
+    private final BackgroundPool pool;
+
+    // Serializes manifest updates
+    private final Lock lock = new ReentrantLock();
+    // Guarded by lock
+    private final Set<String> names;
+    // Guarded by lock
+    private final Map<String, ReferenceDao> open = new HashMap<>();
+    // Guarded by lock
+    private boolean closed;
+
+    /**
+     * Opens families in {@code baseDir} creating the directory if absent.
+     *
+     * @throws IOException if {@code baseDir} is not empty but has no manifest or the manifest is corrupted
+     *
+     * @param flushThreads threads writing flushed {@link MemTable}s of all the families
+     * @param compactionThreads threads compacting SSTables of all the families
+     */
+    public ColumnFamilies(
+            final Path baseDir,
+            final int flushThreads,
+            final int compactionThreads) throws IOException {
+        this.baseDir = Files.createDirectories(baseDir);
+        this.names = readManifest(baseDir);
+        this.pool = new BackgroundPool(flushThreads, compactionThreads);
+    }
+
+    /**
+     * Returns names of the existing families.
+     */
+    public Set<String> names() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableSet(new TreeSet<>(names));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the family creating it if absent.
+     * The family is closed either directly or with the rest of the families.
+     *
+     * @param flushThresholdBytes {@link MemTable} size to flush the family at
+     * @throws IllegalArgumentException if the name is not alphanumeric with {@code _} and {@code -}
+     * @throws IllegalStateException if the family is already open
+     */
+    public ReferenceDao family(
+            final String name,
+            final long flushThresholdBytes,
+            final Options options) throws IOException {
+        checkName(name);
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Closed");
+            }
+            final ReferenceDao existing = open.get(name);
+            if (existing != null && !existing.isClosed()) {
+                throw new IllegalStateException("Already open: " + name);
+            }
+
+            final Path dir = baseDir.resolve(name);
+            if (!names.contains(name)) {
+                if (Files.exists(dir)) {
+                    // Not ours or not removed yet
+                    throw new IOException("Unlisted directory exists: " + dir);
+                }
+
+                // Marked before the directory is created
+                writeManifest(baseDir, names, name + SEPARATOR + PENDING);
+                Files.createDirectories(dir);
+                names.add(name);
+                writeManifest(baseDir, names);
+            }
+
+            final ReferenceDao result =
+                    new ReferenceDao(
+                            new Config(dir, flushThresholdBytes),
+                            options,
+                            pool);
+            open.put(name, result);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the family if open and removes all its data.
+     */
+    public void drop(final String name) throws IOException {
+        checkName(name);
+
+        lock.lock();
+        try {
+            if (!names.contains(name)) {
+                return;
+            }
+
+            final ReferenceDao existing = open.remove(name);
+            if (existing != null) {
+                existing.close();
+            }
+
+            // Marked before the directory is removed
+            names.remove(name);
+            writeManifest(baseDir, names, name + SEPARATOR + DROPPED);
+            Directories.delete(baseDir.resolve(name));
+            writeManifest(baseDir, names);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all the open families and stops the shared threads.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            for (final ReferenceDao family : open.values()) {
+                family.close();
+            }
+            open.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        pool.close();
+    }
+
+    private static void checkName(final String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Illegal family name: " + name);
+        }
+    }
+
+    /**
+     * Reads names of the families removing leftovers of interrupted creation or drop.
+     */
+    private static Set<String> readManifest(final Path baseDir) throws IOException {
+        final Path manifest = baseDir.resolve(MANIFEST_NAME);
+        if (!Files.exists(manifest)) {
+            final Path tempManifest = baseDir.resolve(MANIFEST_NAME + TEMP_SUFFIX);
+            try (Stream<Path> files = Files.list(baseDir)) {
+                // Interrupted creation of the first family leaves just the temporary manifest
+                if (files.anyMatch(file -> !file.equals(tempManifest))) {
+                    throw new IOException("Not empty directory without " + MANIFEST_NAME + ": " + baseDir);
+                }
+            }
+            return new TreeSet<>();
+        }
+
+        List<String> lines = Files.readAllLines(manifest);
+        if (lines.isEmpty()) {
+            throw new IOException("Corrupted manifest " + manifest + ": empty");
+        }
+        // Written before the terminator otherwise
+        if (END.equals(lines.getLast())) {
+            lines = lines.subList(0, lines.size() - 1);
+        }
+
+        final Set<String> result = new TreeSet<>();
+        final List<String> leftovers = new ArrayList<>();
+        for (final String line : lines) {
+            final String[] fields = line.split(SEPARATOR);
+            if (!NAME.matcher(fields[0]).matches()) {
+                throw new IOException("Corrupted manifest " + manifest + ": '" + line + "'");
+            }
+            if (fields.length == 1) {
+                result.add(fields[0]);
+            } else if (fields.length == 2 && (PENDING.equals(fields[1]) || DROPPED.equals(fields[1]))) {
+                leftovers.add(fields[0]);
+            } else {
+                throw new IOException("Corrupted manifest " + manifest + ": '" + line + "'");
+            }
+        }
+
+        if (!leftovers.isEmpty()) {
+            for (final String leftover : leftovers) {
+                Directories.delete(baseDir.resolve(leftover));
+            }
+            writeManifest(baseDir, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Durably replaces manifest with the names one per line followed by the marked one if any.
+     */
+    private static void writeManifest(
+            final Path baseDir,
+            final Set<String> names,
+            final String... marked) throws IOException {
+        final List<String> lines = new ArrayList<>(names);
+        Collections.addAll(lines, marked);
+        lines.add(END);
+        Directories.replace(baseDir.resolve(MANIFEST_NAME), lines);
+    }
+}
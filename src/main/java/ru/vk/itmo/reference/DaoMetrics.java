@@ -0,0 +1,38 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.metrics.Counter;
+import ru.vk.itmo.metrics.Histogram;
+import ru.vk.itmo.metrics.MetricsRegistry;
+
+/**
+ * {@link ReferenceDao} metrics looked up once.
+ * Latencies are in nanoseconds, sizes are in bytes.
+ */
+final class DaoMetrics {
+    final MetricsRegistry registry = new MetricsRegistry();
+
+    final Histogram upsert = registry.histogram("upsert");
+    final Histogram merge = registry.histogram("merge");
+    final Histogram batch = registry.histogram("batch");
+    final Histogram get = registry.histogram("get");
+    // Creation of range iterator
+    final Histogram range = registry.histogram("range");
+
+    // SSTables searched by a single get not skipped by key range
+    final Histogram getSSTables = registry.histogram("get.sstables");
+    final Counter memTableHits = registry.counter("get.memtable.hits");
+    final Counter ssTableHits = registry.counter("get.sstable.hits");
+    final Counter misses = registry.counter("get.misses");
+    // Row cache lookups, enabled by Options.rowCacheBytes()
+    final Counter cacheHits = registry.counter("get.cache.hits");
+    final Counter cacheMisses = registry.counter("get.cache.misses");
+
+    final Histogram writeDelay = registry.histogram("write.delay");
+    final Histogram writeStall = registry.histogram("write.stall");
+
+    final Histogram flush = registry.histogram("flush");
+    final Counter flushBytes = registry.counter("flush.bytes");
+    final Histogram compaction = registry.histogram("compaction");
+    // Written by all kinds of compaction and value log garbage collection
+    final Counter compactionBytes = registry.counter("compaction.bytes");
+}
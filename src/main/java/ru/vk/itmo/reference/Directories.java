@@ -0,0 +1,98 @@
+package ru.vk.itmo.reference;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Directory helpers shared by the DAO and the tools around it.
+ */
+final class Directories {
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Directories can't be opened to be synced there
+    private static final boolean WINDOWS =
+            System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    /**
+     * Can't instantiate.
+     */
+    private Directories() {
+        // Only static methods
+    }
+
+    /**
+     * Removes the directory with all its contents if it exists.
+     */
+    static void delete(final Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Durably replaces {@code file} with {@code lines}.
+     *
+     * <p>The lines are forced to a temporary file which is atomically renamed then.
+     * The directory is synced before the rename to persist the files the content refers to
+     * and after the rename to persist the replacement itself.
+     */
+    static void replace(
+            final Path file,
+            final List<String> lines) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        final ByteBuffer content =
+                ByteBuffer.wrap(
+                        String.join("\n", lines)
+                                .concat("\n")
+                                .getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel =
+                     FileChannel.open(
+                             temp,
+                             StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE,
+                             StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+
+        final Path dir = file.toAbsolutePath().getParent();
+        sync(dir);
+        Files.move(
+                temp,
+                file,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        sync(dir);
+    }
+
+    /**
+     * Forces created, renamed and removed entries of the directory to storage.
+     */
+    static void sync(final Path dir) throws IOException {
+        if (WINDOWS) {
+            return;
+        }
+        try (FileChannel channel =
+                     FileChannel.open(
+                             dir,
+                             StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
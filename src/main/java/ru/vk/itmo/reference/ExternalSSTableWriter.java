@@ -0,0 +1,80 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Writes SSTables outside of {@link ReferenceDao} to be {@link ReferenceDao#ingest ingested} later.
+ *
+ * <p>An external SSTable is a directory with {@code 0.index} and {@code 0.data} files in the engine format.
+ * Values are never separated, so the directory is self-contained.
+ */
+public final class ExternalSSTableWriter {
+    static final int SEQUENCE = 0;
+
+    private final boolean learnedIndex;
+
+    public ExternalSSTableWriter() {
+        this(Options.defaults());
+    }
+
+    /**
+     * Writes SSTables as {@link ReferenceDao} with the same {@link Options} would.
+     */
+    public ExternalSSTableWriter(final Options options) {
+        this.learnedIndex = options.learnedIndex();
+    }
+
+    /**
+     * Writes entries sorted by key without duplicates to {@code dir}.
+     *
+     * @throws IllegalArgumentException if the keys are not sorted
+     */
+    public void write(
+            final Path dir,
+            final Iterator<Entry<MemorySegment>> entries) throws IOException {
+        Files.createDirectories(dir);
+        try (Arena arena = Arena.ofConfined()) {
+            final ValueLog valueLog = ValueLog.open(arena, dir, Long.MAX_VALUE);
+            new SSTableWriter(valueLog, segment -> false, learnedIndex)
+                    .write(dir, SEQUENCE, new SortedIterator(entries));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(SSTables.tempIndexName(dir, SEQUENCE));
+            Files.deleteIfExists(SSTables.tempDataName(dir, SEQUENCE));
+            throw e;
+        }
+    }
+
+    /**
+     * Rejects keys not following the previous one.
+     */
+    private static final class SortedIterator implements Iterator<Entry<MemorySegment>> {
+        private final Iterator<Entry<MemorySegment>> delegate;
+        private MemorySegment previous;
+
+        SortedIterator(final Iterator<Entry<MemorySegment>> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Entry<MemorySegment> next() {
+            final Entry<MemorySegment> result = delegate.next();
+            if (previous != null && MemorySegmentComparator.INSTANCE.compare(previous, result.key()) >= 0) {
+                throw new IllegalArgumentException("Keys are not sorted");
+            }
+            previous = result.key();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ru.vk.itmo.reference;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Piecewise linear model predicting position of the first entry with the given key prefix.
+ *
+ * <p>Stored in index file after the entries:
+ * {@code [firstPrefix0, firstEntry0, slope0, ...]<long maxError><long maxRun><long segments>}
+ *
+ * <p>A segment predicts positions of the distinct prefixes it covers with error of at most {@code maxError}.
+ * Keys sharing a prefix occupy at most {@code maxRun} consecutive entries, so a key is found within
+ * {@code [prediction - maxError; prediction + maxError + maxRun]}.
+ * The model is not written if the keys need too many segments or share prefixes too often,
+ * and such SSTables are searched with plain binary search.
+ */
+final class LearnedIndex {
+    static final long MAX_ERROR = 32L;
+    private static final long MIN_ENTRIES_PER_SEGMENT = 64L;
+    // Segments allowed before there are enough entries to judge
+    private static final long SEGMENT_SLACK = 16L;
+    private static final long SEGMENT_SIZE = 3L * Long.BYTES;
+    private static final long TRAILER_SIZE = 3L * Long.BYTES;
+
+    private final MemorySegment model;
+    private final long entries;
+    private final long segments;
+    private final long maxError;
+    private final long maxRun;
+
+    private LearnedIndex(
+            final MemorySegment model,
+            final long entries,
+            final long segments,
+            final long maxError,
+            final long maxRun) {
+        this.model = model;
+        this.entries = entries;
+        this.segments = segments;
+        this.maxError = maxError;
+        this.maxRun = maxRun;
+    }
+
+    /**
+     * Reads model stored after {@code entries} {@code [offset, prefix]} pairs of the index if any.
+     *
+     * @return model or {@code null} if absent
+     */
+    static LearnedIndex read(
+            final MemorySegment index,
+            final long entries) {
+        final long modelOffset = entries * 2L * Long.BYTES;
+        if (index.byteSize() <= modelOffset) {
+            return null;
+        }
+
+        final MemorySegment model = index.asSlice(modelOffset);
+        final long trailerOffset = model.byteSize() - TRAILER_SIZE;
+        return new LearnedIndex(
+                model,
+                entries,
+                model.get(ValueLayout.JAVA_LONG_UNALIGNED, trailerOffset + 2L * Long.BYTES),
+                model.get(ValueLayout.JAVA_LONG_UNALIGNED, trailerOffset),
+                model.get(ValueLayout.JAVA_LONG_UNALIGNED, trailerOffset + Long.BYTES));
+    }
+
+    long maxError() {
+        return maxError;
+    }
+
+    long maxRun() {
+        return maxRun;
+    }
+
+    /**
+     * Returns predicted position of the first entry with prefix not less than the specified one
+     * or {@code -1} if the prefix is less than the prefix of the first entry.
+     *
+     * @param trace accounts segment probes if not {@code null}
+     */
+    long predict(
+            final long prefix,
+            final TraceContext trace) {
+        // The last segment starting not after the prefix
+        long low = 0L;
+        long high = segments - 1;
+        while (low <= high) {
+            final long mid = (low + high) >>> 1;
+            if (trace != null) {
+                trace.probes++;
+                trace.bytes += Long.BYTES;
+            }
+            if (Long.compareUnsigned(firstPrefix(mid), prefix) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        final long segment = high;
+        if (segment < 0L) {
+            return -1L;
+        }
+
+        if (trace != null) {
+            trace.bytes += SEGMENT_SIZE;
+        }
+        final long firstEntry = firstEntry(segment);
+        final double distance = slope(segment) * unsignedToDouble(prefix - firstPrefix(segment));
+        // The next segment starts with a greater prefix
+        final long limit =
+                segment + 1 < segments
+                        ? firstEntry(segment + 1)
+                        : entries;
+        return distance >= limit - firstEntry ? limit : firstEntry + Math.round(distance);
+    }
+
+    private long firstPrefix(final long segment) {
+        return model.get(ValueLayout.JAVA_LONG_UNALIGNED, segment * SEGMENT_SIZE);
+    }
+
+    private long firstEntry(final long segment) {
+        return model.get(ValueLayout.JAVA_LONG_UNALIGNED, segment * SEGMENT_SIZE + Long.BYTES);
+    }
+
+    private double slope(final long segment) {
+        return Double.longBitsToDouble(
+                model.get(ValueLayout.JAVA_LONG_UNALIGNED, segment * SEGMENT_SIZE + 2L * Long.BYTES));
+    }
+
+    private static double unsignedToDouble(final long value) {
+        final double result = (double) (value >>> 1) * 2.0;
+        return result + (value & 1L);
+    }
+
+    /**
+     * Fits segments to prefixes of entries added in key order.
+     *
+     * <p>Every segment starts at a distinct prefix and narrows the cone of slopes
+     * keeping the error of all its prefixes within {@link #MAX_ERROR}.
+     */
+    static final class Builder {
+        // Segments as [firstPrefix, firstEntry, slope bits]
+        private long[] model = new long[3 * 16];
+        private long segments;
+        private long entries;
+        private long maxRun;
+        // Stop fitting once the model can't fit not to keep segments of every entry
+        private boolean abandoned;
+
+        // Current run of equal prefixes
+        private long runPrefix;
+        private long runStart;
+
+        // Current segment
+        private long firstPrefix;
+        private long firstEntry;
+        private double minSlope;
+        private double maxSlope;
+
+        void add(final long prefix) {
+            if (entries == 0L) {
+                startSegment(prefix, 0L);
+                runPrefix = prefix;
+            } else if (prefix != runPrefix) {
+                runPrefix = prefix;
+                runStart = entries;
+                if (!abandoned) {
+                    fit(prefix, entries);
+                }
+            }
+            entries++;
+            maxRun = Math.max(maxRun, entries - runStart);
+            if (maxRun > MAX_ERROR || segments > SEGMENT_SLACK + entries / MIN_ENTRIES_PER_SEGMENT) {
+                abandoned = true;
+            }
+        }
+
+        /**
+         * Checks whether the model is worth storing.
+         */
+        boolean fits() {
+            return !abandoned
+                    && entries > 0L
+                    && maxRun <= MAX_ERROR
+                    && segments + 1 <= Math.max(1L, entries / MIN_ENTRIES_PER_SEGMENT);
+        }
+
+        /**
+         * Writes the model after the entries of the index.
+         */
+        void write(final ChannelWriter index) throws IOException {
+            finishSegment();
+            for (int i = 0; i < segments * 3; i++) {
+                index.writeLong(model[i]);
+            }
+            index.writeLong(MAX_ERROR);
+            index.writeLong(maxRun);
+            index.writeLong(segments);
+        }
+
+        private void fit(
+                final long prefix,
+                final long entry) {
+            final double distance = unsignedToDouble(prefix - firstPrefix);
+            final double low = Math.max(minSlope, (entry - firstEntry - MAX_ERROR) / distance);
+            final double high = Math.min(maxSlope, (entry - firstEntry + MAX_ERROR) / distance);
+            if (low > high) {
+                finishSegment();
+                startSegment(prefix, entry);
+            } else {
+                minSlope = low;
+                maxSlope = high;
+            }
+        }
+
+        private void startSegment(
+                final long prefix,
+                final long entry) {
+            firstPrefix = prefix;
+            firstEntry = entry;
+            minSlope = 0.0;
+            maxSlope = Double.POSITIVE_INFINITY;
+        }
+
+        private void finishSegment() {
+            final double slope = maxSlope == Double.POSITIVE_INFINITY ? minSlope : (minSlope + maxSlope) / 2;
+            final int offset = Math.toIntExact(segments * 3);
+            if (offset == model.length) {
+                model = Arrays.copyOf(model, model.length * 2);
+            }
+            model[offset] = firstPrefix;
+            model[offset + 1] = firstEntry;
+            model[offset + 2] = Double.doubleToRawLongBits(slope);
+            segments++;
+        }
+    }
+}
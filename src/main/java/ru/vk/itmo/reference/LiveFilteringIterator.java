@@ -5,6 +5,7 @@ import ru.vk.itmo.Entry;
 import java.lang.foreign.MemorySegment;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 
 /**
  * Filters non tombstone {@link Entry}s.
@@ -13,21 +14,58 @@ import java.util.NoSuchElementException;
  */
 final class LiveFilteringIterator implements Iterator<Entry<MemorySegment>> {
     private final Iterator<Entry<MemorySegment>> delegate;
+    private final Predicate<MemorySegment> keepTombstone;
+    // Nullable
+    private final TraceContext trace;
     private Entry<MemorySegment> next;
 
     LiveFilteringIterator(final Iterator<Entry<MemorySegment>> delegate) {
+        this(delegate, key -> false, null);
+    }
+
+    /**
+     * Counts skipped tombstones to {@code trace} if any and finishes it once exhausted.
+     */
+    LiveFilteringIterator(
+            final Iterator<Entry<MemorySegment>> delegate,
+            final TraceContext trace) {
+        this(delegate, key -> false, trace);
+    }
+
+    /**
+     * Also keeps tombstones with keys matching {@code keepTombstone}.
+     */
+    LiveFilteringIterator(
+            final Iterator<Entry<MemorySegment>> delegate,
+            final Predicate<MemorySegment> keepTombstone) {
+        this(delegate, keepTombstone, null);
+    }
+
+    private LiveFilteringIterator(
+            final Iterator<Entry<MemorySegment>> delegate,
+            final Predicate<MemorySegment> keepTombstone,
+            final TraceContext trace) {
         this.delegate = delegate;
+        this.keepTombstone = keepTombstone;
+        this.trace = trace;
         skipTombstones();
     }
 
     private void skipTombstones() {
         while (delegate.hasNext()) {
             final Entry<MemorySegment> entry = delegate.next();
-            if (entry.value() != null) {
+            if (entry.value() != null || keepTombstone.test(entry.key())) {
                 this.next = entry;
-                break;
+                return;
+            }
+            if (trace != null) {
+                trace.tombstones++;
             }
         }
+
+        if (trace != null) {
+            trace.finish();
+        }
     }
 
     @Override
@@ -0,0 +1,74 @@
+package ru.vk.itmo.reference;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-only file mapped on first access.
+ *
+ * <p>Lets the DAO open thousands of SSTables reading only their footers
+ * and pay for mapping just the ones actually read.
+ */
+final class MappedFile {
+    private final Arena arena;
+    private final Path file;
+    private final Lock lock = new ReentrantLock();
+    // Mapped once under lock, read without it
+    private volatile MemorySegment segment;
+
+    MappedFile(
+            final Arena arena,
+            final Path file) {
+        this.arena = arena;
+        this.file = file;
+    }
+
+    /**
+     * Wraps already mapped file.
+     */
+    MappedFile(final MemorySegment segment) {
+        this.arena = null;
+        this.file = null;
+        this.segment = segment;
+    }
+
+    /**
+     * Returns the mapping, mapping the file if needed.
+     */
+    MemorySegment get() {
+        final MemorySegment result = segment;
+        if (result != null) {
+            return result;
+        }
+
+        try {
+            return map();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Maps the file if not yet mapped.
+     */
+    MemorySegment map() throws IOException {
+        lock.lock();
+        try {
+            if (segment == null) {
+                segment = SSTables.mapReadOnly(arena, file);
+            }
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean mapped() {
+        return segment != null;
+    }
+}
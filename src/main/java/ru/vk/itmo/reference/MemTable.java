@@ -2,20 +2,60 @@ package ru.vk.itmo.reference;
 
 import ru.vk.itmo.Entry;
 
+import ru.vk.itmo.memtable.Footprint;
+import ru.vk.itmo.memtable.MemTableMap;
+
 import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Memory table.
+ * Memory table over {@link MemTableMap} selected by {@link Options#memTable()}.
+ *
+ * <p>{@link WriteBatch}es are applied as {@link BatchEntry}s hidden until the batch is committed.
+ * A commit gets the next sequence, and iterators skip batches committed after they were created.
+ * Entries replaced by a batch are released once no iterator created before the commit is left.
+ * Iterators are tracked until exhausted, so abandoned ones keep the entries until flush.
+ *
+ * <p>Bytes of keys and values are counted for {@link ru.vk.itmo.Config#flushThresholdBytes()}.
+ * Heap footprint is estimated separately including the map structure,
+ * entry objects and {@link MemorySegment} instances.
  *
  * @author incubos
  */
 final class MemTable {
-    private final NavigableMap<MemorySegment, Entry<MemorySegment>> map =
-            new ConcurrentSkipListMap<>(
-                    MemorySegmentComparator.INSTANCE);
+    // BaseEntry: header, key and value
+    private static final long ENTRY_SIZE = Footprint.object(2, 0L);
+    // BatchEntry: header, key, value, previous and commit
+    private static final long BATCH_ENTRY_SIZE = Footprint.object(4, 0L);
+    // BatchEntry.Commit: header, sequence and entries with AtomicInteger
+    private static final long COMMIT_SIZE = Footprint.object(1, Long.BYTES) + Footprint.object(0, Integer.BYTES);
+
+    private final MemTableMap map;
+    // Footprint of entries
+    private final AtomicLong entriesSize = new AtomicLong();
+    // Keys and values of the latest entries
+    private final AtomicLong dataSize = new AtomicLong();
+    // The last committed batch
+    private final AtomicLong commits = new AtomicLong();
+    private final Lock readersLock = new ReentrantLock();
+    // Read points of not exhausted iterators with their counts, guarded by readersLock
+    private final NavigableMap<Long, Integer> readers = new TreeMap<>();
+    // Committed batches still keeping replaced entries from the oldest, guarded by readersLock
+    private final Deque<Committed> retained = new ArrayDeque<>();
+
+    MemTable(final MemTableMap map) {
+        this.map = map;
+    }
 
     boolean isEmpty() {
         return map.isEmpty();
@@ -24,26 +64,198 @@ final class MemTable {
     Iterator<Entry<MemorySegment>> get(
             final MemorySegment from,
             final MemorySegment to) {
-        if (from == null && to == null) {
-            // All
-            return map.values().iterator();
-        } else if (from == null) {
-            // Head
-            return map.headMap(to).values().iterator();
-        } else if (to == null) {
-            // Tail
-            return map.tailMap(from).values().iterator();
-        } else {
-            // Slice
-            return map.subMap(from, to).values().iterator();
+        // Before the entries not to see batches committed meanwhile
+        final long readPoint;
+        readersLock.lock();
+        try {
+            // Registered at once not to release the entries the iterator may need
+            readPoint = commits.get();
+            readers.merge(readPoint, 1, Integer::sum);
+        } finally {
+            readersLock.unlock();
         }
+        return new VisibleIterator(map.get(from, to), readPoint);
     }
 
     Entry<MemorySegment> get(final MemorySegment key) {
-        return map.get(key);
+        final Entry<MemorySegment> result = map.get(key);
+        return result instanceof BatchEntry batchEntry
+                ? batchEntry.visible(Long.MAX_VALUE)
+                : result;
     }
 
     Entry<MemorySegment> upsert(final Entry<MemorySegment> entry) {
-        return map.put(entry.key(), entry);
+        // Entries replaced by batch entry are accounted until released
+        final Entry<MemorySegment> previous = map.put(entry);
+        entriesSize.addAndGet(previous == null ? footprint(entry) : footprint(entry) - left(previous));
+        dataSize.addAndGet(bytes(entry) - bytes(previous));
+        return previous;
+    }
+
+    /**
+     * Inserts entries hidden until all of them are inserted.
+     * Concurrent writes must be excluded by the caller.
+     */
+    void apply(final List<Entry<MemorySegment>> entries) {
+        final BatchEntry.Commit commit = new BatchEntry.Commit();
+        final List<BatchEntry> replacing = new ArrayList<>();
+        long size = COMMIT_SIZE;
+        long bytes = 0L;
+        for (final Entry<MemorySegment> entry : entries) {
+            // Replaced entry is kept by the batch entry
+            final Entry<MemorySegment> previous = map.get(entry.key());
+            final BatchEntry batchEntry =
+                    new BatchEntry(
+                            entry.key(),
+                            entry.value(),
+                            previous,
+                            commit);
+            map.put(batchEntry);
+            if (previous != null) {
+                replacing.add(batchEntry);
+            }
+            size += footprint(batchEntry);
+            bytes += bytes(batchEntry) - bytes(previous);
+        }
+        entriesSize.addAndGet(size);
+        dataSize.addAndGet(bytes);
+
+        // Publish
+        commit.sequence = commits.incrementAndGet();
+
+        readersLock.lock();
+        try {
+            if (!replacing.isEmpty()) {
+                retained.addLast(new Committed(commit.sequence, replacing));
+            }
+            release();
+        } finally {
+            readersLock.unlock();
+        }
+    }
+
+    /**
+     * Releases entries replaced by batches committed not after the oldest iterator.
+     * Called under readersLock.
+     */
+    private void release() {
+        final long oldest = readers.isEmpty() ? Long.MAX_VALUE : readers.firstKey();
+        long released = 0L;
+        while (!retained.isEmpty() && retained.peekFirst().sequence() <= oldest) {
+            // Replaced entries of older commits are already released
+            for (final BatchEntry batchEntry : retained.removeFirst().entries()) {
+                released += left(batchEntry.previous());
+                batchEntry.release();
+            }
+        }
+        entriesSize.addAndGet(-released);
+    }
+
+    private void exhausted(final long readPoint) {
+        readersLock.lock();
+        try {
+            readers.computeIfPresent(readPoint, (ignored, count) -> count == 1 ? null : count - 1);
+            release();
+        } finally {
+            readersLock.unlock();
+        }
+    }
+
+    /**
+     * Returns estimated heap footprint.
+     */
+    long size() {
+        return entriesSize.get() + map.structureSize();
+    }
+
+    /**
+     * Returns bytes of keys and values to be flushed.
+     */
+    long dataSize() {
+        return dataSize.get();
+    }
+
+    private static long bytes(final Entry<MemorySegment> entry) {
+        if (entry == null) {
+            return 0L;
+        }
+
+        return entry.value() == null
+                ? entry.key().byteSize()
+                : entry.key().byteSize() + entry.value().byteSize();
+    }
+
+    /**
+     * Returns footprint of entry not referenced anymore including the commit of its batch if it was the last one.
+     */
+    private static long left(final Entry<MemorySegment> entry) {
+        return entry instanceof BatchEntry batchEntry && batchEntry.leave()
+                ? footprint(entry) + COMMIT_SIZE
+                : footprint(entry);
+    }
+
+    /**
+     * Returns estimated heap footprint of entry with its key and value.
+     */
+    private static long footprint(final Entry<MemorySegment> entry) {
+        final long result =
+                (entry instanceof BatchEntry ? BATCH_ENTRY_SIZE : ENTRY_SIZE)
+                        + Footprint.of(entry.key());
+        return entry.value() == null ? result : result + Footprint.of(entry.value());
+    }
+
+    /**
+     * Batch entries replacing entries of the commit.
+     */
+    private record Committed(
+            long sequence,
+            List<BatchEntry> entries) {
+    }
+
+    /**
+     * Skips batches committed after the iterator was created.
+     */
+    private final class VisibleIterator implements Iterator<Entry<MemorySegment>> {
+        private final Iterator<Entry<MemorySegment>> delegate;
+        private final long readPoint;
+        private Entry<MemorySegment> next;
+
+        VisibleIterator(
+                final Iterator<Entry<MemorySegment>> delegate,
+                final long readPoint) {
+            this.delegate = delegate;
+            this.readPoint = readPoint;
+            skipInvisible();
+        }
+
+        private void skipInvisible() {
+            while (delegate.hasNext()) {
+                final Entry<MemorySegment> entry = delegate.next();
+                next = entry instanceof BatchEntry batchEntry
+                        ? batchEntry.visible(readPoint)
+                        : entry;
+                if (next != null) {
+                    return;
+                }
+            }
+            exhausted(readPoint);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<MemorySegment> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            final Entry<MemorySegment> result = next;
+            next = null;
+            skipInvisible();
+            return result;
+        }
     }
 }
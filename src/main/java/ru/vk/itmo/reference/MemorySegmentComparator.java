@@ -7,6 +7,9 @@ import java.util.Comparator;
 /**
  * Compares {@link MemorySegment}s.
  *
+ * <p>The first {@link Long#BYTES} bytes are compared as a single unsigned {@code long}
+ * and {@link MemorySegment#mismatch} is called only if they are equal.
+ *
  * @author incubos
  */
 final class MemorySegmentComparator implements Comparator<MemorySegment> {
@@ -21,6 +24,14 @@ final class MemorySegmentComparator implements Comparator<MemorySegment> {
     public int compare(
             final MemorySegment left,
             final MemorySegment right) {
+        final int prefixCompare =
+                Long.compareUnsigned(
+                        prefix(left),
+                        prefix(right));
+        if (prefixCompare != 0) {
+            return prefixCompare;
+        }
+
         final long mismatch = left.mismatch(right);
         if (mismatch == -1L) {
             // No mismatch
@@ -54,6 +65,14 @@ final class MemorySegmentComparator implements Comparator<MemorySegment> {
             final MemorySegment dstSegment,
             final long dstFromOffset,
             final long dstLength) {
+        final int prefixCompare =
+                Long.compareUnsigned(
+                        prefix(srcSegment, srcFromOffset, srcLength),
+                        prefix(dstSegment, dstFromOffset, dstLength));
+        if (prefixCompare != 0) {
+            return prefixCompare;
+        }
+
         final long mismatch =
                 MemorySegment.mismatch(
                         srcSegment,
@@ -86,4 +105,36 @@ final class MemorySegmentComparator implements Comparator<MemorySegment> {
                         ValueLayout.OfByte.JAVA_BYTE,
                         dstFromOffset + mismatch));
     }
+
+    /**
+     * See {@link ru.vk.itmo.memtable.MemorySegmentComparator#prefix(MemorySegment)}.
+     */
+    static long prefix(final MemorySegment segment) {
+        return ru.vk.itmo.memtable.MemorySegmentComparator.prefix(segment);
+    }
+
+    private static long prefix(
+            final MemorySegment segment,
+            final long offset,
+            final long length) {
+        return ru.vk.itmo.memtable.MemorySegmentComparator.prefix(segment, offset, length);
+    }
+
+    /**
+     * Returns hash of the key bytes consistent with equality of keys.
+     * High bits are spread to the low ones, so the hash may be masked to pick a stripe.
+     */
+    static int hash(final MemorySegment segment) {
+        final long size = segment.byteSize();
+        long result = size;
+        long offset = 0L;
+        for (; offset + Long.BYTES <= size; offset += Long.BYTES) {
+            result = result * 31 + segment.get(ValueLayout.JAVA_LONG_UNALIGNED, offset);
+        }
+        for (; offset < size; offset++) {
+            result = result * 31 + segment.get(ValueLayout.JAVA_BYTE, offset);
+        }
+        final int hash = Long.hashCode(result);
+        return hash ^ (hash >>> 16);
+    }
 }
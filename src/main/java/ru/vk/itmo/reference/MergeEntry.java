@@ -0,0 +1,31 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * {@link Entry} with {@link MergeOperator} operand to be folded with older versions of the key.
+ *
+ * @param key key
+ * @param value operand
+ */
+record MergeEntry(
+        MemorySegment key,
+        MemorySegment value) implements Entry<MemorySegment> {
+    /**
+     * Folds this operand with the older version of the key.
+     *
+     * @param older older entry or {@code null} if the key is absent
+     * @return operand if {@code older} is an operand too, otherwise resolved entry
+     */
+    Entry<MemorySegment> mergeWith(
+            final Entry<MemorySegment> older,
+            final MergeOperator operator) {
+        final MemorySegment merged = operator.merge(older == null ? null : older.value(), value);
+        return older instanceof MergeEntry
+                ? new MergeEntry(key, merged)
+                : new BaseEntry<>(key, merged);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.vk.itmo.reference;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Combines operands {@link ReferenceDao#merge merged} to a key with its older value.
+ *
+ * <p>Operands are folded from oldest to newest, but not necessarily at once:
+ * compaction may combine adjacent operands before the value they are applied to is known.
+ * So the operator must be associative, i.e. merging an operand with an older operand
+ * yields an operand which gives the same result when merged with an older value later.
+ */
+@FunctionalInterface
+public interface MergeOperator {
+    /**
+     * Applies newer operand to older value or operand.
+     *
+     * @param existing older value or operand, {@code null} if the key is absent or removed
+     * @param operand newer operand
+     * @return combined value, not {@code null}
+     */
+    MemorySegment merge(
+            MemorySegment existing,
+            MemorySegment operand);
+}
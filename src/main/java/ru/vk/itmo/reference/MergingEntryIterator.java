@@ -12,15 +12,50 @@ import java.util.Queue;
 /**
  * Merges entry {@link Iterator}s.
  *
+ * <p>If {@link MergeOperator} is set, the freshest {@link MergeEntry} of a key is folded
+ * with the older versions instead of shadowing them.
+ *
  * @author incubos
  */
 final class MergingEntryIterator implements Iterator<Entry<MemorySegment>> {
     private final Queue<WeightedPeekingEntryIterator> iterators;
+    // Nullable
+    private final TraceContext trace;
+    // Nullable
+    private final MergeOperator operator;
+    // Whether the oldest version of every key is merged
+    private final boolean complete;
 
     MergingEntryIterator(final List<WeightedPeekingEntryIterator> iterators) {
+        this(iterators, null);
+    }
+
+    /**
+     * Also counts skipped older versions of keys to {@code trace} if any.
+     */
+    MergingEntryIterator(
+            final List<WeightedPeekingEntryIterator> iterators,
+            final TraceContext trace) {
+        this(iterators, trace, null, true);
+    }
+
+    /**
+     * Folds operands with {@code operator} if any.
+     *
+     * @param complete whether there are no versions older than the iterated ones,
+     *     so operands left after folding are applied to absent keys
+     */
+    MergingEntryIterator(
+            final List<WeightedPeekingEntryIterator> iterators,
+            final TraceContext trace,
+            final MergeOperator operator,
+            final boolean complete) {
         assert iterators.stream().allMatch(WeightedPeekingEntryIterator::hasNext);
 
         this.iterators = new PriorityQueue<>(iterators);
+        this.trace = trace;
+        this.operator = operator;
+        this.complete = complete;
     }
 
     @Override
@@ -35,7 +70,7 @@ final class MergingEntryIterator implements Iterator<Entry<MemorySegment>> {
         }
 
         final WeightedPeekingEntryIterator top = iterators.remove();
-        final Entry<MemorySegment> result = top.next();
+        Entry<MemorySegment> result = top.next();
 
         if (top.hasNext()) {
             // Not exhausted
@@ -59,14 +94,24 @@ final class MergingEntryIterator implements Iterator<Entry<MemorySegment>> {
 
             // Drop
             iterators.remove();
-            // Skip
-            iterator.next();
+            // Skip or fold
+            final Entry<MemorySegment> older = iterator.next();
+            if (operator != null && result instanceof MergeEntry operand) {
+                result = operand.mergeWith(older, operator);
+            } else if (trace != null) {
+                trace.shadowed++;
+            }
             if (iterator.hasNext()) {
                 // Not exhausted
                 iterators.add(iterator);
             }
         }
 
+        if (complete && operator != null && result instanceof MergeEntry operand) {
+            // Nothing older
+            result = operand.mergeWith(null, operator);
+        }
+
         return result;
     }
 }
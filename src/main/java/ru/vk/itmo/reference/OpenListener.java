@@ -0,0 +1,18 @@
+package ru.vk.itmo.reference;
+
+/**
+ * Reports {@link ReferenceDao} startup progress.
+ */
+@FunctionalInterface
+public interface OpenListener {
+    /**
+     * Called concurrently each time SSTable is opened,
+     * so {@code opened} values may arrive out of order.
+     *
+     * @param opened SSTables opened so far
+     * @param total SSTables being opened
+     */
+    void opened(
+            int opened,
+            int total);
+}
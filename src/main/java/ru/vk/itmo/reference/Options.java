@@ -0,0 +1,357 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.memtable.MemTableMap;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Tuning options of {@link ReferenceDao} complementing {@link ru.vk.itmo.Config}.
+ */
+public final class Options {
+    private static final Options DEFAULTS = builder().build();
+
+    private final int maxImmutableMemTables;
+    private final int slowdownImmutableMemTables;
+    private final long maxWriteDelayNanos;
+    private final long writeStallTimeoutNanos;
+    private final int flushThreads;
+    private final int compactionThreads;
+    private final double tombstoneCompactionRatio;
+    private final long valueSeparationThreshold;
+    private final double valueLogLiveRatio;
+    private final int openThreads;
+    private final OpenListener openListener;
+    private final double traceSampleRate;
+    private final ReadTraceSink traceSink;
+    private final Supplier<MemTableMap> memTable;
+    private final boolean learnedIndex;
+    private final long rowCacheBytes;
+    private final MergeOperator mergeOperator;
+    private final long memTableFootprintLimit;
+
+    private Options(final Builder builder) {
+        this.maxImmutableMemTables = builder.maxImmutableMemTables;
+        this.slowdownImmutableMemTables = builder.slowdownImmutableMemTables;
+        this.maxWriteDelayNanos = builder.maxWriteDelayNanos;
+        this.writeStallTimeoutNanos = builder.writeStallTimeoutNanos;
+        this.flushThreads = builder.flushThreads;
+        this.compactionThreads = builder.compactionThreads;
+        this.tombstoneCompactionRatio = builder.tombstoneCompactionRatio;
+        this.valueSeparationThreshold = builder.valueSeparationThreshold;
+        this.valueLogLiveRatio = builder.valueLogLiveRatio;
+        this.openThreads = builder.openThreads;
+        this.openListener = builder.openListener;
+        this.traceSampleRate = builder.traceSampleRate;
+        this.traceSink = builder.traceSink;
+        this.memTable = builder.memTable;
+        this.learnedIndex = builder.learnedIndex;
+        this.rowCacheBytes = builder.rowCacheBytes;
+        this.mergeOperator = builder.mergeOperator;
+        this.memTableFootprintLimit = builder.memTableFootprintLimit;
+    }
+
+    public static Options defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Immutable {@link MemTable}s waiting for flush after which writers stall.
+     */
+    public int maxImmutableMemTables() {
+        return maxImmutableMemTables;
+    }
+
+    /**
+     * Immutable {@link MemTable}s waiting for flush after which writers are delayed.
+     */
+    public int slowdownImmutableMemTables() {
+        return slowdownImmutableMemTables;
+    }
+
+    /**
+     * Delay of a single write when the immutable {@link MemTable} limit is reached.
+     */
+    public long maxWriteDelayNanos() {
+        return maxWriteDelayNanos;
+    }
+
+    /**
+     * How long a stalled writer waits for flush before giving up.
+     */
+    public long writeStallTimeoutNanos() {
+        return writeStallTimeoutNanos;
+    }
+
+    /**
+     * Immutable {@link MemTable}s written to SSTables concurrently.
+     */
+    public int flushThreads() {
+        return flushThreads;
+    }
+
+    /**
+     * Key ranges merged concurrently during compaction.
+     */
+    public int compactionThreads() {
+        return compactionThreads;
+    }
+
+    /**
+     * Share of tombstones in SSTable triggering its background compaction (above 1 disables).
+     */
+    public double tombstoneCompactionRatio() {
+        return tombstoneCompactionRatio;
+    }
+
+    /**
+     * Values of at least this size are stored in {@link ValueLog} instead of SSTables.
+     */
+    public long valueSeparationThreshold() {
+        return valueSeparationThreshold;
+    }
+
+    /**
+     * Share of live bytes in {@link ValueLog} segment below which it is rewritten.
+     */
+    public double valueLogLiveRatio() {
+        return valueLogLiveRatio;
+    }
+
+    /**
+     * SSTable footers read concurrently on startup.
+     */
+    public int openThreads() {
+        return openThreads;
+    }
+
+    /**
+     * Notified of startup progress as SSTables are opened.
+     */
+    public OpenListener openListener() {
+        return openListener;
+    }
+
+    /**
+     * Share of reads traced to {@link #traceSink()} (0 disables tracing).
+     */
+    public double traceSampleRate() {
+        return traceSampleRate;
+    }
+
+    /**
+     * Receives {@link ReadTrace}s of sampled reads.
+     */
+    public ReadTraceSink traceSink() {
+        return traceSink;
+    }
+
+    /**
+     * Creates {@link MemTableMap} for every new {@link MemTable}.
+     */
+    public Supplier<MemTableMap> memTable() {
+        return memTable;
+    }
+
+    /**
+     * Whether SSTables are written with {@link LearnedIndex} narrowing binary search.
+     */
+    public boolean learnedIndex() {
+        return learnedIndex;
+    }
+
+    /**
+     * Heap footprint of {@link RowCache} of point reads (0 disables caching).
+     */
+    public long rowCacheBytes() {
+        return rowCacheBytes;
+    }
+
+    /**
+     * Folds operands of {@link ReferenceDao#merge} or {@code null} if merges are not supported.
+     * Must stay the same once operands are written.
+     */
+    public MergeOperator mergeOperator() {
+        return mergeOperator;
+    }
+
+    /**
+     * Estimated heap footprint of {@link MemTable} including its structure triggering flush
+     * besides {@link ru.vk.itmo.Config#flushThresholdBytes()} of keys and values (0 disables the limit).
+     */
+    public long memTableFootprintLimit() {
+        return memTableFootprintLimit;
+    }
+
+    public static final class Builder {
+        private int maxImmutableMemTables = 4;
+        private int slowdownImmutableMemTables = 3;
+        private long maxWriteDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private long writeStallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private int flushThreads = 2;
+        private int compactionThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private double tombstoneCompactionRatio = 0.5;
+        private long valueSeparationThreshold = 4096L;
+        private double valueLogLiveRatio = 0.5;
+        private int openThreads = Runtime.getRuntime().availableProcessors();
+        private OpenListener openListener = (opened, total) -> {
+            // Nobody is interested
+        };
+        private double traceSampleRate;
+        private ReadTraceSink traceSink = trace -> {
+            // Nobody is interested
+        };
+        private Supplier<MemTableMap> memTable = MemTableMap::skipList;
+        private boolean learnedIndex;
+        private long rowCacheBytes;
+        private MergeOperator mergeOperator;
+        private long memTableFootprintLimit;
+
+        private Builder() {
+            // Use Options.builder()
+        }
+
+        public Builder maxImmutableMemTables(final int maxImmutableMemTables) {
+            this.maxImmutableMemTables = maxImmutableMemTables;
+            return this;
+        }
+
+        public Builder slowdownImmutableMemTables(final int slowdownImmutableMemTables) {
+            this.slowdownImmutableMemTables = slowdownImmutableMemTables;
+            return this;
+        }
+
+        public Builder maxWriteDelay(
+                final long delay,
+                final TimeUnit unit) {
+            this.maxWriteDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        public Builder writeStallTimeout(
+                final long timeout,
+                final TimeUnit unit) {
+            this.writeStallTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        public Builder flushThreads(final int flushThreads) {
+            this.flushThreads = flushThreads;
+            return this;
+        }
+
+        public Builder compactionThreads(final int compactionThreads) {
+            this.compactionThreads = compactionThreads;
+            return this;
+        }
+
+        public Builder tombstoneCompactionRatio(final double tombstoneCompactionRatio) {
+            this.tombstoneCompactionRatio = tombstoneCompactionRatio;
+            return this;
+        }
+
+        public Builder valueSeparationThreshold(final long valueSeparationThreshold) {
+            this.valueSeparationThreshold = valueSeparationThreshold;
+            return this;
+        }
+
+        public Builder valueLogLiveRatio(final double valueLogLiveRatio) {
+            this.valueLogLiveRatio = valueLogLiveRatio;
+            return this;
+        }
+
+        public Builder openThreads(final int openThreads) {
+            this.openThreads = openThreads;
+            return this;
+        }
+
+        public Builder openListener(final OpenListener openListener) {
+            this.openListener = Objects.requireNonNull(openListener);
+            return this;
+        }
+
+        public Builder traceSampleRate(final double traceSampleRate) {
+            this.traceSampleRate = traceSampleRate;
+            return this;
+        }
+
+        public Builder traceSink(final ReadTraceSink traceSink) {
+            this.traceSink = Objects.requireNonNull(traceSink);
+            return this;
+        }
+
+        public Builder memTable(final Supplier<MemTableMap> memTable) {
+            this.memTable = Objects.requireNonNull(memTable);
+            return this;
+        }
+
+        public Builder learnedIndex(final boolean learnedIndex) {
+            this.learnedIndex = learnedIndex;
+            return this;
+        }
+
+        public Builder rowCacheBytes(final long rowCacheBytes) {
+            this.rowCacheBytes = rowCacheBytes;
+            return this;
+        }
+
+        public Builder mergeOperator(final MergeOperator mergeOperator) {
+            this.mergeOperator = Objects.requireNonNull(mergeOperator);
+            return this;
+        }
+
+        public Builder memTableFootprintLimit(final long memTableFootprintLimit) {
+            this.memTableFootprintLimit = memTableFootprintLimit;
+            return this;
+        }
+
+        public Options build() {
+            if (maxImmutableMemTables < 1) {
+                throw new IllegalArgumentException("At least one immutable MemTable is required");
+            }
+
+            if (slowdownImmutableMemTables < 1 || slowdownImmutableMemTables > maxImmutableMemTables) {
+                throw new IllegalArgumentException("Slowdown trigger should be in [1; maxImmutableMemTables]");
+            }
+
+            if (flushThreads < 1 || compactionThreads < 1 || openThreads < 1) {
+                throw new IllegalArgumentException("At least one thread is required");
+            }
+
+            if (maxWriteDelayNanos < 0L || writeStallTimeoutNanos < 0L) {
+                throw new IllegalArgumentException("Negative delay");
+            }
+
+            if (!(tombstoneCompactionRatio > 0.0)) {
+                throw new IllegalArgumentException("Tombstone compaction ratio should be positive");
+            }
+
+            if (valueSeparationThreshold < 1L) {
+                throw new IllegalArgumentException("Value separation threshold should be positive");
+            }
+
+            if (valueLogLiveRatio < 0.0 || valueLogLiveRatio > 1.0) {
+                throw new IllegalArgumentException("Value log live ratio should be in [0; 1]");
+            }
+
+            if (traceSampleRate < 0.0 || traceSampleRate > 1.0) {
+                throw new IllegalArgumentException("Trace sample rate should be in [0; 1]");
+            }
+
+            if (rowCacheBytes < 0L) {
+                throw new IllegalArgumentException("Negative row cache size");
+            }
+
+            if (memTableFootprintLimit < 0L) {
+                throw new IllegalArgumentException("Negative MemTable footprint limit");
+            }
+
+            return new Options(this);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ru.vk.itmo.reference;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Immutable {@link MemTable} being written to SSTable with preallocated sequence.
+ *
+ * <p>Flushes are written concurrently, but published strictly in sequence order,
+ * otherwise a fresher SSTable would be shadowed by an older flushing {@link MemTable}.
+ */
+final class PendingFlush {
+    final MemTable memTable;
+    final int sequence;
+    // Completed when published to TableSet
+    final CompletableFuture<Void> published = new CompletableFuture<>();
+
+    // Guarded by ReferenceDao lock, null until written
+    SSTable written;
+
+    PendingFlush(
+            final MemTable memTable,
+            final int sequence) {
+        this.memTable = memTable;
+        this.sequence = sequence;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.vk.itmo.reference;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Read amplification of a single sampled read.
+ *
+ * @param operation kind of read
+ * @param from the key of {@link Operation#GET} or lower bound of {@link Operation#RANGE} ({@code null} if open)
+ * @param to upper bound of {@link Operation#RANGE} ({@code null} if open or {@link Operation#GET})
+ * @param ssTables SSTables searched
+ * @param probes binary search steps over SSTable indexes
+ * @param filterRejections SSTables skipped by key range without touching the index
+ * @param shadowed older versions of keys skipped while merging
+ * @param tombstones tombstones skipped
+ * @param bytes SSTable index and data bytes read
+ * @param nanos duration of {@link Operation#GET} or of {@link Operation#RANGE} until exhausted
+ */
+public record ReadTrace(
+        Operation operation,
+        MemorySegment from,
+        MemorySegment to,
+        int ssTables,
+        long probes,
+        int filterRejections,
+        long shadowed,
+        long tombstones,
+        long bytes,
+        long nanos) {
+    public enum Operation {
+        GET,
+        RANGE
+    }
+}
@@ -0,0 +1,13 @@
+package ru.vk.itmo.reference;
+
+/**
+ * Receives sampled {@link ReadTrace}s.
+ */
+@FunctionalInterface
+public interface ReadTraceSink {
+    /**
+     * Called concurrently by reading threads, so should be fast and never throw.
+     * Keys belong to the reader and should be copied if retained.
+     */
+    void accept(ReadTrace trace);
+}
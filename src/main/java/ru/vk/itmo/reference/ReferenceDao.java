@@ -3,19 +3,36 @@ package ru.vk.itmo.reference;
 import ru.vk.itmo.Config;
 import ru.vk.itmo.Dao;
 import ru.vk.itmo.Entry;
+import ru.vk.itmo.metrics.MetricsSnapshot;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
-import java.util.Collections;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Reference implementation of {@link Dao}.
@@ -23,253 +40,977 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @author incubos
  */
 public class ReferenceDao implements Dao<MemorySegment, Entry<MemorySegment>> {
+    private static final int KEY_LOCKS = 1024;
+
     private final Config config;
+    private final Options options;
     private final Arena arena;
+    private final WriteController writeController;
+    private final ValueLog valueLog;
+    private final DaoMetrics metrics = new DaoMetrics();
+    // Null if disabled
+    private final RowCache rowCache;
+    // Serialize writes of the same key if merges are enabled, null otherwise
+    private final Lock[] keyLocks;
 
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     // Guarded by lock
     private volatile TableSet tableSet;
+    // Never reused
+    private final AtomicInteger nextSequence;
+    // From oldest to freshest, guarded by lock
+    private final Deque<PendingFlush> pendingFlushes = new ArrayDeque<>();
 
-    private final ExecutorService flusher =
-            Executors.newSingleThreadExecutor(r -> {
-                final Thread result = new Thread(r);
-                result.setName("flusher");
-                return result;
-            });
-    private final ExecutorService compactor =
-            Executors.newSingleThreadExecutor(r -> {
-                final Thread result = new Thread(r);
-                result.setName("compactor");
-                return result;
-            });
+    private final BackgroundPool pool;
+    private final boolean ownsPool;
+    // Compactions of this DAO one by one
+    private final SerialExecutor compactor;
+    // Serializes manifest updates in TableSet switch order
+    private final Lock manifestLock = new ReentrantLock();
+    // Replaced files are removed under read lock, checkpoints link files under write lock
+    private final ReadWriteLock removalLock = new ReentrantReadWriteLock();
+    // Set while tombstone compaction is queued
+    private final AtomicBoolean tombstoneCompactionScheduled = new AtomicBoolean();
 
     private final AtomicBoolean closed = new AtomicBoolean();
 
     public ReferenceDao(final Config config) throws IOException {
+        this(config, Options.defaults());
+    }
+
+    public ReferenceDao(
+            final Config config,
+            final Options options) throws IOException {
+        this(
+                config,
+                options,
+                new BackgroundPool(
+                        options.flushThreads(),
+                        options.compactionThreads()),
+                true);
+    }
+
+    /**
+     * Flushes and compacts on the provided {@link BackgroundPool} which is not closed by the DAO,
+     * so {@link Options#flushThreads()} and {@link Options#compactionThreads()} don't add threads.
+     */
+    public ReferenceDao(
+            final Config config,
+            final Options options,
+            final BackgroundPool pool) throws IOException {
+        this(config, options, pool, false);
+    }
+
+    private ReferenceDao(
+            final Config config,
+            final Options options,
+            final BackgroundPool pool,
+            final boolean ownsPool) throws IOException {
         this.config = config;
+        this.options = options;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.compactor = new SerialExecutor(pool.compactor);
         this.arena = Arena.ofShared();
+        this.rowCache = options.rowCacheBytes() > 0L ? new RowCache(options.rowCacheBytes()) : null;
+        if (options.mergeOperator() == null) {
+            this.keyLocks = null;
+        } else {
+            this.keyLocks = new Lock[KEY_LOCKS];
+            for (int i = 0; i < KEY_LOCKS; i++) {
+                keyLocks[i] = new ReentrantLock();
+            }
+        }
+        this.writeController =
+                new WriteController(
+                        options,
+                        metrics.writeDelay,
+                        metrics.writeStall);
 
-        // First complete promotion of compacted SSTables
-        SSTables.promote(
-                config.basePath(),
-                0,
-                1);
 
+        final List<SSTable> ssTables;
+        try {
+            this.valueLog =
+                    ValueLog.open(
+                            arena,
+                            config.basePath(),
+                            options.valueSeparationThreshold());
+            ssTables =
+                    SSTables.discover(
+                            arena,
+                            config.basePath(),
+                            valueLog,
+                            options);
+        } catch (IOException e) {
+            // E.g. corrupted manifest
+            arena.close();
+            if (ownsPool) {
+                pool.close();
+            }
+            throw e;
+        }
         this.tableSet =
                 TableSet.from(
-                        SSTables.discover(
-                                arena,
-                                config.basePath()));
+                        ssTables,
+                        newMemTable());
+        // Don't overwrite value log leftovers
+        this.nextSequence =
+                new AtomicInteger(
+                        Math.max(
+                                tableSet.nextSequence(),
+                                valueLog.nextSequence()));
+
+        metrics.registry.export(
+                ReferenceDao.class.getSimpleName(),
+                config.basePath().toAbsolutePath().toString());
     }
 
     @Override
     public Iterator<Entry<MemorySegment>> get(
             final MemorySegment from,
             final MemorySegment to) {
-        return new LiveFilteringIterator(
-                tableSet.get(
-                        from,
-                        to));
+        final long start = System.nanoTime();
+        final TraceContext trace = sample(ReadTrace.Operation.RANGE, from, to);
+        final Iterator<Entry<MemorySegment>> result =
+                new LiveFilteringIterator(
+                        tableSet.get(
+                                from,
+                                to,
+                                options.mergeOperator(),
+                                trace),
+                        trace);
+        metrics.range.recordSince(start);
+        return result;
     }
 
     @Override
     public Entry<MemorySegment> get(final MemorySegment key) {
+        final long start = System.nanoTime();
+        final TraceContext trace = sample(ReadTrace.Operation.GET, key, null);
+        final Entry<MemorySegment> result =
+                rowCache == null
+                        ? tableSet.get(key, options.mergeOperator(), metrics, trace)
+                        : cachedGet(key, trace);
+        if (trace != null) {
+            trace.finish();
+        }
+        metrics.get.recordSince(start);
+        return result;
+    }
+
+    private Entry<MemorySegment> cachedGet(
+            final MemorySegment key,
+            final TraceContext trace) {
+        final RowCache.Row row = rowCache.get(key);
+        if (row != null) {
+            // Skip the tables
+            metrics.cacheHits.increment();
+            return row.entry;
+        }
+
+        metrics.cacheMisses.increment();
+        // Before reading the tables not to cache a value replaced meanwhile
+        final long stamp = rowCache.stamp(key);
         // Without lock, just snapshot of table set
-        return tableSet.get(key);
+        final Entry<MemorySegment> result = tableSet.get(key, options.mergeOperator(), metrics, trace);
+        rowCache.put(key, result, stamp);
+        return result;
+    }
+
+    /**
+     * Returns trace context if the read is sampled or {@code null}.
+     */
+    private TraceContext sample(
+            final ReadTrace.Operation operation,
+            final MemorySegment from,
+            final MemorySegment to) {
+        final double rate = options.traceSampleRate();
+        if (rate == 0.0 || (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return null;
+        }
+
+        return new TraceContext(
+                options.traceSink(),
+                operation,
+                from,
+                to);
     }
 
     @Override
     public void upsert(final Entry<MemorySegment> entry) {
+        final long start = System.nanoTime();
+        insert(entry);
+        metrics.upsert.recordSince(start);
+    }
+
+    /**
+     * Stores operand folded with the value of the key by {@link Options#mergeOperator()} on read and compaction.
+     *
+     * @throws IllegalStateException if merge operator is not set
+     */
+    public void merge(
+            final MemorySegment key,
+            final MemorySegment operand) {
+        if (options.mergeOperator() == null) {
+            throw new IllegalStateException("Merge operator is not set");
+        }
+
+        final long start = System.nanoTime();
+        insert(new MergeEntry(key, operand));
+        metrics.merge.recordSince(start);
+    }
+
+    /**
+     * Applies all the entries of the batch at once.
+     *
+     * <p>There is no write-ahead log, so atomicity is about visibility: a single commit of the batch
+     * in {@link MemTable} makes all the entries visible to readers at once
+     * and the batch is flushed to the same SSTable.
+     */
+    public void apply(final WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        // Stall if there is no room for another immutable MemTable
+        writeController.awaitWhile(this::writesStalled);
+        // Slow down while flushing falls behind
+        writeController.delay(tableSet.flushingTables.size());
+
         final boolean autoFlush;
-        lock.readLock().lock();
+        // Exclude concurrent writes and MemTable switch
+        lock.writeLock().lock();
         try {
-            if (tableSet.memTableSize.get() > config.flushThresholdBytes()
-                    && tableSet.flushingTable != null) {
-                throw new IllegalStateException("Can't keep up with flushing!");
+            tableSet.memTable.apply(batch.entries());
+            if (rowCache != null) {
+                for (final Entry<MemorySegment> entry : batch.entries()) {
+                    rowCache.invalidate(entry.key());
+                }
             }
 
+            autoFlush = full(tableSet.memTable);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (autoFlush) {
+            initiateFlush(true).state();
+        }
+        metrics.batch.recordSince(start);
+    }
+
+    private void insert(final Entry<MemorySegment> entry) {
+        // Stall if there is no room for another immutable MemTable
+        writeController.awaitWhile(this::writesStalled);
+        // Slow down while flushing falls behind
+        writeController.delay(tableSet.flushingTables.size());
+
+        final boolean autoFlush;
+        lock.readLock().lock();
+        try {
             // Upsert
-            final Entry<MemorySegment> previous = tableSet.upsert(entry);
+            if (keyLocks == null) {
+                tableSet.upsert(entry, null);
+            } else {
+                // Operands are folded with the entry they replace
+                final Lock keyLock = keyLocks[MemorySegmentComparator.hash(entry.key()) & (keyLocks.length - 1)];
+                keyLock.lock();
+                try {
+                    tableSet.upsert(entry, options.mergeOperator());
+                } finally {
+                    keyLock.unlock();
+                }
+            }
+            if (rowCache != null) {
+                rowCache.invalidate(entry.key());
+            }
 
-            // Update size estimate
-            final long size = tableSet.memTableSize.addAndGet(sizeOf(entry) - sizeOf(previous));
-            autoFlush = size > config.flushThresholdBytes();
+            autoFlush = full(tableSet.memTable);
         } finally {
             lock.readLock().unlock();
         }
 
         if (autoFlush) {
-            initiateFlush(true);
+            initiateFlush(true).state();
         }
     }
 
-    private static long sizeOf(final Entry<MemorySegment> entry) {
-        if (entry == null) {
-            return 0L;
+    private MemTable newMemTable() {
+        return new MemTable(options.memTable().get());
+    }
+
+    private boolean writesStalled() {
+        final TableSet currentTableSet = this.tableSet;
+        return full(currentTableSet.memTable)
+                && currentTableSet.flushingTables.size() >= options.maxImmutableMemTables();
+    }
+
+    /**
+     * Checks whether the {@link MemTable} should be flushed by keys and values
+     * or by heap footprint if {@link Options#memTableFootprintLimit()} is set.
+     */
+    private boolean full(final MemTable memTable) {
+        final long footprintLimit = options.memTableFootprintLimit();
+        return memTable.dataSize() > config.flushThresholdBytes()
+                || (footprintLimit > 0L && memTable.size() > footprintLimit);
+    }
+
+    private CompletableFuture<Void> initiateFlush(final boolean auto) {
+        final PendingFlush flushing;
+        lock.writeLock().lock();
+        try {
+            if (this.tableSet.memTable.isEmpty()) {
+                // Nothing to flush, but wait for flushes in progress
+                final PendingFlush freshest = pendingFlushes.peekLast();
+                return auto || freshest == null
+                        ? CompletableFuture.completedFuture(null)
+                        : freshest.published;
+            }
+
+            if (auto && !full(this.tableSet.memTable)) {
+                // Not enough data to flush
+                return CompletableFuture.completedFuture(null);
+            }
+
+            if (auto && this.tableSet.flushingTables.size() >= options.maxImmutableMemTables()) {
+                // Writers will stall until some MemTable is flushed
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Switch memTable to flushing.
+            // Sequence is allocated under lock to follow switch order.
+            flushing =
+                    new PendingFlush(
+                            this.tableSet.memTable,
+                            nextSequence.getAndIncrement());
+            pendingFlushes.addLast(flushing);
+            this.tableSet = this.tableSet.flushing(newMemTable());
+        } finally {
+            lock.writeLock().unlock();
         }
 
-        if (entry.value() == null) {
-            return entry.key().byteSize();
+        // Write concurrently with other flushes
+        CompletableFuture.runAsync(
+                () -> flush(flushing),
+                pool.flusher).state();
+
+        return flushing.published;
+    }
+
+    private void flush(final PendingFlush flushing) {
+        final long start = System.nanoTime();
+
+        // Write
+        try {
+            // Upserted entries may point to segments not protected from collection
+            new SSTableWriter(valueLog, segment -> true, options.learnedIndex())
+                    .write(
+                            config.basePath(),
+                            flushing.sequence,
+                            flushing.memTable.get(null, null));
+        } catch (IOException e) {
+            e.printStackTrace();
+            Runtime.getRuntime().halt(-1);
+            return;
+        }
+
+        // Open
+        final SSTable flushed;
+        try {
+            flushed = SSTables.open(
+                    arena,
+                    config.basePath(),
+                    flushing.sequence,
+                    valueLog);
+        } catch (IOException e) {
+            e.printStackTrace();
+            Runtime.getRuntime().halt(-2);
+            return;
         }
+        metrics.flush.recordSince(start);
+        metrics.flushBytes.add(flushed.dataSize());
+
+        // Switch all the written flushes in sequence order
+        final List<PendingFlush> published = new ArrayList<>();
+        publish(current -> {
+            flushing.written = flushed;
+            TableSet result = current;
+            while (!pendingFlushes.isEmpty() && pendingFlushes.getFirst().written != null) {
+                final PendingFlush oldest = pendingFlushes.removeFirst();
+                result = result.flushed(oldest.memTable, oldest.written);
+                published.add(oldest);
+            }
+            return result;
+        });
 
-        return entry.key().byteSize() + entry.value().byteSize();
+        if (published.isEmpty()) {
+            // Waiting for older flushes
+            return;
+        }
+
+        for (final PendingFlush flush : published) {
+            valueLog.published(flush.sequence);
+        }
+
+        // Before completion not to race with close()
+        maybeCompactTombstones();
+
+        for (final PendingFlush flush : published) {
+            flush.published.complete(null);
+        }
+
+        // Let stalled writers in
+        writeController.onFlushed();
     }
 
-    private void initiateFlush(final boolean auto) {
-        flusher.submit(() -> {
-            final TableSet currentTableSet;
-            lock.writeLock().lock();
+    @Override
+    public void flush() throws IOException {
+        flushAsync().state();
+    }
+
+    /**
+     * Initiates flush of the current {@link MemTable}.
+     *
+     * @return future completed when the flushed SSTable and the ones flushed before are published
+     *     (or there was nothing to flush)
+     */
+    CompletableFuture<Void> flushAsync() {
+        return initiateFlush(false);
+    }
+
+    /**
+     * Creates consistent copy of the DAO in {@code target} directory which can be opened as a separate DAO.
+     *
+     * <p>There is no write-ahead log, so upserted entries are flushed first.
+     * Immutable SSTables, value log segments and the manifest are hard-linked instead of copied,
+     * so {@code target} must be on the same file system. Replaced files are not removed
+     * until linked, while flushes and compactions proceed.
+     */
+    public void checkpoint(final Path target) throws IOException {
+        awaitFlush();
+
+        Files.createDirectories(target);
+        removalLock.writeLock().lock();
+        try {
+            // The manifest lists exactly SSTables of the current TableSet
+            manifestLock.lock();
             try {
-                if (this.tableSet.memTable.isEmpty()) {
-                    // Nothing to flush
-                    return;
+                final List<SSTable> ssTables = this.tableSet.ssTables;
+                for (final SSTable ssTable : ssTables) {
+                    link(SSTables.indexName(config.basePath(), ssTable.sequence), target);
+                    link(SSTables.dataName(config.basePath(), ssTable.sequence), target);
                 }
+                SSTables.linkManifest(config.basePath(), target, ssTables);
+            } finally {
+                manifestLock.unlock();
+            }
 
-                if (auto && this.tableSet.memTableSize.get() < config.flushThresholdBytes()) {
-                    // Not enough data to flush
-                    return;
-                }
+            // Unreferenced segments are collected when the copy is opened
+            for (final int segment : valueLog.written()) {
+                link(valueLog.name(segment), target);
+            }
+        } finally {
+            removalLock.writeLock().unlock();
+        }
+    }
 
-                // Switch memTable to flushing
-                currentTableSet = this.tableSet.flushing();
-                this.tableSet = currentTableSet;
-            } finally {
-                lock.writeLock().unlock();
+    /**
+     * Atomically adds SSTables written by {@link ExternalSSTableWriter} as the freshest data.
+     *
+     * <p>The files are hard-linked (or copied if not possible), so the directories may be removed afterwards.
+     * {@link MemTable}s overlapping the ingested keys are flushed first not to shadow them.
+     *
+     * @throws IllegalArgumentException if key ranges of the SSTables overlap each other
+     */
+    public void ingest(final List<Path> external) throws IOException {
+        // Check ranges
+        final List<Path> dirs = new ArrayList<>(external.size());
+        final List<SSTableFooter> footers = new ArrayList<>(external.size());
+        for (final Path dir : external) {
+            final SSTableFooter footer = SSTables.footer(dir, ExternalSSTableWriter.SEQUENCE);
+            if (footer == null) {
+                throw new IOException("Not an external SSTable: " + dir);
+            }
+            if (footer.entries() > 0L) {
+                dirs.add(dir);
+                footers.add(footer);
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+        final List<Integer> order = new ArrayList<>(dirs.size());
+        for (int i = 0; i < dirs.size(); i++) {
+            order.add(i);
+        }
+        order.sort((o1, o2) ->
+                MemorySegmentComparator.INSTANCE.compare(
+                        footers.get(o1).minKey(),
+                        footers.get(o2).minKey()));
+        for (int i = 1; i < order.size(); i++) {
+            final SSTableFooter previous = footers.get(order.get(i - 1));
+            final SSTableFooter next = footers.get(order.get(i));
+            if (MemorySegmentComparator.INSTANCE.compare(previous.maxKey(), next.minKey()) >= 0) {
+                throw new IllegalArgumentException(
+                        "Ingested SSTables overlap: " + dirs.get(order.get(i - 1)) + " and " + dirs.get(order.get(i)));
             }
+        }
 
-            // Write
-            final int sequence = currentTableSet.nextSequence();
-            try {
-                new SSTableWriter()
-                        .write(
-                                config.basePath(),
-                                sequence,
-                                currentTableSet.flushingTable.get(null, null));
-            } catch (IOException e) {
-                e.printStackTrace();
-                Runtime.getRuntime().halt(-1);
+        // Flush MemTables upserted before
+        final TableSet currentTableSet = this.tableSet;
+        for (final SSTableFooter footer : footers) {
+            if (currentTableSet.memTablesOverlap(footer.minKey(), footer.maxKey())) {
+                awaitFlush();
+                break;
+            }
+        }
+
+        // Link and open
+        final List<SSTable> ingested = new ArrayList<>(dirs.size());
+        for (final int i : order) {
+            final int sequence = nextSequence.getAndIncrement();
+            SSTables.link(dirs.get(i), ExternalSSTableWriter.SEQUENCE, config.basePath(), sequence);
+            ingested.add(SSTables.open(arena, config.basePath(), sequence, valueLog));
+        }
+
+        publish(current -> current.ingested(ingested));
+        if (rowCache != null) {
+            rowCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Flushes the current {@link MemTable} and waits for it and the ones flushed before to be published.
+     */
+    private void awaitFlush() throws IOException {
+        try {
+            flushAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing");
+        } catch (ExecutionException e) {
+            throw new IOException("Can't flush", e.getCause());
+        }
+    }
+
+    private static void link(
+            final Path file,
+            final Path targetDir) throws IOException {
+        Files.createLink(targetDir.resolve(file.getFileName()), file);
+    }
+
+    @Override
+    public void compact() throws IOException {
+        compactAsync().state();
+    }
+
+    /**
+     * Initiates compaction of all the SSTables.
+     *
+     * <p>Key space is split into disjoint ranges merged in parallel.
+     * The resulting non overlapping SSTables are published at once.
+     *
+     * @return future completed when the compacted SSTables are published (or there was nothing to compact)
+     */
+    CompletableFuture<Void> compactAsync() {
+        return CompletableFuture.runAsync(() -> {
+            // Without lock, just snapshot of table set
+            final TableSet currentTableSet = this.tableSet;
+            if (currentTableSet.ssTables.size() < 2) {
+                // Nothing to compact
                 return;
             }
+            final long start = System.nanoTime();
+
+            // Split
+            final List<MemorySegment> boundaries =
+                    Subcompactions.boundaries(
+                            currentTableSet.ssTables,
+                            options.compactionThreads());
+            final List<Callable<SSTable>> subcompactions = new ArrayList<>(boundaries.size() + 1);
+            for (int i = 0; i <= boundaries.size(); i++) {
+                final MemorySegment from = i == 0 ? null : boundaries.get(i - 1);
+                final MemorySegment to = i == boundaries.size() ? null : boundaries.get(i);
+                subcompactions.add(() -> subcompact(currentTableSet, from, to));
+            }
 
-            // Open
-            final SSTable flushed;
+            // Merge and write in parallel
+            final List<SSTable> compacted = new ArrayList<>(subcompactions.size());
             try {
-                flushed = SSTables.open(
-                        arena,
-                        config.basePath(),
-                        sequence);
-            } catch (IOException e) {
+                for (final Future<SSTable> subcompaction : pool.subcompactor.invokeAll(subcompactions)) {
+                    final SSTable ssTable = subcompaction.get();
+                    if (ssTable != null) {
+                        compacted.add(ssTable);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
                 e.printStackTrace();
-                Runtime.getRuntime().halt(-2);
+                Runtime.getRuntime().halt(-3);
                 return;
             }
 
-            // Switch
-            lock.writeLock().lock();
+            // Replace old SSTables with compacted ones to
+            // keep serving requests
+            final Set<SSTable> replaced = new HashSet<>(currentTableSet.ssTables);
+            publish(current -> current.compacted(replaced, compacted));
+            for (final SSTable ssTable : compacted) {
+                valueLog.published(ssTable.sequence);
+            }
+
+            // Remove compacted SSTables.
+            // If we crash, leftovers are removed on reopen.
+            removalLock.readLock().lock();
             try {
-                this.tableSet = this.tableSet.flushed(flushed);
+                for (final SSTable ssTable : currentTableSet.ssTables) {
+                    try {
+                        SSTables.remove(
+                                config.basePath(),
+                                ssTable);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        Runtime.getRuntime().halt(-5);
+                    }
+                }
             } finally {
-                lock.writeLock().unlock();
+                removalLock.readLock().unlock();
             }
-        }).state();
+            metrics.compaction.recordSince(start);
+
+            collectGarbage();
+        }, compactor);
     }
 
-    @Override
-    public void flush() throws IOException {
-        initiateFlush(false);
+    /**
+     * Writes live entries of SSTables within the range.
+     *
+     * @return compacted SSTable or {@code null} if there is nothing left in the range
+     */
+    private SSTable subcompact(
+            final TableSet tables,
+            final MemorySegment from,
+            final MemorySegment to) throws IOException {
+        return write(
+                new LiveFilteringIterator(
+                        tables.allSSTableEntries(from, to, options.mergeOperator())));
     }
 
-    @Override
-    public void compact() throws IOException {
-        compactor.submit(() -> {
-            final TableSet currentTableSet;
-            lock.writeLock().lock();
-            try {
-                currentTableSet = this.tableSet;
-                if (currentTableSet.ssTables.size() < 2) {
-                    // Nothing to compact
-                    return;
+    /**
+     * Writes entries to a new SSTable.
+     *
+     * @return written SSTable or {@code null} if there are no entries
+     */
+    private SSTable write(final Iterator<Entry<MemorySegment>> entries) throws IOException {
+        return write(entries, segment -> false);
+    }
+
+    /**
+     * Writes entries to a new SSTable moving values out of {@code relocated} {@link ValueLog} segments.
+     *
+     * @return written SSTable or {@code null} if there are no entries
+     */
+    private SSTable write(
+            final Iterator<Entry<MemorySegment>> entries,
+            final IntPredicate relocated) throws IOException {
+        if (!entries.hasNext()) {
+            return null;
+        }
+
+        final int sequence = nextSequence.getAndIncrement();
+        new SSTableWriter(valueLog, relocated, options.learnedIndex())
+                .write(
+                        config.basePath(),
+                        sequence,
+                        entries);
+        final SSTable result =
+                SSTables.open(
+                        arena,
+                        config.basePath(),
+                        sequence,
+                        valueLog);
+        metrics.compactionBytes.add(result.dataSize());
+        return result;
+    }
+
+    private void maybeCompactTombstones() {
+        if (tombstoneDense(tableSet.ssTables, Set.of()) < 0
+                || !tombstoneCompactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        compactor.execute(() -> {
+            if (compactTombstones()) {
+                collectGarbage();
+            }
+        });
+    }
+
+    /**
+     * Returns index of the SSTable with the highest share of tombstones
+     * reaching {@link Options#tombstoneCompactionRatio()} except {@code skipped} or {@code -1}.
+     */
+    private int tombstoneDense(
+            final List<SSTable> ssTables,
+            final Set<SSTable> skipped) {
+        int result = -1;
+        double maxRatio = options.tombstoneCompactionRatio();
+        for (int i = 0; i < ssTables.size(); i++) {
+            final SSTable ssTable = ssTables.get(i);
+            if (ssTable.tombstones() == 0L || skipped.contains(ssTable)) {
+                continue;
+            }
+
+            final double ratio = (double) ssTable.tombstones() / ssTable.size();
+            if (ratio >= maxRatio) {
+                maxRatio = ratio;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges each SSTable dense with tombstones with all the older SSTables down to the oldest one
+     * overlapping its key range by a single compaction.
+     *
+     * <p>No SSTable older than the merged ones may hold the keys of the dense SSTable,
+     * so all its tombstones are dropped. Other tombstones are dropped unless
+     * the key is within key range of some older SSTable. Every SSTable is written
+     * at most once per pass, even if the result is still dense.
+     *
+     * @return whether anything was compacted
+     */
+    private boolean compactTombstones() {
+        // Let flushes schedule another pass
+        tombstoneCompactionScheduled.set(false);
+
+        final Set<SSTable> written = new HashSet<>();
+        while (true) {
+            // Without lock, just snapshot of table set
+            final List<SSTable> ssTables = this.tableSet.ssTables;
+            final int dense = tombstoneDense(ssTables, written);
+            if (dense < 0) {
+                return !written.isEmpty();
+            }
+
+            int end = dense + 1;
+            for (int i = end; i < ssTables.size(); i++) {
+                if (ssTables.get(i).overlaps(ssTables.get(dense))) {
+                    end = i + 1;
                 }
-            } finally {
-                lock.writeLock().unlock();
             }
+            final List<SSTable> replaced = List.copyOf(ssTables.subList(dense, end));
+            final List<SSTable> older = ssTables.subList(end, ssTables.size());
 
-            // Compact to 0
+            // Merge and write
+            final SSTable compacted;
             try {
-                new SSTableWriter()
-                        .write(
-                                config.basePath(),
-                                0,
+                compacted =
+                        write(
                                 new LiveFilteringIterator(
-                                        currentTableSet.allSSTableEntries()));
+                                        TableSet.merge(replaced, null, null, options.mergeOperator(), older.isEmpty()),
+                                        key -> mayShadow(older, key)));
             } catch (IOException e) {
                 e.printStackTrace();
-                Runtime.getRuntime().halt(-3);
+                Runtime.getRuntime().halt(-7);
+                return true;
+            }
+            if (compacted != null) {
+                written.add(compacted);
             }
 
-            // Open 0
-            final SSTable compacted;
+            publish(current -> current.replaced(replaced, compacted));
+            if (compacted != null) {
+                valueLog.published(compacted.sequence);
+            }
+
+            // Remove merged SSTables
+            removalLock.readLock().lock();
             try {
-                compacted =
-                        SSTables.open(
-                                arena,
+                for (final SSTable ssTable : replaced) {
+                    try {
+                        SSTables.remove(
                                 config.basePath(),
-                                0);
+                                ssTable);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        Runtime.getRuntime().halt(-8);
+                    }
+                }
+            } finally {
+                removalLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes {@link ValueLog} segments not referenced by SSTables
+     * and moves values out of segments with low share of referenced bytes.
+     */
+    private void collectGarbage() {
+        // Segments first, then SSTables possibly referencing them
+        final Set<Integer> collectable = valueLog.collectable();
+        if (collectable.isEmpty()) {
+            return;
+        }
+        final List<SSTable> ssTables = this.tableSet.ssTables;
+
+        // Sum referenced bytes including shadowed values recorded in footers
+        final Map<Integer, Long> liveBytes = new HashMap<>();
+        final Map<Integer, Set<SSTable>> referencing = new HashMap<>();
+        for (final SSTable ssTable : ssTables) {
+            for (final Map.Entry<Integer, Long> referenced : ssTable.referenced().entrySet()) {
+                liveBytes.merge(referenced.getKey(), referenced.getValue(), Long::sum);
+                referencing.computeIfAbsent(referenced.getKey(), segment -> new HashSet<>()).add(ssTable);
+            }
+        }
+
+        final Set<Integer> garbage = new HashSet<>();
+        final Set<Integer> relocated = new HashSet<>();
+        final Set<SSTable> rewritten = new HashSet<>();
+        for (final int segment : collectable) {
+            final long live = liveBytes.getOrDefault(segment, 0L);
+            if (live == 0L) {
+                garbage.add(segment);
+            } else if (live < valueLog.size(segment) * options.valueLogLiveRatio()) {
+                relocated.add(segment);
+                rewritten.addAll(referencing.get(segment));
+            }
+        }
+
+        if (!rewritten.isEmpty()) {
+            // Rewrite SSTables with relocated values
+            final Map<SSTable, SSTable> replacements = new HashMap<>();
+            try {
+                for (final SSTable ssTable : rewritten) {
+                    replacements.put(
+                            ssTable,
+                            write(
+                                    ssTable.get(null, null),
+                                    relocated::contains));
+                }
             } catch (IOException e) {
                 e.printStackTrace();
-                Runtime.getRuntime().halt(-4);
+                Runtime.getRuntime().halt(-9);
                 return;
             }
 
-            // Replace old SSTables with compacted one to
-            // keep serving requests
-            final Set<SSTable> replaced = new HashSet<>(currentTableSet.ssTables);
-            lock.writeLock().lock();
+            publish(current -> {
+                TableSet result = current;
+                for (final Map.Entry<SSTable, SSTable> replacement : replacements.entrySet()) {
+                    result = result.replaced(List.of(replacement.getKey()), replacement.getValue());
+                }
+                return result;
+            });
+            for (final SSTable ssTable : replacements.values()) {
+                valueLog.published(ssTable.sequence);
+            }
+
+            // Remove rewritten SSTables
+            removalLock.readLock().lock();
             try {
-                this.tableSet =
-                        this.tableSet.compacted(
-                                replaced,
-                                compacted);
+                for (final SSTable ssTable : rewritten) {
+                    try {
+                        SSTables.remove(
+                                config.basePath(),
+                                ssTable);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        Runtime.getRuntime().halt(-10);
+                    }
+                }
             } finally {
-                lock.writeLock().unlock();
+                removalLock.readLock().unlock();
             }
 
-            // Remove compacted SSTables starting from the oldest ones.
-            // If we crash, 0 contains all the data, and
-            // it will be promoted on reopen.
-            for (final SSTable ssTable : currentTableSet.ssTables.reversed()) {
+            garbage.addAll(relocated);
+        }
+
+        removalLock.readLock().lock();
+        try {
+            for (final int segment : garbage) {
                 try {
-                    SSTables.remove(
-                            config.basePath(),
-                            ssTable.sequence);
+                    valueLog.remove(segment);
                 } catch (IOException e) {
                     e.printStackTrace();
-                    Runtime.getRuntime().halt(-5);
+                    Runtime.getRuntime().halt(-11);
                 }
             }
+        } finally {
+            removalLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether some of SSTables may hold the key by their key ranges without touching the indexes.
+     */
+    private static boolean mayShadow(
+            final List<SSTable> ssTables,
+            final MemorySegment key) {
+        for (final SSTable ssTable : ssTables) {
+            if (ssTable.mayContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            // Promote zero to one (possibly replacing)
+    /**
+     * Switches {@link TableSet} and persists the resulting list of SSTables.
+     */
+    private void publish(final UnaryOperator<TableSet> transition) {
+        manifestLock.lock();
+        try {
+            final TableSet previous;
+            final TableSet next;
+            lock.writeLock().lock();
             try {
-                SSTables.promote(
+                previous = this.tableSet;
+                next = transition.apply(previous);
+                this.tableSet = next;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (next.ssTables == previous.ssTables) {
+                // Nothing changed on disk
+                return;
+            }
+
+            try {
+                SSTables.writeManifest(
                         config.basePath(),
-                        0,
-                        1);
+                        next.ssTables);
             } catch (IOException e) {
                 e.printStackTrace();
                 Runtime.getRuntime().halt(-6);
             }
+        } finally {
+            manifestLock.unlock();
+        }
+    }
 
-            // Replace promoted SSTable
-            lock.writeLock().lock();
-            try {
-                this.tableSet =
-                        this.tableSet.compacted(
-                                Collections.singleton(compacted),
-                                compacted.withSequence(1));
-            } finally {
-                lock.writeLock().unlock();
-            }
-        }).state();
+    /**
+     * Returns writer slowdown and stall statistics.
+     */
+    public WriteStats writeStats() {
+        return writeController.stats();
+    }
+
+    /**
+     * Returns operation latencies in nanoseconds, byte counts and read statistics
+     * also exported as {@code ru.vk.itmo:type=ReferenceDao} MBean.
+     */
+    @Override
+    public MetricsSnapshot stats() {
+        return metrics.registry.snapshot();
+    }
+
+    boolean isClosed() {
+        return closed.get();
     }
 
     @Override
@@ -280,13 +1021,24 @@ public class ReferenceDao implements Dao<MemorySegment, Entry<MemorySegment>> {
         }
 
         // Maybe flush
-        flush();
+        awaitFlush();
+
+        // Wait for compactions scheduled by flushes
+        try {
+            compactor.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compacting");
+        }
 
-        // Stop all the threads
-        flusher.close();
-        compactor.close();
+        // Stop all the threads unless shared
+        if (ownsPool) {
+            pool.close();
+        }
 
         // Close arena
         arena.close();
+
+        metrics.registry.close();
     }
 }
@@ -0,0 +1,246 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+import ru.vk.itmo.memtable.Footprint;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of resolved point reads including absent keys.
+ *
+ * <p>Rows are copied to heap and evicted with CLOCK: a row read since the last pass of the hand
+ * gets a second chance, so hot keys stay cached while keys read once are evicted first.
+ *
+ * <p>Upserts invalidate rows of their keys. A read racing with an upsert of the same key
+ * must not cache the replaced value, so every read takes a stamp of the key stripe before
+ * reading the tables and caches the result only if the stripe was not invalidated since.
+ */
+final class RowCache {
+    private static final int STRIPES = 1024;
+    // ConcurrentHashMap.Node, Key, Row, BaseEntry and ConcurrentLinkedQueue.Node
+    private static final long ROW_OVERHEAD =
+            Footprint.object(3, Integer.BYTES)
+                    + Footprint.object(1, Integer.BYTES)
+                    + Footprint.object(2, Long.BYTES + 1)
+                    + Footprint.object(2, 0)
+                    + Footprint.object(2, 0);
+    // Larger rows would evict too much
+    private static final long MAX_ROW_SHARE = 16L;
+    // Invalidated rows left in the clock before it is swept
+    private static final long MIN_SWEPT_ROWS = 1024L;
+
+    private final long capacity;
+    private final ConcurrentMap<Key, Row> rows = new ConcurrentHashMap<>();
+    // Clock ring from the hand to the most recently inserted row
+    private final Queue<Row> clock = new ConcurrentLinkedQueue<>();
+    // Including invalidated rows
+    private final AtomicLong clockLength = new AtomicLong();
+    private final Lock evictionLock = new ReentrantLock();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+
+    RowCache(final long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns cached row or {@code null} if the key is not cached.
+     */
+    Row get(final MemorySegment key) {
+        final Row result = rows.get(new Key(key));
+        if (result != null) {
+            result.referenced = true;
+        }
+        return result;
+    }
+
+    /**
+     * Returns stamp to be taken before reading the tables and passed to {@link #put}.
+     */
+    long stamp(final MemorySegment key) {
+        return stamps.get(stripe(MemorySegmentComparator.hash(key)));
+    }
+
+    /**
+     * Caches resolved entry or {@code null} for absent key unless the key was invalidated after {@code stamp}.
+     */
+    void put(
+            final MemorySegment key,
+            final Entry<MemorySegment> entry,
+            final long stamp) {
+        final MemorySegment keyCopy = copy(key);
+        final Entry<MemorySegment> entryCopy =
+                entry == null
+                        ? null
+                        : new BaseEntry<>(keyCopy, entry.value() == null ? null : copy(entry.value()));
+        final long rowSize =
+                ROW_OVERHEAD
+                        + Footprint.of(keyCopy)
+                        + (entryCopy == null || entryCopy.value() == null ? 0L : Footprint.of(entryCopy.value()));
+        if (rowSize > capacity / MAX_ROW_SHARE) {
+            return;
+        }
+
+        final Key cacheKey = new Key(keyCopy);
+        final Row row = new Row(cacheKey, entryCopy, rowSize);
+        final int stripe = stripe(cacheKey.hash);
+        final Row cached =
+                rows.compute(
+                        cacheKey,
+                        (ignored, existing) -> {
+                            if (existing != null || stamps.get(stripe) != stamp) {
+                                // Cached by a concurrent read or invalidated by an upsert
+                                return existing;
+                            }
+                            return row;
+                        });
+        if (cached != row) {
+            return;
+        }
+
+        clock.offer(row);
+        final long length = clockLength.incrementAndGet();
+        if (size.addAndGet(rowSize) > capacity || length > sweepThreshold()) {
+            evict();
+        }
+    }
+
+    /**
+     * Invalidates the key after it is upserted.
+     */
+    void invalidate(final MemorySegment key) {
+        final Key cacheKey = new Key(key);
+        // Reads in progress won't cache the replaced value
+        stamps.incrementAndGet(stripe(cacheKey.hash));
+        final Row removed = rows.remove(cacheKey);
+        if (removed != null) {
+            size.addAndGet(-removed.size);
+        }
+    }
+
+    /**
+     * Invalidates all the keys, e.g. after SSTables are ingested.
+     */
+    void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            stamps.incrementAndGet(i);
+        }
+        for (final Key key : rows.keySet()) {
+            final Row removed = rows.remove(key);
+            if (removed != null) {
+                size.addAndGet(-removed.size);
+            }
+        }
+    }
+
+    /**
+     * Returns estimated heap footprint of cached rows.
+     */
+    long size() {
+        return size.get();
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            // Another thread is evicting
+            return;
+        }
+
+        try {
+            while (size.get() > capacity || clockLength.get() > sweepThreshold()) {
+                final Row row = clock.poll();
+                if (row == null) {
+                    return;
+                }
+
+                if (rows.get(row.key) != row) {
+                    // Already invalidated
+                    clockLength.decrementAndGet();
+                } else if (size.get() <= capacity) {
+                    // Just sweeping invalidated rows
+                    clock.offer(row);
+                } else if (row.referenced) {
+                    // Second chance
+                    row.referenced = false;
+                    clock.offer(row);
+                } else if (rows.remove(row.key, row)) {
+                    clockLength.decrementAndGet();
+                    size.addAndGet(-row.size);
+                } else {
+                    // Invalidated concurrently
+                    clockLength.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private long sweepThreshold() {
+        return 2L * rows.size() + MIN_SWEPT_ROWS;
+    }
+
+    private static int stripe(final int hash) {
+        return hash & (STRIPES - 1);
+    }
+
+    private static MemorySegment copy(final MemorySegment segment) {
+        return MemorySegment.ofArray(segment.toArray(ValueLayout.JAVA_BYTE));
+    }
+
+    /**
+     * Cached result of a point read.
+     */
+    static final class Row {
+        private final Key key;
+        // Null for absent key
+        final Entry<MemorySegment> entry;
+        private final long size;
+        // Read since the last pass of the clock hand
+        volatile boolean referenced;
+
+        private Row(
+                final Key key,
+                final Entry<MemorySegment> entry,
+                final long size) {
+            this.key = key;
+            this.entry = entry;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Key compared by content.
+     */
+    private static final class Key {
+        private final MemorySegment segment;
+        private final int hash;
+
+        Key(final MemorySegment segment) {
+            this.segment = segment;
+            this.hash = MemorySegmentComparator.hash(segment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key key
+                    && hash == key.hash
+                    && segment.mismatch(key.segment) == -1L;
+        }
+    }
+}
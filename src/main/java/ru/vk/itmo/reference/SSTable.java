@@ -3,40 +3,144 @@ package ru.vk.itmo.reference;
 import ru.vk.itmo.BaseEntry;
 import ru.vk.itmo.Entry;
 
+import java.io.IOException;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
  * Persistent SSTable in data file and index file.
  *
+ * <p>Files are mapped on first access, so SSTables skipped by {@link SSTableFooter}
+ * are never mapped.
+ *
+ * <p>Binary search compares key prefixes packed into the index and reads keys from data file
+ * only on prefix ties. Index of SSTables written without prefixes contains only offsets.
+ * If the index ends with {@link LearnedIndex}, binary search is narrowed to the predicted window.
+ *
  * @author incubos
  * @see SSTables
  */
 final class SSTable {
     final int sequence;
 
-    private final MemorySegment index;
-    private final MemorySegment data;
+    private final MappedFile index;
+    private final MappedFile data;
     private final long size;
+    private final SSTableFooter footer;
+    private final ValueLog valueLog;
+    // Whether the index contains key prefixes after offsets
+    private final boolean prefixed;
+    private final long indexEntrySize;
+    private final boolean learned;
+    // Read on first search
+    private volatile LearnedIndex learnedIndex;
+    // From footer or counted on first access
+    private volatile Map<Integer, Long> referenced;
 
     SSTable(
             final int sequence,
-            final MemorySegment index,
-            final MemorySegment data) {
+            final MappedFile index,
+            final MappedFile data,
+            final SSTableFooter footer,
+            final ValueLog valueLog,
+            final long indexSize) {
         this.sequence = sequence;
         this.index = index;
+        this.prefixed = indexSize >= 2L * Long.BYTES * footer.entries();
+        this.indexEntrySize = prefixed ? 2L * Long.BYTES : Long.BYTES;
+        this.learned = indexSize > 2L * Long.BYTES * footer.entries();
         this.data = data;
-        this.size = index.byteSize() / Long.BYTES;
+        this.footer = footer;
+        this.valueLog = valueLog;
+        this.size = footer.entries();
+        this.referenced = footer.referenced();
+    }
+
+    /**
+     * Returns number of entries.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns number of tombstones.
+     */
+    long tombstones() {
+        return footer.tombstones();
+    }
+
+    long dataSize() {
+        return footer.dataSize();
+    }
+
+    /**
+     * Returns bytes of values referenced in each {@link ValueLog} segment including shadowed ones.
+     * SSTables written without them in footer are read once.
+     */
+    Map<Integer, Long> referenced() {
+        Map<Integer, Long> result = referenced;
+        if (result == null) {
+            result = new HashMap<>();
+            final Iterator<Entry<MemorySegment>> entries = get(null, null);
+            while (entries.hasNext()) {
+                if (entries.next() instanceof SeparatedEntry separated) {
+                    result.merge(separated.segment(), separated.value().byteSize(), Long::sum);
+                }
+            }
+            referenced = result;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the key is within SSTable key range without touching the index.
+     */
+    boolean mayContain(final MemorySegment key) {
+        return footer.mayContain(key);
+    }
+
+    /**
+     * Checks whether SSTable may contain keys in {@code [from; to)} without touching the index.
+     */
+    boolean overlaps(
+            final MemorySegment from,
+            final MemorySegment to) {
+        return footer.overlaps(from, to);
     }
 
-    SSTable withSequence(final int sequence) {
-        return new SSTable(
-                sequence,
-                index,
-                data);
+    /**
+     * Checks whether key ranges of SSTables intersect without touching the indexes.
+     */
+    boolean overlaps(final SSTable other) {
+        return footer.overlaps(other.footer);
+    }
+
+    /**
+     * Maps the files if not yet mapped, e.g. before they are removed.
+     */
+    void map() throws IOException {
+        index.map();
+        data.map();
+    }
+
+    boolean mapped() {
+        return index.mapped() && data.mapped();
+    }
+
+    /**
+     * Returns key of the entry with the specified index.
+     */
+    MemorySegment key(final long entry) {
+        final long offset = entryOffset(entry);
+        return data.get().asSlice(
+                offset + Long.BYTES,
+                getLength(offset));
     }
 
     /**
@@ -47,23 +151,49 @@ final class SSTable {
      * Note that this guarantees that the return value will be >= 0
      * if and only if the key is found.
      */
-    private long entryBinarySearch(final MemorySegment key) {
-        long low = 0L;
-        long high = size - 1;
+    private long entryBinarySearch(
+            final MemorySegment key,
+            final TraceContext trace) {
+        final long prefix = prefixed ? MemorySegmentComparator.prefix(key) : 0L;
+        final LearnedIndex model = learnedIndex();
+        if (model == null) {
+            return entryBinarySearch(key, prefix, 0L, size - 1, trace);
+        }
+
+        final long prediction = model.predict(prefix, trace);
+        if (prediction < 0L) {
+            // Less than the first key
+            return -1L;
+        }
+
+        final long low = Math.max(0L, prediction - model.maxError());
+        final long high = Math.min(size - 1, prediction + model.maxError() + model.maxRun());
+        final long result = entryBinarySearch(key, prefix, low, high, trace);
+        if (result >= 0L) {
+            return result;
+        }
+
+        // Make sure the insertion point is not at the window edge by mistake
+        final long insertion = -result - 1;
+        if ((insertion == low && low > 0L && compareEntry(low - 1, key, prefix, trace) >= 0)
+                || (insertion == high + 1 && insertion < size && compareEntry(insertion, key, prefix, trace) <= 0)) {
+            return entryBinarySearch(key, prefix, 0L, size - 1, trace);
+        }
+        return result;
+    }
+
+    private long entryBinarySearch(
+            final MemorySegment key,
+            final long prefix,
+            final long from,
+            final long to,
+            final TraceContext trace) {
+        long low = from;
+        long high = to;
 
         while (low <= high) {
             final long mid = (low + high) >>> 1;
-            final long midEntryOffset = entryOffset(mid);
-            final long midKeyLength = getLength(midEntryOffset);
-            final int compare =
-                    MemorySegmentComparator.compare(
-                            data,
-                            midEntryOffset + Long.BYTES, // Position at key
-                            midKeyLength,
-                            key,
-                            0L,
-                            key.byteSize());
-
+            final int compare = compareEntry(mid, key, prefix, trace);
             if (compare < 0) {
                 low = mid + 1;
             } else if (compare > 0) {
@@ -76,14 +206,69 @@ final class SSTable {
         return -(low + 1);
     }
 
+    /**
+     * Compares key of the entry with the specified index to the key with the specified prefix.
+     */
+    private int compareEntry(
+            final long entry,
+            final MemorySegment key,
+            final long prefix,
+            final TraceContext trace) {
+        if (trace != null) {
+            trace.probes++;
+            trace.bytes += indexEntrySize;
+        }
+        if (prefixed) {
+            final int prefixCompare = Long.compareUnsigned(entryPrefix(entry), prefix);
+            if (prefixCompare != 0) {
+                return prefixCompare;
+            }
+        }
+
+        // Compare the whole key
+        final long entryOffset = entryOffset(entry);
+        final long keyLength = getLength(entryOffset);
+        if (trace != null) {
+            // Key length and key
+            trace.bytes += Long.BYTES + keyLength;
+        }
+        return MemorySegmentComparator.compare(
+                data.get(),
+                entryOffset + Long.BYTES, // Position at key
+                keyLength,
+                key,
+                0L,
+                key.byteSize());
+    }
+
+    private LearnedIndex learnedIndex() {
+        if (!learned) {
+            return null;
+        }
+
+        LearnedIndex result = learnedIndex;
+        if (result == null) {
+            // Racing readers read the same model
+            result = LearnedIndex.read(index.get(), size);
+            learnedIndex = result;
+        }
+        return result;
+    }
+
     private long entryOffset(final long entry) {
-        return index.get(
+        return index.get().get(
+                ValueLayout.OfLong.JAVA_LONG,
+                entry * indexEntrySize);
+    }
+
+    private long entryPrefix(final long entry) {
+        return index.get().get(
                 ValueLayout.OfLong.JAVA_LONG,
-                entry * Long.BYTES);
+                entry * indexEntrySize + Long.BYTES);
     }
 
     private long getLength(final long offset) {
-        return data.get(
+        return data.get().get(
                 ValueLayout.OfLong.JAVA_LONG_UNALIGNED,
                 offset);
     }
@@ -91,8 +276,20 @@ final class SSTable {
     Iterator<Entry<MemorySegment>> get(
             final MemorySegment from,
             final MemorySegment to) {
+        return get(from, to, null);
+    }
+
+    Iterator<Entry<MemorySegment>> get(
+            final MemorySegment from,
+            final MemorySegment to,
+            final TraceContext trace) {
         assert from == null || to == null || MemorySegmentComparator.INSTANCE.compare(from, to) <= 0;
 
+        if (!footer.overlaps(from, to)) {
+            // Skip without touching the index
+            return Collections.emptyIterator();
+        }
+
         // Slice of SSTable in absolute offsets
         final long fromOffset;
         final long toOffset;
@@ -102,7 +299,7 @@ final class SSTable {
             // Start from the beginning
             fromOffset = 0L;
         } else {
-            final long fromEntry = entryBinarySearch(from);
+            final long fromEntry = entryBinarySearch(from, trace);
             if (fromEntry >= 0L) {
                 fromOffset = entryOffset(fromEntry);
             } else if (-fromEntry - 1 == size) {
@@ -117,25 +314,39 @@ final class SSTable {
         // Right offset bound
         if (to == null) {
             // Up to the end
-            toOffset = data.byteSize();
+            toOffset = footer.dataSize();
         } else {
-            final long toEntry = entryBinarySearch(to);
+            final long toEntry = entryBinarySearch(to, trace);
             if (toEntry >= 0L) {
                 toOffset = entryOffset(toEntry);
             } else if (-toEntry - 1 == size) {
                 // Up to the end
-                toOffset = data.byteSize();
+                toOffset = footer.dataSize();
             } else {
                 // Greater but existing key found
                 toOffset = entryOffset(-toEntry - 1);
             }
         }
 
-        return new SliceIterator(fromOffset, toOffset);
+        return new SliceIterator(fromOffset, toOffset, trace);
     }
 
     Entry<MemorySegment> get(final MemorySegment key) {
-        final long entry = entryBinarySearch(key);
+        return find(key, null);
+    }
+
+    /**
+     * Looks up the key accounting reads to {@code trace} if any.
+     */
+    Entry<MemorySegment> find(
+            final MemorySegment key,
+            final TraceContext trace) {
+        if (!footer.mayContain(key)) {
+            // Skip without touching the index
+            return null;
+        }
+
+        final long entry = entryBinarySearch(key, trace);
         if (entry < 0) {
             return null;
         }
@@ -143,28 +354,75 @@ final class SSTable {
         // Skip key (will reuse the argument)
         long offset = entryOffset(entry);
         offset += Long.BYTES + key.byteSize();
+        if (trace != null) {
+            trace.bytes += valueSize(offset);
+        }
+        return readValue(key, offset);
+    }
+
+    /**
+     * Reads value of the entry at the specified offset after the key.
+     */
+    private Entry<MemorySegment> readValue(
+            final MemorySegment key,
+            final long offset) {
         // Extract value length
         final long valueLength = getLength(offset);
         if (valueLength == SSTables.TOMBSTONE_VALUE_LENGTH) {
             // Tombstone encountered
             return new BaseEntry<>(key, null);
+        } else if (valueLength == SSTables.SEPARATED_VALUE_LENGTH) {
+            // Follow the pointer
+            final int segment = (int) getLength(offset + Long.BYTES);
+            final long valueOffset = getLength(offset + 2L * Long.BYTES);
+            final MemorySegment value =
+                    valueLog.get(
+                            segment,
+                            valueOffset,
+                            getLength(offset + 3L * Long.BYTES));
+            return new SeparatedEntry(key, value, valueLog, segment, valueOffset);
+        } else if (valueLength == SSTables.MERGE_OPERAND_VALUE_LENGTH) {
+            // Get operand
+            final MemorySegment operand =
+                    data.get().asSlice(
+                            offset + 2L * Long.BYTES,
+                            getLength(offset + Long.BYTES));
+            return new MergeEntry(key, operand);
         } else {
             // Get value
-            offset += Long.BYTES;
-            final MemorySegment value = data.asSlice(offset, valueLength);
+            final MemorySegment value = data.get().asSlice(offset + Long.BYTES, valueLength);
             return new BaseEntry<>(key, value);
         }
     }
 
+    /**
+     * Returns size of the entry value in data file at the specified offset after the key.
+     */
+    private long valueSize(final long offset) {
+        final long valueLength = getLength(offset);
+        if (valueLength == SSTables.TOMBSTONE_VALUE_LENGTH) {
+            return Long.BYTES;
+        } else if (valueLength == SSTables.SEPARATED_VALUE_LENGTH) {
+            return Long.BYTES * 4L;
+        } else if (valueLength == SSTables.MERGE_OPERAND_VALUE_LENGTH) {
+            return Long.BYTES * 2L + getLength(offset + Long.BYTES);
+        } else {
+            return Long.BYTES + valueLength;
+        }
+    }
+
     private final class SliceIterator implements Iterator<Entry<MemorySegment>> {
         private long offset;
         private final long toOffset;
+        private final TraceContext trace;
 
         private SliceIterator(
                 final long offset,
-                final long toOffset) {
+                final long toOffset,
+                final TraceContext trace) {
             this.offset = offset;
             this.toOffset = toOffset;
+            this.trace = trace;
         }
 
         @Override
@@ -178,27 +436,23 @@ final class SSTable {
                 throw new NoSuchElementException();
             }
 
+            final long start = offset;
+
             // Read key length
             final long keyLength = getLength(offset);
             offset += Long.BYTES;
 
             // Read key
-            final MemorySegment key = data.asSlice(offset, keyLength);
+            final MemorySegment key = data.get().asSlice(offset, keyLength);
             offset += keyLength;
 
-            // Read value length
-            final long valueLength = getLength(offset);
-            offset += Long.BYTES;
-
             // Read value
-            if (valueLength == SSTables.TOMBSTONE_VALUE_LENGTH) {
-                // Tombstone encountered
-                return new BaseEntry<>(key, null);
-            } else {
-                final MemorySegment value = data.asSlice(offset, valueLength);
-                offset += valueLength;
-                return new BaseEntry<>(key, value);
+            final Entry<MemorySegment> result = readValue(key, offset);
+            offset += valueSize(offset);
+            if (trace != null) {
+                trace.bytes += offset - start;
             }
+            return result;
         }
     }
 }
@@ -0,0 +1,271 @@
+package ru.vk.itmo.reference;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SSTable} metadata stored in data file after the entries:
+ * {@code <minKey><maxKey>[<int segment><long bytes>]*<long segments>}
+ * {@code <long minKeyLength><long maxKeyLength><long entries><long tombstones><long magic>}
+ *
+ * <p>Lets readers skip SSTables not overlapping the requested keys without touching the index
+ * and {@link ValueLog} collection count referenced bytes without reading the entries.
+ * Footers of the first version end with another magic and lack the referenced segments.
+ *
+ * @param entries number of entries
+ * @param tombstones number of tombstones
+ * @param minKey the smallest key
+ * @param maxKey the largest key
+ * @param dataSize size of the data file part with entries
+ * @param referenced bytes of values referenced in each {@link ValueLog} segment
+ *     or {@code null} if not recorded
+ */
+record SSTableFooter(
+        long entries,
+        long tombstones,
+        MemorySegment minKey,
+        MemorySegment maxKey,
+        long dataSize,
+        Map<Integer, Long> referenced) {
+    // "FOOTER01"
+    private static final long MAGIC_V1 = 0x464F4F5445523031L;
+    // "FOOTER02"
+    private static final long MAGIC = 0x464F4F5445523032L;
+    private static final long TRAILER_SIZE = 5L * Long.BYTES;
+    private static final long REFERENCE_SIZE = Integer.BYTES + Long.BYTES;
+
+    static void write(
+            final ChannelWriter data,
+            final MemorySegment minKey,
+            final MemorySegment maxKey,
+            final long entries,
+            final long tombstones,
+            final Map<Integer, Long> referenced) throws IOException {
+        data.write(minKey);
+        data.write(maxKey);
+        final MemorySegment references = MemorySegment.ofArray(new byte[(int) (referenced.size() * REFERENCE_SIZE)]);
+        long offset = 0L;
+        for (final Map.Entry<Integer, Long> reference : referenced.entrySet()) {
+            references.set(ValueLayout.JAVA_INT_UNALIGNED, offset, reference.getKey());
+            references.set(ValueLayout.JAVA_LONG_UNALIGNED, offset + Integer.BYTES, reference.getValue());
+            offset += REFERENCE_SIZE;
+        }
+        data.write(references);
+        data.writeLong(referenced.size());
+        data.writeLong(minKey.byteSize());
+        data.writeLong(maxKey.byteSize());
+        data.writeLong(entries);
+        data.writeLong(tombstones);
+        data.writeLong(MAGIC);
+    }
+
+    /**
+     * Reads footer of data file without mapping the whole file.
+     * Keys are copied to heap.
+     *
+     * <p>The last value of SSTable written without footer may end with the magic,
+     * so the footer is accepted only if it is consistent with the file.
+     *
+     * @return footer or {@code null} if SSTable was written without it
+     */
+    static SSTableFooter read(final FileChannel data) throws IOException {
+        final long size = data.size();
+        if (size < TRAILER_SIZE) {
+            return null;
+        }
+
+        final long trailerOffset = size - TRAILER_SIZE;
+        final MemorySegment trailer = readFully(data, trailerOffset, TRAILER_SIZE);
+        final long magic = getLong(trailer, TRAILER_SIZE - Long.BYTES);
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            return null;
+        }
+
+        final long minKeyLength = getLong(trailer, 0L);
+        final long maxKeyLength = getLong(trailer, Long.BYTES);
+        final long entries = getLong(trailer, 2L * Long.BYTES);
+        final long tombstones = getLong(trailer, 3L * Long.BYTES);
+        if (minKeyLength < 0L
+                || maxKeyLength < 0L
+                || entries < 0L
+                || tombstones < 0L
+                || tombstones > entries) {
+            // Just the end of the last value
+            return null;
+        }
+
+        long keysEnd = trailerOffset;
+        Map<Integer, Long> referenced = null;
+        if (magic == MAGIC) {
+            if (trailerOffset < Long.BYTES) {
+                return null;
+            }
+            final long segments = getLong(readFully(data, trailerOffset - Long.BYTES, Long.BYTES), 0L);
+            if (segments < 0L
+                    || segments > (trailerOffset - Long.BYTES) / REFERENCE_SIZE
+                    || segments > Integer.MAX_VALUE / REFERENCE_SIZE) {
+                return null;
+            }
+            final long referencesOffset = trailerOffset - Long.BYTES - segments * REFERENCE_SIZE;
+            final MemorySegment references = readFully(data, referencesOffset, segments * REFERENCE_SIZE);
+            referenced = new HashMap<>();
+            for (long offset = 0L; offset < references.byteSize(); offset += REFERENCE_SIZE) {
+                referenced.put(
+                        references.get(ValueLayout.JAVA_INT_UNALIGNED, offset),
+                        references.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + Integer.BYTES));
+            }
+            keysEnd = referencesOffset;
+        }
+        if (minKeyLength > keysEnd
+                || maxKeyLength > keysEnd - minKeyLength
+                || minKeyLength + maxKeyLength > Integer.MAX_VALUE - Long.BYTES) {
+            return null;
+        }
+
+        final long keysOffset = keysEnd - minKeyLength - maxKeyLength;
+        final MemorySegment keys = readFully(data, keysOffset, minKeyLength + maxKeyLength);
+        final MemorySegment minKey = keys.asSlice(0L, minKeyLength);
+        if (!fits(data, entries, minKey, keysOffset)) {
+            return null;
+        }
+
+        return new SSTableFooter(
+                entries,
+                tombstones,
+                minKey,
+                keys.asSlice(minKeyLength, maxKeyLength),
+                keysOffset,
+                referenced == null ? null : Collections.unmodifiableMap(referenced));
+    }
+
+    /**
+     * Checks that entries fit before the footer starting with the smallest key.
+     */
+    private static boolean fits(
+            final FileChannel data,
+            final long entries,
+            final MemorySegment minKey,
+            final long dataSize) throws IOException {
+        if (entries == 0L) {
+            return minKey.byteSize() == 0L && dataSize == 0L;
+        }
+
+        // At least key and value lengths per entry
+        if (entries > dataSize / (2L * Long.BYTES) || minKey.byteSize() > dataSize - Long.BYTES) {
+            return false;
+        }
+
+        final MemorySegment first = readFully(data, 0L, Long.BYTES + minKey.byteSize());
+        return getLong(first, 0L) == minKey.byteSize()
+                && MemorySegment.mismatch(first, Long.BYTES, first.byteSize(), minKey, 0L, minKey.byteSize()) < 0L;
+    }
+
+    private static MemorySegment readFully(
+            final FileChannel channel,
+            final long position,
+            final long length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated footer");
+            }
+        }
+        return MemorySegment.ofArray(buffer.array());
+    }
+
+    /**
+     * Builds footer of SSTable written without it scanning the entries if needed.
+     *
+     * @param tombstones number of tombstones or negative if unknown
+     */
+    static SSTableFooter legacy(
+            final MemorySegment index,
+            final MemorySegment data,
+            final long tombstones) {
+        final long entries = index.byteSize() / Long.BYTES;
+        if (entries == 0L) {
+            return new SSTableFooter(
+                    0L,
+                    0L,
+                    MemorySegment.NULL,
+                    MemorySegment.NULL,
+                    data.byteSize(),
+                    null);
+        }
+
+        return new SSTableFooter(
+                entries,
+                tombstones < 0L ? countTombstones(index, data) : tombstones,
+                key(data, getLong(index, 0L)),
+                key(data, getLong(index, (entries - 1) * Long.BYTES)),
+                data.byteSize(),
+                null);
+    }
+
+    private static long countTombstones(
+            final MemorySegment index,
+            final MemorySegment data) {
+        long result = 0L;
+        for (long offset = 0L; offset < index.byteSize(); offset += Long.BYTES) {
+            final long entryOffset = getLong(index, offset);
+            final long keyLength = getLong(data, entryOffset);
+            if (getLong(data, entryOffset + Long.BYTES + keyLength) == SSTables.TOMBSTONE_VALUE_LENGTH) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static MemorySegment key(
+            final MemorySegment data,
+            final long entryOffset) {
+        return data.asSlice(
+                entryOffset + Long.BYTES,
+                getLong(data, entryOffset));
+    }
+
+    private static long getLong(
+            final MemorySegment segment,
+            final long offset) {
+        return segment.get(
+                ValueLayout.OfLong.JAVA_LONG_UNALIGNED,
+                offset);
+    }
+
+    /**
+     * Checks whether SSTable may contain keys in {@code [from; to)}.
+     */
+    boolean overlaps(
+            final MemorySegment from,
+            final MemorySegment to) {
+        return entries > 0L
+                && (to == null || MemorySegmentComparator.INSTANCE.compare(minKey, to) < 0)
+                && (from == null || MemorySegmentComparator.INSTANCE.compare(maxKey, from) >= 0);
+    }
+
+    /**
+     * Checks whether key ranges intersect.
+     */
+    boolean overlaps(final SSTableFooter other) {
+        return entries > 0L
+                && other.entries > 0L
+                && MemorySegmentComparator.INSTANCE.compare(minKey, other.maxKey) <= 0
+                && MemorySegmentComparator.INSTANCE.compare(other.minKey, maxKey) <= 0;
+    }
+
+    /**
+     * Checks whether the key is within SSTable key range.
+     */
+    boolean mayContain(final MemorySegment key) {
+        return entries > 0L
+                && MemorySegmentComparator.INSTANCE.compare(minKey, key) <= 0
+                && MemorySegmentComparator.INSTANCE.compare(maxKey, key) >= 0;
+    }
+}
@@ -2,40 +2,74 @@ package ru.vk.itmo.reference;
 
 import ru.vk.itmo.Entry;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
-import java.lang.foreign.ValueLayout;
-import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
 
 /**
  * Writes {@link Entry} {@link Iterator} to SSTable on disk.
  *
- * <p>Index file {@code <N>.index} contains {@code long} offsets to entries in data file:
- * {@code [offset0, offset1, ...]}
+ * <p>Index file {@code <N>.index} contains {@code long} offsets to entries in data file
+ * packed with {@link MemorySegmentComparator#prefix prefixes} of their keys:
+ * {@code [offset0, prefix0, offset1, prefix1, ...]}
+ * optionally followed by {@link LearnedIndex} over the prefixes.
  *
  * <p>Data file {@code <N>.data} contains serialized entries:
  * {@code <long keyLength><key><long valueLength><value>}
  *
  * <p>Tombstones are encoded as {@code valueLength} {@code -1} and no subsequent value.
  *
+ * <p>{@link MergeEntry} operands are encoded as {@code valueLength} {@code -3} and subsequent
+ * {@code <long operandLength><operand>}. Operands are never separated.
+ *
+ * <p>Values separated to {@link ValueLog} are encoded as {@code valueLength} {@code -2} and subsequent pointer:
+ * {@code <long segment><long offset><long length>}
+ *
+ * <p>Keys and values are copied to off-heap staging buffers at most once
+ * and large ones are written directly from their {@link MemorySegment}s.
+ *
  * @author incubos
  */
 final class SSTableWriter {
-    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long INDEX_BUFFER_SIZE = 64 * 1024;
+    private static final long DATA_BUFFER_SIZE = 1024 * 1024;
+
+    private final ValueLog valueLog;
+    // Value log segments to move values from
+    private final IntPredicate relocated;
+    private final boolean learnedIndex;
+
+    // Staging buffers of the current write
+    private Arena staging;
+    // Value log segment being written along with SSTable if any
+    private ChannelWriter values;
+    // Bytes of values referenced in each value log segment by the current write
+    private Map<Integer, Long> referenced;
+
+    SSTableWriter(final ValueLog valueLog) {
+        this(valueLog, segment -> false, false);
+    }
 
-    // Reusable buffers to eliminate allocations.
-    // But excessive memory copying is still there :(
-    // Long cell
-    private final ByteArraySegment longBuffer = new ByteArraySegment(Long.BYTES);
-    // Growable blob cell
-    private final ByteArraySegment blobBuffer = new ByteArraySegment(512);
+    /**
+     * Copies values from {@code relocated} value log segments to the new one.
+     *
+     * @param learnedIndex whether to append {@link LearnedIndex} to the index if it fits
+     */
+    SSTableWriter(
+            final ValueLog valueLog,
+            final IntPredicate relocated,
+            final boolean learnedIndex) {
+        this.valueLog = valueLog;
+        this.relocated = relocated;
+        this.learnedIndex = learnedIndex;
+    }
 
     void write(
             final Path baseDir,
@@ -45,35 +79,75 @@ final class SSTableWriter {
         final Path tempIndexName = SSTables.tempIndexName(baseDir, sequence);
         final Path tempDataName = SSTables.tempDataName(baseDir, sequence);
 
-        // Delete temporary files to eliminate tails
-        Files.deleteIfExists(tempIndexName);
-        Files.deleteIfExists(tempDataName);
-
         // Iterate in a single pass!
-        // Will write through FileChannel despite extra memory copying and
-        // no buffering (which may be implemented later).
-        // Looking forward to MemorySegment facilities in FileChannel!
-        try (OutputStream index =
-                     new BufferedOutputStream(
-                             new FileOutputStream(
-                                     tempIndexName.toFile()),
-                             BUFFER_SIZE);
-             OutputStream data =
-                     new BufferedOutputStream(
-                             new FileOutputStream(
-                                     tempDataName.toFile()),
-                             BUFFER_SIZE)) {
-            long entryOffset = 0L;
-
-            // Iterate and serialize
-            while (entries.hasNext()) {
-                // First write offset to the entry
-                writeLong(entryOffset, index);
-
-                // Then write the entry
-                final Entry<MemorySegment> entry = entries.next();
-                entryOffset += writeEntry(entry, data);
+        try (Arena arena = Arena.ofConfined()) {
+            staging = arena;
+            referenced = new TreeMap<>();
+            try (ChannelWriter index =
+                         new ChannelWriter(
+                                 tempIndexName,
+                                 arena,
+                                 INDEX_BUFFER_SIZE);
+                 ChannelWriter data =
+                         new ChannelWriter(
+                                 tempDataName,
+                                 arena,
+                                 DATA_BUFFER_SIZE)) {
+                // Iterate and serialize
+                MemorySegment minKey = MemorySegment.NULL;
+                MemorySegment maxKey = MemorySegment.NULL;
+                long count = 0L;
+                long tombstones = 0L;
+                final LearnedIndex.Builder model = learnedIndex ? new LearnedIndex.Builder() : null;
+                while (entries.hasNext()) {
+                    // First write offset to the entry and its key prefix
+                    final Entry<MemorySegment> entry = entries.next();
+                    final long prefix = MemorySegmentComparator.prefix(entry.key());
+                    index.writeLong(data.written());
+                    index.writeLong(prefix);
+                    if (model != null) {
+                        model.add(prefix);
+                    }
+
+                    // Then write the entry
+                    writeEntry(entry, sequence, data);
+
+                    // Keys are sorted
+                    if (count == 0L) {
+                        minKey = entry.key();
+                    }
+                    maxKey = entry.key();
+                    count++;
+                    if (entry.value() == null) {
+                        tombstones++;
+                    }
+                }
+
+                if (model != null && model.fits()) {
+                    model.write(index);
+                }
+
+                SSTableFooter.write(
+                        data,
+                        minKey,
+                        maxKey,
+                        count,
+                        tombstones,
+                        referenced);
+            } finally {
+                if (values != null) {
+                    values.close();
+                }
             }
+        } finally {
+            staging = null;
+            referenced = null;
+        }
+
+        // Values go first
+        if (values != null) {
+            valueLog.add(sequence);
+            values = null;
         }
 
         // Publish files atomically
@@ -98,69 +172,75 @@ final class SSTableWriter {
                 StandardCopyOption.REPLACE_EXISTING);
     }
 
-    private void writeLong(
-            final long value,
-            final OutputStream os) throws IOException {
-        longBuffer.segment().set(
-                ValueLayout.OfLong.JAVA_LONG_UNALIGNED,
-                0,
-                value);
-        longBuffer.withArray(os::write);
-    }
-
-    private void writeSegment(
-            final MemorySegment value,
-            final OutputStream os) throws IOException {
-        final long size = value.byteSize();
-        blobBuffer.ensureCapacity(size);
-        MemorySegment.copy(
-                value,
-                0L,
-                blobBuffer.segment(),
-                0L,
-                size);
-        blobBuffer.withArray(array ->
-                os.write(
-                        array,
-                        0,
-                        (int) size));
-    }
-
     /**
-     * Writes {@link Entry} to {@link FileChannel}.
-     *
-     * @return written bytes
+     * Writes {@link Entry} to data file.
      */
-    private long writeEntry(
+    private void writeEntry(
             final Entry<MemorySegment> entry,
-            final OutputStream os) throws IOException {
+            final int sequence,
+            final ChannelWriter data) throws IOException {
         final MemorySegment key = entry.key();
         final MemorySegment value = entry.value();
-        long result = 0L;
 
-        // Key size
-        writeLong(key.byteSize(), os);
-        result += Long.BYTES;
-
-        // Key
-        writeSegment(key, os);
-        result += key.byteSize();
+        // Key size and key
+        data.writeLong(key.byteSize());
+        data.write(key);
 
         // Value size and possibly value
         if (value == null) {
             // Tombstone
-            writeLong(SSTables.TOMBSTONE_VALUE_LENGTH, os);
-            result += Long.BYTES;
+            data.writeLong(SSTables.TOMBSTONE_VALUE_LENGTH);
+        } else if (entry instanceof MergeEntry) {
+            // Operand length and operand
+            data.writeLong(SSTables.MERGE_OPERAND_VALUE_LENGTH);
+            data.writeLong(value.byteSize());
+            data.write(value);
+        } else if (entry instanceof SeparatedEntry separated
+                && separated.valueLog() == valueLog
+                && !relocated.test(separated.segment())) {
+            // Just move the pointer
+            writePointer(separated.segment(), separated.offset(), value.byteSize(), data);
+        } else if (value.byteSize() >= valueLog.threshold()) {
+            // Separate
+            writePointer(sequence, appendValue(sequence, value), value.byteSize(), data);
         } else {
-            // Value length
-            writeLong(value.byteSize(), os);
-            result += Long.BYTES;
+            // Value length and value
+            data.writeLong(value.byteSize());
+            data.write(value);
+        }
+    }
 
-            // Value
-            writeSegment(value, os);
-            result += value.byteSize();
+    private void writePointer(
+            final int segment,
+            final long offset,
+            final long length,
+            final ChannelWriter data) throws IOException {
+        referenced.merge(segment, length, Long::sum);
+        data.writeLong(SSTables.SEPARATED_VALUE_LENGTH);
+        data.writeLong(segment);
+        data.writeLong(offset);
+        data.writeLong(length);
+    }
+
+    /**
+     * Appends value to value log segment written along with SSTable.
+     *
+     * @return offset of the value in segment
+     */
+    private long appendValue(
+            final int sequence,
+            final MemorySegment value) throws IOException {
+        if (values == null) {
+            valueLog.pin(sequence);
+            values =
+                    new ChannelWriter(
+                            valueLog.name(sequence),
+                            staging,
+                            DATA_BUFFER_SIZE);
         }
 
+        final long result = values.written();
+        values.write(value);
         return result;
     }
 }
@@ -1,7 +1,7 @@
 package ru.vk.itmo.reference;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.nio.channels.FileChannel;
@@ -11,20 +11,43 @@ import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 /**
  * Provides {@link SSTable} management facilities: dumping and discovery.
  *
+ * <p>Live SSTables are listed in {@code manifest} file by sequence from freshest to oldest,
+ * one per line, and terminated by {@code end} line. The manifest is durably replaced
+ * at once, so a set of SSTables (e.g. compaction output) is published atomically.
+ * Files not listed in a complete manifest are leftovers of interrupted flushes or compactions.
+ * Manifests written before the terminator only prove leftovers above the freshest listed
+ * sequence. Empty or unparsable manifest is reported as corruption and nothing is removed.
+ *
+ * <p>Entry and tombstone counts and key range of SSTable are kept in {@link SSTableFooter}.
+ * Discovery reads just the footers, while the files are mapped on first access.
+ *
  * @author incubos
  */
 final class SSTables {
     public static final String INDEX_SUFFIX = ".index";
     public static final String DATA_SUFFIX = ".data";
     public static final long TOMBSTONE_VALUE_LENGTH = -1L;
+    public static final long SEPARATED_VALUE_LENGTH = -2L;
+    public static final long MERGE_OPERAND_VALUE_LENGTH = -3L;
 
     private static final String TEMP_SUFFIX = ".tmp";
+    private static final String MANIFEST_NAME = "manifest";
+    private static final String MANIFEST_SEPARATOR = " ";
+    private static final String MANIFEST_END = "end";
 
     /**
      * Can't instantiate.
@@ -59,64 +82,279 @@ final class SSTables {
 
     /**
      * Returns {@link List} of {@link SSTable}s from <b>freshest</b> to oldest.
+     *
+     * <p>Only footers are read concurrently by {@link Options#openThreads()}
+     * reporting progress to {@link Options#openListener()}.
      */
     static List<SSTable> discover(
             final Arena arena,
-            final Path baseDir) throws IOException {
+            final Path baseDir,
+            final ValueLog valueLog,
+            final Options options) throws IOException {
         if (!Files.exists(baseDir)) {
             return Collections.emptyList();
         }
 
-        final List<SSTable> result = new ArrayList<>();
-        try (Stream<Path> files = Files.list(baseDir)) {
-            files.forEach(file -> {
-                final String fileName = file.getFileName().toString();
-                if (!fileName.endsWith(DATA_SUFFIX)) {
-                    // Skip non data
-                    return;
-                }
-
-                final int sequence =
-                        // <N>.data -> N
-                        Integer.parseInt(
-                                fileName.substring(
-                                        0,
-                                        fileName.length() - DATA_SUFFIX.length()));
-
-                try {
-                    result.add(open(arena, baseDir, sequence));
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            });
+        final Path manifest = baseDir.resolve(MANIFEST_NAME);
+        if (!Files.exists(manifest)) {
+            return discoverWithoutManifest(arena, baseDir, valueLog, options);
+        }
+
+        List<String> lines = Files.readAllLines(manifest);
+        final boolean complete = !lines.isEmpty() && MANIFEST_END.equals(lines.getLast());
+        if (complete) {
+            lines = lines.subList(0, lines.size() - 1);
+        } else if (lines.isEmpty()) {
+            throw new IOException("Corrupted manifest " + manifest + ": empty");
+        }
+
+        final List<Callable<SSTable>> tasks = new ArrayList<>();
+        final Set<Integer> live = new HashSet<>();
+        int freshest = 0;
+        for (final String line : lines) {
+            final String[] fields = line.split(MANIFEST_SEPARATOR);
+            final int sequence;
+            final long tombstones;
+            try {
+                sequence = Integer.parseInt(fields[0]);
+                // Tombstones were listed before footers
+                tombstones = fields.length > 1 ? Long.parseLong(fields[1]) : -1L;
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupted manifest " + manifest + ": '" + line + "'", e);
+            }
+            if (sequence < 0 || !live.add(sequence)) {
+                throw new IOException("Corrupted manifest " + manifest + ": '" + line + "'");
+            }
+            freshest = Math.max(freshest, sequence);
+            tasks.add(() -> open(arena, baseDir, sequence, tombstones, valueLog));
+        }
+        final List<SSTable> result = openAll(tasks, options);
+
+        // Remove proven leftovers only
+        for (final int sequence : listSequences(baseDir)) {
+            if (!live.contains(sequence) && (complete || sequence > freshest)) {
+                remove(baseDir, sequence);
+            }
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Discovers SSTables by file names and creates manifest.
+     */
+    private static List<SSTable> discoverWithoutManifest(
+            final Arena arena,
+            final Path baseDir,
+            final ValueLog valueLog,
+            final Options options) throws IOException {
+        // First complete promotion of compacted SSTables
+        promote(
+                baseDir,
+                0,
+                1);
+
+        final List<Callable<SSTable>> tasks = new ArrayList<>();
+        for (final int sequence : listSequences(baseDir)) {
+            tasks.add(() -> open(arena, baseDir, sequence, -1L, valueLog));
         }
+        final List<SSTable> result = new ArrayList<>(openAll(tasks, options));
 
         // Sort from freshest to oldest
         result.sort((o1, o2) -> Integer.compare(o2.sequence, o1.sequence));
 
+        writeManifest(baseDir, result);
+
         return Collections.unmodifiableList(result);
     }
 
+    /**
+     * Opens SSTables concurrently keeping the order of tasks.
+     */
+    private static List<SSTable> openAll(
+            final List<Callable<SSTable>> tasks,
+            final Options options) throws IOException {
+        final int total = tasks.size();
+        final AtomicInteger opened = new AtomicInteger();
+        final List<Callable<SSTable>> reporting = new ArrayList<>(total);
+        for (final Callable<SSTable> task : tasks) {
+            reporting.add(() -> {
+                final SSTable result = task.call();
+                options.openListener().opened(opened.incrementAndGet(), total);
+                return result;
+            });
+        }
+
+        final AtomicInteger openerId = new AtomicInteger();
+        final List<SSTable> result = new ArrayList<>(total);
+        try (ExecutorService opener =
+                     Executors.newFixedThreadPool(
+                             Math.max(1, Math.min(options.openThreads(), total)),
+                             r -> {
+                                 final Thread thread = new Thread(r);
+                                 thread.setName("opener-" + openerId.incrementAndGet());
+                                 return thread;
+                             })) {
+            for (final Future<SSTable> future : opener.invokeAll(reporting)) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening SSTables");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Can't open SSTable", e.getCause());
+        }
+        return result;
+    }
+
+    private static List<Integer> listSequences(final Path baseDir) throws IOException {
+        try (Stream<Path> files = Files.list(baseDir)) {
+            return files
+                    .map(file -> file.getFileName().toString())
+                    // Skip non data
+                    .filter(fileName -> fileName.endsWith(DATA_SUFFIX))
+                    // <N>.data -> N
+                    .map(fileName ->
+                            Integer.parseInt(
+                                    fileName.substring(
+                                            0,
+                                            fileName.length() - DATA_SUFFIX.length())))
+                    .toList();
+        }
+    }
+
+    /**
+     * Durably replaces manifest with {@link SSTable}s from <b>freshest</b> to oldest.
+     */
+    static void writeManifest(
+            final Path baseDir,
+            final List<SSTable> ssTables) throws IOException {
+        final List<String> lines = new ArrayList<>(ssTables.size() + 1);
+        for (final SSTable ssTable : ssTables) {
+            lines.add(Integer.toString(ssTable.sequence));
+        }
+        lines.add(MANIFEST_END);
+
+        Directories.replace(baseDir.resolve(MANIFEST_NAME), lines);
+    }
+
+    /**
+     * Hard-links manifest listing {@code ssTables} to {@code targetDir}.
+     * Replacement of the original manifest doesn't affect the link.
+     */
+    static void linkManifest(
+            final Path baseDir,
+            final Path targetDir,
+            final List<SSTable> ssTables) throws IOException {
+        final Path manifest = baseDir.resolve(MANIFEST_NAME);
+        if (Files.exists(manifest)) {
+            Files.createLink(targetDir.resolve(MANIFEST_NAME), manifest);
+        } else {
+            // Nothing was published yet
+            writeManifest(targetDir, ssTables);
+        }
+    }
+
     static SSTable open(
             final Arena arena,
             final Path baseDir,
-            final int sequence) throws IOException {
-        final MemorySegment index =
-                mapReadOnly(
-                        arena,
-                        indexName(baseDir, sequence));
-        final MemorySegment data =
-                mapReadOnly(
-                        arena,
-                        dataName(baseDir, sequence));
+            final int sequence,
+            final ValueLog valueLog) throws IOException {
+        return open(
+                arena,
+                baseDir,
+                sequence,
+                -1L,
+                valueLog);
+    }
 
+    /**
+     * Opens SSTable reading only its footer or building missing one.
+     *
+     * @param tombstones number of tombstones if SSTable was written without footer or negative if unknown
+     */
+    private static SSTable open(
+            final Arena arena,
+            final Path baseDir,
+            final int sequence,
+            final long tombstones,
+            final ValueLog valueLog) throws IOException {
+        final Path indexFile = indexName(baseDir, sequence);
+        final Path dataFile = dataName(baseDir, sequence);
+
+        final SSTableFooter footer = footer(baseDir, sequence);
+        if (footer != null) {
+            // Map on first access
+            return new SSTable(
+                    sequence,
+                    new MappedFile(arena, indexFile),
+                    new MappedFile(arena, dataFile),
+                    footer,
+                    valueLog,
+                    Files.size(indexFile));
+        }
+
+        // Written without footer
+        final MemorySegment index = mapReadOnly(arena, indexFile);
+        final MemorySegment data = mapReadOnly(arena, dataFile);
         return new SSTable(
                 sequence,
-                index,
-                data);
+                new MappedFile(index),
+                new MappedFile(data),
+                SSTableFooter.legacy(index, data, tombstones),
+                valueLog,
+                index.byteSize());
+    }
+
+    /**
+     * Reads footer of SSTable.
+     *
+     * @return footer or {@code null} if SSTable was written without it
+     */
+    static SSTableFooter footer(
+            final Path baseDir,
+            final int sequence) throws IOException {
+        try (FileChannel channel =
+                     FileChannel.open(
+                             dataName(baseDir, sequence),
+                             StandardOpenOption.READ)) {
+            final SSTableFooter footer = SSTableFooter.read(channel);
+            // At least offset per entry
+            if (footer == null || Files.size(indexName(baseDir, sequence)) / Long.BYTES < footer.entries()) {
+                return null;
+            }
+            return footer;
+        }
     }
 
-    private static MemorySegment mapReadOnly(
+    /**
+     * Hard-links SSTable files from another directory or copies them if not possible.
+     * Like the writer, publishes index first and data last.
+     */
+    static void link(
+            final Path sourceDir,
+            final int sourceSequence,
+            final Path baseDir,
+            final int sequence) throws IOException {
+        linkOrCopy(indexName(sourceDir, sourceSequence), indexName(baseDir, sequence));
+        linkOrCopy(dataName(sourceDir, sourceSequence), dataName(baseDir, sequence));
+    }
+
+    private static void linkOrCopy(
+            final Path source,
+            final Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            // E.g. another file system
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static MemorySegment mapReadOnly(
             final Arena arena,
             final Path file) throws IOException {
         try (FileChannel channel =
@@ -131,15 +369,25 @@ final class SSTables {
         }
     }
 
+    /**
+     * Removes replaced SSTable mapping it first for readers still iterating over it.
+     */
+    static void remove(
+            final Path baseDir,
+            final SSTable ssTable) throws IOException {
+        ssTable.map();
+        remove(baseDir, ssTable.sequence);
+    }
+
     static void remove(
             final Path baseDir,
             final int sequence) throws IOException {
         // First delete data file to make SSTable invisible
         Files.delete(dataName(baseDir, sequence));
-        Files.delete(indexName(baseDir, sequence));
+        Files.deleteIfExists(indexName(baseDir, sequence));
     }
 
-    static void promote(
+    private static void promote(
             final Path baseDir,
             final int from,
             final int to) throws IOException {
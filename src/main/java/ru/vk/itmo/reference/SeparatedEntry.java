@@ -0,0 +1,24 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * {@link Entry} with value stored in {@link ValueLog}.
+ *
+ * <p>Keeps the pointer, so the value is not copied when rewritten to another SSTable.
+ *
+ * @param key key
+ * @param value value mapped from value log segment
+ * @param valueLog owner of the segment
+ * @param segment value log segment
+ * @param offset offset of the value in segment
+ */
+record SeparatedEntry(
+        MemorySegment key,
+        MemorySegment value,
+        ValueLog valueLog,
+        int segment,
+        long offset) implements Entry<MemorySegment> {
+}
@@ -0,0 +1,87 @@
+package ru.vk.itmo.reference;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executes tasks one by one in submission order on a shared {@link Executor}.
+ *
+ * <p>Every task is submitted separately, so a long queue doesn't hold a shared thread
+ * while tasks of other DAOs wait.
+ */
+final class SerialExecutor implements Executor {
+    private final Executor executor;
+
+    private final Lock lock = new ReentrantLock();
+    // Signalled when the queue is drained
+    private final Condition idle = lock.newCondition();
+    // Guarded by lock
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    // Guarded by lock
+    private boolean active;
+
+    SerialExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        lock.lock();
+        try {
+            tasks.add(task);
+            if (active) {
+                // Scheduled after the running one
+                return;
+            }
+            active = true;
+        } finally {
+            lock.unlock();
+        }
+
+        executor.execute(this::runNext);
+    }
+
+    private void runNext() {
+        final Runnable task;
+        lock.lock();
+        try {
+            task = tasks.remove();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            task.run();
+        } finally {
+            lock.lock();
+            try {
+                if (tasks.isEmpty()) {
+                    active = false;
+                    idle.signalAll();
+                } else {
+                    executor.execute(this::runNext);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits for the submitted tasks to complete.
+     */
+    void awaitIdle() throws InterruptedException {
+        lock.lock();
+        try {
+            while (active) {
+                idle.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
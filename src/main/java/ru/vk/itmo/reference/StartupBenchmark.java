@@ -0,0 +1,109 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures time from {@link ReferenceDao} construction to the first read
+ * over many SSTables with disjoint key ranges.
+ *
+ * <p>Usage: {@code StartupBenchmark [sstables...]}, 1k and 10k SSTables by default.
+ */
+public final class StartupBenchmark {
+    private static final int ENTRIES_PER_SSTABLE = 16;
+    private static final int RUNS = 5;
+
+    private StartupBenchmark() {
+        // Only main
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final int[] counts =
+                args.length == 0
+                        ? new int[]{1_000, 10_000}
+                        : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        for (final int count : counts) {
+            final Path baseDir = Files.createTempDirectory("startup");
+            try {
+                populate(baseDir, count);
+                run(baseDir, count);
+            } finally {
+                Directories.delete(baseDir);
+            }
+        }
+    }
+
+    private static void populate(
+            final Path baseDir,
+            final int count) throws IOException {
+        try (Arena arena = Arena.ofShared()) {
+            final ValueLog valueLog =
+                    ValueLog.open(
+                            arena,
+                            baseDir,
+                            Options.defaults().valueSeparationThreshold());
+            final SSTableWriter writer = new SSTableWriter(valueLog);
+            final List<SSTable> ssTables = new ArrayList<>(count);
+            for (int sequence = count; sequence > 0; sequence--) {
+                final List<Entry<MemorySegment>> entries = new ArrayList<>(ENTRIES_PER_SSTABLE);
+                for (int entry = 0; entry < ENTRIES_PER_SSTABLE; entry++) {
+                    final MemorySegment key = key(sequence, entry);
+                    entries.add(new BaseEntry<>(key, key));
+                }
+                writer.write(baseDir, sequence, entries.iterator());
+                ssTables.add(SSTables.open(arena, baseDir, sequence, valueLog));
+            }
+            SSTables.writeManifest(baseDir, ssTables);
+        }
+    }
+
+    private static void run(
+            final Path baseDir,
+            final int count) throws IOException {
+        final Config config = new Config(baseDir, 1024 * 1024);
+        final MemorySegment key = key(count / 2, ENTRIES_PER_SSTABLE / 2);
+        final long[] openNanos = new long[RUNS];
+        final long[] firstReadNanos = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            final long start = System.nanoTime();
+            try (ReferenceDao dao = new ReferenceDao(config)) {
+                final long opened = System.nanoTime();
+                if (dao.get(key) == null) {
+                    throw new IllegalStateException("Missing key");
+                }
+                final long read = System.nanoTime();
+                openNanos[run] = opened - start;
+                firstReadNanos[run] = read - start;
+            }
+        }
+
+        Arrays.sort(openNanos);
+        Arrays.sort(firstReadNanos);
+        System.out.printf(
+                "%d SSTables: open %d ms, first read %d ms (median of %d)%n",
+                count,
+                TimeUnit.NANOSECONDS.toMillis(openNanos[RUNS / 2]),
+                TimeUnit.NANOSECONDS.toMillis(firstReadNanos[RUNS / 2]),
+                RUNS);
+    }
+
+    private static MemorySegment key(
+            final int sequence,
+            final int entry) {
+        return MemorySegment.ofArray(
+                String.format("%010d%04d", sequence, entry)
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,68 @@
+package ru.vk.itmo.reference;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits key space of SSTables into disjoint ranges compacted independently.
+ */
+final class Subcompactions {
+    // Not to produce tiny SSTables
+    static final long MIN_PARTITION_BYTES = 1L << 20;
+    // Samples per partition to smooth out key distribution skew
+    private static final int SAMPLES_PER_PARTITION = 32;
+
+    private Subcompactions() {
+        // Only static methods
+    }
+
+    /**
+     * Returns sorted partition boundaries, so that {@code n} boundaries define {@code n + 1} ranges:
+     * {@code [null; b0), [b0; b1), ..., [bn-1; null)}.
+     */
+    static List<MemorySegment> boundaries(
+            final List<SSTable> ssTables,
+            final int maxPartitions) {
+        long dataSize = 0L;
+        long entries = 0L;
+        for (final SSTable ssTable : ssTables) {
+            dataSize += ssTable.dataSize();
+            entries += ssTable.size();
+        }
+
+        final long partitions =
+                Math.min(
+                        maxPartitions,
+                        Math.min(
+                                entries,
+                                dataSize / MIN_PARTITION_BYTES));
+        if (partitions < 2) {
+            // Single range
+            return List.of();
+        }
+
+        // Sample index of every SSTable with the same step,
+        // so that bigger SSTables contribute proportionally more keys
+        final long step = Math.max(1L, entries / (partitions * SAMPLES_PER_PARTITION));
+        final List<MemorySegment> samples = new ArrayList<>();
+        for (final SSTable ssTable : ssTables) {
+            for (long entry = 0; entry < ssTable.size(); entry += step) {
+                samples.add(ssTable.key(entry));
+            }
+        }
+        samples.sort(MemorySegmentComparator.INSTANCE);
+
+        // Pick quantiles skipping duplicates
+        final List<MemorySegment> result = new ArrayList<>((int) partitions - 1);
+        for (long i = 1; i < partitions; i++) {
+            final MemorySegment boundary = samples.get((int) (i * samples.size() / partitions));
+            if (result.isEmpty()
+                    || MemorySegmentComparator.INSTANCE.compare(result.getLast(), boundary) < 0) {
+                result.add(boundary);
+            }
+        }
+
+        return result;
+    }
+}
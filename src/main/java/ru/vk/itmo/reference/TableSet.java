@@ -8,7 +8,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Data set in various tables.
@@ -17,28 +16,26 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 final class TableSet {
     final MemTable memTable;
-    final AtomicLong memTableSize;
-    // null or read-only
-    final MemTable flushingTable;
+    // Read-only from freshest to oldest
+    final List<MemTable> flushingTables;
     // From freshest to oldest
     final List<SSTable> ssTables;
 
     private TableSet(
             final MemTable memTable,
-            final AtomicLong memTableSize,
-            final MemTable flushingTable,
+            final List<MemTable> flushingTables,
             final List<SSTable> ssTables) {
         this.memTable = memTable;
-        this.memTableSize = memTableSize;
-        this.flushingTable = flushingTable;
+        this.flushingTables = flushingTables;
         this.ssTables = ssTables;
     }
 
-    static TableSet from(final List<SSTable> ssTables) {
+    static TableSet from(
+            final List<SSTable> ssTables,
+            final MemTable memTable) {
         return new TableSet(
-                new MemTable(),
-                new AtomicLong(),
-                null,
+                memTable,
+                Collections.emptyList(),
                 ssTables);
     }
 
@@ -49,37 +46,85 @@ final class TableSet {
                 .orElse(0) + 1;
     }
 
-    TableSet flushing() {
+    /**
+     * Switches {@link MemTable} to flushing replacing it with the empty one.
+     */
+    TableSet flushing(final MemTable empty) {
         if (memTable.isEmpty()) {
             throw new IllegalStateException("Nothing to flush");
         }
 
-        if (flushingTable != null) {
-            throw new IllegalStateException("Already flushing");
-        }
+        // The freshest goes first
+        final List<MemTable> newFlushingTables = new ArrayList<>(flushingTables.size() + 1);
+        newFlushingTables.add(memTable);
+        newFlushingTables.addAll(flushingTables);
 
         return new TableSet(
-                new MemTable(),
-                new AtomicLong(),
-                memTable,
+                empty,
+                newFlushingTables,
                 ssTables);
     }
 
-    TableSet flushed(final SSTable flushed) {
+    TableSet flushed(
+            final MemTable flushing,
+            final SSTable flushed) {
+        final List<MemTable> newFlushingTables = new ArrayList<>(flushingTables);
+        if (!newFlushingTables.remove(flushing)) {
+            throw new IllegalStateException("Unknown flushing MemTable");
+        }
+
         final List<SSTable> newSSTables = new ArrayList<>(ssTables.size() + 1);
         newSSTables.add(flushed);
         newSSTables.addAll(ssTables);
         return new TableSet(
                 memTable,
-                memTableSize,
-                null,
+                newFlushingTables,
+                newSSTables);
+    }
+
+    /**
+     * Adds ingested SSTables as the freshest ones shadowing older data.
+     */
+    TableSet ingested(final List<SSTable> ingested) {
+        final List<SSTable> newSSTables = new ArrayList<>(ingested.size() + ssTables.size());
+        newSSTables.addAll(ingested);
+        newSSTables.addAll(ssTables);
+        return new TableSet(
+                memTable,
+                flushingTables,
                 newSSTables);
     }
 
+    /**
+     * Checks whether {@link MemTable}s contain keys within {@code [from; to]}.
+     */
+    boolean memTablesOverlap(
+            final MemorySegment from,
+            final MemorySegment to) {
+        if (overlaps(memTable, from, to)) {
+            return true;
+        }
+        for (final MemTable flushingTable : flushingTables) {
+            if (overlaps(flushingTable, from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overlaps(
+            final MemTable table,
+            final MemorySegment from,
+            final MemorySegment to) {
+        final Iterator<Entry<MemorySegment>> entries = table.get(from, null);
+        return entries.hasNext()
+                && MemorySegmentComparator.INSTANCE.compare(entries.next().key(), to) <= 0;
+    }
+
     TableSet compacted(
             final Set<SSTable> replaced,
-            final SSTable with) {
-        final List<SSTable> newSsTables = new ArrayList<>(this.ssTables.size() + 1);
+            final List<SSTable> with) {
+        final List<SSTable> newSsTables = new ArrayList<>(this.ssTables.size() + with.size());
 
         // Keep not replaced SSTables
         for (final SSTable ssTable : this.ssTables) {
@@ -88,21 +133,60 @@ final class TableSet {
             }
         }
 
-        // Logically the oldest one
-        newSsTables.add(with);
+        // Logically the oldest ones not overlapping each other
+        newSsTables.addAll(with);
+
+        return new TableSet(
+                memTable,
+                flushingTables,
+                newSsTables);
+    }
+
+    /**
+     * Replaces adjacent SSTables with the one compacted from them keeping the order.
+     *
+     * @param with compacted SSTable or {@code null} if nothing left
+     */
+    TableSet replaced(
+            final List<SSTable> replaced,
+            final SSTable with) {
+        final int position = ssTables.indexOf(replaced.getFirst());
+        if (position < 0
+                || position + replaced.size() > ssTables.size()
+                || !ssTables.subList(position, position + replaced.size()).equals(replaced)) {
+            throw new IllegalStateException("Unknown SSTables");
+        }
+
+        final List<SSTable> newSsTables = new ArrayList<>(ssTables.size() - replaced.size() + 1);
+        newSsTables.addAll(ssTables.subList(0, position));
+        if (with != null) {
+            newSsTables.add(with);
+        }
+        newSsTables.addAll(ssTables.subList(position + replaced.size(), ssTables.size()));
 
         return new TableSet(
                 memTable,
-                memTableSize,
-                flushingTable,
+                flushingTables,
                 newSsTables);
     }
 
     Iterator<Entry<MemorySegment>> get(
             final MemorySegment from,
             final MemorySegment to) {
+        return get(from, to, null, null);
+    }
+
+    /**
+     * Merges entries within the range folding operands with {@code operator} if any
+     * and accounting SSTable reads to {@code trace} if any.
+     */
+    Iterator<Entry<MemorySegment>> get(
+            final MemorySegment from,
+            final MemorySegment to,
+            final MergeOperator operator,
+            final TraceContext trace) {
         final List<WeightedPeekingEntryIterator> iterators =
-                new ArrayList<>(2 + ssTables.size());
+                new ArrayList<>(1 + flushingTables.size() + ssTables.size());
 
         // MemTable goes first
         final Iterator<Entry<MemorySegment>> memTableIterator =
@@ -114,14 +198,14 @@ final class TableSet {
                             memTableIterator));
         }
 
-        // Then goes flushing
-        if (flushingTable != null) {
+        // Then go flushing from freshest to oldest
+        for (int i = 0; i < flushingTables.size(); i++) {
             final Iterator<Entry<MemorySegment>> flushingIterator =
-                    flushingTable.get(from, to);
+                    flushingTables.get(i).get(from, to);
             if (flushingIterator.hasNext()) {
                 iterators.add(
                         new WeightedPeekingEntryIterator(
-                                Integer.MIN_VALUE + 1,
+                                Integer.MIN_VALUE + 1 + i,
                                 flushingIterator));
             }
         }
@@ -129,8 +213,15 @@ final class TableSet {
         // Then go all the SSTables
         for (int i = 0; i < ssTables.size(); i++) {
             final SSTable ssTable = ssTables.get(i);
+            if (trace != null) {
+                if (ssTable.overlaps(from, to)) {
+                    trace.ssTables++;
+                } else {
+                    trace.filterRejections++;
+                }
+            }
             final Iterator<Entry<MemorySegment>> ssTableIterator =
-                    ssTable.get(from, to);
+                    ssTable.get(from, to, trace);
             if (ssTableIterator.hasNext()) {
                 iterators.add(
                         new WeightedPeekingEntryIterator(
@@ -141,65 +232,192 @@ final class TableSet {
 
         return switch (iterators.size()) {
             case 0 -> Collections.emptyIterator();
-            case 1 -> iterators.get(0);
-            default -> new MergingEntryIterator(iterators);
+            // Operands are folded even without older versions
+            case 1 -> operator == null
+                    ? iterators.get(0)
+                    : new MergingEntryIterator(iterators, trace, operator, true);
+            default -> new MergingEntryIterator(iterators, trace, operator, true);
         };
     }
 
-    Entry<MemorySegment> get(final MemorySegment key) {
+    /**
+     * Looks up the key folding operands with {@code operator} if any
+     * and accounting reads to {@code metrics} and to {@code trace} if any.
+     */
+    Entry<MemorySegment> get(
+            final MemorySegment key,
+            final MergeOperator operator,
+            final DaoMetrics metrics,
+            final TraceContext trace) {
         // Slightly optimized version not to pollute the heap
 
         // First check MemTable
         Entry<MemorySegment> result = memTable.get(key);
         if (result != null) {
+            metrics.memTableHits.increment();
             // Transform tombstone
-            return swallowTombstone(result);
+            return swallowTombstone(fold(result, 0, 0, operator, trace), trace);
         }
 
-        // Then check flushing
-        if (flushingTable != null) {
-            result = flushingTable.get(key);
+        // Then check flushing from freshest to oldest
+        for (int i = 0; i < flushingTables.size(); i++) {
+            result = flushingTables.get(i).get(key);
             if (result != null) {
+                metrics.memTableHits.increment();
                 // Transform tombstone
-                return swallowTombstone(result);
+                return swallowTombstone(fold(result, i + 1, 0, operator, trace), trace);
             }
         }
 
         // At last check SSTables from freshest to oldest
-        for (final SSTable ssTable : ssTables) {
-            result = ssTable.get(key);
+        int searched = 0;
+        for (int i = 0; i < ssTables.size(); i++) {
+            final SSTable ssTable = ssTables.get(i);
+            if (!ssTable.mayContain(key)) {
+                if (trace != null) {
+                    trace.filterRejections++;
+                }
+                continue;
+            }
+
+            searched++;
+            result = ssTable.find(key, trace);
             if (result != null) {
+                metrics.getSSTables.record(searched);
+                metrics.ssTableHits.increment();
+                if (trace != null) {
+                    trace.ssTables = searched;
+                }
                 // Transform tombstone
-                return swallowTombstone(result);
+                return swallowTombstone(fold(result, flushingTables.size(), i + 1, operator, trace), trace);
             }
         }
 
         // Nothing found
+        metrics.getSSTables.record(searched);
+        metrics.misses.increment();
+        if (trace != null) {
+            trace.ssTables = searched;
+        }
         return null;
     }
 
-    private static Entry<MemorySegment> swallowTombstone(final Entry<MemorySegment> entry) {
-        return entry.value() == null ? null : entry;
+    /**
+     * Folds operand with older versions of its key starting from the specified tables.
+     *
+     * @return the entry itself if it is not an operand
+     */
+    private Entry<MemorySegment> fold(
+            final Entry<MemorySegment> entry,
+            final int flushingFrom,
+            final int ssTablesFrom,
+            final MergeOperator operator,
+            final TraceContext trace) {
+        if (operator == null) {
+            return entry;
+        }
+
+        Entry<MemorySegment> result = entry;
+        final MemorySegment key = entry.key();
+        for (int i = flushingFrom; i < flushingTables.size() && result instanceof MergeEntry operand; i++) {
+            final Entry<MemorySegment> older = flushingTables.get(i).get(key);
+            if (older != null) {
+                result = operand.mergeWith(older, operator);
+            }
+        }
+        for (int i = ssTablesFrom; i < ssTables.size() && result instanceof MergeEntry operand; i++) {
+            final SSTable ssTable = ssTables.get(i);
+            if (!ssTable.mayContain(key)) {
+                continue;
+            }
+            final Entry<MemorySegment> older = ssTable.find(key, trace);
+            if (older != null) {
+                result = operand.mergeWith(older, operator);
+            }
+        }
+        if (result instanceof MergeEntry operand) {
+            // Nothing older
+            result = operand.mergeWith(null, operator);
+        }
+        return result;
+    }
+
+    private static Entry<MemorySegment> swallowTombstone(
+            final Entry<MemorySegment> entry,
+            final TraceContext trace) {
+        if (entry.value() != null) {
+            return entry;
+        }
+
+        if (trace != null) {
+            trace.tombstones++;
+        }
+        return null;
     }
 
-    Entry<MemorySegment> upsert(final Entry<MemorySegment> entry) {
+    /**
+     * Upserts entry to {@link MemTable} folding operand with the entry it replaces.
+     * Writes of the same key must be serialized if {@code operator} is set.
+     */
+    Entry<MemorySegment> upsert(
+            final Entry<MemorySegment> entry,
+            final MergeOperator operator) {
+        if (operator != null && entry instanceof MergeEntry operand) {
+            final Entry<MemorySegment> existing = memTable.get(entry.key());
+            if (existing != null) {
+                return memTable.upsert(operand.mergeWith(existing, operator));
+            }
+        }
         return memTable.upsert(entry);
     }
 
-    Iterator<Entry<MemorySegment>> allSSTableEntries() {
+    Iterator<Entry<MemorySegment>> allSSTableEntries(
+            final MemorySegment from,
+            final MemorySegment to,
+            final MergeOperator operator) {
+        return merge(ssTables, from, to, operator, true);
+    }
+
+    static Iterator<Entry<MemorySegment>> merge(
+            final List<SSTable> ssTables,
+            final MemorySegment from,
+            final MemorySegment to) {
+        return merge(ssTables, from, to, null, true);
+    }
+
+    /**
+     * Merges entries of SSTables ordered from freshest to oldest folding operands with {@code operator} if any.
+     *
+     * @param complete whether there are no SSTables older than the merged ones
+     */
+    static Iterator<Entry<MemorySegment>> merge(
+            final List<SSTable> ssTables,
+            final MemorySegment from,
+            final MemorySegment to,
+            final MergeOperator operator,
+            final boolean complete) {
         final List<WeightedPeekingEntryIterator> iterators =
                 new ArrayList<>(ssTables.size());
 
         for (int i = 0; i < ssTables.size(); i++) {
             final SSTable ssTable = ssTables.get(i);
             final Iterator<Entry<MemorySegment>> ssTableIterator =
-                    ssTable.get(null, null);
-            iterators.add(
-                    new WeightedPeekingEntryIterator(
-                            i,
-                            ssTableIterator));
+                    ssTable.get(from, to);
+            if (ssTableIterator.hasNext()) {
+                iterators.add(
+                        new WeightedPeekingEntryIterator(
+                                i,
+                                ssTableIterator));
+            }
         }
 
-        return new MergingEntryIterator(iterators);
+        return switch (iterators.size()) {
+            case 0 -> Collections.emptyIterator();
+            // Operands are folded even without older versions
+            case 1 -> operator == null
+                    ? iterators.get(0)
+                    : new MergingEntryIterator(iterators, null, operator, complete);
+            default -> new MergingEntryIterator(iterators, null, operator, complete);
+        };
     }
 }
@@ -0,0 +1,59 @@
+package ru.vk.itmo.reference;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Collects {@link ReadTrace} of a single read.
+ *
+ * <p>Updated by the reading thread only, so counters are plain fields.
+ * Not sampled reads pass {@code null} instead.
+ */
+final class TraceContext {
+    private final ReadTraceSink sink;
+    private final ReadTrace.Operation operation;
+    private final MemorySegment from;
+    private final MemorySegment to;
+    private final long start = System.nanoTime();
+    private boolean finished;
+
+    int ssTables;
+    long probes;
+    int filterRejections;
+    long shadowed;
+    long tombstones;
+    long bytes;
+
+    TraceContext(
+            final ReadTraceSink sink,
+            final ReadTrace.Operation operation,
+            final MemorySegment from,
+            final MemorySegment to) {
+        this.sink = sink;
+        this.operation = operation;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Emits the trace once.
+     */
+    void finish() {
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+        sink.accept(
+                new ReadTrace(
+                        operation,
+                        from,
+                        to,
+                        ssTables,
+                        probes,
+                        filterRejections,
+                        shadowed,
+                        tombstones,
+                        bytes,
+                        System.nanoTime() - start));
+    }
+}
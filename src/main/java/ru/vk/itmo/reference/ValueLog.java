@@ -0,0 +1,179 @@
+package ru.vk.itmo.reference;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Large values separated from keys.
+ *
+ * <p>Values not smaller than {@link Options#valueSeparationThreshold()} are appended
+ * one after another to segment {@code <N>.vlog} written along with SSTable {@code N}.
+ * SSTables keep only pointers to values, so compaction moves pointers instead of value bytes.
+ * Segments outlive the SSTable they were written with and are removed
+ * by garbage collection when no longer referenced.
+ *
+ * <p>Segments are mapped once they are completely written.
+ * Like SSTables, removed segments stay mapped until the DAO is closed.
+ */
+final class ValueLog {
+    static final String SUFFIX = ".vlog";
+
+    private final Arena arena;
+    private final Path baseDir;
+    private final long threshold;
+
+    // Completely written segments
+    private final Map<Integer, MemorySegment> segments = new ConcurrentHashMap<>();
+    // Segments not referenced by published SSTables yet
+    private final Set<Integer> unpublished = ConcurrentHashMap.newKeySet();
+    // Segments still mapped for readers of replaced SSTables
+    private final Set<Integer> removed = ConcurrentHashMap.newKeySet();
+
+    private ValueLog(
+            final Arena arena,
+            final Path baseDir,
+            final long threshold) {
+        this.arena = arena;
+        this.baseDir = baseDir;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Maps existing segments.
+     * Leftovers of interrupted writes are not referenced and will be collected.
+     */
+    static ValueLog open(
+            final Arena arena,
+            final Path baseDir,
+            final long threshold) throws IOException {
+        final ValueLog result = new ValueLog(arena, baseDir, threshold);
+        if (!Files.exists(baseDir)) {
+            return result;
+        }
+
+        try (Stream<Path> files = Files.list(baseDir)) {
+            for (final Path file : files.toList()) {
+                final String fileName = file.getFileName().toString();
+                if (fileName.endsWith(SUFFIX)) {
+                    result.add(
+                            Integer.parseInt(
+                                    fileName.substring(
+                                            0,
+                                            fileName.length() - SUFFIX.length())));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns sequence following all the segments including leftovers.
+     */
+    int nextSequence() {
+        return segments.keySet().stream()
+                .mapToInt(Integer::intValue)
+                .max()
+                .orElse(0) + 1;
+    }
+
+    /**
+     * Values of at least this size are separated.
+     */
+    long threshold() {
+        return threshold;
+    }
+
+    Path name(final int segment) {
+        return baseDir.resolve(segment + SUFFIX);
+    }
+
+    /**
+     * Protects segment being written from collection until {@link #published(int)}.
+     */
+    void pin(final int segment) {
+        unpublished.add(segment);
+    }
+
+    /**
+     * Makes completely written segment readable.
+     */
+    void add(final int segment) throws IOException {
+        final Path file = name(segment);
+        try (FileChannel channel =
+                     FileChannel.open(
+                             file,
+                             StandardOpenOption.READ)) {
+            segments.put(
+                    segment,
+                    channel.map(
+                            FileChannel.MapMode.READ_ONLY,
+                            0L,
+                            Files.size(file),
+                            arena));
+        }
+    }
+
+    /**
+     * Called when SSTable written along with the segment is published.
+     */
+    void published(final int segment) {
+        unpublished.remove(segment);
+    }
+
+    MemorySegment get(
+            final int segment,
+            final long offset,
+            final long length) {
+        final MemorySegment values = segments.get(segment);
+        if (values == null) {
+            throw new UncheckedIOException(
+                    new IOException("Missing value log segment " + segment));
+        }
+        return values.asSlice(offset, length);
+    }
+
+    long size(final int segment) {
+        return segments.get(segment).byteSize();
+    }
+
+    /**
+     * Returns segments which may be collected if not referenced by the SSTables published afterwards.
+     */
+    Set<Integer> collectable() {
+        // Written first, then not published
+        final Set<Integer> result = new HashSet<>(segments.keySet());
+        result.removeAll(unpublished);
+        result.removeAll(removed);
+        return result;
+    }
+
+    /**
+     * Returns completely written segments not removed yet.
+     */
+    Set<Integer> written() {
+        final Set<Integer> result = new HashSet<>(segments.keySet());
+        result.removeAll(removed);
+        return result;
+    }
+
+    /**
+     * Removes not referenced segment.
+     */
+    void remove(final int segment) throws IOException {
+        // Keep mapping for iterators over replaced SSTables
+        Files.delete(name(segment));
+        removed.add(segment);
+    }
+}
@@ -0,0 +1,43 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entries {@link ReferenceDao#apply applied} at once: readers observe either all of them or none.
+ *
+ * <p>Not thread-safe. The later entry of a key wins.
+ */
+public final class WriteBatch {
+    private final List<Entry<MemorySegment>> entries = new ArrayList<>();
+
+    public WriteBatch upsert(final Entry<MemorySegment> entry) {
+        entries.add(entry);
+        return this;
+    }
+
+    public WriteBatch remove(final MemorySegment key) {
+        return upsert(new BaseEntry<>(key, null));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    List<Entry<MemorySegment>> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+}
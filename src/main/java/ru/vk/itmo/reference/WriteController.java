@@ -0,0 +1,112 @@
+package ru.vk.itmo.reference;
+
+import ru.vk.itmo.metrics.Histogram;
+import ru.vk.itmo.metrics.HistogramSnapshot;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Slows down and stalls writers when flushing can't keep up.
+ *
+ * <p>Writers are delayed progressively while the number of immutable {@link MemTable}s
+ * grows from {@link Options#slowdownImmutableMemTables()} up to {@link Options#maxImmutableMemTables()}.
+ * At the hard limit writers block until some {@link MemTable} is flushed or the timeout expires.
+ */
+final class WriteController {
+    private final Options options;
+
+    private final Lock lock = new ReentrantLock();
+    // Signalled on every flush
+    private final Condition flushed = lock.newCondition();
+
+    private final Histogram delays;
+    private final Histogram stalls;
+
+    WriteController(
+            final Options options,
+            final Histogram delays,
+            final Histogram stalls) {
+        this.options = options;
+        this.delays = delays;
+        this.stalls = stalls;
+    }
+
+    /**
+     * Delays the write depending on the flush backlog.
+     */
+    void delay(final int immutableMemTables) {
+        final int slowdown = options.slowdownImmutableMemTables();
+        if (immutableMemTables < slowdown) {
+            // Flushing keeps up
+            return;
+        }
+
+        // Grow linearly up to the max delay at the hard limit
+        final int max = options.maxImmutableMemTables();
+        final int steps = max - slowdown + 1;
+        final int step = Math.min(immutableMemTables, max) - slowdown + 1;
+        final long delay = options.maxWriteDelayNanos() * step / steps;
+        if (delay == 0L) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        LockSupport.parkNanos(delay);
+        delays.recordSince(start);
+    }
+
+    /**
+     * Blocks while {@code stalled} holds waiting for flushes.
+     *
+     * @throws IllegalStateException if the condition still holds after the timeout
+     */
+    void awaitWhile(final BooleanSupplier stalled) {
+        if (!stalled.getAsBoolean()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            long remaining = options.writeStallTimeoutNanos();
+            while (stalled.getAsBoolean()) {
+                if (remaining <= 0L) {
+                    throw new IllegalStateException("Can't keep up with flushing!");
+                }
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for flush", e);
+        } finally {
+            lock.unlock();
+            stalls.recordSince(start);
+        }
+    }
+
+    /**
+     * Wakes up stalled writers.
+     */
+    void onFlushed() {
+        lock.lock();
+        try {
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    WriteStats stats() {
+        final HistogramSnapshot delayed = delays.snapshot();
+        final HistogramSnapshot stalled = stalls.snapshot();
+        return new WriteStats(
+                delayed.count(),
+                delayed.sum(),
+                stalled.count(),
+                stalled.sum());
+    }
+}
@@ -0,0 +1,16 @@
+package ru.vk.itmo.reference;
+
+/**
+ * Snapshot of writer slowdown and stall counters.
+ *
+ * @param delayedWrites writes delayed because of the flush backlog
+ * @param delayNanos total time writes were delayed
+ * @param stalledWrites writes blocked at the immutable {@link MemTable} limit
+ * @param stallNanos total time writes were blocked
+ */
+public record WriteStats(
+        long delayedWrites,
+        long delayNanos,
+        long stalledWrites,
+        long stallNanos) {
+}
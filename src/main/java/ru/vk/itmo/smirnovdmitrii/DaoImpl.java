@@ -3,40 +3,124 @@ package ru.vk.itmo.smirnovdmitrii;
 import ru.vk.itmo.Config;
 import ru.vk.itmo.Dao;
 import ru.vk.itmo.Entry;
+import ru.vk.itmo.memtable.MemTableMap;
+import ru.vk.itmo.metrics.Counter;
+import ru.vk.itmo.metrics.Histogram;
+import ru.vk.itmo.metrics.MetricsRegistry;
+import ru.vk.itmo.metrics.MetricsSnapshot;
 import ru.vk.itmo.smirnovdmitrii.util.EqualsComparator;
-import ru.vk.itmo.smirnovdmitrii.util.MemorySegmentComparator;
+import ru.vk.itmo.smirnovdmitrii.util.KeyComparators;
 import ru.vk.itmo.smirnovdmitrii.util.MergeIterator;
 import ru.vk.itmo.smirnovdmitrii.util.PeekingIterator;
+import ru.vk.itmo.smirnovdmitrii.util.TimedEntry;
 import ru.vk.itmo.smirnovdmitrii.util.WrappedIterator;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DaoImpl implements Dao<MemorySegment, Entry<MemorySegment>> {
     private final InMemoryDao<MemorySegment, Entry<MemorySegment>> inMemoryDao;
     private final OutMemoryDao<MemorySegment, Entry<MemorySegment>> outMemoryDao;
-    private final EqualsComparator<MemorySegment> comparator = new MemorySegmentComparator();
+    private final EqualsComparator<MemorySegment> comparator = KeyComparators.select();
+    /**
+     * Memory is flushed once keys and values exceed the threshold.
+     */
+    private final long flushThresholdBytes;
+    /**
+     * Memory is also flushed once its estimated heap footprint exceeds the limit.
+     */
+    private final long footprintLimitBytes;
+    private final AtomicBoolean autoFlushing = new AtomicBoolean();
+    /**
+     * Latencies are in nanoseconds, sizes are in bytes.
+     */
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Histogram upsertLatency = metrics.histogram("upsert");
+    private final Histogram getLatency = metrics.histogram("get");
+    private final Histogram rangeLatency = metrics.histogram("range");
+    private final Histogram flushLatency = metrics.histogram("flush");
+    private final Histogram compactionLatency = metrics.histogram("compaction");
+    private final Counter memTableHits = metrics.counter("get.memtable.hits");
+    private final Counter ssTableHits = metrics.counter("get.sstable.hits");
+    private final Counter misses = metrics.counter("get.misses");
 
     public DaoImpl() {
-        inMemoryDao = new InMemoryDaoImpl();
-        outMemoryDao = new FileDao(this);
+        this(Path.of(""), Long.MAX_VALUE, MemTableMap.skipList(), Long.MAX_VALUE);
     }
 
     public DaoImpl(final Config config) {
-        inMemoryDao = new InMemoryDaoImpl();
-        outMemoryDao = new FileDao(this, config.basePath());
+        this(config, MemTableMap.skipList());
+    }
+
+    /**
+     * Creates dao keeping entries in memory in given map.
+     * @param config dao config.
+     * @param memTable map for entries in memory, e.g. {@link MemTableMap#radixTree()}.
+     */
+    public DaoImpl(final Config config, final MemTableMap memTable) {
+        this(config, memTable, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates dao also flushing memory by its estimated heap footprint including structural overhead.
+     * @param config dao config.
+     * @param memTable map for entries in memory.
+     * @param footprintLimitBytes heap footprint of memory to flush at besides keys and values
+     *     of {@link Config#flushThresholdBytes()}.
+     */
+    public DaoImpl(final Config config, final MemTableMap memTable, final long footprintLimitBytes) {
+        this(config.basePath(), config.flushThresholdBytes(), memTable, footprintLimitBytes);
+    }
+
+    private DaoImpl(
+            final Path basePath,
+            final long flushThresholdBytes,
+            final MemTableMap memTable,
+            final long footprintLimitBytes) {
+        this.flushThresholdBytes = flushThresholdBytes;
+        this.footprintLimitBytes = footprintLimitBytes;
+        inMemoryDao = new InMemoryDaoImpl(memTable);
+        outMemoryDao = new FileDao(this, basePath);
+        metrics.export("smirnovdmitrii." + DaoImpl.class.getSimpleName(), basePath.toAbsolutePath().toString());
+    }
+
+    MetricsRegistry metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns snapshot of metrics also exported as {@code ru.vk.itmo:type=smirnovdmitrii.DaoImpl} MBean.
+     * @return latencies, sizes and read statistics.
+     */
+    @Override
+    public MetricsSnapshot stats() {
+        return metrics.snapshot();
     }
 
     @Override
     public Iterator<Entry<MemorySegment>> get(final MemorySegment from, final MemorySegment to) {
+        final long start = System.nanoTime();
+        final Iterator<Entry<MemorySegment>> result = get(from, to, System.currentTimeMillis());
+        rangeLatency.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Returns entries alive at {@code now}.
+     */
+    Iterator<Entry<MemorySegment>> get(final MemorySegment from, final MemorySegment to, final long now) {
         int id = 0;
         final PeekingIterator<Entry<MemorySegment>> inMemoryIterator
                 = new WrappedIterator<>(id++, inMemoryDao.get(from, to));
         final MergeIterator.Builder<MemorySegment, Entry<MemorySegment>> builder
                 = new MergeIterator.Builder<MemorySegment, Entry<MemorySegment>>()
                 .addComparator(comparator)
+                .addTime(now)
                 .addIterator(inMemoryIterator);
         for (final Iterator<Entry<MemorySegment>> outMemoryIterator : outMemoryDao.get(from, to)) {
             builder.addIterator(new WrappedIterator<>(id++, outMemoryIterator));
@@ -47,29 +131,73 @@ public class DaoImpl implements Dao<MemorySegment, Entry<MemorySegment>> {
     @Override
     public Entry<MemorySegment> get(final MemorySegment key) {
         Objects.requireNonNull(key);
+        final long start = System.nanoTime();
         Entry<MemorySegment> result = inMemoryDao.get(key);
         if (result == null) {
             result = outMemoryDao.get(key);
+            if (result == null) {
+                misses.increment();
+            } else {
+                ssTableHits.increment();
+            }
+        } else {
+            memTableHits.increment();
         }
-        if (result == null || result.value() == null) {
-            return null;
+        if (result != null && TimedEntry.isDead(result, System.currentTimeMillis())) {
+            result = null;
         }
+        getLatency.recordSince(start);
         return result;
     }
 
     @Override
     public void upsert(final Entry<MemorySegment> entry) {
+        final long start = System.nanoTime();
         inMemoryDao.upsert(entry);
+        if ((inMemoryDao.dataSize() > flushThresholdBytes || inMemoryDao.size() > footprintLimitBytes)
+                && autoFlushing.compareAndSet(false, true)) {
+            // Other writers go on while this one flushes
+            try {
+                flush();
+            } catch (final IOException e) {
+                throw new UncheckedIOException("exception while flushing memory", e);
+            } finally {
+                autoFlushing.set(false);
+            }
+        }
+        upsertLatency.recordSince(start);
+    }
+
+    /**
+     * Inserts entry which expires in {@code ttl} milliseconds.
+     * Expired entry reads as removed.
+     * @param entry inserting entry.
+     * @param ttl time to live in milliseconds.
+     */
+    public void upsert(final Entry<MemorySegment> entry, final long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl must be not negative");
+        }
+        final long now = System.currentTimeMillis();
+        final long expiration = ttl < TimedEntry.NEVER - now ? now + ttl : TimedEntry.NEVER;
+        upsert(new TimedEntry<>(entry.key(), entry.value(), expiration));
     }
 
     @Override
     public void flush() throws IOException {
-        outMemoryDao.save(inMemoryDao.commit());
+        final long start = System.nanoTime();
+        final Iterable<Entry<MemorySegment>> committed = inMemoryDao.commit();
+        outMemoryDao.save(committed);
+        // Readable from memory until saved
+        inMemoryDao.release(committed);
+        flushLatency.recordSince(start);
     }
 
     @Override
     public void compact() throws IOException {
+        final long start = System.nanoTime();
         outMemoryDao.compact();
+        compactionLatency.recordSince(start);
     }
 
     @Override
@@ -77,5 +205,6 @@ public class DaoImpl implements Dao<MemorySegment, Entry<MemorySegment>> {
         flush();
         outMemoryDao.close();
         inMemoryDao.close();
+        metrics.close();
     }
 }
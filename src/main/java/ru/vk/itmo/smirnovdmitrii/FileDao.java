@@ -1,9 +1,13 @@
 package ru.vk.itmo.smirnovdmitrii;
 
-import ru.vk.itmo.Dao;
 import ru.vk.itmo.Entry;
-import ru.vk.itmo.smirnovdmitrii.util.MemorySegmentComparator;
+import ru.vk.itmo.metrics.Counter;
+import ru.vk.itmo.metrics.Histogram;
+import ru.vk.itmo.smirnovdmitrii.util.EqualsComparator;
+import ru.vk.itmo.smirnovdmitrii.util.KeyComparators;
+import ru.vk.itmo.smirnovdmitrii.util.LazySSTable;
 import ru.vk.itmo.smirnovdmitrii.util.SSTableUtil;
+import ru.vk.itmo.smirnovdmitrii.util.TimedEntry;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -21,23 +25,40 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>> {
     private static final Path DEFAULT_BASE_PATH = Path.of("");
     private static final String INDEX_FILE_NAME = "index";
-    private final Dao<MemorySegment, Entry<MemorySegment>> dao;
-    private final MemorySegmentComparator comparator = new MemorySegmentComparator();
-    private List<MemorySegment> mappedSsTables = new ArrayList<>();
+    private final DaoImpl dao;
+    private final EqualsComparator<MemorySegment> comparator = KeyComparators.select();
+    /**
+     * Immutable list from oldest to newest replaced under {@link #lock}.
+     * Readers take it once, so they never see sstable being added or removed.
+     */
+    private volatile List<LazySSTable> ssTables;
     private final Arena arena = Arena.ofShared();
     private final Path basePath;
+    // Serializes save and compaction: sstable files, index file and ssTables replacement
+    private final Lock lock = new ReentrantLock();
+    /**
+     * Sstables searched by a single get not skipped by key range.
+     */
+    private final Histogram searchedSsTables;
+    private final Counter flushBytes;
+    private final Counter compactionBytes;
 
-    public FileDao(final Dao<MemorySegment, Entry<MemorySegment>> dao) {
+    public FileDao(final DaoImpl dao) {
         this(dao, DEFAULT_BASE_PATH);
     }
 
-    public FileDao(final Dao<MemorySegment, Entry<MemorySegment>> dao, final Path basePath) {
+    public FileDao(final DaoImpl dao, final Path basePath) {
         this.dao = dao;
         this.basePath = basePath;
+        this.searchedSsTables = dao.metrics().histogram("get.sstables");
+        this.flushBytes = dao.metrics().counter("flush.bytes");
+        this.compactionBytes = dao.metrics().counter("compaction.bytes");
         try {
             Files.createDirectories(basePath);
         } catch (final IOException e) {
@@ -57,13 +78,72 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
         } catch (final IOException e) {
             throw new UncheckedIOException("exception while reading index file.", e);
         }
-        for (final String path: paths) {
-            try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
-                mappedSsTables.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
-            } catch (final IOException e) {
-                throw new UncheckedIOException("exception while mapping sstables", e);
+        try {
+            this.ssTables = openAll(paths);
+            dropExpired();
+        } catch (final IOException e) {
+            arena.close();
+            throw new UncheckedIOException("exception while removing expired sstables", e);
+        } catch (final UncheckedIOException e) {
+            // E.g. unsupported format
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads footers of sstables in parallel. Sstables are mapped on first access,
+     * so startup doesn't depend on their sizes.
+     * @param paths sstables from oldest to newest.
+     * @return not mapped sstables in the same order.
+     */
+    private List<LazySSTable> openAll(final List<String> paths) {
+        return paths.parallelStream()
+                .map(path -> {
+                    try {
+                        return LazySSTable.open(Path.of(path), arena);
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException("exception while reading sstable footers", e);
+                    }
+                })
+                .toList();
+    }
+
+    /**
+     * Removes fully expired sstables which shadow nothing, so they are removed without reading entries.
+     * Expired entries and tombstones shadow older entries with the same keys,
+     * so sstable is removed only if key ranges of older sstables don't overlap its key range.
+     * Called on open and after every flush and compaction, so sstables expiring while running are removed too.
+     * @throws IOException if index can't be changed.
+     */
+    private void dropExpired() throws IOException {
+        final long now = System.currentTimeMillis();
+        final List<LazySSTable> alive = new ArrayList<>(ssTables.size());
+        final List<LazySSTable> expired = new ArrayList<>();
+        // From oldest to newest
+        for (final LazySSTable ssTable: ssTables) {
+            if (ssTable.maxExpiration() <= now && alive.stream().noneMatch(older -> overlaps(older, ssTable))) {
+                expired.add(ssTable);
+            } else {
+                alive.add(ssTable);
             }
         }
+        if (expired.isEmpty()) {
+            return;
+        }
+        final List<String> index = new ArrayList<>(alive.size());
+        for (final LazySSTable ssTable: alive) {
+            index.add(ssTable.path().toString());
+        }
+        changeIndex(index);
+        // Readers may still iterate over removed sstables
+        for (final LazySSTable ssTable: expired) {
+            ssTable.ssTable();
+        }
+        ssTables = List.copyOf(alive);
+        for (final LazySSTable ssTable: expired) {
+            Files.delete(ssTable.path());
+        }
     }
 
     /**
@@ -103,16 +183,53 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
     @Override
     public Entry<MemorySegment> get(final MemorySegment key) {
         Objects.requireNonNull(key);
-        for (int i = mappedSsTables.size() - 1; i >= 0; i--) {
-            final MemorySegment storage = mappedSsTables.get(i);
+        final List<LazySSTable> current = ssTables;
+        int searched = 0;
+        for (int i = current.size() - 1; i >= 0; i--) {
+            final LazySSTable ssTable = current.get(i);
+            if (!contains(ssTable, key)) {
+                continue;
+            }
+            searched++;
+            final MemorySegment storage = ssTable.ssTable();
             final long offset = binarySearch(key, storage);
             if (offset >= 0) {
+                searchedSsTables.record(searched);
                 return SSTableUtil.readBlock(storage, offset);
             }
         }
+        searchedSsTables.record(searched);
         return null;
     }
 
+    /**
+     * Checks key range from footer not to search sstable which can't contain {@code key}.
+     * @param ssTable sstable.
+     * @param key searching key.
+     * @return true if {@code key} is within sstable key range.
+     */
+    private boolean contains(final LazySSTable ssTable, final MemorySegment key) {
+        return comparator.compare(ssTable.minKey(), key) <= 0
+                && comparator.compare(key, ssTable.maxKey()) <= 0;
+    }
+
+    /**
+     * Checks key range from footer not to iterate sstable without keys in [{@code from}, {@code to}).
+     * @param ssTable sstable.
+     * @param from lower bound inclusive or null.
+     * @param to upper bound exclusive or null.
+     * @return true if sstable may contain keys in range.
+     */
+    private boolean overlaps(final LazySSTable ssTable, final MemorySegment from, final MemorySegment to) {
+        return (to == null || comparator.compare(ssTable.minKey(), to) < 0)
+                && (from == null || comparator.compare(from, ssTable.maxKey()) <= 0);
+    }
+
+    private boolean overlaps(final LazySSTable older, final LazySSTable newer) {
+        return comparator.compare(older.minKey(), newer.maxKey()) <= 0
+                && comparator.compare(newer.minKey(), older.maxKey()) <= 0;
+    }
+
     /**
      * Searching order number in storage for block with {@code key} using helping file with storage offsets.
      * If there is no block with such key, returns -(insert position + 1).
@@ -155,7 +272,12 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
         One block is:
         [bytes] key [bytes] value.
         One meta block is :
-        [JAVA_LONG_UNALIGNED] key_offset [JAVA_LONG_UNALIGNED] value_offset
+        [JAVA_LONG_UNALIGNED] key_offset [JAVA_LONG_UNALIGNED] value_offset [JAVA_LONG_UNALIGNED] expiration
+        Footer is:
+        [bytes] min_key [bytes] max_key
+        [JAVA_LONG_UNALIGNED] min_key_size [JAVA_LONG_UNALIGNED] max_key_size
+        [JAVA_LONG_UNALIGNED] entries [JAVA_LONG_UNALIGNED] tombstones
+        [JAVA_LONG_UNALIGNED] max expiration of not removed entries [JAVA_LONG_UNALIGNED] magic
         SSTable structure:
         meta block 1
         meta block 2
@@ -165,25 +287,53 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
         block 2
      ...
         block n
+        footer
      */
     @Override
-    public synchronized void save(final Iterable<Entry<MemorySegment>> entries) throws IOException {
+    public void save(final Iterable<Entry<MemorySegment>> entries) throws IOException {
         Objects.requireNonNull(entries, "entries must be not null");
+        lock.lock();
+        try {
+            flushBytes.add(doSave(entries));
+            dropExpired();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes sstable if there are entries.
+     * @param entries sorted entries.
+     * @return size of written sstable in bytes.
+     * @throws IOException if I/O error occurs.
+     */
+    private long doSave(final Iterable<Entry<MemorySegment>> entries) throws IOException {
         long appendSize = 0;
         long count = 0;
+        long tombstones = 0;
+        long maxExpiration = Long.MIN_VALUE;
+        MemorySegment minKey = null;
+        MemorySegment maxKey = null;
         for (final Entry<MemorySegment> entry : entries) {
+            if (count == 0) {
+                minKey = entry.key();
+            }
+            maxKey = entry.key();
             count++;
             appendSize += entry.key().byteSize();
             final MemorySegment value = entry.value();
-            if (value != null) {
+            if (value == null) {
+                tombstones++;
+            } else {
                 appendSize += value.byteSize();
+                maxExpiration = Math.max(maxExpiration, TimedEntry.expiration(entry));
             }
         }
         if (count == 0) {
-            return;
+            return 0;
         }
-        final long offsetsPartSize = count * Long.BYTES * 2;
-        appendSize += offsetsPartSize;
+        final long offsetsPartSize = count * SSTableUtil.META_BLOCK_SIZE;
+        appendSize += offsetsPartSize + minKey.byteSize() + maxKey.byteSize() + SSTableUtil.TRAILER_SIZE;
         final Path newSsTablePath = newSsTablePath();
         try (Arena savingArena = Arena.ofConfined()) {
             final MemorySegment mappedSsTable;
@@ -214,15 +364,29 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
                     blockOffset += valueSize;
                 }
                 indexOffset += Long.BYTES;
+                mappedSsTable.set(ValueLayout.JAVA_LONG_UNALIGNED, indexOffset, TimedEntry.expiration(entry));
+                indexOffset += Long.BYTES;
+            }
+            MemorySegment.copy(minKey, 0, mappedSsTable, blockOffset, minKey.byteSize());
+            blockOffset += minKey.byteSize();
+            MemorySegment.copy(maxKey, 0, mappedSsTable, blockOffset, maxKey.byteSize());
+            blockOffset += maxKey.byteSize();
+            final long[] trailer = {
+                    minKey.byteSize(), maxKey.byteSize(), count, tombstones, maxExpiration, SSTableUtil.MAGIC
+            };
+            for (final long field : trailer) {
+                mappedSsTable.set(ValueLayout.JAVA_LONG_UNALIGNED, blockOffset, field);
+                blockOffset += Long.BYTES;
             }
         }
         final Path indexFilePath = basePath.resolve(INDEX_FILE_NAME);
         final List<String> sstables = new ArrayList<>(Files.readAllLines(indexFilePath));
         sstables.add(newSsTablePath.toString());
         changeIndex(sstables);
-        try (FileChannel channel = FileChannel.open(newSsTablePath, StandardOpenOption.READ)) {
-            mappedSsTables.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
-        }
+        final List<LazySSTable> saved = new ArrayList<>(ssTables);
+        saved.add(LazySSTable.open(newSsTablePath, arena));
+        ssTables = List.copyOf(saved);
+        return appendSize;
     }
 
     private Path newSsTablePath() {
@@ -231,9 +395,14 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
 
     @Override
     public List<Iterator<Entry<MemorySegment>>> get(final MemorySegment from, final MemorySegment to) {
+        final List<LazySSTable> current = ssTables;
         final List<Iterator<Entry<MemorySegment>>> iterators = new ArrayList<>();
-        for (int i = mappedSsTables.size() - 1; i >= 0; i--) {
-            final MemorySegment ssTable = mappedSsTables.get(i);
+        for (int i = current.size() - 1; i >= 0; i--) {
+            final LazySSTable lazySsTable = current.get(i);
+            if (!overlaps(lazySsTable, from, to)) {
+                continue;
+            }
+            final MemorySegment ssTable = lazySsTable.ssTable();
             final long fromOffset = from == null ? 0 : upperBound(from, ssTable);
             final long toOffset = to == null ? SSTableUtil.blockCount(ssTable) : upperBound(to, ssTable);
             final Iterator<Entry<MemorySegment>> iterator = new SSTableIterator(
@@ -246,15 +415,30 @@ public class FileDao implements OutMemoryDao<MemorySegment, Entry<MemorySegment>
 
     @Override
     public void compact() throws IOException {
-        save(dao::all);
-        if (!mappedSsTables.isEmpty()) {
-            final List<MemorySegment> newMappedSsTables = new ArrayList<>();
-            newMappedSsTables.add(mappedSsTables.getLast());
-            mappedSsTables = newMappedSsTables;
+        lock.lock();
+        try {
+            doCompact();
+            dropExpired();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doCompact() throws IOException {
+        // Both passes of save should see the same entries
+        final long now = System.currentTimeMillis();
+        final int before = ssTables.size();
+        // Reads and so maps all the sstables before they are deleted
+        compactionBytes.add(doSave(() -> dao.get(null, null, now)));
+        // Nothing is saved if all the entries are removed or expired
+        final int compacted = ssTables.size() - before;
+        if (!ssTables.isEmpty()) {
+            ssTables = List.copyOf(ssTables.subList(before, ssTables.size()));
             final Path indexFilePath = basePath.resolve(INDEX_FILE_NAME);
             final List<String> sstableNames = Files.readAllLines(indexFilePath);
-            changeIndex(List.of(sstableNames.getLast()));
-            for (int i = 0; i < sstableNames.size() - 1; i++) {
+            final int obsolete = sstableNames.size() - compacted;
+            changeIndex(sstableNames.subList(obsolete, sstableNames.size()));
+            for (int i = 0; i < obsolete; i++) {
                 Files.delete(basePath.resolve(sstableNames.get(i)));
             }
         }
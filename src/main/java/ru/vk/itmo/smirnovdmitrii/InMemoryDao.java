@@ -9,12 +9,30 @@ public interface InMemoryDao<D, E extends Entry<D>> extends AutoCloseable {
     /**
      * Committing state of elements in memory represented as map.
      * Returns {@link Iterable} representing sorted elements in memory.
-     * After that in memory dao will be empty.
+     * Elements stay readable until they are {@link #release(Iterable) released}.
      * Changing this map can produce bad work of {@link InMemoryDao}.
      * @return sorted map of elements in memory.
      */
     Iterable<E> commit();
 
+    /**
+     * Removes committed elements which are persisted. Elements replaced after commit are kept.
+     * @param committed elements returned by {@link #commit()}.
+     */
+    void release(Iterable<E> committed);
+
+    /**
+     * Returns estimated heap footprint of elements in memory including structural overhead.
+     * @return size in bytes.
+     */
+    long size();
+
+    /**
+     * Returns bytes of keys and values of elements in memory.
+     * @return size in bytes.
+     */
+    long dataSize();
+
     /**
      * Return iterator for data in memory from key {@code from} to key {@code to}.
      * @param from from key.
@@ -1,32 +1,47 @@
 package ru.vk.itmo.smirnovdmitrii;
 
 import ru.vk.itmo.Entry;
-import ru.vk.itmo.smirnovdmitrii.util.MemorySegmentComparator;
+import ru.vk.itmo.memtable.Footprint;
+import ru.vk.itmo.memtable.MemTableMap;
+import ru.vk.itmo.smirnovdmitrii.util.TimedEntry;
 
 import java.lang.foreign.MemorySegment;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Sorted in memory storage over {@link MemTableMap}.
+ */
 public class InMemoryDaoImpl implements InMemoryDao<MemorySegment, Entry<MemorySegment>> {
-    private final SortedMap<MemorySegment, Entry<MemorySegment>> storage =
-            new ConcurrentSkipListMap<>(new MemorySegmentComparator());
+    /**
+     * BaseEntry is header, key and value. TimedEntry also has expiration.
+     */
+    private static final long ENTRY_SIZE = Footprint.object(2, 0);
+    private static final long TIMED_ENTRY_SIZE = Footprint.object(2, Long.BYTES);
+
+    private final MemTableMap storage;
+    /**
+     * Footprint of entries.
+     */
+    private final AtomicLong entriesSize = new AtomicLong();
+    /**
+     * Keys and values of entries.
+     */
+    private final AtomicLong dataSize = new AtomicLong();
+
+    public InMemoryDaoImpl() {
+        this(MemTableMap.skipList());
+    }
+
+    public InMemoryDaoImpl(final MemTableMap storage) {
+        this.storage = storage;
+    }
 
     @Override
     public Iterator<Entry<MemorySegment>> get(final MemorySegment from, final MemorySegment to) {
-        final Map<MemorySegment, Entry<MemorySegment>> map;
-        if (from == null && to == null) {
-            map = storage;
-        } else if (from == null) {
-            map = storage.headMap(to);
-        } else if (to == null) {
-            map = storage.tailMap(from);
-        } else {
-            map = storage.subMap(from, to);
-        }
-        return map.values().iterator();
+        return storage.get(from, to);
     }
 
     @Override
@@ -36,19 +51,51 @@ public class InMemoryDaoImpl implements InMemoryDao<MemorySegment, Entry<MemoryS
 
     @Override
     public void upsert(final Entry<MemorySegment> entry) {
-        storage.put(entry.key(), entry);
+        final Entry<MemorySegment> previous = storage.put(entry);
+        entriesSize.addAndGet(previous == null ? footprint(entry) : footprint(entry) - footprint(previous));
+        dataSize.addAndGet(previous == null ? bytes(entry) : bytes(entry) - bytes(previous));
     }
 
     @Override
     public Iterable<Entry<MemorySegment>> commit() {
-        final Iterable<Entry<MemorySegment>> result = new ArrayList<>(storage.values());
-        storage.clear();
+        final List<Entry<MemorySegment>> result = new ArrayList<>();
+        storage.get(null, null).forEachRemaining(result::add);
         return result;
     }
 
+    @Override
+    public void release(final Iterable<Entry<MemorySegment>> committed) {
+        for (final Entry<MemorySegment> entry : committed) {
+            if (storage.remove(entry)) {
+                entriesSize.addAndGet(-footprint(entry));
+                dataSize.addAndGet(-bytes(entry));
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return entriesSize.get() + storage.structureSize();
+    }
+
+    @Override
+    public long dataSize() {
+        return dataSize.get();
+    }
+
+    private static long bytes(final Entry<MemorySegment> entry) {
+        return entry.value() == null ? entry.key().byteSize() : entry.key().byteSize() + entry.value().byteSize();
+    }
+
+    private static long footprint(final Entry<MemorySegment> entry) {
+        final long entrySize = entry instanceof TimedEntry<?> ? TIMED_ENTRY_SIZE : ENTRY_SIZE;
+        final long result = entrySize + Footprint.of(entry.key());
+        return entry.value() == null ? result : result + Footprint.of(entry.value());
+    }
+
     @Override
     public void close() {
-        storage.clear();
+        // Entries are released once flushed
     }
 
 }
@@ -0,0 +1,78 @@
+package ru.vk.itmo.smirnovdmitrii.util;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares scalar and vector key comparators on keys differing only in the last byte,
+ * so the whole key is scanned.
+ * Run with {@code --add-modules jdk.incubator.vector} to measure vector comparator,
+ * otherwise both measurements are scalar.
+ *
+ * <p>Usage: {@code ComparatorBenchmark [key sizes...]}, 8 to 256 bytes by default.
+ */
+public final class ComparatorBenchmark {
+    private static final int KEYS = 1024;
+    private static final int ITERATIONS = 10_000;
+    private static final int RUNS = 5;
+
+    private ComparatorBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        final int[] sizes = args.length == 0
+                ? new int[]{8, 16, 32, 64, 128, 256}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        final EqualsComparator<MemorySegment> scalar = KeyComparators.scalar();
+        final EqualsComparator<MemorySegment> vector = KeyComparators.vector();
+        System.out.printf("vector comparator: %s%n", vector.getClass().getSimpleName());
+        for (final int size : sizes) {
+            final MemorySegment[] left = new MemorySegment[KEYS];
+            final MemorySegment[] right = new MemorySegment[KEYS];
+            keys(size, left, right);
+            System.out.printf(
+                    "%d bytes: scalar %.1f ns, vector %.1f ns%n",
+                    size,
+                    run(scalar, left, right),
+                    run(vector, left, right));
+        }
+    }
+
+    private static void keys(final int size, final MemorySegment[] left, final MemorySegment[] right) {
+        final Random random = new Random(size);
+        for (int i = 0; i < left.length; i++) {
+            final byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            final byte[] other = bytes.clone();
+            other[size - 1]++;
+            left[i] = MemorySegment.ofArray(bytes);
+            right[i] = MemorySegment.ofArray(other);
+        }
+    }
+
+    /**
+     * Returns median nanoseconds per comparison.
+     */
+    private static double run(
+            final EqualsComparator<MemorySegment> comparator,
+            final MemorySegment[] left,
+            final MemorySegment[] right) {
+        final long[] nanos = new long[RUNS];
+        long checksum = 0;
+        for (int run = 0; run < RUNS; run++) {
+            final long start = System.nanoTime();
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                for (int i = 0; i < left.length; i++) {
+                    checksum += comparator.compare(left[i], right[i]);
+                }
+            }
+            nanos[run] = System.nanoTime() - start;
+        }
+        if (checksum == 0) {
+            System.out.println("Unexpected checksum");
+        }
+        Arrays.sort(nanos);
+        return (double) nanos[RUNS / 2] / ((long) ITERATIONS * left.length);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.vk.itmo.smirnovdmitrii.util;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Selects key comparator at runtime.
+ * Comparator is chosen by {@value #PROPERTY} system property: {@code scalar} (default) or {@code vector}.
+ * Vector comparator requires JVM option {@code --add-modules jdk.incubator.vector}
+ * and falls back to scalar one without it.
+ */
+public final class KeyComparators {
+    public static final String PROPERTY = "smirnovdmitrii.comparator";
+    private static final String VECTOR_CLASS_NAME = "ru.vk.itmo.smirnovdmitrii.util.VectorMemorySegmentComparator";
+
+    private KeyComparators() {
+    }
+
+    /**
+     * Returns comparator chosen by {@value #PROPERTY} system property.
+     * @return key comparator.
+     */
+    public static EqualsComparator<MemorySegment> select() {
+        final String name = System.getProperty(PROPERTY, "scalar");
+        return switch (name) {
+            case "scalar" -> scalar();
+            case "vector" -> vector();
+            default -> throw new IllegalArgumentException("Unknown comparator " + name);
+        };
+    }
+
+    /**
+     * Returns comparator finding first mismatch with {@link MemorySegment#mismatch}.
+     * @return scalar key comparator.
+     */
+    public static EqualsComparator<MemorySegment> scalar() {
+        return new MemorySegmentComparator();
+    }
+
+    /**
+     * Returns comparator finding first mismatch with vector lane comparisons
+     * or scalar one if {@code jdk.incubator.vector} module is not available.
+     * @return vector key comparator if available.
+     */
+    @SuppressWarnings("unchecked")
+    public static EqualsComparator<MemorySegment> vector() {
+        try {
+            return (EqualsComparator<MemorySegment>) Class.forName(VECTOR_CLASS_NAME)
+                    .getConstructor()
+                    .newInstance();
+        } catch (final ReflectiveOperationException | LinkageError e) {
+            // Module is not added or class is not built
+            return scalar();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.vk.itmo.smirnovdmitrii.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SSTable which is opened reading only footer and mapped on first access.
+ * Footer is copied to heap, so key range and expiration are available without mapping.
+ */
+public final class LazySSTable {
+    private final Path path;
+    private final Arena arena;
+    private final MemorySegment footer;
+    private final Lock lock = new ReentrantLock();
+    // Mapped once under lock, read without it
+    private volatile MemorySegment ssTable;
+
+    private LazySSTable(final Path path, final Arena arena, final MemorySegment footer) {
+        this.path = path;
+        this.arena = arena;
+        this.footer = footer;
+    }
+
+    /**
+     * Reads footer of sstable.
+     * @param path sstable file.
+     * @param arena arena to map sstable in on first access.
+     * @return not mapped sstable.
+     * @throws IOException if footer can't be read or sstable is written in unsupported format.
+     */
+    public static LazySSTable open(final Path path, final Arena arena) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < SSTableUtil.TRAILER_SIZE) {
+                throw unsupported(path);
+            }
+            final MemorySegment trailer = read(channel, size - SSTableUtil.TRAILER_SIZE, SSTableUtil.TRAILER_SIZE);
+            if (SSTableUtil.magic(trailer) != SSTableUtil.MAGIC) {
+                throw unsupported(path);
+            }
+            final long footerSize = SSTableUtil.footerSize(trailer);
+            if (footerSize < SSTableUtil.TRAILER_SIZE || footerSize > size) {
+                throw new IOException("corrupted footer of sstable " + path);
+            }
+            return new LazySSTable(path, arena, read(channel, size - footerSize, footerSize));
+        }
+    }
+
+    private static IOException unsupported(final Path path) {
+        return new IOException("unsupported format of sstable " + path + ", e.g. written without footer");
+    }
+
+    private static MemorySegment read(
+            final FileChannel channel,
+            final long position,
+            final long length
+    ) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("truncated sstable " + channel);
+            }
+        }
+        return MemorySegment.ofArray(buffer.array());
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public MemorySegment minKey() {
+        return SSTableUtil.minKey(footer);
+    }
+
+    public MemorySegment maxKey() {
+        return SSTableUtil.maxKey(footer);
+    }
+
+    /**
+     * Returns max expiration of not removed entries in sstable.
+     * @return epoch millis or {@link Long#MIN_VALUE} if there are only tombstones.
+     */
+    public long maxExpiration() {
+        return SSTableUtil.maxExpiration(footer);
+    }
+
+    /**
+     * Returns mapped sstable mapping it on first access.
+     * @return whole sstable.
+     */
+    public MemorySegment ssTable() {
+        final MemorySegment result = ssTable;
+        if (result != null) {
+            return result;
+        }
+        lock.lock();
+        try {
+            if (ssTable == null) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    ssTable = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+                }
+            }
+            return ssTable;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("exception while mapping sstable " + path, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
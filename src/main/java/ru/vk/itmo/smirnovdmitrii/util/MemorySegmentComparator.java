@@ -3,10 +3,17 @@ package ru.vk.itmo.smirnovdmitrii.util;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 
+/**
+ * Compares keys by their first 8 bytes as unsigned big-endian {@code long} first
+ * and finds mismatch only if they are equal.
+ */
 public final class MemorySegmentComparator implements EqualsComparator<MemorySegment> {
-
     @Override
     public int compare(final MemorySegment o1, final MemorySegment o2) {
+        final int prefixCompare = Long.compareUnsigned(prefix(o1), prefix(o2));
+        if (prefixCompare != 0) {
+            return prefixCompare;
+        }
         long offset = o1.mismatch(o2);
         if (offset == -1) {
             return 0;
@@ -22,4 +29,8 @@ public final class MemorySegmentComparator implements EqualsComparator<MemorySeg
     public boolean equals(final MemorySegment o1, final MemorySegment o2) {
         return o1.mismatch(o2) == -1;
     }
+
+    private static long prefix(final MemorySegment segment) {
+        return ru.vk.itmo.memtable.MemorySegmentComparator.prefix(segment);
+    }
 }
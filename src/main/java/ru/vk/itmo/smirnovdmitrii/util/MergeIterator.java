@@ -10,12 +10,15 @@ import java.util.List;
 public class MergeIterator<T, E extends Entry<T>> implements Iterator<E> {
     private final EqualsComparator<T> comparator;
     private final MinHeap<PeekingIterator<E>> heap;
+    private final long now;
 
     private MergeIterator(
             final Collection<PeekingIterator<E>> iterators,
-            final EqualsComparator<T> comparator
+            final EqualsComparator<T> comparator,
+            final long now
     ) {
         this.comparator = comparator;
+        this.now = now;
         heap = new BinaryMinHeap<>(iterators, this::compare);
     }
 
@@ -63,7 +66,7 @@ public class MergeIterator<T, E extends Entry<T>> implements Iterator<E> {
         if (heap.isEmpty()) {
             return;
         }
-        while (!heap.isEmpty() && heap.min().peek().value() == null) {
+        while (!heap.isEmpty() && TimedEntry.isDead(heap.min().peek(), now)) {
             final T key = heap.min().peek().key();
             while (!heap.isEmpty() && comparator.equals(heap.min().peek().key(), key)) {
                 skip();
@@ -81,12 +84,23 @@ public class MergeIterator<T, E extends Entry<T>> implements Iterator<E> {
         private final List<PeekingIterator<E>> list = new ArrayList<>();
 
         private EqualsComparator<T> comparator;
+        private long now = Long.MIN_VALUE;
 
         public Builder<T, E> addComparator(final EqualsComparator<T> comparator) {
             this.comparator = comparator;
             return this;
         }
 
+        /**
+         * Entries expired at {@code now} are skipped. By default, only tombstones are skipped.
+         * @param now epoch millis.
+         * @return this builder.
+         */
+        public Builder<T, E> addTime(final long now) {
+            this.now = now;
+            return this;
+        }
+
         public Builder<T, E> addIterator(final PeekingIterator<E> iterator) {
             if (iterator.hasNext()) {
                 list.add(iterator);
@@ -98,7 +112,7 @@ public class MergeIterator<T, E extends Entry<T>> implements Iterator<E> {
             if (comparator == null) {
                 throw new IllegalStateException("comparator is null");
             }
-            return new MergeIterator<>(list, comparator);
+            return new MergeIterator<>(list, comparator, now);
         }
     }
 
@@ -7,15 +7,34 @@ import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 
 public final class SSTableUtil {
+    /**
+     * [JAVA_LONG_UNALIGNED] key_offset [JAVA_LONG_UNALIGNED] value_offset [JAVA_LONG_UNALIGNED] expiration.
+     */
+    public static final long META_BLOCK_SIZE = Long.BYTES * 3L;
+    /**
+     * Footer is [bytes] min_key [bytes] max_key and trailer:
+     * [JAVA_LONG_UNALIGNED] min_key_size [JAVA_LONG_UNALIGNED] max_key_size [JAVA_LONG_UNALIGNED] entries
+     * [JAVA_LONG_UNALIGNED] tombstones [JAVA_LONG_UNALIGNED] max expiration of not removed entries
+     * [JAVA_LONG_UNALIGNED] {@link #MAGIC}.
+     */
+    public static final long TRAILER_SIZE = Long.BYTES * 6L;
+    /**
+     * Ends every sstable, the lowest byte is format version.
+     * Sstables written without footer or by other version end with something else.
+     */
+    public static final long MAGIC = 0x534D_4952_4E4F_5601L;
 
     private SSTableUtil() {
     }
 
     public static Entry<MemorySegment> readBlock(final MemorySegment sstable, final long index) {
-        return new BaseEntry<>(
-                readBlockKey(sstable, index),
-                readBlockValue(sstable, index)
-        );
+        final MemorySegment key = readBlockKey(sstable, index);
+        final MemorySegment value = readBlockValue(sstable, index);
+        final long expiration = readBlockExpiration(sstable, index);
+        if (expiration == TimedEntry.NEVER) {
+            return new BaseEntry<>(key, value);
+        }
+        return new TimedEntry<>(key, value, expiration);
     }
 
     public static MemorySegment readBlockKey(final MemorySegment sstable, final long index) {
@@ -31,12 +50,16 @@ public final class SSTableUtil {
         return sstable.asSlice(startOfValue, endOfValue(sstable, index) - startOfValue);
     }
 
+    private static long readBlockExpiration(final MemorySegment sstable, final long index) {
+        return sstable.get(ValueLayout.JAVA_LONG_UNALIGNED, index * META_BLOCK_SIZE + Long.BYTES * 2);
+    }
+
     private static long startOfKey(final MemorySegment sstable, final long index) {
-        return sstable.get(ValueLayout.JAVA_LONG_UNALIGNED, index * Long.BYTES * 2);
+        return sstable.get(ValueLayout.JAVA_LONG_UNALIGNED, index * META_BLOCK_SIZE);
     }
 
     private static long startOfValue(final MemorySegment sstable, final long index) {
-        return sstable.get(ValueLayout.JAVA_LONG_UNALIGNED, index * Long.BYTES * 2 + Long.BYTES);
+        return sstable.get(ValueLayout.JAVA_LONG_UNALIGNED, index * META_BLOCK_SIZE + Long.BYTES);
     }
 
     private static long normalizedStartOfValue(final MemorySegment sstable, final long index) {
@@ -49,13 +72,65 @@ public final class SSTableUtil {
 
     private static long endOfValue(final MemorySegment sstable, final long index) {
         if (index == blockCount(sstable) - 1) {
-            return sstable.byteSize();
+            return startOfFooter(sstable);
         }
         return startOfKey(sstable, index + 1);
     }
 
     public static long blockCount(final MemorySegment sstable) {
-        return sstable.get(ValueLayout.JAVA_LONG_UNALIGNED, 0) / Long.BYTES / 2;
+        return readTrailer(sstable, 2);
+    }
+
+    public static long tombstoneCount(final MemorySegment sstable) {
+        return readTrailer(sstable, 3);
+    }
+
+    public static MemorySegment minKey(final MemorySegment sstable) {
+        return sstable.asSlice(startOfFooter(sstable), readTrailer(sstable, 0));
+    }
+
+    public static MemorySegment maxKey(final MemorySegment sstable) {
+        final long minKeySize = readTrailer(sstable, 0);
+        return sstable.asSlice(startOfFooter(sstable) + minKeySize, readTrailer(sstable, 1));
+    }
+
+    /**
+     * Returns size of footer including keys.
+     * @param sstable sstable or its part ending with trailer.
+     * @return size in bytes.
+     */
+    public static long footerSize(final MemorySegment sstable) {
+        return TRAILER_SIZE + readTrailer(sstable, 0) + readTrailer(sstable, 1);
+    }
+
+    private static long startOfFooter(final MemorySegment sstable) {
+        return sstable.byteSize() - footerSize(sstable);
+    }
+
+    private static long readTrailer(final MemorySegment sstable, final int field) {
+        return sstable.get(
+                ValueLayout.JAVA_LONG_UNALIGNED,
+                sstable.byteSize() - TRAILER_SIZE + (long) field * Long.BYTES
+        );
+    }
+
+    /**
+     * Returns max expiration of not removed entries in sstable.
+     * If it is in the past, the whole sstable reads as removed.
+     * @param sstable sstable.
+     * @return epoch millis or {@link Long#MIN_VALUE} if there are only tombstones.
+     */
+    public static long maxExpiration(final MemorySegment sstable) {
+        return readTrailer(sstable, 4);
+    }
+
+    /**
+     * Returns magic ending sstable.
+     * @param sstable sstable or its part ending with trailer.
+     * @return {@link #MAGIC} if sstable is written in current format.
+     */
+    public static long magic(final MemorySegment sstable) {
+        return readTrailer(sstable, 5);
     }
 
     public static long tombstone(final long value) {
@@ -0,0 +1,34 @@
+package ru.vk.itmo.smirnovdmitrii.util;
+
+import ru.vk.itmo.Entry;
+
+/**
+ * Entry which is alive until {@code expiration} (epoch millis).
+ * Expired entry reads as removed, so it shadows older versions of the key like a tombstone.
+ * @param key key of entry.
+ * @param value value of entry or null for tombstone.
+ * @param expiration epoch millis since which entry is expired.
+ */
+public record TimedEntry<T>(T key, T value, long expiration) implements Entry<T> {
+    /**
+     * Expiration of entries without ttl.
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    public static long expiration(final Entry<?> entry) {
+        if (entry instanceof TimedEntry<?> timedEntry) {
+            return timedEntry.expiration();
+        }
+        return NEVER;
+    }
+
+    /**
+     * Returns true if entry is removed or expired at {@code now}.
+     * @param entry checking entry.
+     * @param now epoch millis.
+     * @return true if entry should not be visible.
+     */
+    public static boolean isDead(final Entry<?> entry, final long now) {
+        return entry.value() == null || expiration(entry) <= now;
+    }
+}
@@ -0,0 +1,249 @@
+package ru.vk.itmo.memtable;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Checks every {@link MemTableMap} against {@link TreeMap} ordered by unsigned bytes.
+ */
+class MemTableMapTest {
+    private static final int OPERATIONS = 20_000;
+    private static final int KEYS = 500;
+    private static final int WRITERS = 4;
+    private static final int READERS = 2;
+    private static final int KEYS_PER_WRITER = 2_000;
+
+    static Stream<Arguments> maps() {
+        return Stream.of(
+                Arguments.of("skipList", (Supplier<MemTableMap>) MemTableMap::skipList),
+                Arguments.of("hashIndexed", (Supplier<MemTableMap>) MemTableMap::hashIndexed),
+                Arguments.of("radixTree", (Supplier<MemTableMap>) MemTableMap::radixTree),
+                Arguments.of("bPlusTree", (Supplier<MemTableMap>) MemTableMap::bPlusTree));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void randomOperationsMatchReference(
+            final String name,
+            final Supplier<MemTableMap> factory) {
+        final MemTableMap map = factory.get();
+        final NavigableMap<byte[], Entry<MemorySegment>> reference = new TreeMap<>(Arrays::compareUnsigned);
+        final List<byte[]> keys = keys(new Random(1));
+        final Random random = new Random(2);
+        for (int i = 0; i < OPERATIONS; i++) {
+            final byte[] key = keys.get(random.nextInt(keys.size()));
+            final int operation = random.nextInt(10);
+            if (operation < 5) {
+                // Tombstones are regular entries for the map
+                final Entry<MemorySegment> entry =
+                        new BaseEntry<>(
+                                MemorySegment.ofArray(key.clone()),
+                                operation == 0 ? null : segment("value" + i));
+                Assertions.assertSame(reference.put(key, entry), map.put(entry));
+            } else if (operation < 7) {
+                final Entry<MemorySegment> current = reference.get(key);
+                if (current == null) {
+                    Assertions.assertFalse(map.remove(new BaseEntry<>(MemorySegment.ofArray(key), segment("absent"))));
+                } else if (random.nextBoolean()) {
+                    Assertions.assertTrue(map.remove(current));
+                    reference.remove(key);
+                } else {
+                    // Not associated with the key anymore
+                    Assertions.assertFalse(map.remove(new BaseEntry<>(current.key(), segment("replaced"))));
+                }
+            } else if (operation < 9) {
+                Assertions.assertSame(reference.get(key), map.get(MemorySegment.ofArray(key.clone())));
+            } else {
+                final byte[] from = random.nextInt(4) == 0 ? null : keys.get(random.nextInt(keys.size()));
+                final byte[] to = random.nextInt(4) == 0 ? null : keys.get(random.nextInt(keys.size()));
+                if (from != null && to != null && Arrays.compareUnsigned(from, to) > 0) {
+                    continue;
+                }
+                assertRange(reference, map, from, to);
+            }
+            Assertions.assertEquals(reference.isEmpty(), map.isEmpty());
+        }
+        assertRange(reference, map, null, null);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void shortAndSharedPrefixKeysAreOrdered(
+            final String name,
+            final Supplier<MemTableMap> factory) {
+        final MemTableMap map = factory.get();
+        final NavigableMap<byte[], Entry<MemorySegment>> reference = new TreeMap<>(Arrays::compareUnsigned);
+        final List<byte[]> keys = new ArrayList<>();
+        keys.add(new byte[0]);
+        for (int length = 1; length <= 20; length++) {
+            // Each key is a prefix of the next ones
+            final byte[] same = new byte[length];
+            Arrays.fill(same, (byte) 'a');
+            keys.add(same);
+            // Unsigned bytes around the prefix boundary
+            final byte[] high = same.clone();
+            high[length - 1] = (byte) 0xFF;
+            keys.add(high);
+            final byte[] zero = same.clone();
+            zero[length - 1] = 0;
+            keys.add(zero);
+        }
+        for (final byte[] key : keys) {
+            final Entry<MemorySegment> entry = new BaseEntry<>(MemorySegment.ofArray(key), segment("value"));
+            reference.put(key, entry);
+            map.put(entry);
+        }
+
+        for (final byte[] key : reference.keySet()) {
+            Assertions.assertSame(reference.get(key), map.get(MemorySegment.ofArray(key.clone())));
+        }
+        for (final byte[] from : reference.keySet()) {
+            assertRange(reference, map, from, null);
+            assertRange(reference, map, null, from);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("maps")
+    void concurrentWritersWithScanningReaders(
+            final String name,
+            final Supplier<MemTableMap> factory) throws InterruptedException, ExecutionException {
+        final MemTableMap map = factory.get();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        try {
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < READERS; reader++) {
+                readers.add(executor.submit(() -> {
+                    while (writing.get()) {
+                        // Sorted without duplicates while being modified
+                        byte[] previous = null;
+                        final Iterator<Entry<MemorySegment>> entries = map.get(null, null);
+                        while (entries.hasNext()) {
+                            final byte[] key = entries.next().key().toArray(ValueLayout.JAVA_BYTE);
+                            if (previous != null) {
+                                Assertions.assertTrue(Arrays.compareUnsigned(previous, key) < 0);
+                            }
+                            previous = key;
+                        }
+                    }
+                }));
+            }
+
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < WRITERS; writer++) {
+                final int id = writer;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                        // Interleaved keys sharing long prefixes
+                        final Entry<MemorySegment> entry =
+                                new BaseEntry<>(segment(key(i * WRITERS + id)), segment("value" + i));
+                        map.put(entry);
+                        Assertions.assertSame(entry, map.get(segment(key(i * WRITERS + id))));
+                        if (i % 3 == 0) {
+                            Assertions.assertTrue(map.remove(entry));
+                        }
+                    }
+                }));
+            }
+
+            for (final Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            for (final Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < KEYS_PER_WRITER * WRITERS; i++) {
+            if (i / WRITERS % 3 != 0) {
+                expected.add(key(i));
+            }
+        }
+        // ASCII keys, so the same as unsigned bytes
+        expected.sort(null);
+        final List<String> actual = new ArrayList<>();
+        map.get(null, null).forEachRemaining(entry -> actual.add(string(entry.key())));
+        Assertions.assertEquals(expected, actual);
+    }
+
+    private static void assertRange(
+            final NavigableMap<byte[], Entry<MemorySegment>> reference,
+            final MemTableMap map,
+            final byte[] from,
+            final byte[] to) {
+        final Map<byte[], Entry<MemorySegment>> expected;
+        if (from == null) {
+            expected = to == null ? reference : reference.headMap(to, false);
+        } else {
+            expected = to == null ? reference.tailMap(from, true) : reference.subMap(from, true, to, false);
+        }
+
+        final Iterator<Entry<MemorySegment>> actual =
+                map.get(
+                        from == null ? null : MemorySegment.ofArray(from),
+                        to == null ? null : MemorySegment.ofArray(to));
+        for (final Entry<MemorySegment> entry : expected.values()) {
+            Assertions.assertTrue(actual.hasNext());
+            Assertions.assertSame(entry, actual.next());
+        }
+        Assertions.assertFalse(actual.hasNext());
+    }
+
+    private static List<byte[]> keys(final Random random) {
+        final List<byte[]> result = new ArrayList<>(KEYS);
+        result.add(new byte[0]);
+        while (result.size() < KEYS) {
+            if (random.nextBoolean()) {
+                // Short keys of all the bytes
+                final byte[] key = new byte[1 + random.nextInt(3)];
+                random.nextBytes(key);
+                result.add(key);
+            } else {
+                // Long keys sharing prefixes
+                result.add(key(random.nextInt(KEYS)).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static String key(final int i) {
+        return "shared/prefix/of/keys/" + (i % 7) + "/" + i;
+    }
+
+    private static MemorySegment segment(final String value) {
+        return MemorySegment.ofArray(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(final MemorySegment segment) {
+        return new String(segment.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.vk.itmo.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+class MetricsRegistryTest {
+    private static final double ERROR = 0.25;
+
+    @Test
+    void snapshotHoldsCountersAndHistograms() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("bytes").add(10L);
+        registry.counter("bytes").increment();
+        // Same metric by the same name
+        Assertions.assertSame(registry.histogram("latency"), registry.histogram("latency"));
+        for (long value = 1L; value <= 1_000L; value++) {
+            registry.histogram("latency").record(value);
+        }
+        registry.histogram("latency").record(-1L);
+
+        final MetricsSnapshot snapshot = registry.snapshot();
+        Assertions.assertEquals(Set.of("bytes"), snapshot.counters().keySet());
+        Assertions.assertEquals(11L, snapshot.counter("bytes"));
+        Assertions.assertEquals(0L, snapshot.counter("absent"));
+        Assertions.assertNull(snapshot.histogram("absent"));
+
+        final HistogramSnapshot latency = snapshot.histogram("latency");
+        Assertions.assertEquals(1_001L, latency.count());
+        Assertions.assertEquals(500_500L, latency.sum());
+        Assertions.assertEquals(1_000L, latency.max());
+        Assertions.assertEquals(500.0, latency.p50(), 500.0 * ERROR);
+        Assertions.assertEquals(900.0, latency.p90(), 900.0 * ERROR);
+        Assertions.assertEquals(990.0, latency.p99(), 990.0 * ERROR);
+        Assertions.assertTrue(latency.p50() <= latency.p90() && latency.p90() <= latency.p99());
+
+        // Snapshot is not affected by later updates
+        registry.counter("bytes").increment();
+        Assertions.assertEquals(11L, snapshot.counter("bytes"));
+    }
+
+    @Test
+    void exportedUntilClosed() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("ru.vk.itmo:type=\"test\",path=\"/tmp/metrics\"");
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("bytes").add(3L);
+        registry.histogram("latency").record(7L);
+        registry.export("test", "/tmp/metrics");
+        try {
+            Assertions.assertTrue(server.isRegistered(name));
+            Assertions.assertEquals(3L, server.getAttribute(name, "bytes"));
+            Assertions.assertEquals(1L, server.getAttribute(name, "latency.count"));
+            Assertions.assertEquals(7L, server.getAttribute(name, "latency.max"));
+
+            // The first exported registry keeps the name
+            final MetricsRegistry another = new MetricsRegistry();
+            another.export("test", "/tmp/metrics");
+            another.close();
+            Assertions.assertTrue(server.isRegistered(name));
+            Assertions.assertEquals(3L, server.getAttribute(name, "bytes"));
+        } finally {
+            registry.close();
+        }
+        Assertions.assertFalse(server.isRegistered(name));
+
+        // Closing twice is harmless
+        registry.close();
+    }
+}
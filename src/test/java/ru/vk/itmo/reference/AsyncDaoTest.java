@@ -0,0 +1,136 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static ru.vk.itmo.reference.TestUtils.COUNTER;
+import static ru.vk.itmo.reference.TestUtils.counter;
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class AsyncDaoTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int KEYS = 1_000;
+
+    @Test
+    void operationsAreExecutedAsynchronously() throws IOException {
+        final Path baseDir = Files.createTempDirectory("async");
+        final Options options = Options.builder().mergeOperator(COUNTER).build();
+        try (AsyncDao dao = new AsyncDao(new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options))) {
+            dao.upsertAsync(new BaseEntry<>(segment("a"), segment("value"))).join();
+            dao.applyAsync(
+                    new WriteBatch()
+                            .upsert(new BaseEntry<>(segment("b"), segment("batch")))
+                            .remove(segment("a"))).join();
+            dao.mergeAsync(segment("c"), counter(2L)).join();
+            dao.mergeAsync(segment("c"), counter(3L)).join();
+            dao.flushAsync().join();
+
+            Assertions.assertNull(dao.getAsync(segment("a")).join());
+            Assertions.assertEquals("batch", string(dao.getAsync(segment("b")).join().value()));
+            Assertions.assertEquals(5L, counter(dao.getAsync(segment("c")).join().value()));
+
+            // Read on the executor and copied from the mapped SSTable
+            final List<Entry<MemorySegment>> range = dao.getAsync(segment("b"), null).join();
+            Assertions.assertEquals(2, range.size());
+            Assertions.assertEquals("b", string(range.getFirst().key()));
+            Assertions.assertEquals("batch", string(range.getFirst().value()));
+            for (final Entry<MemorySegment> entry : range) {
+                Assertions.assertFalse(entry.key().isNative());
+                Assertions.assertFalse(entry.value().isNative());
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void flushCompletesOncePublished() throws IOException {
+        final Path baseDir = Files.createTempDirectory("async");
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+            dao.upsert(new BaseEntry<>(segment("key"), segment("value")));
+            // Runs right after completion
+            final List<String> manifest =
+                    dao.flushAsync()
+                            .thenApply(ignored -> manifest(baseDir))
+                            .join();
+            Assertions.assertEquals(2, manifest.size());
+            final int sequence = Integer.parseInt(manifest.getFirst());
+            Assertions.assertTrue(Files.exists(SSTables.dataName(baseDir, sequence)));
+
+            // Nothing to flush, but completed
+            Assertions.assertTrue(dao.flushAsync().isDone());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void compactionCompletesOncePublished() throws IOException {
+        final Path baseDir = Files.createTempDirectory("async");
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+            dao.upsert(new BaseEntry<>(segment("a"), segment("value")));
+            dao.flushAsync().join();
+            dao.upsert(new BaseEntry<>(segment("b"), segment("value")));
+            dao.flushAsync().join();
+            Assertions.assertEquals(3, manifest(baseDir).size());
+
+            final List<String> manifest =
+                    dao.compactAsync()
+                            .thenApply(ignored -> manifest(baseDir))
+                            .join();
+            Assertions.assertEquals(2, manifest.size());
+            Assertions.assertEquals("value", string(dao.get(segment("a")).value()));
+            Assertions.assertEquals("value", string(dao.get(segment("b")).value()));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void closeWaitsForSubmittedOperations() throws IOException {
+        final Path baseDir = Files.createTempDirectory("async");
+        try {
+            final List<CompletableFuture<Void>> upserts = new ArrayList<>(KEYS);
+            try (AsyncDao dao = new AsyncDao(new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD)))) {
+                for (int i = 0; i < KEYS; i++) {
+                    upserts.add(dao.upsertAsync(new BaseEntry<>(segment("key" + i), segment("value" + i))));
+                }
+            }
+            for (final CompletableFuture<Void> upsert : upserts) {
+                Assertions.assertTrue(upsert.isDone());
+                Assertions.assertFalse(upsert.isCompletedExceptionally());
+            }
+
+            // Flushed on close
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                for (int i = 0; i < KEYS; i++) {
+                    Assertions.assertEquals("value" + i, string(dao.get(segment("key" + i)).value()));
+                }
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static List<String> manifest(final Path baseDir) {
+        try {
+            return Files.readAllLines(baseDir.resolve("manifest"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
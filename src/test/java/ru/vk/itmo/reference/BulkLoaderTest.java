@@ -0,0 +1,71 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class BulkLoaderTest {
+    private static final int ENTRIES = 50_000;
+    private static final int KEYS = 40_000;
+    private static final long MEMORY_BUDGET = 256 * 1024;
+    private static final int THREADS = 4;
+
+    @Test
+    void loadedSSTablesHoldLatestEntries() throws IOException {
+        final Random random = new Random(ENTRIES);
+        final List<Entry<MemorySegment>> entries = new ArrayList<>(ENTRIES);
+        final Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            final String key = "key" + random.nextInt(KEYS);
+            // Some keys are overwritten or removed
+            final String value = i % 10 == 0 ? null : "value" + i + "-".repeat(random.nextInt(32));
+            entries.add(new BaseEntry<>(segment(key), value == null ? null : segment(value)));
+            expected.put(key, value);
+        }
+
+        final Path workDir = Files.createTempDirectory("bulk");
+        try {
+            final List<Path> loaded =
+                    new BulkLoader(workDir, MEMORY_BUDGET, THREADS)
+                            .load(entries.iterator());
+            Assertions.assertTrue(loaded.size() > 1);
+
+            final Path dataDir = Files.createDirectory(workDir.resolve("data"));
+            try (ReferenceDao dao = new ReferenceDao(new Config(dataDir, MEMORY_BUDGET))) {
+                dao.upsert(new BaseEntry<>(segment("key0"), segment("shadowed")));
+                dao.ingest(loaded);
+
+                final Iterator<Entry<MemorySegment>> all = dao.all();
+                for (final Map.Entry<String, String> entry : expected.entrySet()) {
+                    if (entry.getValue() == null) {
+                        Assertions.assertSame(null, dao.get(segment(entry.getKey())));
+                        continue;
+                    }
+                    final Entry<MemorySegment> actual = all.next();
+                    Assertions.assertEquals(entry.getKey(), string(actual.key()));
+                    Assertions.assertEquals(entry.getValue(), string(actual.value()));
+                }
+                Assertions.assertTrue(!all.hasNext());
+            }
+        } finally {
+            delete(workDir);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class ChannelWriterTest {
+    private static final long BUFFER_SIZE = 64;
+    private static final int LARGE_VALUE = 600 * 1024;
+    private static final int SMALL_ENTRIES = 10_000;
+
+    @Test
+    void stagedAndDirectWritesKeepOrder() throws IOException {
+        final Path file = Files.createTempFile("writer", ".bin");
+        try {
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            final Random random = new Random(1);
+            long written = 0L;
+            try (Arena arena = Arena.ofConfined();
+                 ChannelWriter writer = new ChannelWriter(file, arena, BUFFER_SIZE)) {
+                for (int i = 0; i < 1_000; i++) {
+                    if (random.nextInt(4) == 0) {
+                        final long value = random.nextLong();
+                        writer.writeLong(value);
+                        expected.writeBytes(
+                                ByteBuffer.allocate(Long.BYTES)
+                                        .order(ByteOrder.nativeOrder())
+                                        .putLong(value)
+                                        .array());
+                        written += Long.BYTES;
+                    } else {
+                        // Empty, staged, exactly the direct threshold and larger than the buffer
+                        final byte[] bytes = new byte[random.nextInt((int) BUFFER_SIZE * 3)];
+                        random.nextBytes(bytes);
+                        writer.write(MemorySegment.ofArray(bytes));
+                        expected.writeBytes(bytes);
+                        written += bytes.length;
+                    }
+                    Assertions.assertEquals(written, writer.written());
+                }
+                writer.write(MemorySegment.ofArray(new byte[(int) BUFFER_SIZE / 2]));
+                expected.writeBytes(new byte[(int) BUFFER_SIZE / 2]);
+            }
+
+            Assertions.assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void largeAndSmallEntriesSurviveRoundTrip() throws IOException {
+        final Path baseDir = Files.createTempDirectory("writer");
+        try {
+            final Config config = new Config(baseDir, 64 * 1024 * 1024);
+            // Keep large values inline to write them directly to SSTable
+            final Options options = Options.builder().valueSeparationThreshold(Long.MAX_VALUE).build();
+            try (ReferenceDao dao = new ReferenceDao(config, options)) {
+                for (int i = 0; i < SMALL_ENTRIES; i++) {
+                    dao.upsert(new BaseEntry<>(segment(key(i)), segment("value" + i)));
+                    if (i % 2_500 == 0) {
+                        dao.upsert(new BaseEntry<>(segment(key(i) + "/large"), large(i)));
+                    }
+                }
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(config, options)) {
+                final Iterator<Entry<MemorySegment>> entries = dao.all();
+                for (int i = 0; i < SMALL_ENTRIES; i++) {
+                    Entry<MemorySegment> entry = entries.next();
+                    Assertions.assertEquals(key(i), string(entry.key()));
+                    Assertions.assertEquals("value" + i, string(entry.value()));
+                    if (i % 2_500 == 0) {
+                        entry = entries.next();
+                        Assertions.assertEquals(key(i) + "/large", string(entry.key()));
+                        Assertions.assertEquals(-1L, large(i).mismatch(entry.value()));
+                    }
+                }
+                Assertions.assertFalse(entries.hasNext());
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static String key(final int i) {
+        return String.format("key%05d", i);
+    }
+
+    private static MemorySegment large(final int seed) {
+        final byte[] bytes = new byte[LARGE_VALUE];
+        Arrays.fill(bytes, (byte) seed);
+        bytes[0] = 0;
+        bytes[bytes.length - 1] = 1;
+        return MemorySegment.ofArray(bytes);
+    }
+}
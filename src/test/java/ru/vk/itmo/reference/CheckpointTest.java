@@ -0,0 +1,70 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class CheckpointTest {
+    private static final int KEYS = 1_000;
+    private static final long FLUSH_THRESHOLD = 16 * 1024;
+
+    @Test
+    void checkpointSurvivesCompactionOfTheOriginal() throws IOException {
+        final Path baseDir = Files.createTempDirectory("checkpoint");
+        final Path target = baseDir.resolveSibling(baseDir.getFileName() + "-copy");
+        final Options options =
+                Options.builder()
+                        .valueSeparationThreshold(64L)
+                        .build();
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                upsertAll(dao, "old");
+                dao.checkpoint(target);
+
+                // Replaces both SSTables and value log segments linked to the checkpoint
+                upsertAll(dao, "new");
+                dao.compactAsync().join();
+            }
+
+            try (ReferenceDao copy = new ReferenceDao(new Config(target, FLUSH_THRESHOLD), options)) {
+                for (int i = 0; i < KEYS; i++) {
+                    final Entry<MemorySegment> entry = copy.get(segment(key(i)));
+                    Assertions.assertEquals(value("old", i), string(entry.value()));
+                }
+            }
+        } finally {
+            delete(baseDir);
+            delete(target);
+        }
+    }
+
+    private static void upsertAll(
+            final ReferenceDao dao,
+            final String version) {
+        for (int i = 0; i < KEYS; i++) {
+            dao.upsert(new BaseEntry<>(segment(key(i)), segment(value(version, i))));
+        }
+    }
+
+    private static String key(final int i) {
+        return "key" + i;
+    }
+
+    private static String value(
+            final String version,
+            final int i) {
+        // Every other value is separated
+        return version + i + (i % 2 == 0 ? "" : "-".repeat(64));
+    }
+}
@@ -0,0 +1,179 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static ru.vk.itmo.reference.TestUtils.COUNTER;
+import static ru.vk.itmo.reference.TestUtils.counter;
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class ColumnFamiliesTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int FAMILIES = 20;
+    private static final int ENTRIES = 2_000;
+
+    private static final Options COUNTERS =
+            Options.builder()
+                    .mergeOperator(COUNTER)
+                    .build();
+
+    @Test
+    void familiesAreSeparateKeySpaces() throws IOException {
+        final Path baseDir = Files.createTempDirectory("families");
+        try {
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                final ReferenceDao users = families.family("users", FLUSH_THRESHOLD, Options.defaults());
+                final ReferenceDao counters = families.family("counters", FLUSH_THRESHOLD, COUNTERS);
+                users.upsert(new BaseEntry<>(segment("key"), segment("user")));
+                counters.merge(segment("key"), counter(1L));
+                counters.flush();
+                counters.merge(segment("key"), counter(2L));
+
+                boolean rejected = false;
+                try {
+                    families.family("users", FLUSH_THRESHOLD, Options.defaults());
+                } catch (IllegalStateException e) {
+                    rejected = true;
+                }
+                Assertions.assertTrue(rejected);
+
+                rejected = false;
+                try {
+                    families.family("../users", FLUSH_THRESHOLD, Options.defaults());
+                } catch (IllegalArgumentException e) {
+                    rejected = true;
+                }
+                Assertions.assertTrue(rejected);
+            }
+
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                Assertions.assertEquals(Set.of("counters", "users"), families.names());
+                final ReferenceDao users = families.family("users", FLUSH_THRESHOLD, Options.defaults());
+                final ReferenceDao counters = families.family("counters", FLUSH_THRESHOLD, COUNTERS);
+                Assertions.assertEquals("user", string(users.get(segment("key")).value()));
+                Assertions.assertEquals(
+                        3L,
+                        counters.get(segment("key")).value().get(ValueLayout.JAVA_LONG_UNALIGNED, 0L));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void droppedFamilyIsRemoved() throws IOException {
+        final Path baseDir = Files.createTempDirectory("families");
+        try {
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                final ReferenceDao dropped = families.family("dropped", FLUSH_THRESHOLD, Options.defaults());
+                dropped.upsert(new BaseEntry<>(segment("key"), segment("value")));
+                families.family("kept", FLUSH_THRESHOLD, Options.defaults());
+
+                families.drop("dropped");
+                Assertions.assertTrue(dropped.isClosed());
+                Assertions.assertTrue(!Files.exists(baseDir.resolve("dropped")));
+                Assertions.assertEquals(Set.of("kept"), families.names());
+            }
+
+            // Leftover of interrupted creation
+            Files.createDirectory(baseDir.resolve("leftover"));
+            Files.write(baseDir.resolve("families.manifest"), List.of("kept", "leftover pending", "# end"));
+            // Not proven to be a leftover
+            Files.createDirectory(baseDir.resolve("foreign"));
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                Assertions.assertEquals(Set.of("kept"), families.names());
+                Assertions.assertTrue(!Files.exists(baseDir.resolve("leftover")));
+                Assertions.assertTrue(Files.exists(baseDir.resolve("foreign")));
+                final ReferenceDao recreated = families.family("dropped", FLUSH_THRESHOLD, Options.defaults());
+                Assertions.assertSame(null, recreated.get(segment("key")));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void directoryWithoutManifestIsRejected() throws IOException {
+        final Path baseDir = Files.createTempDirectory("families");
+        try {
+            final Path data = Files.createFile(baseDir.resolve("data"));
+
+            boolean rejected = false;
+            try (ColumnFamilies ignored = new ColumnFamilies(baseDir, 1, 1)) {
+                // Must not be opened
+            } catch (IOException e) {
+                rejected = true;
+            }
+            Assertions.assertTrue(rejected);
+            Assertions.assertTrue(Files.exists(data));
+
+            // E.g. crash before the manifest reached storage
+            Files.delete(data);
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                families.family("family", FLUSH_THRESHOLD, Options.defaults());
+            }
+            Files.write(baseDir.resolve("families.manifest"), new byte[0]);
+
+            rejected = false;
+            try (ColumnFamilies ignored = new ColumnFamilies(baseDir, 1, 1)) {
+                // Must not be opened
+            } catch (IOException e) {
+                rejected = true;
+            }
+            Assertions.assertTrue(rejected);
+            Assertions.assertTrue(Files.exists(baseDir.resolve("family")));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void manyFamiliesShareSingleThreads() throws IOException {
+        final Path baseDir = Files.createTempDirectory("families");
+        try {
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                final ReferenceDao[] daos = new ReferenceDao[FAMILIES];
+                for (int i = 0; i < FAMILIES; i++) {
+                    // Small MemTables to flush often
+                    daos[i] = families.family("family" + i, 16 * 1024, Options.defaults());
+                }
+                for (int i = 0; i < ENTRIES; i++) {
+                    for (int family = 0; family < FAMILIES; family++) {
+                        daos[family].upsert(new BaseEntry<>(segment(key(i)), segment(family + ":" + i)));
+                    }
+                }
+                for (final ReferenceDao dao : daos) {
+                    dao.compact();
+                }
+            }
+
+            try (ColumnFamilies families = new ColumnFamilies(baseDir, 1, 1)) {
+                for (int family = 0; family < FAMILIES; family++) {
+                    final ReferenceDao dao = families.family("family" + family, 16 * 1024, Options.defaults());
+                    for (int i = 0; i < ENTRIES; i += 100) {
+                        final Entry<MemorySegment> entry = dao.get(segment(key(i)));
+                        Assertions.assertEquals(family + ":" + i, string(entry.value()));
+                    }
+                }
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static String key(final int i) {
+        return String.format("key%05d", i);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class FlushOrderTest {
+    private static final long FLUSH_THRESHOLD = 64 * 1024 * 1024;
+    private static final int FLUSHES = 8;
+    private static final int BIG_FLUSH = 20_000;
+
+    @Test
+    void parallelFlushesArePublishedInSequenceOrder() throws IOException {
+        final Path baseDir = Files.createTempDirectory("flushes");
+        try {
+            final Config config = new Config(baseDir, FLUSH_THRESHOLD);
+            final Options options = Options.builder().flushThreads(4).build();
+            try (ReferenceDao dao = new ReferenceDao(config, options)) {
+                final List<CompletableFuture<Void>> flushes = new ArrayList<>();
+                final AtomicBoolean reordered = new AtomicBoolean();
+                for (int i = 0; i < FLUSHES; i++) {
+                    if (i == 0) {
+                        // The oldest flush is written last
+                        for (int j = 0; j < BIG_FLUSH; j++) {
+                            dao.upsert(new BaseEntry<>(segment("big" + j), segment("value" + j)));
+                        }
+                    }
+                    dao.upsert(new BaseEntry<>(segment("key"), segment("value" + i)));
+
+                    final CompletableFuture<Void> previous = flushes.isEmpty() ? null : flushes.getLast();
+                    final CompletableFuture<Void> flush = dao.flushAsync();
+                    flush.whenComplete((ignored, error) -> {
+                        if (previous != null && !previous.isDone()) {
+                            reordered.set(true);
+                        }
+                    });
+                    flushes.add(flush);
+
+                    // The freshest value wins over the flushing ones
+                    Assertions.assertEquals("value" + i, string(dao.get(segment("key")).value()));
+                }
+
+                flushes.getLast().join();
+                for (final CompletableFuture<Void> flush : flushes) {
+                    Assertions.assertTrue(flush.isDone());
+                }
+                Assertions.assertFalse(reordered.get());
+                Assertions.assertEquals("value" + (FLUSHES - 1), string(dao.get(segment("key")).value()));
+            }
+
+            // Manifest keeps the sequence order
+            try (ReferenceDao dao = new ReferenceDao(config, options)) {
+                Assertions.assertEquals("value" + (FLUSHES - 1), string(dao.get(segment("key")).value()));
+                Assertions.assertEquals("value0", string(dao.get(segment("big0")).value()));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class IngestTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void ingestedEntriesShadowOlderOnes() throws IOException {
+        final Path baseDir = Files.createTempDirectory("ingest");
+        final Options options =
+                Options.builder()
+                        .rowCacheBytes(FLUSH_THRESHOLD)
+                        .build();
+        try {
+            final Path first = baseDir.resolve("first");
+            final Path second = baseDir.resolve("second");
+            new ExternalSSTableWriter(options).write(first, entries(0, 100, "ingested"));
+            new ExternalSSTableWriter(options).write(second, entries(100, 200, "ingested"));
+
+            final Path dataDir = Files.createDirectory(baseDir.resolve("data"));
+            try (ReferenceDao dao = new ReferenceDao(new Config(dataDir, FLUSH_THRESHOLD), options)) {
+                // Both in SSTable and in MemTable
+                upsertAll(dao, 0, 300, "old");
+                dao.flushAsync().join();
+                upsertAll(dao, 50, 150, "upserted");
+                // Cached
+                Assertions.assertEquals("upserted50", string(dao.get(segment(key(50))).value()));
+
+                dao.ingest(List.of(second, first));
+                assertValues(dao);
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(dataDir, FLUSH_THRESHOLD), options)) {
+                assertValues(dao);
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void overlappingSSTablesAreRejected() throws IOException {
+        final Path baseDir = Files.createTempDirectory("ingest");
+        try {
+            final Path first = baseDir.resolve("first");
+            final Path second = baseDir.resolve("second");
+            new ExternalSSTableWriter().write(first, entries(0, 100, "first"));
+            new ExternalSSTableWriter().write(second, entries(99, 200, "second"));
+
+            final Path dataDir = Files.createDirectory(baseDir.resolve("data"));
+            try (ReferenceDao dao = new ReferenceDao(new Config(dataDir, FLUSH_THRESHOLD))) {
+                boolean rejected = false;
+                try {
+                    dao.ingest(List.of(first, second));
+                } catch (IllegalArgumentException e) {
+                    rejected = true;
+                }
+                Assertions.assertTrue(rejected);
+                Assertions.assertSame(null, dao.get(segment(key(0))));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void unsortedEntriesAreRejected() throws IOException {
+        final Path baseDir = Files.createTempDirectory("ingest");
+        try {
+            final List<Entry<MemorySegment>> entries = new ArrayList<>();
+            entries.add(new BaseEntry<>(segment("b"), segment("b")));
+            entries.add(new BaseEntry<>(segment("a"), segment("a")));
+            boolean rejected = false;
+            try {
+                new ExternalSSTableWriter().write(baseDir, entries.iterator());
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            Assertions.assertTrue(rejected);
+            try (Stream<Path> files = Files.list(baseDir)) {
+                Assertions.assertEquals(0L, files.count());
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static void assertValues(final ReferenceDao dao) {
+        for (int i = 0; i < 300; i++) {
+            final String expected = i < 200 ? "ingested" + i : "old" + i;
+            Assertions.assertEquals(expected, string(dao.get(segment(key(i))).value()));
+        }
+    }
+
+    private static Iterator<Entry<MemorySegment>> entries(
+            final int from,
+            final int to,
+            final String version) {
+        final List<Entry<MemorySegment>> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            result.add(new BaseEntry<>(segment(key(i)), segment(version + i)));
+        }
+        return result.iterator();
+    }
+
+    private static void upsertAll(
+            final ReferenceDao dao,
+            final int from,
+            final int to,
+            final String version) {
+        for (int i = from; i < to; i++) {
+            dao.upsert(new BaseEntry<>(segment(key(i)), segment(version + i)));
+        }
+    }
+
+    private static String key(final int i) {
+        // Sorted as numbers
+        return String.format("key%05d", i);
+    }
+}
@@ -0,0 +1,111 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+
+class LearnedIndexTest {
+    private static final int ENTRIES = 50_000;
+    private static final int LOOKUPS = 10_000;
+
+    @Test
+    void randomKeysAreFoundWithFewerProbes() throws IOException {
+        final long[] probes = assertSameResults(random -> {
+            final byte[] key = new byte[16];
+            random.nextBytes(key);
+            return key;
+        });
+
+        Assertions.assertTrue(probes[1] < probes[0]);
+    }
+
+    @Test
+    void keysSharingPrefixesFallBackToBinarySearch() throws IOException {
+        final long[] probes = assertSameResults(
+                random -> String.format("user:%012d", random.nextInt(ENTRIES * 10))
+                        .getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(probes[0], probes[1]);
+    }
+
+    /**
+     * Looks up existing and missing keys in SSTables written without and with the model.
+     *
+     * @return probes without and with the model
+     */
+    private static long[] assertSameResults(final KeyGenerator keys) throws IOException {
+        final Random random = new Random(ENTRIES);
+        final NavigableMap<MemorySegment, Entry<MemorySegment>> entries =
+                new TreeMap<>(MemorySegmentComparator.INSTANCE);
+        for (int i = 0; i < ENTRIES; i++) {
+            final MemorySegment key = MemorySegment.ofArray(keys.next(random));
+            entries.put(key, new BaseEntry<>(key, key));
+        }
+        final List<MemorySegment> lookups = new ArrayList<>(LOOKUPS);
+        final List<MemorySegment> present = new ArrayList<>(entries.keySet());
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups.add(
+                    i % 2 == 0
+                            ? present.get(random.nextInt(present.size()))
+                            : MemorySegment.ofArray(keys.next(random)));
+        }
+
+        final Path baseDir = Files.createTempDirectory("learned");
+        try (Arena arena = Arena.ofShared()) {
+            final ValueLog valueLog =
+                    ValueLog.open(
+                            arena,
+                            baseDir,
+                            Options.defaults().valueSeparationThreshold());
+            final long[] result = new long[2];
+            for (int learned = 0; learned < 2; learned++) {
+                final int sequence = learned + 1;
+                new SSTableWriter(valueLog, segment -> false, learned == 1)
+                        .write(baseDir, sequence, entries.values().iterator());
+                final SSTable ssTable = SSTables.open(arena, baseDir, sequence, valueLog);
+
+                final TraceContext trace = new TraceContext(ignored -> { }, ReadTrace.Operation.GET, null, null);
+                for (final MemorySegment key : lookups) {
+                    final Entry<MemorySegment> expected = entries.get(key);
+                    final Entry<MemorySegment> actual = ssTable.find(key, trace);
+                    Assertions.assertEquals(expected == null, actual == null);
+
+                    // Insertion point of missing keys
+                    final Map.Entry<MemorySegment, Entry<MemorySegment>> ceiling = entries.ceilingEntry(key);
+                    final Iterator<Entry<MemorySegment>> range = ssTable.get(key, null);
+                    Assertions.assertEquals(ceiling != null, range.hasNext());
+                    if (ceiling != null) {
+                        Assertions.assertEquals(
+                                0L,
+                                MemorySegmentComparator.INSTANCE.compare(ceiling.getKey(), range.next().key()));
+                    }
+                }
+                result[learned] = trace.probes;
+            }
+            return result;
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private interface KeyGenerator {
+        byte[] next(Random random);
+    }
+}
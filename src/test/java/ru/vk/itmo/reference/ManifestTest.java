@@ -0,0 +1,169 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class ManifestTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void emptyManifestFailsToOpenKeepingTables() throws IOException {
+        final Path baseDir = Files.createTempDirectory("manifest");
+        try {
+            flush(baseDir, "k1", "k2");
+            final TreeSet<Integer> tables = sequences(baseDir);
+
+            // E.g. crash before the manifest reached storage
+            Files.write(baseDir.resolve("manifest"), new byte[0]);
+
+            boolean rejected = false;
+            try (ReferenceDao ignored = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                // Must not be opened
+            } catch (IOException e) {
+                rejected = true;
+            }
+            Assertions.assertTrue(rejected);
+            Assertions.assertEquals(tables, sequences(baseDir));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void unparsableManifestFailsToOpenKeepingTables() throws IOException {
+        final Path baseDir = Files.createTempDirectory("manifest");
+        try {
+            flush(baseDir, "k1");
+            final TreeSet<Integer> tables = sequences(baseDir);
+            Files.write(baseDir.resolve("manifest"), List.of("garbage"));
+
+            boolean rejected = false;
+            try (ReferenceDao ignored = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                // Must not be opened
+            } catch (IOException e) {
+                rejected = true;
+            }
+            Assertions.assertTrue(rejected);
+            Assertions.assertEquals(tables, sequences(baseDir));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void unlistedTablesOfCompleteManifestAreRemoved() throws IOException {
+        final Path baseDir = Files.createTempDirectory("manifest");
+        try {
+            flush(baseDir, "k1");
+            flush(baseDir, "k2");
+            final TreeSet<Integer> tables = sequences(baseDir);
+            Assertions.assertEquals(2, tables.size());
+
+            // Leftovers of unpublished flush and of replaced SSTable
+            copy(baseDir, tables.last(), tables.last() + 10);
+            copy(baseDir, tables.last(), 0);
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertEquals("k1", string(dao.get(segment("k1")).value()));
+                Assertions.assertEquals("k2", string(dao.get(segment("k2")).value()));
+            }
+            Assertions.assertEquals(tables, sequences(baseDir));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void legacyManifestProvesOnlyFresherLeftovers() throws IOException {
+        final Path baseDir = Files.createTempDirectory("manifest");
+        try {
+            flush(baseDir, "k1");
+            flush(baseDir, "k2");
+            final TreeSet<Integer> tables = sequences(baseDir);
+
+            // Written before the terminator
+            Files.write(
+                    baseDir.resolve("manifest"),
+                    List.of(Integer.toString(tables.last()), Integer.toString(tables.first())));
+            copy(baseDir, tables.last(), tables.last() + 10);
+            copy(baseDir, tables.last(), 0);
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertEquals("k2", string(dao.get(segment("k2")).value()));
+            }
+
+            final TreeSet<Integer> expected = new TreeSet<>(tables);
+            expected.add(0);
+            Assertions.assertEquals(expected, sequences(baseDir));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void storeWithoutManifestIsDiscovered() throws IOException {
+        final Path baseDir = Files.createTempDirectory("manifest");
+        try {
+            flush(baseDir, "k1");
+            flush(baseDir, "k2");
+            final TreeSet<Integer> tables = sequences(baseDir);
+            Files.delete(baseDir.resolve("manifest"));
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertEquals("k1", string(dao.get(segment("k1")).value()));
+                Assertions.assertEquals("k2", string(dao.get(segment("k2")).value()));
+            }
+
+            final List<String> manifest = Files.readAllLines(baseDir.resolve("manifest"));
+            Assertions.assertEquals(
+                    List.of(Integer.toString(tables.last()), Integer.toString(tables.first()), "end"),
+                    manifest);
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static void flush(
+            final Path baseDir,
+            final String... keys) throws IOException {
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+            for (final String key : keys) {
+                dao.upsert(new BaseEntry<>(segment(key), segment(key)));
+            }
+        }
+    }
+
+    private static void copy(
+            final Path baseDir,
+            final int from,
+            final int to) throws IOException {
+        Files.copy(SSTables.indexName(baseDir, from), SSTables.indexName(baseDir, to));
+        Files.copy(SSTables.dataName(baseDir, from), SSTables.dataName(baseDir, to));
+    }
+
+    private static TreeSet<Integer> sequences(final Path baseDir) throws IOException {
+        try (Stream<Path> files = Files.list(baseDir)) {
+            final TreeSet<Integer> result = new TreeSet<>();
+            for (final Path file : files.toList()) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(SSTables.DATA_SUFFIX)) {
+                    result.add(Integer.parseInt(name.substring(0, name.length() - SSTables.DATA_SUFFIX.length())));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.memtable.MemTableMap;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+
+class MemTableFootprintTest {
+    private static final int ENTRIES = 100_000;
+    private static final double TOLERANCE = 0.2;
+
+    @Test
+    void skipListEstimateMatchesHeapUsage() {
+        assertEstimateMatchesHeapUsage(MemTableMap::skipList);
+    }
+
+    @Test
+    void hashIndexedEstimateMatchesHeapUsage() {
+        assertEstimateMatchesHeapUsage(MemTableMap::hashIndexed);
+    }
+
+    @Test
+    void radixTreeEstimateMatchesHeapUsage() {
+        assertEstimateMatchesHeapUsage(MemTableMap::radixTree);
+    }
+
+    @Test
+    void bPlusTreeEstimateMatchesHeapUsage() {
+        assertEstimateMatchesHeapUsage(MemTableMap::bPlusTree);
+    }
+
+    @Test
+    void dataSizeCountsLatestKeysAndValues() {
+        final MemTable memTable = new MemTable(MemTableMap.skipList());
+        memTable.upsert(new BaseEntry<>(segment("key"), segment("value")));
+        memTable.upsert(new BaseEntry<>(segment("key"), segment("new value")));
+        memTable.upsert(new BaseEntry<>(segment("removed"), null));
+        memTable.apply(List.of(new BaseEntry<>(segment("key"), segment("batch"))));
+
+        Assertions.assertEquals("keybatch".length() + "removed".length(), memTable.dataSize());
+        // Flush threshold is not redefined by the structure
+        Assertions.assertTrue(memTable.size() > 10 * memTable.dataSize());
+    }
+
+    @Test
+    void footprintLimitIsOptIn() throws IOException {
+        final Path baseDir = Files.createTempDirectory("footprint");
+        try {
+            // Tiny entries are far below the threshold, but not below the footprint
+            final Config config = new Config(baseDir, 1024 * 1024);
+            try (ReferenceDao dao = new ReferenceDao(config)) {
+                upsertTinyEntries(dao);
+            }
+            // Flushed just on close
+            Assertions.assertEquals(1L, ssTables(baseDir));
+            delete(baseDir);
+            Files.createDirectory(baseDir);
+
+            final Options options = Options.builder().memTableFootprintLimit(1024 * 1024).build();
+            try (ReferenceDao dao = new ReferenceDao(config, options)) {
+                upsertTinyEntries(dao);
+            }
+            Assertions.assertTrue(ssTables(baseDir) > 1L);
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static long ssTables(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(SSTables.DATA_SUFFIX)).count();
+        }
+    }
+
+    private static void upsertTinyEntries(final ReferenceDao dao) {
+        for (int i = 0; i < ENTRIES / 10; i++) {
+            dao.upsert(new BaseEntry<>(segment("k" + i), segment("v")));
+        }
+    }
+
+    private static void assertEstimateMatchesHeapUsage(final Supplier<MemTableMap> map) {
+        final long before = usedHeap();
+        final MemTable memTable = new MemTable(map.get());
+        for (int i = 0; i < ENTRIES; i++) {
+            memTable.upsert(new BaseEntry<>(segment("key" + i), segment("value" + i)));
+        }
+        // Replace half of entries with new values and tombstones
+        for (int i = 0; i < ENTRIES; i += 2) {
+            memTable.upsert(new BaseEntry<>(segment("key" + i), i % 4 == 0 ? null : segment("new value" + i)));
+        }
+        final long used = usedHeap() - before;
+        Reference.reachabilityFence(memTable);
+
+        Assertions.assertEquals(used, memTable.size(), used * TOLERANCE);
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
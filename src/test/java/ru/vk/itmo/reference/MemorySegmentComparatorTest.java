@@ -0,0 +1,60 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Random;
+
+class MemorySegmentComparatorTest {
+    private static final int PAIRS = 100_000;
+    // Zero bytes and bytes with the sign bit set are the edge cases of prefix comparison
+    private static final byte[] ALPHABET = {0x00, 0x01, 0x7F, (byte) 0x80, (byte) 0xFF};
+
+    @Test
+    void prefixOrderIsConsistentWithKeyOrder() {
+        final Random random = new Random(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            final byte[] left = randomKey(random);
+            final byte[] right = randomKey(random);
+            final int expected = Integer.signum(Arrays.compareUnsigned(left, right));
+
+            Assertions.assertEquals(
+                    expected,
+                    Integer.signum(
+                            MemorySegmentComparator.INSTANCE.compare(
+                                    MemorySegment.ofArray(left),
+                                    MemorySegment.ofArray(right))));
+
+            // Keys within larger segments
+            final MemorySegment leftSegment = MemorySegment.ofArray(surround(left));
+            final MemorySegment rightSegment = MemorySegment.ofArray(surround(right));
+            Assertions.assertEquals(
+                    expected,
+                    Integer.signum(
+                            MemorySegmentComparator.compare(
+                                    leftSegment,
+                                    1L,
+                                    left.length,
+                                    rightSegment,
+                                    1L,
+                                    right.length)));
+        }
+    }
+
+    private static byte[] randomKey(final Random random) {
+        final byte[] result = new byte[random.nextInt(2 * Long.BYTES + 1)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return result;
+    }
+
+    private static byte[] surround(final byte[] key) {
+        final byte[] result = new byte[key.length + 2];
+        Arrays.fill(result, (byte) 0xFF);
+        System.arraycopy(key, 0, result, 1, key.length);
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.vk.itmo.reference.TestUtils.COUNTER;
+import static ru.vk.itmo.reference.TestUtils.counter;
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+
+class MergeOperatorTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int THREADS = 4;
+    private static final int INCREMENTS = 10_000;
+
+    private static final Options OPTIONS =
+            Options.builder()
+                    .mergeOperator(COUNTER)
+                    .build();
+
+    @Test
+    void operandsAreFoldedAcrossTables() throws IOException {
+        final Path baseDir = Files.createTempDirectory("merge");
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), OPTIONS)) {
+                // Absent, upserted and removed keys
+                dao.upsert(new BaseEntry<>(segment("b"), counter(100L)));
+                dao.upsert(new BaseEntry<>(segment("c"), counter(100L)));
+                dao.merge(segment("a"), counter(1L));
+                dao.merge(segment("b"), counter(1L));
+                dao.flushAsync().join();
+
+                dao.upsert(new BaseEntry<>(segment("c"), null));
+                dao.merge(segment("a"), counter(2L));
+                dao.flushAsync().join();
+
+                dao.merge(segment("a"), counter(3L));
+                dao.merge(segment("b"), counter(2L));
+                dao.merge(segment("c"), counter(5L));
+                // Folded within MemTable
+                dao.merge(segment("c"), counter(5L));
+                assertCounters(dao, 6L, 103L, 10L);
+
+                dao.flushAsync().join();
+                assertCounters(dao, 6L, 103L, 10L);
+
+                dao.compactAsync().join();
+                assertCounters(dao, 6L, 103L, 10L);
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), OPTIONS)) {
+                assertCounters(dao, 6L, 103L, 10L);
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        final Path baseDir = Files.createTempDirectory("merge");
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, 16 * 1024), OPTIONS)) {
+            final List<Thread> threads = new ArrayList<>(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < INCREMENTS; i++) {
+                        dao.merge(segment("counter" + i % 10), counter(1L));
+                        if (i % 1000 == 0) {
+                            // Plain upserts interleave with merges
+                            dao.upsert(new BaseEntry<>(segment("other"), counter(i)));
+                        }
+                    }
+                }));
+            }
+            for (final Thread thread : threads) {
+                thread.start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            long total = 0L;
+            for (int i = 0; i < 10; i++) {
+                total += value(dao.get(segment("counter" + i)));
+            }
+            Assertions.assertEquals((long) THREADS * INCREMENTS, total);
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static void assertCounters(
+            final ReferenceDao dao,
+            final long... expected) {
+        final Iterator<Entry<MemorySegment>> all = dao.all();
+        for (int i = 0; i < expected.length; i++) {
+            final MemorySegment key = segment(Character.toString('a' + i));
+            Assertions.assertEquals(expected[i], value(dao.get(key)));
+
+            final Entry<MemorySegment> entry = all.next();
+            Assertions.assertEquals(0L, MemorySegmentComparator.INSTANCE.compare(key, entry.key()));
+            Assertions.assertEquals(expected[i], value(entry));
+        }
+        Assertions.assertTrue(!all.hasNext());
+    }
+
+    private static long value(final Entry<MemorySegment> entry) {
+        return entry.value().get(ValueLayout.JAVA_LONG_UNALIGNED, 0L);
+    }
+}
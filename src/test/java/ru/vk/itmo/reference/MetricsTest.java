@@ -0,0 +1,79 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.metrics.MetricsSnapshot;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+
+class MetricsTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void snapshotCountsOperations() throws IOException {
+        final Path baseDir = Files.createTempDirectory("metrics");
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+            for (int i = 0; i < 10; i++) {
+                dao.upsert(new BaseEntry<>(segment("key" + i), segment("value" + i)));
+            }
+            Assertions.assertNotNull(dao.get(segment("key1")));
+            Assertions.assertNull(dao.get(segment("absent")));
+            dao.flushAsync().join();
+            Assertions.assertNotNull(dao.get(segment("key2")));
+            dao.get(null, null).forEachRemaining(entry -> {
+                // Just read
+            });
+
+            final MetricsSnapshot stats = dao.stats();
+            Assertions.assertEquals(10L, stats.histogram("upsert").count());
+            Assertions.assertEquals(3L, stats.histogram("get").count());
+            Assertions.assertEquals(1L, stats.histogram("range").count());
+            Assertions.assertEquals(1L, stats.counter("get.memtable.hits"));
+            Assertions.assertEquals(1L, stats.counter("get.sstable.hits"));
+            Assertions.assertEquals(1L, stats.counter("get.misses"));
+            Assertions.assertEquals(1L, stats.histogram("flush").count());
+            Assertions.assertTrue(stats.counter("flush.bytes") > 0L);
+            Assertions.assertEquals(0L, stats.histogram("compaction").count());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void mbeanIsRegisteredWhileOpen() throws IOException, JMException {
+        final Path baseDir = Files.createTempDirectory("metrics");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name =
+                new ObjectName(
+                        "ru.vk.itmo:type=" + ObjectName.quote("ReferenceDao")
+                                + ",path=" + ObjectName.quote(baseDir.toAbsolutePath().toString()));
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertTrue(server.isRegistered(name));
+                dao.upsert(new BaseEntry<>(segment("key"), segment("value")));
+                Assertions.assertEquals(1L, server.getAttribute(name, "upsert.count"));
+            }
+            Assertions.assertFalse(server.isRegistered(name));
+
+            // Reopened DAO takes the name again
+            try (ReferenceDao ignored = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertTrue(server.isRegistered(name));
+                Assertions.assertEquals(0L, server.getAttribute(name, "upsert.count"));
+            }
+            Assertions.assertFalse(server.isRegistered(name));
+        } finally {
+            delete(baseDir);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class OpenTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int SSTABLES = 8;
+
+    @Test
+    void sstablesAreMappedOnFirstAccess() throws IOException {
+        final Path baseDir = Files.createTempDirectory("open");
+        try {
+            flushAll(baseDir);
+
+            final Progress progress = new Progress();
+            final Options options = Options.builder().openThreads(3).openListener(progress).build();
+            try (Arena arena = Arena.ofShared()) {
+                final ValueLog valueLog = ValueLog.open(arena, baseDir, options.valueSeparationThreshold());
+                final List<SSTable> ssTables = SSTables.discover(arena, baseDir, valueLog, options);
+                Assertions.assertEquals(SSTABLES, ssTables.size());
+                progress.assertComplete(SSTABLES);
+
+                // From freshest to oldest
+                for (int i = 1; i < ssTables.size(); i++) {
+                    Assertions.assertTrue(ssTables.get(i - 1).sequence > ssTables.get(i).sequence);
+                }
+
+                // Just the footers were read
+                for (final SSTable ssTable : ssTables) {
+                    Assertions.assertFalse(ssTable.mapped());
+                }
+
+                // The freshest SSTable is the only one to contain the key
+                Assertions.assertEquals("value", string(ssTables.getFirst().get(segment(key(SSTABLES - 1))).value()));
+                for (final SSTable ssTable : ssTables) {
+                    Assertions.assertEquals(ssTable == ssTables.getFirst(), ssTable.mapped());
+                }
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void progressIsReportedWithoutManifest() throws IOException {
+        final Path baseDir = Files.createTempDirectory("open");
+        try {
+            flushAll(baseDir);
+            Files.delete(baseDir.resolve("manifest"));
+
+            final Progress progress = new Progress();
+            final Options options = Options.builder().openThreads(2).openListener(progress).build();
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                progress.assertComplete(SSTABLES);
+                for (int i = 0; i < SSTABLES; i++) {
+                    Assertions.assertEquals("value", string(dao.get(segment(key(i))).value()));
+                }
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void emptyStoreReportsNothing() throws IOException {
+        final Path baseDir = Files.createTempDirectory("open");
+        try {
+            final Progress progress = new Progress();
+            final Options options = Options.builder().openListener(progress).build();
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                Assertions.assertNull(dao.get(segment(key(0))));
+            }
+            Assertions.assertEquals(0, progress.calls.get());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static void flushAll(final Path baseDir) throws IOException {
+        for (int i = 0; i < SSTABLES; i++) {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                dao.upsert(new BaseEntry<>(segment(key(i)), segment("value")));
+            }
+        }
+    }
+
+    private static String key(final int i) {
+        return "key" + i;
+    }
+
+    private static final class Progress implements OpenListener {
+        private final Set<Integer> opened = new ConcurrentSkipListSet<>();
+        private final Set<Integer> totals = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void opened(
+                final int opened,
+                final int total) {
+            this.opened.add(opened);
+            this.totals.add(total);
+            calls.incrementAndGet();
+        }
+
+        void assertComplete(final int total) {
+            final Set<Integer> expected = new TreeSet<>();
+            for (int i = 1; i <= total; i++) {
+                expected.add(i);
+            }
+            Assertions.assertEquals(total, calls.get());
+            Assertions.assertEquals(expected, opened);
+            Assertions.assertEquals(Set.of(total), totals);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class ReadTraceTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void sampledReadsReportAmplification() throws IOException {
+        final Path baseDir = Files.createTempDirectory("trace");
+        final List<ReadTrace> traces = Collections.synchronizedList(new ArrayList<>());
+        final Options options = options(1.0, traces);
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+            layout(dao);
+
+            // Found in the oldest SSTable, others rejected by key range
+            Assertions.assertEquals("old", string(dao.get(segment("b")).value()));
+            ReadTrace trace = single(traces);
+            Assertions.assertEquals(ReadTrace.Operation.GET, trace.operation());
+            Assertions.assertEquals("b", string(trace.from()));
+            Assertions.assertNull(trace.to());
+            Assertions.assertEquals(1, trace.ssTables());
+            Assertions.assertEquals(2, trace.filterRejections());
+            Assertions.assertTrue(trace.probes() > 0L);
+            Assertions.assertTrue(trace.bytes() > 0L);
+            Assertions.assertEquals(0L, trace.tombstones());
+
+            // Tombstone in the middle SSTable hides the older value
+            Assertions.assertNull(dao.get(segment("d")));
+            trace = single(traces);
+            Assertions.assertEquals(1, trace.ssTables());
+            Assertions.assertEquals(1, trace.filterRejections());
+            Assertions.assertEquals(1L, trace.tombstones());
+
+            // Absent key within the ranges of two SSTables
+            Assertions.assertNull(dao.get(segment("cc")));
+            trace = single(traces);
+            Assertions.assertEquals(2, trace.ssTables());
+            Assertions.assertEquals(1, trace.filterRejections());
+            Assertions.assertTrue(trace.probes() >= 2L);
+
+            // Served by MemTable
+            dao.upsert(new BaseEntry<>(segment("m"), segment("memory")));
+            Assertions.assertEquals("memory", string(dao.get(segment("m")).value()));
+            trace = single(traces);
+            Assertions.assertEquals(0, trace.ssTables());
+            Assertions.assertEquals(0L, trace.probes());
+            Assertions.assertEquals(0L, trace.bytes());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void rangeIsReportedOnceExhausted() throws IOException {
+        final Path baseDir = Files.createTempDirectory("trace");
+        final List<ReadTrace> traces = Collections.synchronizedList(new ArrayList<>());
+        final Options options = options(1.0, traces);
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+            layout(dao);
+
+            final Iterator<Entry<MemorySegment>> range = dao.get(segment("a"), segment("f"));
+            final List<String> keys = new ArrayList<>();
+            while (range.hasNext()) {
+                Assertions.assertTrue(traces.isEmpty());
+                keys.add(string(range.next().key()));
+            }
+            Assertions.assertEquals(List.of("a", "b", "c", "e"), keys);
+
+            final ReadTrace trace = single(traces);
+            Assertions.assertEquals(ReadTrace.Operation.RANGE, trace.operation());
+            Assertions.assertEquals("a", string(trace.from()));
+            Assertions.assertEquals("f", string(trace.to()));
+            // The freshest SSTable is out of range
+            Assertions.assertEquals(2, trace.ssTables());
+            Assertions.assertEquals(1, trace.filterRejections());
+            // Older "c" and "d" are shadowed by the newer value and the tombstone
+            Assertions.assertEquals(2L, trace.shadowed());
+            Assertions.assertEquals(1L, trace.tombstones());
+            Assertions.assertTrue(trace.bytes() > 0L);
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void notSampledByDefault() throws IOException {
+        final Path baseDir = Files.createTempDirectory("trace");
+        final List<ReadTrace> traces = Collections.synchronizedList(new ArrayList<>());
+        final Options options = options(0.0, traces);
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+            layout(dao);
+
+            for (final String key : List.of("a", "b", "cc", "d", "z")) {
+                dao.get(segment(key));
+            }
+            dao.get(null, null).forEachRemaining(entry -> {
+                // Just read
+            });
+            Assertions.assertTrue(traces.isEmpty());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    /**
+     * Flushes three SSTables from the oldest to the freshest:
+     * {@code a..e}, {@code c..d} with "c" replaced and "d" removed, and disjoint {@code x..z}.
+     */
+    private static void layout(final ReferenceDao dao) {
+        for (final String key : List.of("a", "b", "c", "d", "e")) {
+            dao.upsert(new BaseEntry<>(segment(key), segment("old")));
+        }
+        dao.flushAsync().join();
+
+        dao.upsert(new BaseEntry<>(segment("c"), segment("new")));
+        dao.upsert(new BaseEntry<>(segment("d"), null));
+        dao.flushAsync().join();
+
+        for (final String key : List.of("x", "y", "z")) {
+            dao.upsert(new BaseEntry<>(segment(key), segment("other")));
+        }
+        dao.flushAsync().join();
+    }
+
+    private static Options options(
+            final double traceSampleRate,
+            final List<ReadTrace> traces) {
+        return Options.builder()
+                .traceSampleRate(traceSampleRate)
+                .traceSink(traces::add)
+                // Keep the tombstone in its SSTable
+                .tombstoneCompactionRatio(1.1)
+                .build();
+    }
+
+    private static ReadTrace single(final List<ReadTrace> traces) {
+        Assertions.assertEquals(1, traces.size());
+        return traces.removeFirst();
+    }
+}
@@ -0,0 +1,65 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+
+import java.lang.foreign.MemorySegment;
+
+import static ru.vk.itmo.reference.TestUtils.segment;
+
+class RowCacheTest {
+    private static final long CAPACITY = 64 * 1024;
+
+    @Test
+    void absentKeysAreCached() {
+        final RowCache cache = new RowCache(CAPACITY);
+        final MemorySegment key = segment("key");
+        Assertions.assertSame(null, cache.get(key));
+
+        cache.put(key, null, cache.stamp(key));
+        final RowCache.Row row = cache.get(key);
+        Assertions.assertTrue(row != null);
+        Assertions.assertSame(null, row.entry);
+    }
+
+    @Test
+    void readRacingWithUpsertIsNotCached() {
+        final RowCache cache = new RowCache(CAPACITY);
+        final MemorySegment key = segment("key");
+        final long stamp = cache.stamp(key);
+        // Upsert completes while the read is in progress
+        cache.invalidate(key);
+
+        cache.put(key, new BaseEntry<>(key, segment("old")), stamp);
+        Assertions.assertSame(null, cache.get(key));
+    }
+
+    @Test
+    void upsertInvalidatesCachedRow() {
+        final RowCache cache = new RowCache(CAPACITY);
+        final MemorySegment key = segment("key");
+        cache.put(key, new BaseEntry<>(key, segment("old")), cache.stamp(key));
+        Assertions.assertTrue(cache.get(key) != null);
+
+        cache.invalidate(key);
+        Assertions.assertSame(null, cache.get(key));
+        Assertions.assertEquals(0L, cache.size());
+    }
+
+    @Test
+    void hotKeysSurviveScans() {
+        final RowCache cache = new RowCache(CAPACITY);
+        final MemorySegment hot = segment("hot");
+        cache.put(hot, new BaseEntry<>(hot, hot), cache.stamp(hot));
+        for (int i = 0; i < 10_000; i++) {
+            // Keep the hot key referenced
+            Assertions.assertTrue(cache.get(hot) != null);
+
+            final MemorySegment key = segment("cold" + i);
+            cache.put(key, new BaseEntry<>(key, key), cache.stamp(key));
+            Assertions.assertTrue(cache.size() <= CAPACITY);
+        }
+        Assertions.assertSame(null, cache.get(segment("cold0")));
+    }
+}
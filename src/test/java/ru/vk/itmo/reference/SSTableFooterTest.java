@@ -0,0 +1,248 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class SSTableFooterTest {
+    private static final long THRESHOLD = 64L;
+    private static final int KEYS = 100;
+    // "FOOTER01"
+    private static final long MAGIC_V1 = 0x464F4F5445523031L;
+    // "FOOTER02"
+    private static final long MAGIC = 0x464F4F5445523032L;
+    private static final long TRAILER_SIZE = 5L * Long.BYTES;
+
+    @Test
+    void tablesOutsideKeyRangeAreNotMapped() throws IOException {
+        final Path baseDir = Files.createTempDirectory("footer");
+        try (Arena arena = Arena.ofShared()) {
+            final ValueLog valueLog = ValueLog.open(arena, baseDir, THRESHOLD);
+            write(baseDir, 1, valueLog, "a");
+            write(baseDir, 2, valueLog, "m");
+            final SSTable first = SSTables.open(arena, baseDir, 1, valueLog);
+            final SSTable second = SSTables.open(arena, baseDir, 2, valueLog);
+
+            Assertions.assertFalse(first.overlaps(second));
+            Assertions.assertTrue(first.overlaps(first));
+            Assertions.assertTrue(first.mayContain(segment("a50")));
+            Assertions.assertFalse(first.mayContain(segment("m50")));
+            Assertions.assertTrue(first.overlaps(segment("a99"), null));
+            Assertions.assertFalse(first.overlaps(null, segment("a00")));
+            Assertions.assertFalse(first.overlaps(segment("a990"), segment("m00")));
+
+            // Misses outside the range touch neither index nor data
+            Assertions.assertNull(first.get(segment("m50")));
+            Assertions.assertFalse(first.get(segment("b"), segment("z")).hasNext());
+            Assertions.assertNull(second.get(segment("a50")));
+            Assertions.assertFalse(second.get(null, segment("m00")).hasNext());
+            Assertions.assertFalse(first.mapped());
+            Assertions.assertFalse(second.mapped());
+
+            Assertions.assertEquals(value("m", 51), string(second.get(segment("m51")).value()));
+            Assertions.assertFalse(first.mapped());
+            Assertions.assertTrue(second.mapped());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void firstVersionFootersAreRead() throws IOException {
+        final Path baseDir = Files.createTempDirectory("footer");
+        try (Arena arena = Arena.ofShared()) {
+            final ValueLog valueLog = ValueLog.open(arena, baseDir, THRESHOLD);
+            write(baseDir, 1, valueLog, "a");
+            final SSTableFooter current = SSTables.footer(baseDir, 1);
+            Assertions.assertFalse(current.referenced().isEmpty());
+
+            // Drop referenced segments and replace the magic
+            final byte[] data = Files.readAllBytes(SSTables.dataName(baseDir, 1));
+            final MemorySegment bytes = MemorySegment.ofArray(data);
+            final long trailerOffset = data.length - TRAILER_SIZE;
+            final long segments = bytes.get(ValueLayout.JAVA_LONG_UNALIGNED, trailerOffset - Long.BYTES);
+            final long referencesSize = segments * (Integer.BYTES + Long.BYTES) + Long.BYTES;
+            final int legacyTrailerOffset = (int) (trailerOffset - referencesSize);
+            final byte[] legacy = new byte[(int) (data.length - referencesSize)];
+            System.arraycopy(data, 0, legacy, 0, legacyTrailerOffset);
+            System.arraycopy(data, (int) trailerOffset, legacy, legacyTrailerOffset, (int) TRAILER_SIZE);
+            MemorySegment.ofArray(legacy).set(ValueLayout.JAVA_LONG_UNALIGNED, legacy.length - Long.BYTES, MAGIC_V1);
+            Files.write(SSTables.dataName(baseDir, 1), legacy);
+
+            final SSTableFooter footer = SSTables.footer(baseDir, 1);
+            Assertions.assertNull(footer.referenced());
+            assertSameFooter(current, footer);
+
+            // Referenced bytes are counted by entries instead
+            final SSTable ssTable = SSTables.open(arena, baseDir, 1, valueLog);
+            Assertions.assertEquals(current.referenced(), ssTable.referenced());
+            verify(ssTable, "a");
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void missingFootersAreBuiltByEntries() throws IOException {
+        final Path baseDir = Files.createTempDirectory("footer");
+        try (Arena arena = Arena.ofShared()) {
+            final ValueLog valueLog = ValueLog.open(arena, baseDir, THRESHOLD);
+            write(baseDir, 1, valueLog, "a");
+            final SSTableFooter current = SSTables.footer(baseDir, 1);
+
+            // Index of offsets only and data of entries only
+            final MemorySegment index = MemorySegment.ofArray(Files.readAllBytes(SSTables.indexName(baseDir, 1)));
+            final MemorySegment offsets = MemorySegment.ofArray(new byte[(int) (current.entries() * Long.BYTES)]);
+            for (long i = 0; i < current.entries(); i++) {
+                offsets.set(
+                        ValueLayout.JAVA_LONG_UNALIGNED,
+                        i * Long.BYTES,
+                        index.get(ValueLayout.JAVA_LONG_UNALIGNED, 2 * i * Long.BYTES));
+            }
+            Files.write(SSTables.indexName(baseDir, 1), offsets.toArray(ValueLayout.JAVA_BYTE));
+            final byte[] data = Files.readAllBytes(SSTables.dataName(baseDir, 1));
+            Files.write(SSTables.dataName(baseDir, 1), Arrays.copyOf(data, (int) current.dataSize()));
+            Assertions.assertNull(SSTables.footer(baseDir, 1));
+
+            final SSTable ssTable = SSTables.open(arena, baseDir, 1, valueLog);
+            Assertions.assertEquals(current.entries(), ssTable.size());
+            Assertions.assertEquals(current.tombstones(), ssTable.tombstones());
+            Assertions.assertEquals(current.dataSize(), ssTable.dataSize());
+            Assertions.assertTrue(ssTable.mayContain(segment("a00")));
+            Assertions.assertTrue(ssTable.mayContain(segment("a99")));
+            Assertions.assertFalse(ssTable.mayContain(segment("b")));
+            Assertions.assertEquals(current.referenced(), ssTable.referenced());
+            verify(ssTable, "a");
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void valuesEndingWithMagicAreNotTakenForFooters() throws IOException {
+        for (final long magic : new long[]{MAGIC_V1, MAGIC}) {
+            final Path baseDir = Files.createTempDirectory("footer");
+            try (Arena arena = Arena.ofShared()) {
+                final ValueLog valueLog = ValueLog.open(arena, baseDir, THRESHOLD);
+                // No references and plausible trailer with 3-byte keys
+                final MemorySegment last = MemorySegment.ofArray(new byte[(int) (Long.BYTES + TRAILER_SIZE)]);
+                last.set(ValueLayout.JAVA_LONG_UNALIGNED, Long.BYTES, 3L);
+                last.set(ValueLayout.JAVA_LONG_UNALIGNED, 2L * Long.BYTES, 3L);
+                last.set(ValueLayout.JAVA_LONG_UNALIGNED, 3L * Long.BYTES, 1L);
+                last.set(ValueLayout.JAVA_LONG_UNALIGNED, 5L * Long.BYTES, magic);
+                writeLegacy(baseDir, 1, last);
+                Assertions.assertNull(SSTables.footer(baseDir, 1));
+
+                final SSTable ssTable = SSTables.open(arena, baseDir, 1, valueLog);
+                Assertions.assertEquals(KEYS, ssTable.size());
+                Assertions.assertTrue(ssTable.mayContain(segment(key("a", 0))));
+                Assertions.assertTrue(ssTable.mayContain(segment(key("a", KEYS - 1))));
+                for (int i = 0; i < KEYS - 1; i++) {
+                    Assertions.assertEquals("a" + i, string(ssTable.get(segment(key("a", i))).value()));
+                }
+                Assertions.assertEquals(
+                        -1L,
+                        last.mismatch(ssTable.get(segment(key("a", KEYS - 1))).value()));
+            } finally {
+                delete(baseDir);
+            }
+        }
+    }
+
+    /**
+     * Writes SSTable without footer and with index of offsets only.
+     */
+    private static void writeLegacy(
+            final Path baseDir,
+            final int sequence,
+            final MemorySegment lastValue) throws IOException {
+        final MemorySegment index = MemorySegment.ofArray(new byte[KEYS * Long.BYTES]);
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < KEYS; i++) {
+            index.set(ValueLayout.JAVA_LONG_UNALIGNED, (long) i * Long.BYTES, data.size());
+            final MemorySegment key = segment(key("a", i));
+            final MemorySegment value = i == KEYS - 1 ? lastValue : segment("a" + i);
+            data.writeBytes(length(key.byteSize()));
+            data.writeBytes(key.toArray(ValueLayout.JAVA_BYTE));
+            data.writeBytes(length(value.byteSize()));
+            data.writeBytes(value.toArray(ValueLayout.JAVA_BYTE));
+        }
+        Files.write(SSTables.indexName(baseDir, sequence), index.toArray(ValueLayout.JAVA_BYTE));
+        Files.write(SSTables.dataName(baseDir, sequence), data.toByteArray());
+    }
+
+    private static byte[] length(final long length) {
+        final MemorySegment result = MemorySegment.ofArray(new byte[Long.BYTES]);
+        result.set(ValueLayout.JAVA_LONG_UNALIGNED, 0L, length);
+        return result.toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    private static void assertSameFooter(
+            final SSTableFooter expected,
+            final SSTableFooter actual) {
+        Assertions.assertEquals(expected.entries(), actual.entries());
+        Assertions.assertEquals(expected.tombstones(), actual.tombstones());
+        Assertions.assertEquals(expected.dataSize(), actual.dataSize());
+        Assertions.assertEquals(string(expected.minKey()), string(actual.minKey()));
+        Assertions.assertEquals(string(expected.maxKey()), string(actual.maxKey()));
+    }
+
+    private static void write(
+            final Path baseDir,
+            final int sequence,
+            final ValueLog valueLog,
+            final String prefix) throws IOException {
+        final List<Entry<MemorySegment>> entries = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            // Tombstones and values both inline and separated
+            entries.add(new BaseEntry<>(segment(key(prefix, i)), i % 10 == 0 ? null : segment(value(prefix, i))));
+        }
+        new SSTableWriter(valueLog).write(baseDir, sequence, entries.iterator());
+    }
+
+    private static void verify(
+            final SSTable ssTable,
+            final String prefix) {
+        final Iterator<Entry<MemorySegment>> entries = ssTable.get(null, null);
+        for (int i = 0; i < KEYS; i++) {
+            final Entry<MemorySegment> entry = entries.next();
+            Assertions.assertEquals(key(prefix, i), string(entry.key()));
+            if (i % 10 == 0) {
+                Assertions.assertNull(entry.value());
+            } else {
+                Assertions.assertEquals(value(prefix, i), string(entry.value()));
+            }
+        }
+        Assertions.assertFalse(entries.hasNext());
+    }
+
+    private static String key(
+            final String prefix,
+            final int i) {
+        return String.format("%s%02d", prefix, i);
+    }
+
+    private static String value(
+            final String prefix,
+            final int i) {
+        // Every third value is separated
+        return i % 3 == 0 ? prefix.repeat((int) THRESHOLD) + i : prefix + i;
+    }
+}
@@ -0,0 +1,207 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class SubcompactionsTest {
+    // Every flush is explicit
+    private static final long FLUSH_THRESHOLD = 32 * 1024 * 1024;
+    private static final int PARTITIONS = 4;
+    private static final int KEYS = 12_000;
+    // Keys removed around every boundary
+    private static final int EDGE = 200;
+    private static final String PADDING = "x".repeat(512);
+
+    @Test
+    void smallTablesAreNotSplit() throws IOException {
+        final Path baseDir = Files.createTempDirectory("subcompactions");
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options())) {
+                for (int i = 0; i < 1_000; i++) {
+                    dao.upsert(new BaseEntry<>(segment(key(i)), segment(value("old", i))));
+                }
+                dao.flushAsync().join();
+            }
+
+            try (Arena arena = Arena.ofShared()) {
+                final List<SSTable> ssTables = open(arena, baseDir);
+                Assertions.assertTrue(ssTables.getFirst().dataSize() < Subcompactions.MIN_PARTITION_BYTES);
+                Assertions.assertTrue(Subcompactions.boundaries(ssTables, PARTITIONS).isEmpty());
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void compactionKeepsKeysAcrossPartitions() throws IOException {
+        final Path baseDir = Files.createTempDirectory("subcompactions");
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options())) {
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(new BaseEntry<>(segment(key(i)), segment(value("old", i))));
+                }
+                dao.flushAsync().join();
+
+                // Overlapping SSTable
+                for (int i = 0; i < KEYS; i += 3) {
+                    dao.upsert(new BaseEntry<>(segment(key(i)), segment(value("new", i))));
+                }
+                dao.flushAsync().join();
+            }
+
+            // Remove keys on both sides of the boundaries
+            final List<Integer> initial = boundaries(baseDir);
+            Assertions.assertEquals(PARTITIONS - 1, initial.size());
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options())) {
+                for (final int boundary : initial) {
+                    for (int i = boundary - EDGE; i < boundary + EDGE; i++) {
+                        dao.upsert(new BaseEntry<>(segment(key(i)), null));
+                    }
+                }
+                dao.flushAsync().join();
+            }
+
+            // Boundaries of the compaction are sorted and fall on tombstones
+            final List<Integer> boundaries = boundaries(baseDir);
+            Assertions.assertEquals(PARTITIONS - 1, boundaries.size());
+            for (int i = 0; i < boundaries.size(); i++) {
+                if (i > 0) {
+                    Assertions.assertTrue(boundaries.get(i - 1) < boundaries.get(i));
+                }
+                Assertions.assertTrue(removed(initial, boundaries.get(i) - 1));
+                Assertions.assertTrue(removed(initial, boundaries.get(i)));
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options())) {
+                dao.compactAsync().join();
+                verify(dao, initial);
+            }
+
+            // Disjoint SSTables split at the boundaries without tombstones
+            try (Arena arena = Arena.ofShared()) {
+                final List<SSTable> ssTables = new ArrayList<>(open(arena, baseDir));
+                Assertions.assertEquals(PARTITIONS, ssTables.size());
+                ssTables.sort(Comparator.comparing(ssTable -> string(ssTable.key(0L))));
+                for (int i = 0; i < ssTables.size(); i++) {
+                    final SSTable ssTable = ssTables.get(i);
+                    Assertions.assertEquals(0L, ssTable.tombstones());
+                    final int first = index(ssTable.key(0L));
+                    final int last = index(ssTable.key(ssTable.size() - 1));
+                    if (i > 0) {
+                        Assertions.assertTrue(first >= boundaries.get(i - 1));
+                    }
+                    if (i < boundaries.size()) {
+                        Assertions.assertTrue(last < boundaries.get(i));
+                    }
+                }
+            }
+
+            // Reopened
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options())) {
+                verify(dao, initial);
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static void verify(
+            final ReferenceDao dao,
+            final List<Integer> initial) {
+        final Iterator<Entry<MemorySegment>> range = dao.get(null, null);
+        for (int i = 0; i < KEYS; i++) {
+            final Entry<MemorySegment> entry = dao.get(segment(key(i)));
+            if (removed(initial, i)) {
+                Assertions.assertNull(entry);
+                continue;
+            }
+
+            final String expected = value(i % 3 == 0 ? "new" : "old", i);
+            Assertions.assertEquals(expected, string(entry.value()));
+            final Entry<MemorySegment> next = range.next();
+            Assertions.assertEquals(key(i), string(next.key()));
+            Assertions.assertEquals(expected, string(next.value()));
+        }
+        Assertions.assertFalse(range.hasNext());
+    }
+
+    /**
+     * Returns key indexes of the boundaries {@link ReferenceDao} would compact the SSTables with.
+     */
+    private static List<Integer> boundaries(final Path baseDir) throws IOException {
+        try (Arena arena = Arena.ofShared()) {
+            final List<Integer> result = new ArrayList<>();
+            for (final MemorySegment boundary : Subcompactions.boundaries(open(arena, baseDir), PARTITIONS)) {
+                result.add(index(boundary));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Opens SSTables listed in the manifest from freshest to oldest.
+     */
+    private static List<SSTable> open(
+            final Arena arena,
+            final Path baseDir) throws IOException {
+        final ValueLog valueLog = ValueLog.open(arena, baseDir, options().valueSeparationThreshold());
+        final List<SSTable> result = new ArrayList<>();
+        for (final String line : Files.readAllLines(baseDir.resolve("manifest"))) {
+            if (!line.equals("end")) {
+                result.add(SSTables.open(arena, baseDir, Integer.parseInt(line), valueLog));
+            }
+        }
+        return result;
+    }
+
+    private static Options options() {
+        return Options.builder()
+                .compactionThreads(PARTITIONS)
+                // Keep the tombstones until compaction
+                .tombstoneCompactionRatio(1.1)
+                .build();
+    }
+
+    private static boolean removed(
+            final List<Integer> boundaries,
+            final int i) {
+        for (final int boundary : boundaries) {
+            if (i >= boundary - EDGE && i < boundary + EDGE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(final int i) {
+        return String.format("key%06d", i);
+    }
+
+    private static int index(final MemorySegment key) {
+        return Integer.parseInt(string(key).substring("key".length()));
+    }
+
+    private static String value(
+            final String version,
+            final int i) {
+        return version + i + PADDING;
+    }
+}
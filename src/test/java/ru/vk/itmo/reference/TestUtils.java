@@ -0,0 +1,44 @@
+package ru.vk.itmo.reference;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Helpers shared by the tests of the package.
+ */
+final class TestUtils {
+    // Sums longs
+    static final MergeOperator COUNTER =
+            (existing, operand) -> counter(
+                    (existing == null ? 0L : existing.get(ValueLayout.JAVA_LONG_UNALIGNED, 0L))
+                            + operand.get(ValueLayout.JAVA_LONG_UNALIGNED, 0L));
+
+    private TestUtils() {
+        // Only static methods
+    }
+
+    static MemorySegment segment(final String value) {
+        return MemorySegment.ofArray(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String string(final MemorySegment segment) {
+        return new String(segment.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+
+    static MemorySegment counter(final long value) {
+        final MemorySegment result = MemorySegment.ofArray(new byte[Long.BYTES]);
+        result.set(ValueLayout.JAVA_LONG_UNALIGNED, 0L, value);
+        return result;
+    }
+
+    static long counter(final MemorySegment segment) {
+        return segment.get(ValueLayout.JAVA_LONG_UNALIGNED, 0L);
+    }
+
+    static void delete(final Path dir) throws IOException {
+        Directories.delete(dir);
+    }
+}
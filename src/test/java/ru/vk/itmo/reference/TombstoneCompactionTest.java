@@ -0,0 +1,114 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class TombstoneCompactionTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final int KEYS = 20;
+
+    @Test
+    void denseSSTableIsCompactedAway() throws IOException {
+        final Path baseDir = Files.createTempDirectory("tombstones");
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(new BaseEntry<>(segment("k" + i), segment("v" + i)));
+                }
+                dao.flushAsync().join();
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(new BaseEntry<>(segment("k" + i), null));
+                }
+                dao.flushAsync().join();
+            }
+            // Nothing older to shadow
+            Assertions.assertEquals(0L, ssTables(baseDir));
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertFalse(dao.all().hasNext());
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void compactionIsDisabledAboveOne() throws IOException {
+        final Path baseDir = Files.createTempDirectory("tombstones");
+        final Options options =
+                Options.builder()
+                        .tombstoneCompactionRatio(1.1)
+                        .build();
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                dao.upsert(new BaseEntry<>(segment("key"), segment("value")));
+                dao.flushAsync().join();
+                dao.upsert(new BaseEntry<>(segment("key"), null));
+                dao.flushAsync().join();
+            }
+            Assertions.assertEquals(2L, ssTables(baseDir));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void tombstonesShadowingOlderSSTablesAreRetained() throws IOException {
+        final Path baseDir = Files.createTempDirectory("tombstones");
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(new BaseEntry<>(segment("b" + i), segment("old")));
+                }
+                dao.flushAsync().join();
+
+                // Not dense, overlaps the oldest one
+                for (int i = 0; i < KEYS / 4; i++) {
+                    dao.upsert(new BaseEntry<>(segment("b" + i), null));
+                }
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(new BaseEntry<>(segment("c" + i), segment("value")));
+                }
+                dao.flushAsync().join();
+
+                // Dense, overlaps just the previous one
+                for (int i = 0; i < KEYS; i++) {
+                    dao.upsert(new BaseEntry<>(segment("c" + i), null));
+                }
+                dao.flushAsync().join();
+            }
+            // The oldest one and the merged ones
+            Assertions.assertEquals(2L, ssTables(baseDir));
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD))) {
+                for (int i = 0; i < KEYS; i++) {
+                    if (i < KEYS / 4) {
+                        Assertions.assertNull(dao.get(segment("b" + i)));
+                    } else {
+                        Assertions.assertEquals("old", string(dao.get(segment("b" + i)).value()));
+                    }
+                    Assertions.assertNull(dao.get(segment("c" + i)));
+                }
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static long ssTables(final Path baseDir) throws IOException {
+        try (Stream<Path> files = Files.list(baseDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SSTables.DATA_SUFFIX)).count();
+        }
+    }
+}
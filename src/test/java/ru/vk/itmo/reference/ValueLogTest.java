@@ -0,0 +1,166 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class ValueLogTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final long THRESHOLD = 64L;
+    private static final int KEYS = 100;
+
+    @Test
+    void largeValuesAreSeparated() throws IOException {
+        final Path baseDir = Files.createTempDirectory("vlog");
+        final Options options = options(0.0);
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                upsertAll(dao, "first");
+                dao.upsert(new BaseEntry<>(segment("small"), segment("value")));
+                dao.flushAsync().join();
+                verifyAll(dao, "first");
+            }
+            Assertions.assertEquals(1, segments(baseDir).size());
+
+            // Referenced bytes are recorded at write time
+            final int sequence = segments(baseDir).first();
+            final Map<Integer, Long> referenced = SSTables.footer(baseDir, sequence).referenced();
+            Assertions.assertEquals(Map.of(sequence, Files.size(baseDir.resolve(sequence + ValueLog.SUFFIX))), referenced);
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                verifyAll(dao, "first");
+                Assertions.assertEquals("value", string(dao.get(segment("small")).value()));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void unreferencedSegmentsAreCollected() throws IOException {
+        final Path baseDir = Files.createTempDirectory("vlog");
+        final Options options = options(0.0);
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                upsertAll(dao, "first");
+                dao.flushAsync().join();
+                final TreeSet<Integer> first = segments(baseDir);
+                upsertAll(dao, "second");
+                dao.flushAsync().join();
+                Assertions.assertEquals(2, segments(baseDir).size());
+
+                dao.compactAsync().join();
+                final TreeSet<Integer> left = segments(baseDir);
+                Assertions.assertEquals(1, left.size());
+                Assertions.assertFalse(left.contains(first.first()));
+                verifyAll(dao, "second");
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                verifyAll(dao, "second");
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void sparseSegmentsAreRelocated() throws IOException {
+        final Path baseDir = Files.createTempDirectory("vlog");
+        final Options options = options(0.9);
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                upsertAll(dao, "first");
+                dao.flushAsync().join();
+                final TreeSet<Integer> first = segments(baseDir);
+
+                // Half of the values of the first segment are shadowed
+                for (int i = 0; i < KEYS; i += 2) {
+                    dao.upsert(new BaseEntry<>(segment(key(i)), segment(value("second", i))));
+                }
+                dao.flushAsync().join();
+                dao.compactAsync().join();
+
+                Assertions.assertFalse(segments(baseDir).contains(first.first()));
+                for (int i = 0; i < KEYS; i++) {
+                    final Entry<MemorySegment> entry = dao.get(segment(key(i)));
+                    Assertions.assertEquals(value(i % 2 == 0 ? "second" : "first", i), string(entry.value()));
+                }
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, FLUSH_THRESHOLD), options)) {
+                final Iterator<Entry<MemorySegment>> entries = dao.all();
+                int count = 0;
+                while (entries.hasNext()) {
+                    final Entry<MemorySegment> entry = entries.next();
+                    Assertions.assertTrue(string(entry.value()).startsWith(count % 2 == 0 ? "second" : "first"));
+                    count++;
+                }
+                Assertions.assertEquals(KEYS, count);
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static Options options(final double liveRatio) {
+        return Options.builder()
+                .valueSeparationThreshold(THRESHOLD)
+                .valueLogLiveRatio(liveRatio)
+                .build();
+    }
+
+    private static void upsertAll(
+            final ReferenceDao dao,
+            final String version) {
+        for (int i = 0; i < KEYS; i++) {
+            dao.upsert(new BaseEntry<>(segment(key(i)), segment(value(version, i))));
+        }
+    }
+
+    private static void verifyAll(
+            final ReferenceDao dao,
+            final String version) {
+        for (int i = 0; i < KEYS; i++) {
+            Assertions.assertEquals(value(version, i), string(dao.get(segment(key(i))).value()));
+        }
+    }
+
+    private static String key(final int i) {
+        return String.format("key%03d", i);
+    }
+
+    private static String value(
+            final String version,
+            final int i) {
+        return version + i + "-".repeat((int) THRESHOLD);
+    }
+
+    private static TreeSet<Integer> segments(final Path baseDir) throws IOException {
+        try (Stream<Path> files = Files.list(baseDir)) {
+            final TreeSet<Integer> result = new TreeSet<>();
+            for (final Path file : files.toList()) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(ValueLog.SUFFIX)) {
+                    result.add(Integer.parseInt(name.substring(0, name.length() - ValueLog.SUFFIX.length())));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+import ru.vk.itmo.memtable.MemTableMap;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ru.vk.itmo.reference.TestUtils.delete;
+import static ru.vk.itmo.reference.TestUtils.segment;
+import static ru.vk.itmo.reference.TestUtils.string;
+
+class WriteBatchTest {
+    private static final int KEYS = 100;
+    private static final int BATCHES = 2_000;
+
+    @Test
+    void readersObserveWholeBatches() throws Exception {
+        final Path baseDir = Files.createTempDirectory("batch");
+        // Small MemTables to apply batches across flushes, replaced entries are retained for the reader
+        final Options options = Options.builder().memTableFootprintLimit(256 * 1024).build();
+        try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, 256 * 1024), options)) {
+            final AtomicBoolean done = new AtomicBoolean();
+            final AtomicReference<String> failure = new AtomicReference<>();
+            final Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    // The group is either old or new as a whole
+                    final Iterator<Entry<MemorySegment>> group = dao.all();
+                    final String first = group.hasNext() ? string(group.next().value()) : null;
+                    int size = first == null ? 0 : 1;
+                    while (group.hasNext()) {
+                        final String value = string(group.next().value());
+                        size++;
+                        if (!value.equals(first)) {
+                            failure.set(first + " and " + value);
+                        }
+                    }
+                    if (size != 0 && size != KEYS) {
+                        failure.set("Group of " + size);
+                    }
+
+                    // Later reads don't go back in time
+                    final Entry<MemorySegment> last = dao.get(segment(key(KEYS - 1)));
+                    final Entry<MemorySegment> firstAgain = dao.get(segment(key(0)));
+                    if (last != null && version(firstAgain) < version(last)) {
+                        failure.set(string(firstAgain.value()) + " after " + string(last.value()));
+                    }
+                }
+            });
+            reader.start();
+
+            final WriteBatch batch = new WriteBatch();
+            for (int version = 0; version < BATCHES; version++) {
+                batch.clear();
+                for (int i = KEYS - 1; i >= 0; i--) {
+                    batch.upsert(new BaseEntry<>(segment(key(i)), segment("version" + version)));
+                }
+                dao.apply(batch);
+            }
+            done.set(true);
+            reader.join();
+
+            Assertions.assertSame(null, failure.get());
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void laterEntryOfKeyWins() throws IOException {
+        final Path baseDir = Files.createTempDirectory("batch");
+        try {
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, 1024 * 1024))) {
+                dao.upsert(new BaseEntry<>(segment("a"), segment("old")));
+                dao.upsert(new BaseEntry<>(segment("b"), segment("old")));
+                dao.apply(
+                        new WriteBatch()
+                                .upsert(new BaseEntry<>(segment("a"), segment("first")))
+                                .upsert(new BaseEntry<>(segment("a"), segment("second")))
+                                .remove(segment("b"))
+                                .upsert(new BaseEntry<>(segment("c"), segment("new"))));
+                assertBatchApplied(dao);
+            }
+
+            try (ReferenceDao dao = new ReferenceDao(new Config(baseDir, 1024 * 1024))) {
+                assertBatchApplied(dao);
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void replacedEntriesOfHotKeyAreReleased() {
+        // The same key instance not to count the key retained by the map node
+        final MemorySegment key = segment("key");
+        final MemTable single = new MemTable(MemTableMap.skipList());
+        single.upsert(new BaseEntry<>(key, segment("value")));
+        single.apply(List.of(new BaseEntry<>(key, segment("value"))));
+
+        final MemTable hot = new MemTable(MemTableMap.skipList());
+        hot.upsert(new BaseEntry<>(key, segment("value")));
+        for (int i = 0; i < BATCHES; i++) {
+            hot.apply(List.of(new BaseEntry<>(key, segment("value"))));
+        }
+
+        // No chain of versions without readers
+        Assertions.assertEquals(single.size(), hot.size());
+    }
+
+    @Test
+    void olderIteratorKeepsReplacedEntriesUntilExhausted() {
+        final MemorySegment a = segment("a");
+        final MemorySegment b = segment("b");
+        final MemTable memTable = new MemTable(MemTableMap.skipList());
+        memTable.upsert(new BaseEntry<>(a, segment("old")));
+        memTable.upsert(new BaseEntry<>(b, segment("old")));
+        final Iterator<Entry<MemorySegment>> older = memTable.get(null, null);
+        memTable.apply(
+                List.of(
+                        new BaseEntry<>(a, segment("new")),
+                        new BaseEntry<>(b, segment("new"))));
+        final long retaining = memTable.size();
+
+        Assertions.assertEquals("old", string(older.next().value()));
+        Assertions.assertEquals("new", string(memTable.get(b).value()));
+        Assertions.assertEquals("old", string(older.next().value()));
+        Assertions.assertFalse(older.hasNext());
+        Assertions.assertTrue(memTable.size() < retaining);
+
+        final MemTable expected = new MemTable(MemTableMap.skipList());
+        expected.apply(
+                List.of(
+                        new BaseEntry<>(a, segment("new")),
+                        new BaseEntry<>(b, segment("new"))));
+        Assertions.assertEquals(expected.size(), memTable.size());
+    }
+
+    @Test
+    void upsertOverRetainingBatchEntryIsAccounted() {
+        final MemorySegment key = segment("key");
+        final MemTable memTable = new MemTable(MemTableMap.skipList());
+        memTable.upsert(new BaseEntry<>(key, segment("v0")));
+        final Iterator<Entry<MemorySegment>> older = memTable.get(null, null);
+        memTable.apply(List.of(new BaseEntry<>(key, segment("v1"))));
+        // Replaces the batch entry still keeping v0 for the iterator
+        memTable.upsert(new BaseEntry<>(key, segment("v2")));
+        older.forEachRemaining(entry -> {
+            // Just exhaust
+        });
+
+        final MemTable expected = new MemTable(MemTableMap.skipList());
+        expected.upsert(new BaseEntry<>(key, segment("v2")));
+        Assertions.assertEquals(expected.size(), memTable.size());
+    }
+
+    private static void assertBatchApplied(final ReferenceDao dao) {
+        Assertions.assertEquals("second", string(dao.get(segment("a")).value()));
+        Assertions.assertSame(null, dao.get(segment("b")));
+        Assertions.assertEquals("new", string(dao.get(segment("c")).value()));
+    }
+
+    private static long version(final Entry<MemorySegment> entry) {
+        return entry == null ? -1L : Long.parseLong(string(entry.value()).substring("version".length()));
+    }
+
+    private static String key(final int i) {
+        return String.format("key%03d", i);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.vk.itmo.reference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.metrics.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class WriteControllerTest {
+    private static final long MAX_DELAY_MILLIS = 20L;
+    private static final long TIMEOUT_MILLIS = 50L;
+
+    private static final Options OPTIONS =
+            Options.builder()
+                    .slowdownImmutableMemTables(2)
+                    .maxImmutableMemTables(4)
+                    .maxWriteDelay(MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS)
+                    .writeStallTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                    .build();
+
+    @Test
+    void writesAreDelayedProgressively() {
+        final WriteController controller = controller();
+        controller.delay(1);
+        Assertions.assertEquals(0L, controller.stats().delayedWrites());
+
+        // The first step of three and the hard limit
+        controller.delay(2);
+        controller.delay(10);
+
+        final WriteStats stats = controller.stats();
+        Assertions.assertEquals(2L, stats.delayedWrites());
+        Assertions.assertTrue(stats.delayNanos() > 0L);
+        Assertions.assertEquals(0L, stats.stalledWrites());
+    }
+
+    @Test
+    void stalledWriteResumesOnFlush() throws InterruptedException {
+        final WriteController controller = controller();
+        final AtomicBoolean stalled = new AtomicBoolean(true);
+        final Thread flusher = new Thread(() -> {
+            try {
+                Thread.sleep(TIMEOUT_MILLIS / 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stalled.set(false);
+            controller.onFlushed();
+        });
+        flusher.start();
+
+        controller.awaitWhile(stalled::get);
+        flusher.join();
+        Assertions.assertEquals(1L, controller.stats().stalledWrites());
+
+        // Not counted without stall
+        controller.awaitWhile(stalled::get);
+        Assertions.assertEquals(1L, controller.stats().stalledWrites());
+    }
+
+    @Test
+    void stalledWriteTimesOut() {
+        final WriteController controller = controller();
+        final long start = System.nanoTime();
+        boolean rejected = false;
+        try {
+            controller.awaitWhile(() -> true);
+        } catch (IllegalStateException e) {
+            rejected = true;
+        }
+        Assertions.assertTrue(rejected);
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS));
+
+        final WriteStats stats = controller.stats();
+        Assertions.assertEquals(1L, stats.stalledWrites());
+        Assertions.assertTrue(stats.stallNanos() >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS));
+    }
+
+    private static WriteController controller() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        return new WriteController(
+                OPTIONS,
+                registry.histogram("delay"),
+                registry.histogram("stall"));
+    }
+}
@@ -0,0 +1,98 @@
+package ru.vk.itmo.smirnovdmitrii;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.delete;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.segment;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.string;
+
+class AutoFlushTest {
+    private static final long FLUSH_THRESHOLD = 1024;
+    private static final int WRITERS = 2;
+    private static final int READERS = 2;
+    private static final int KEYS_PER_WRITER = 1_000;
+
+    @Test
+    void readersSeeWritesWhileSSTablesAreAdded() throws IOException, InterruptedException, ExecutionException {
+        final Path baseDir = Files.createTempDirectory("autoflush");
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        try {
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                final List<Future<?>> readers = new ArrayList<>();
+                for (int reader = 0; reader < READERS; reader++) {
+                    readers.add(executor.submit(() -> {
+                        while (writing.get()) {
+                            // Sorted without duplicates while sstables are added
+                            String previous = null;
+                            final Iterator<Entry<MemorySegment>> entries = dao.get(null, null);
+                            while (entries.hasNext()) {
+                                final String key = string(entries.next().key());
+                                if (previous != null) {
+                                    Assertions.assertTrue(previous.compareTo(key) < 0);
+                                }
+                                previous = key;
+                            }
+                        }
+                    }));
+                }
+
+                final List<Future<?>> writers = new ArrayList<>();
+                for (int writer = 0; writer < WRITERS; writer++) {
+                    final int id = writer;
+                    writers.add(executor.submit(() -> {
+                        for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                            final String key = key(i * WRITERS + id);
+                            dao.upsert(new BaseEntry<>(segment(key), segment("value" + i)));
+                            // Visible from memory or from sstable once upserted
+                            Assertions.assertEquals("value" + i, string(dao.get(segment(key)).value()));
+                        }
+                    }));
+                }
+
+                for (final Future<?> writer : writers) {
+                    writer.get();
+                }
+                writing.set(false);
+                for (final Future<?> reader : readers) {
+                    reader.get();
+                }
+
+                for (int i = 0; i < KEYS_PER_WRITER * WRITERS; i++) {
+                    Assertions.assertEquals("value" + i / WRITERS, string(dao.get(segment(key(i))).value()));
+                }
+            }
+
+            // Flushed by writers, not just on close
+            try (Stream<Path> files = Files.list(baseDir)) {
+                Assertions.assertTrue(files.count() > 2);
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+            delete(baseDir);
+        }
+    }
+
+    private static String key(final int i) {
+        return String.format("key%06d", i);
+    }
+}
@@ -0,0 +1,72 @@
+package ru.vk.itmo.smirnovdmitrii;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Entry;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Reference;
+
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.segment;
+
+class InMemoryDaoFootprintTest {
+    private static final int ENTRIES = 100_000;
+    private static final double TOLERANCE = 0.2;
+
+    @Test
+    void sizeMatchesHeapUsage() {
+        final long before = usedHeap();
+        final InMemoryDaoImpl dao = new InMemoryDaoImpl();
+        for (int i = 0; i < ENTRIES; i++) {
+            dao.upsert(new BaseEntry<>(segment("key" + i), segment("value" + i)));
+        }
+        // Replace half of entries with new values and tombstones
+        for (int i = 0; i < ENTRIES; i += 2) {
+            dao.upsert(new BaseEntry<>(segment("key" + i), i % 4 == 0 ? null : segment("new value" + i)));
+        }
+        final long used = usedHeap() - before;
+        Reference.reachabilityFence(dao);
+
+        Assertions.assertEquals(used, dao.size(), used * TOLERANCE);
+    }
+
+    @Test
+    void releaseFreesCommitted() {
+        final InMemoryDaoImpl dao = new InMemoryDaoImpl();
+        for (int i = 0; i < ENTRIES; i++) {
+            dao.upsert(new BaseEntry<>(segment("key" + i), segment("value" + i)));
+        }
+        final Iterable<Entry<MemorySegment>> committed = dao.commit();
+        // Written while committed entries are being saved
+        final Entry<MemorySegment> updated = new BaseEntry<>(segment("key0"), segment("updated"));
+        dao.upsert(updated);
+        dao.release(committed);
+
+        Assertions.assertSame(updated, dao.get(updated.key()));
+        Assertions.assertTrue(dao.size() > 0);
+        dao.upsert(new BaseEntry<>(updated.key(), null));
+        dao.release(dao.commit());
+        Assertions.assertEquals(0L, dao.size());
+    }
+
+    @Test
+    void dataSizeCountsKeysAndValues() {
+        final InMemoryDaoImpl dao = new InMemoryDaoImpl();
+        dao.upsert(new BaseEntry<>(segment("key"), segment("value")));
+        dao.upsert(new BaseEntry<>(segment("key"), segment("new value")));
+        dao.upsert(new BaseEntry<>(segment("removed"), null));
+        Assertions.assertEquals("keynew value".length() + "removed".length(), dao.dataSize());
+
+        dao.release(dao.commit());
+        Assertions.assertEquals(0L, dao.dataSize());
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
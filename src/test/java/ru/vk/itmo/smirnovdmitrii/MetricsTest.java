@@ -0,0 +1,54 @@
+package ru.vk.itmo.smirnovdmitrii;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.metrics.MetricsSnapshot;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.delete;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.segment;
+
+class MetricsTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void snapshotCountsOperationsAndMBeanFollowsDao() throws IOException, JMException {
+        final Path baseDir = Files.createTempDirectory("metrics");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name =
+                new ObjectName(
+                        "ru.vk.itmo:type=" + ObjectName.quote("smirnovdmitrii.DaoImpl")
+                                + ",path=" + ObjectName.quote(baseDir.toAbsolutePath().toString()));
+        try {
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertTrue(server.isRegistered(name));
+                dao.upsert(new BaseEntry<>(segment("key"), segment("value")));
+                Assertions.assertNotNull(dao.get(segment("key")));
+                Assertions.assertNull(dao.get(segment("absent")));
+                dao.flush();
+                Assertions.assertNotNull(dao.get(segment("key")));
+
+                final MetricsSnapshot stats = dao.stats();
+                Assertions.assertEquals(1L, stats.histogram("upsert").count());
+                Assertions.assertEquals(3L, stats.histogram("get").count());
+                Assertions.assertEquals(1L, stats.counter("get.memtable.hits"));
+                Assertions.assertEquals(1L, stats.counter("get.sstable.hits"));
+                Assertions.assertEquals(1L, stats.counter("get.misses"));
+                Assertions.assertEquals(1L, stats.histogram("flush").count());
+                Assertions.assertEquals(1L, server.getAttribute(name, "upsert.count"));
+            }
+            Assertions.assertFalse(server.isRegistered(name));
+        } finally {
+            delete(baseDir);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.vk.itmo.smirnovdmitrii;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+import ru.vk.itmo.smirnovdmitrii.util.LazySSTable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.delete;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.segment;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.string;
+
+class SSTableFormatTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+
+    @Test
+    void sstableWithoutFooterIsUnsupported() throws IOException {
+        final Path baseDir = Files.createTempDirectory("format");
+        try {
+            // Written before footers: [key_offset][value_offset] key value
+            final MemorySegment legacy = MemorySegment.ofArray(new byte[Long.BYTES * 2 + 2]);
+            legacy.set(ValueLayout.JAVA_LONG_UNALIGNED, 0, Long.BYTES * 2);
+            legacy.set(ValueLayout.JAVA_LONG_UNALIGNED, Long.BYTES, Long.BYTES * 2 + 1);
+            legacy.set(ValueLayout.JAVA_BYTE, Long.BYTES * 2, (byte) 'k');
+            legacy.set(ValueLayout.JAVA_BYTE, Long.BYTES * 2 + 1, (byte) 'v');
+            final Path ssTable = baseDir.resolve("legacy");
+            Files.write(ssTable, legacy.toArray(ValueLayout.JAVA_BYTE));
+            Files.write(baseDir.resolve("index"), List.of(ssTable.toString()));
+
+            String message = null;
+            try (DaoImpl ignored = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                // Must not be opened
+            } catch (UncheckedIOException e) {
+                message = e.getCause().getMessage();
+            }
+            Assertions.assertNotNull(message);
+            Assertions.assertTrue(message.startsWith("unsupported format"), message);
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void sstablesAreReopened() throws IOException {
+        final Path baseDir = Files.createTempDirectory("format");
+        try {
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                dao.upsert(new BaseEntry<>(segment("key"), segment("value")));
+                dao.upsert(new BaseEntry<>(segment("removed"), null));
+            }
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertEquals("value", string(dao.get(segment("key")).value()));
+                Assertions.assertNull(dao.get(segment("removed")));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void footersKeepKeyRanges() throws IOException {
+        final Path baseDir = Files.createTempDirectory("format");
+        try {
+            for (final String prefix : List.of("a", "m")) {
+                try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                    for (int i = 10; i < 100; i++) {
+                        dao.upsert(new BaseEntry<>(segment(prefix + i), i % 10 == 0 ? null : segment("value" + i)));
+                    }
+                }
+            }
+
+            final List<String> ranges = new ArrayList<>();
+            try (Arena arena = Arena.ofConfined()) {
+                for (final String path : Files.readAllLines(baseDir.resolve("index"))) {
+                    final LazySSTable ssTable = LazySSTable.open(Path.of(path), arena);
+                    ranges.add(string(ssTable.minKey()) + ".." + string(ssTable.maxKey()));
+                }
+            }
+            ranges.sort(null);
+            Assertions.assertEquals(List.of("a10..a99", "m10..m99"), ranges);
+
+            // Tables outside the requested keys are skipped
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertNull(dao.get(segment("b")));
+                Assertions.assertNull(dao.get(segment("m20")));
+                Assertions.assertEquals("value21", string(dao.get(segment("m21")).value()));
+                Assertions.assertFalse(dao.get(segment("b"), segment("m")).hasNext());
+
+                final Iterator<Entry<MemorySegment>> entries = dao.get(segment("a95"), segment("m12"));
+                final List<String> keys = new ArrayList<>();
+                entries.forEachRemaining(entry -> keys.add(string(entry.key())));
+                Assertions.assertEquals(List.of("a95", "a96", "a97", "a98", "a99", "m11"), keys);
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+}
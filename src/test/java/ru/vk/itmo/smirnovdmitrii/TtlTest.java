@@ -0,0 +1,118 @@
+package ru.vk.itmo.smirnovdmitrii;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.vk.itmo.BaseEntry;
+import ru.vk.itmo.Config;
+import ru.vk.itmo.Entry;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.delete;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.segment;
+import static ru.vk.itmo.smirnovdmitrii.TestUtils.string;
+
+class TtlTest {
+    private static final long FLUSH_THRESHOLD = 1024 * 1024;
+    private static final long TTL = 50;
+    private static final long FOREVER = 1_000_000;
+
+    @Test
+    void expiredEntriesAreNotRead() throws IOException, InterruptedException {
+        final Path baseDir = Files.createTempDirectory("ttl");
+        try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+            dao.upsert(new BaseEntry<>(segment("k1"), segment("v1")), TTL);
+            dao.upsert(new BaseEntry<>(segment("k2"), segment("v2")), FOREVER);
+            dao.upsert(new BaseEntry<>(segment("k3"), segment("v3")));
+            dao.flush();
+            dao.upsert(new BaseEntry<>(segment("k4"), segment("v4")), TTL);
+            Assertions.assertEquals("v1", string(dao.get(segment("k1")).value()));
+            Assertions.assertEquals(List.of("k1", "k2", "k3", "k4"), keys(dao.all()));
+
+            Thread.sleep(TTL * 2);
+            Assertions.assertNull(dao.get(segment("k1")));
+            Assertions.assertNull(dao.get(segment("k4")));
+            Assertions.assertEquals("v2", string(dao.get(segment("k2")).value()));
+            Assertions.assertEquals(List.of("k2", "k3"), keys(dao.all()));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void expiredEntryShadowsOlderValue() throws IOException, InterruptedException {
+        final Path baseDir = Files.createTempDirectory("ttl");
+        try {
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                dao.upsert(new BaseEntry<>(segment("key"), segment("old")));
+                dao.flush();
+                dao.upsert(new BaseEntry<>(segment("key"), segment("new")), TTL);
+                dao.flush();
+                Thread.sleep(TTL * 2);
+                Assertions.assertNull(dao.get(segment("key")));
+
+                // Overlaps the older sstable, so it is kept
+                dao.upsert(new BaseEntry<>(segment("other"), segment("value")));
+                dao.flush();
+                Assertions.assertNull(dao.get(segment("key")));
+                Assertions.assertEquals(3, ssTables(baseDir));
+            }
+
+            try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+                Assertions.assertNull(dao.get(segment("key")));
+                Assertions.assertEquals(List.of("other"), keys(dao.all()));
+            }
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    @Test
+    void expiredSstablesAreRemovedWhileRunning() throws IOException, InterruptedException {
+        final Path baseDir = Files.createTempDirectory("ttl");
+        try (DaoImpl dao = new DaoImpl(new Config(baseDir, FLUSH_THRESHOLD))) {
+            dao.upsert(new BaseEntry<>(segment("m"), segment("alive")));
+            dao.flush();
+            // Doesn't overlap the older sstable
+            dao.upsert(new BaseEntry<>(segment("a"), segment("expiring")), TTL);
+            dao.upsert(new BaseEntry<>(segment("b"), null));
+            dao.flush();
+            dao.upsert(new BaseEntry<>(segment("z"), segment("expiring")), TTL);
+            dao.flush();
+            Assertions.assertEquals(3, ssTables(baseDir));
+
+            Thread.sleep(TTL * 2);
+            dao.upsert(new BaseEntry<>(segment("n"), segment("alive")));
+            dao.flush();
+            Assertions.assertEquals(2, ssTables(baseDir));
+            Assertions.assertEquals(List.of("m", "n"), keys(dao.all()));
+        } finally {
+            delete(baseDir);
+        }
+    }
+
+    private static int ssTables(final Path baseDir) throws IOException {
+        final List<String> index = Files.readAllLines(baseDir.resolve("index"));
+        for (final String ssTable : index) {
+            Assertions.assertTrue(Files.exists(Path.of(ssTable)));
+        }
+        try (Stream<Path> files = Files.list(baseDir)) {
+            // Sstables and index
+            Assertions.assertEquals(index.size() + 1, files.count());
+        }
+        return index.size();
+    }
+
+    private static List<String> keys(final Iterator<Entry<MemorySegment>> iterator) {
+        final List<String> result = new ArrayList<>();
+        iterator.forEachRemaining(entry -> result.add(string(entry.key())));
+        return result;
+    }
+}
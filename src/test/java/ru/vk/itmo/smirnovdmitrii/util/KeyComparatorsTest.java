@@ -0,0 +1,43 @@
+package ru.vk.itmo.smirnovdmitrii.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Random;
+
+class KeyComparatorsTest {
+    private static final int PAIRS = 100_000;
+    private static final int MAX_SIZE = 300;
+
+    @Test
+    void scalarMatchesUnsignedOrder() {
+        assertUnsignedOrder(KeyComparators.scalar());
+    }
+
+    @Test
+    void vectorMatchesUnsignedOrder() {
+        assertUnsignedOrder(KeyComparators.vector());
+    }
+
+    private static void assertUnsignedOrder(final EqualsComparator<MemorySegment> comparator) {
+        final Random random = new Random(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            final byte[] left = new byte[random.nextInt(MAX_SIZE)];
+            random.nextBytes(left);
+            // Mostly keys with long common prefix
+            final byte[] right = Arrays.copyOf(left, random.nextInt(MAX_SIZE));
+            if (right.length > 0 && random.nextBoolean()) {
+                right[random.nextInt(right.length)] = (byte) random.nextInt();
+            }
+            final int expected = Integer.signum(Arrays.compareUnsigned(left, right));
+
+            final MemorySegment o1 = MemorySegment.ofArray(left);
+            final MemorySegment o2 = MemorySegment.ofArray(right);
+            Assertions.assertEquals(expected, Integer.signum(comparator.compare(o1, o2)));
+            Assertions.assertEquals(-expected, Integer.signum(comparator.compare(o2, o1)));
+            Assertions.assertEquals(expected == 0, comparator.equals(o1, o2));
+        }
+    }
+}
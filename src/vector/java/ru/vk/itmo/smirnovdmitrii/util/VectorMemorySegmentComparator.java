@@ -0,0 +1,47 @@
+package ru.vk.itmo.smirnovdmitrii.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Compares keys lane by lane with the widest {@link ByteVector} supported by the platform.
+ * Tails shorter than a vector are compared with {@link MemorySegment#mismatch}.
+ * Loaded by {@link KeyComparators#vector()} only if {@code jdk.incubator.vector} module is available.
+ */
+public final class VectorMemorySegmentComparator implements EqualsComparator<MemorySegment> {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int compare(final MemorySegment o1, final MemorySegment o2) {
+        final long size = Math.min(o1.byteSize(), o2.byteSize());
+        final long bound = SPECIES.loopBound(size);
+        long offset = 0;
+        for (; offset < bound; offset += SPECIES.length()) {
+            final ByteVector v1 = ByteVector.fromMemorySegment(SPECIES, o1, offset, ByteOrder.nativeOrder());
+            final ByteVector v2 = ByteVector.fromMemorySegment(SPECIES, o2, offset, ByteOrder.nativeOrder());
+            final VectorMask<Byte> different = v1.compare(VectorOperators.NE, v2);
+            if (different.anyTrue()) {
+                final int lane = different.firstTrue();
+                return Byte.compareUnsigned(v1.lane(lane), v2.lane(lane));
+            }
+        }
+        final long mismatch = MemorySegment.mismatch(o1, offset, size, o2, offset, size);
+        if (mismatch != -1) {
+            return Byte.compareUnsigned(
+                    o1.get(ValueLayout.JAVA_BYTE, offset + mismatch),
+                    o2.get(ValueLayout.JAVA_BYTE, offset + mismatch));
+        }
+        return Long.compare(o1.byteSize(), o2.byteSize());
+    }
+
+    @Override
+    public boolean equals(final MemorySegment o1, final MemorySegment o2) {
+        return o1.byteSize() == o2.byteSize() && compare(o1, o2) == 0;
+    }
+}